@@ -46,6 +46,16 @@ sourceSets {
         compileClasspath += main.get().output + configurations.testRuntimeClasspath
         runtimeClasspath += main.get().output + configurations.testRuntimeClasspath
     }
+    register("jmh") {
+        compileClasspath += main.get().output + configurations.testRuntimeClasspath
+        runtimeClasspath += main.get().output + configurations.testRuntimeClasspath
+    }
+    register("profiler")
+}
+
+dependencies {
+    add(sourceSets["jmh"].implementationConfigurationName, "org.openjdk.jmh:jmh-core:1.32")
+    add(sourceSets["jmh"].annotationProcessorConfigurationName, "org.openjdk.jmh:jmh-generator-annprocess:1.32")
 }
 
 java {
@@ -87,6 +97,11 @@ gradlePlugin {
             displayName = "Gradle TeamCity Environments plugin"
             implementationClass = "com.github.rodm.teamcity.TeamCityEnvironmentsPlugin"
         }
+        create("teamcitySettingsPlugin") {
+            id = "com.github.rodm.teamcity-settings"
+            displayName = "Gradle TeamCity Settings plugin"
+            implementationClass = "com.github.rodm.teamcity.TeamCitySettingsPlugin"
+        }
     }
 }
 
@@ -132,4 +147,32 @@ tasks {
         testClassesDirs = sourceSets["samples"].output.classesDirs
         classpath = sourceSets["samples"].runtimeClasspath
     }
+
+    register<JavaExec>("jmh") {
+        description = "Runs the JMH benchmarks."
+        group = "verification"
+        classpath = sourceSets["jmh"].runtimeClasspath
+        mainClass.set("org.openjdk.jmh.Main")
+        val resultsFile = layout.buildDirectory.file("reports/jmh/results.json")
+        args("-rf", "json", "-rff", resultsFile.get().asFile.absolutePath)
+        if (project.hasProperty("jmh.includes")) {
+            args(project.property("jmh.includes").toString())
+        }
+        doFirst {
+            resultsFile.get().asFile.parentFile.mkdirs()
+        }
+    }
+
+    register<JavaExec>("generateProfilerBuilds") {
+        description = "Generates the synthetic builds used by the gradle-profiler scenarios."
+        classpath = sourceSets["profiler"].runtimeClasspath
+        mainClass.set("com.github.rodm.teamcity.SyntheticBuildGenerator")
+        val buildsDir = layout.buildDirectory.dir("profiler")
+        args(buildsDir.get().asFile.absolutePath,
+            projectDir.absolutePath,
+            findProperty("profiler.projects") ?: "1,50,500",
+            findProperty("profiler.environments") ?: "1,20",
+            findProperty("profiler.jars") ?: "20")
+        outputs.dir(buildsDir)
+    }
 }
@@ -371,6 +371,7 @@ class AgentPluginFunctionalTest extends FunctionalTestCase {
         assertThat(result.task(":generateAgentDescriptor").getOutcome(), is(SKIPPED))
         assertThat(result.task(":processAgentDescriptor").getOutcome(), is(SKIPPED))
         assertThat(result.task(":agentPlugin").getOutcome(), is(SKIPPED))
+        assertThat(result.task(":validateAgentPlugin").getOutcome(), is(SKIPPED))
     }
 
     @Nested
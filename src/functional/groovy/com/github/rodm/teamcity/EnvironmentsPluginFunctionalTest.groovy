@@ -35,6 +35,7 @@ import static org.gradle.testkit.runner.TaskOutcome.SUCCESS
 import static org.gradle.testkit.runner.TaskOutcome.UP_TO_DATE
 import static org.hamcrest.CoreMatchers.containsString
 import static org.hamcrest.CoreMatchers.is
+import static org.hamcrest.CoreMatchers.nullValue
 import static org.hamcrest.CoreMatchers.not
 import static org.hamcrest.MatcherAssert.assertThat
 import static org.junit.jupiter.api.Assertions.assertFalse
@@ -246,6 +247,53 @@ class EnvironmentsPluginFunctionalTest extends FunctionalTestCase {
         assertFalse(plugin2File.exists(), 'Plugin2 archive not undeployed')
     }
 
+    @Test
+    void 'deploy and undeploy exploded plugin to and from an environment'() {
+        buildFile << """
+            plugins {
+                id 'java'
+                id 'com.github.rodm.teamcity-server'
+                id 'com.github.rodm.teamcity-environments'
+            }
+            teamcity {
+                version = '9.1'
+                server {
+                    descriptor {
+                        name = 'test-plugin'
+                        displayName = 'Test plugin'
+                        version = '1.0'
+                        vendorName = 'vendor name'
+                    }
+                }
+                environments {
+                    baseDataDir = 'teamcity/data'
+                    teamcity {
+                        version = '9.1.6'
+                        exploded = true
+                    }
+                }
+            }
+        """
+
+        File pluginDir = testProjectDir.resolve('teamcity/data/9.1/plugins/test-plugin').toFile()
+        File staleFile = new File(pluginDir, 'server/stale.jar')
+        staleFile.parentFile.mkdirs()
+        staleFile << 'stale'
+
+        BuildResult result = executeBuild('deployToTeamcity')
+
+        assertThat(result.task(":deployToTeamcity").getOutcome(), is(SUCCESS))
+        assertThat(result.task(":serverPlugin"), is(nullValue()))
+        assertTrue(new File(pluginDir, 'teamcity-plugin.xml').isFile(), 'Plugin descriptor not deployed')
+        assertTrue(new File(pluginDir, 'server/test-plugin.jar').isFile(), 'Plugin jar not deployed')
+        assertFalse(staleFile.exists(), 'Stale file not removed')
+        assertFalse(testProjectDir.resolve('teamcity/data/9.1/plugins/test-plugin.zip').toFile().exists())
+
+        result = executeBuild('undeployFromTeamcity')
+        assertThat(result.task(":undeployFromTeamcity").getOutcome(), is(SUCCESS))
+        assertFalse(pluginDir.exists(), 'Exploded plugin not undeployed')
+    }
+
     @Test
     void 'deploy and undeploy tasks are ignored when no plugins are configured'() {
         buildFile << """
@@ -104,4 +104,140 @@ class MultipleProjectPluginFunctionalTest extends FunctionalTestCase {
         assertThat(result.task(":server:generateServerDescriptor").getOutcome(), is(SUCCESS))
         assertThat(result.task(":server:serverPlugin").getOutcome(), is(SUCCESS))
     }
+
+    @Test
+    void 'projects use the properties configured by the settings plugin'() {
+        settingsFile << """
+            plugins {
+                id 'com.github.rodm.teamcity-settings'
+            }
+
+            teamcity {
+                version = '2021.2-SNAPSHOT'
+                allowSnapshotVersions = true
+                validateBeanDefinition = 'fail'
+            }
+
+            rootProject.name = 'test-plugin'
+            include 'agent'
+            include 'server'
+        """
+
+        createFile(createDirectory('agent').toPath(), 'build.gradle') << """
+            plugins {
+                id 'java'
+                id 'com.github.rodm.teamcity-agent'
+            }
+            teamcity {
+                agent {
+                    descriptor {
+                        pluginDeployment {
+                            useSeparateClassloader = true
+                        }
+                    }
+                }
+            }
+        """
+
+        createFile(createDirectory('server').toPath(), 'build.gradle') << """
+            plugins {
+                id 'java'
+                id 'com.github.rodm.teamcity-server'
+            }
+            dependencies {
+                agent (project(path: ':agent', configuration: 'plugin'))
+            }
+            teamcity {
+                server {
+                    descriptor {
+                        name = 'example-plugin'
+                        displayName = 'Example Plugin'
+                        version = '1.0'
+                        vendorName = 'demo'
+                    }
+                }
+            }
+            def version = teamcity.version
+            def mode = teamcity.validateBeanDefinition
+            def repositories = 0
+            afterEvaluate {
+                repositories = project.repositories.size()
+            }
+            tasks.register('printSettings') {
+                doLast {
+                    println "TeamCity version: \${version}"
+                    println "Validation mode: \${mode}"
+                    println "Project repositories: \${repositories}"
+                }
+            }
+        """
+
+        BuildResult result = executeBuild('printSettings', 'serverPlugin')
+
+        assertThat(result.task(":server:printSettings").getOutcome(), is(SUCCESS))
+        assertThat(result.task(":server:serverPlugin").getOutcome(), is(SUCCESS))
+        assertThat(result.output, containsString('TeamCity version: 2021.2-SNAPSHOT'))
+        assertThat(result.output, containsString('Validation mode: FAIL'))
+        assertThat(result.output, containsString('Project repositories: 0'))
+    }
+
+    @Test
+    void 'project declaring repositories with the settings plugin resolves the TeamCity dependencies'() {
+        settingsFile << """
+            plugins {
+                id 'com.github.rodm.teamcity-settings'
+            }
+
+            teamcity {
+                version = '2021.2'
+            }
+
+            rootProject.name = 'test-plugin'
+            include 'server'
+        """
+
+        File serverDir = createDirectory('server')
+        createFile(serverDir.toPath(), 'build.gradle') << """
+            plugins {
+                id 'java'
+                id 'com.github.rodm.teamcity-server'
+            }
+            repositories {
+                mavenCentral()
+            }
+            teamcity {
+                server {
+                    descriptor {
+                        name = 'example-plugin'
+                        displayName = 'Example Plugin'
+                        version = '1.0'
+                        vendorName = 'demo'
+                    }
+                }
+            }
+            def repositories = 0
+            afterEvaluate {
+                repositories = project.repositories.size()
+            }
+            tasks.register('printSettings') {
+                doLast {
+                    println "Project repositories: \${repositories}"
+                }
+            }
+        """
+        File serverJavaDir = createDirectory(serverDir.toPath(), 'src/main/java/example/server')
+        createFile(serverJavaDir.toPath(), 'ExampleServerPlugin.java') << """
+            package example.server;
+
+            import jetbrains.buildServer.serverSide.BuildServerAdapter;
+
+            public class ExampleServerPlugin extends BuildServerAdapter {
+            }
+        """
+
+        BuildResult result = executeBuild('printSettings', 'compileJava')
+
+        assertThat(result.task(":server:compileJava").getOutcome(), is(SUCCESS))
+        assertThat(result.output, containsString('Project repositories: 3'))
+    }
 }
@@ -22,6 +22,9 @@ import org.junit.jupiter.api.DisplayName
 import org.junit.jupiter.api.Nested
 import org.junit.jupiter.api.Test
 
+import java.util.zip.ZipEntry
+import java.util.zip.ZipFile
+
 import static com.github.rodm.teamcity.TestSupport.executeBuildAndFail
 import static com.github.rodm.teamcity.TestSupport.SETTINGS_SCRIPT_DEFAULT
 import static com.github.rodm.teamcity.internal.PluginDefinitionValidationAction.NO_BEAN_CLASS_WARNING_MESSAGE
@@ -186,6 +189,35 @@ class ServerPluginFunctionalTest extends FunctionalTestCase {
         assertThat(result.getOutput(), containsString(expectedWarning))
     }
 
+    @Test
+    void 'validation task writes report and only validates changed definition files'() {
+        buildFile << BUILD_SCRIPT_WITH_INLINE_DESCRIPTOR
+
+        File metaInfDir = createDirectory('src/main/resources/META-INF')
+        File definitionFile = new File(metaInfDir, 'build-server-plugin-test.xml')
+        definitionFile << PLUGIN_DEFINITION_FILE
+
+        BuildResult result = executeBuild()
+
+        assertThat(result.task(':validateServerPlugin').getOutcome(), is(SUCCESS))
+        String report = testProjectDir.resolve('build/reports/teamcity/validateServerPlugin.json').toFile().text
+        assertThat(report, containsString('"source": "build-server-plugin-test.xml"'))
+        assertThat(report, containsString('example.ExampleServerPlugin'))
+
+        result = executeBuild()
+
+        assertThat(result.task(':validateServerPlugin').getOutcome(), is(UP_TO_DATE))
+
+        File otherDefinitionFile = new File(metaInfDir, 'build-server-plugin-other.xml')
+        otherDefinitionFile << '<beans></beans>'
+        result = executeBuild()
+
+        assertThat(result.task(':validateServerPlugin').getOutcome(), is(SUCCESS))
+        report = testProjectDir.resolve('build/reports/teamcity/validateServerPlugin.json').toFile().text
+        assertThat(report, containsString('example.ExampleServerPlugin'))
+        assertThat(report, containsString('build-server-plugin-other.xml contains no beans'))
+    }
+
     @Test
     void supportOlderPluginDefinitionFile() {
         buildFile << BUILD_SCRIPT_WITH_INLINE_DESCRIPTOR
@@ -402,6 +434,73 @@ class ServerPluginFunctionalTest extends FunctionalTestCase {
         }
     }
 
+    @Nested
+    @DisplayName("with lazy task configuration")
+    class WithLazyTaskConfiguration {
+
+        @BeforeEach
+        void init() {
+            buildFile << """
+                plugins {
+                    id 'java'
+                    id 'com.github.rodm.teamcity-server'
+                    id 'com.github.rodm.teamcity-environments'
+                }
+                teamcity {
+                    version = '2021.2'
+                    server {
+                        descriptor {
+                            name = 'test-plugin'
+                            displayName = 'Test plugin'
+                            version = '1.0'
+                            vendorName = 'vendor name'
+                        }
+                        sign {
+                            certificateChain = 'certificate-chain'
+                            privateKey = 'private-key'
+                        }
+                        publish {
+                            token = 'token'
+                        }
+                    }
+                    environments {
+                        teamcity {
+                            version = '2021.2.3'
+                        }
+                        exploded {
+                            version = '2021.2.3'
+                            exploded = true
+                        }
+                    }
+                }
+
+                def realizedTasks = []
+                tasks.configureEach { task ->
+                    if (task.class.name.startsWith('com.github.rodm.teamcity')) {
+                        realizedTasks << task.name
+                    }
+                }
+                gradle.taskGraph.whenReady {
+                    println "Realized TeamCity tasks: \${realizedTasks.size()}"
+                }
+            """
+        }
+
+        @Test
+        void 'help task does not realize the TeamCity tasks'() {
+            BuildResult result = executeBuild('help')
+
+            assertThat(result.output, containsString('Realized TeamCity tasks: 0'))
+        }
+
+        @Test
+        void 'test task does not realize the TeamCity tasks'() {
+            BuildResult result = executeBuild('--dry-run', 'test')
+
+            assertThat(result.output, containsString('Realized TeamCity tasks: 0'))
+        }
+    }
+
     @Test
     void 'plugin archive contains 3rd party libraries but not TeamCity libraries'() {
         buildFile << """
@@ -441,6 +540,97 @@ class ServerPluginFunctionalTest extends FunctionalTestCase {
         assertThat(entries.size(), equalTo(5))
     }
 
+    @Test
+    void 'plugin archive created with parallel compression stores libraries'() {
+        buildFile << """
+            plugins {
+                id 'org.gradle.java'
+                id 'com.github.rodm.teamcity-server'
+            }
+            dependencies {
+                implementation 'org.apache.commons:commons-lang3:3.7'
+            }
+            teamcity {
+                version = '8.1.5'
+                server {
+                    descriptor {
+                        name = 'test-plugin'
+                        displayName = 'Test plugin'
+                        version = '1.0'
+                        vendorName = 'vendor name'
+                    }
+                }
+            }
+            tasks.named('serverPlugin') {
+                parallelCompression = true
+            }
+        """
+        settingsFile << SETTINGS_SCRIPT_DEFAULT
+
+        BuildResult result = executeBuild()
+
+        assertThat(result.task(":serverPlugin").getOutcome(), is(SUCCESS))
+
+        ZipFile archive = new ZipFile(testProjectDir.resolve('build/distributions/test-plugin.zip').toFile())
+        List<String> entries = archive.entries().collect { it.name }
+        assertThat(entries, hasItem('teamcity-plugin.xml'))
+        assertThat(entries, hasItem('server/test-plugin.jar'))
+        assertThat(entries, hasItem('server/commons-lang3-3.7.jar'))
+        assertThat(entries.size(), equalTo(4))
+        assertThat(archive.getEntry('server/commons-lang3-3.7.jar').method, equalTo(ZipEntry.STORED))
+        assertThat(archive.getEntry('teamcity-plugin.xml').method, equalTo(ZipEntry.DEFLATED))
+        archive.close()
+    }
+
+    @Test
+    void 'incremental packaging copies unchanged entries from the previous archive'() {
+        buildFile << """
+            plugins {
+                id 'org.gradle.java'
+                id 'com.github.rodm.teamcity-server'
+            }
+            dependencies {
+                implementation 'org.apache.commons:commons-lang3:3.7'
+            }
+            teamcity {
+                version = '8.1.5'
+                server {
+                    descriptor {
+                        name = 'test-plugin'
+                        displayName = 'Test plugin'
+                        version = project.findProperty('pluginVersion') ?: '1.0'
+                        vendorName = 'vendor name'
+                    }
+                    files {
+                        into('config') {
+                            from('config')
+                        }
+                    }
+                }
+            }
+            tasks.named('serverPlugin') {
+                incrementalPackaging = true
+            }
+        """
+        settingsFile << SETTINGS_SCRIPT_DEFAULT
+        File configDir = testProjectDir.resolve('config').toFile()
+        configDir.mkdirs()
+        new File(configDir, 'settings.xml') << '<settings/>\n' * 100
+
+        executeBuild('build')
+        BuildResult result = executeBuild('build', '--info', '-PpluginVersion=1.1')
+
+        assertThat(result.task(":serverPlugin").getOutcome(), is(SUCCESS))
+        assertThat(result.output, containsString('Copied 1 unchanged entries from the previous plugin archive'))
+
+        ZipFile archive = new ZipFile(testProjectDir.resolve('build/distributions/test-plugin.zip').toFile())
+        assertThat(archive.getInputStream(archive.getEntry('teamcity-plugin.xml')).text, containsString('1.1'))
+        assertThat(archive.getEntry('config/settings.xml').method, equalTo(ZipEntry.DEFLATED))
+        assertThat(archive.getInputStream(archive.getEntry('config/settings.xml')).text, equalTo('<settings/>\n' * 100))
+        assertThat(archive.entries().collect { it.name }.size(), equalTo(6))
+        archive.close()
+    }
+
     @Test
     void 'jar archive contains additional frontend javascript in buildServerResources'() {
         buildFile << """
@@ -520,5 +710,6 @@ class ServerPluginFunctionalTest extends FunctionalTestCase {
         assertThat(result.task(":generateServerDescriptor").getOutcome(), is(SKIPPED))
         assertThat(result.task(":processServerDescriptor").getOutcome(), is(SKIPPED))
         assertThat(result.task(":serverPlugin").getOutcome(), is(SKIPPED))
+        assertThat(result.task(":validateServerPlugin").getOutcome(), is(SKIPPED))
     }
 }
@@ -0,0 +1,111 @@
+/*
+ * Copyright 2022 Rod MacKenzie
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.rodm.teamcity;
+
+import com.github.rodm.teamcity.internal.ClassIndex;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.LinkedHashSet;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares collecting and looking up the class paths of a large jar in a set of strings against a
+ * {@link ClassIndex}. The paths are created during setup, as the jar task creates them for each file,
+ * so running with {@code -prof gc} shows the memory used by each structure as the allocation per operation.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class ClassIndexBenchmark {
+
+    @Param({"100000"})
+    public int classes;
+
+    private String[] paths;
+    private String[] lookups;
+    private Set<String> pathSet;
+    private ClassIndex pathIndex;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        paths = new String[classes];
+        for (int i = 0; i < classes; i++) {
+            paths[i] = "com/example/package" + (i / 100) + "/Class" + i + ".class";
+        }
+        // looked up names are created separately from the collected paths, as the bean class names are
+        lookups = new String[classes];
+        for (int i = 0; i < classes; i++) {
+            lookups[i] = new String(paths[i].toCharArray());
+        }
+        pathSet = collectSet();
+        pathIndex = collectIndex();
+    }
+
+    @Benchmark
+    public Set<String> collectSet() {
+        Set<String> set = new LinkedHashSet<>();
+        for (String path : paths) {
+            set.add(path);
+        }
+        return set;
+    }
+
+    @Benchmark
+    public ClassIndex collectIndex() {
+        ClassIndex index = new ClassIndex();
+        for (String path : paths) {
+            index.add(path);
+        }
+        return index;
+    }
+
+    @Benchmark
+    public int lookupSet() {
+        int found = 0;
+        for (String path : lookups) {
+            if (pathSet.contains(path)) {
+                found++;
+            }
+        }
+        return found;
+    }
+
+    @Benchmark
+    public int lookupIndex() {
+        int found = 0;
+        for (String path : lookups) {
+            if (pathIndex.contains(path)) {
+                found++;
+            }
+        }
+        return found;
+    }
+}
@@ -0,0 +1,142 @@
+/*
+ * Copyright 2022 Rod MacKenzie
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.rodm.teamcity;
+
+import groovy.util.Node;
+import groovy.xml.XmlUtil;
+import org.gradle.api.Project;
+import org.gradle.testfixtures.ProjectBuilder;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures writing server and agent plugin descriptors with many parameters and dependencies. The
+ * {@code serverNodeTree} benchmark builds the server descriptor as a Groovy {@code Node} tree serialized by
+ * {@code XmlUtil}, the way the descriptors were written before the generators used a {@code XMLStreamWriter}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class DescriptorGeneratorBenchmark {
+
+    @Param({"500"})
+    public int entries;
+
+    private ServerPluginDescriptor serverDescriptor;
+    private AgentPluginDescriptor agentDescriptor;
+    private TeamCityVersion version;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        Project project = ProjectBuilder.builder().build();
+        version = TeamCityVersion.version("2020.1", false);
+
+        serverDescriptor = project.getObjects().newInstance(ServerPluginDescriptor.class);
+        serverDescriptor.setName("benchmark-plugin");
+        serverDescriptor.setDisplayName("Benchmark Plugin");
+        serverDescriptor.setVersion("1.0");
+        serverDescriptor.setDescription("A plugin with many parameters & dependencies");
+        serverDescriptor.setVendorName("vendor");
+        serverDescriptor.setUseSeparateClassloader(true);
+        serverDescriptor.parameters(parameters -> {
+            for (int i = 0; i < entries; i++) {
+                parameters.parameter("parameter" + i, "value <" + i + ">");
+            }
+        });
+        serverDescriptor.dependencies(dependencies -> {
+            for (int i = 0; i < entries; i++) {
+                dependencies.plugin("plugin" + i);
+                dependencies.tool("tool" + i);
+            }
+        });
+
+        agentDescriptor = project.getObjects().newInstance(AgentPluginDescriptor.class);
+        agentDescriptor.pluginDeployment(deployment -> {
+            deployment.setUseSeparateClassloader(true);
+            deployment.executableFiles(files -> {
+                for (int i = 0; i < entries; i++) {
+                    files.include("bin/script" + i + ".sh");
+                }
+            });
+        });
+        agentDescriptor.dependencies(dependencies -> {
+            for (int i = 0; i < entries; i++) {
+                dependencies.plugin("plugin" + i);
+                dependencies.tool("tool" + i);
+            }
+        });
+    }
+
+    @Benchmark
+    public String server() throws IOException {
+        StringWriter writer = new StringWriter();
+        new ServerPluginDescriptorGenerator(serverDescriptor, version).writeTo(writer);
+        return writer.toString();
+    }
+
+    @Benchmark
+    public String agent() throws IOException {
+        StringWriter writer = new StringWriter();
+        new AgentPluginDescriptorGenerator(agentDescriptor).writeTo(writer);
+        return writer.toString();
+    }
+
+    @Benchmark
+    public String serverNodeTree() {
+        Map<String, String> attributes = new LinkedHashMap<>(2);
+        attributes.put("xmlns:xsi", "http://www.w3.org/2001/XMLSchema-instance");
+        attributes.put("xsi:noNamespaceSchemaLocation", "urn:schemas-jetbrains-com:teamcity-plugin-v1-xml");
+        Node root = new Node(null, "teamcity-plugin", attributes);
+        Node info = root.appendNode("info");
+        info.appendNode("name", serverDescriptor.getName());
+        info.appendNode("display-name", serverDescriptor.getDisplayName());
+        info.appendNode("version", serverDescriptor.getVersion());
+        info.appendNode("description", serverDescriptor.getDescription());
+        info.appendNode("vendor").appendNode("name", serverDescriptor.getVendorName());
+        root.appendNode("deployment", Collections.singletonMap("use-separate-classloader", serverDescriptor.getUseSeparateClassloader()));
+        Node parameters = root.appendNode("parameters");
+        serverDescriptor.getParameters().getParameters().forEach((name, value) ->
+            parameters.appendNode("parameter", Collections.singletonMap("name", name), value));
+        Node dependencies = root.appendNode("dependencies");
+        serverDescriptor.getDependencies().getPlugins().forEach(name ->
+            dependencies.appendNode("plugin", Collections.singletonMap("name", name)));
+        serverDescriptor.getDependencies().getTools().forEach(name ->
+            dependencies.appendNode("tool", Collections.singletonMap("name", name)));
+        StringWriter writer = new StringWriter();
+        XmlUtil.serialize(root, writer);
+        return writer.toString();
+    }
+}
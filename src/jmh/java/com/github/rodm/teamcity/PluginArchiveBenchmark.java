@@ -0,0 +1,114 @@
+/*
+ * Copyright 2022 Rod MacKenzie
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.rodm.teamcity;
+
+import com.github.rodm.teamcity.internal.PluginArchiveWriter;
+import org.apache.tools.zip.ZipEntry;
+import org.apache.tools.zip.ZipOutputStream;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares writing a plugin archive with the {@link PluginArchiveWriter} against deflating every entry on a
+ * single thread with the Ant zip output stream used by the Gradle {@code Zip} task.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class PluginArchiveBenchmark {
+
+    @Param({"40"})
+    public int jars;
+
+    @Param({"2000"})
+    public int resources;
+
+    private final Map<String, byte[]> entries = new LinkedHashMap<>();
+    private File archiveFile;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        Random random = new Random(42);
+        for (int i = 0; i < jars; i++) {
+            byte[] content = new byte[1024 * 1024];
+            random.nextBytes(content);
+            entries.put("server/library-" + i + ".jar", content);
+        }
+        for (int i = 0; i < resources; i++) {
+            StringBuilder content = new StringBuilder();
+            for (int line = 0; line < 100; line++) {
+                content.append("resource ").append(i).append(" line ").append(random.nextInt(1000)).append('\n');
+            }
+            entries.put("server/resources/resource-" + i + ".txt", content.toString().getBytes(StandardCharsets.UTF_8));
+        }
+        archiveFile = File.createTempFile("plugin", ".zip");
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(archiveFile.toPath());
+    }
+
+    @Benchmark
+    public long zipTask() throws IOException {
+        try (ZipOutputStream out = new ZipOutputStream(archiveFile)) {
+            out.setMethod(ZipOutputStream.DEFLATED);
+            out.setEncoding(StandardCharsets.UTF_8.name());
+            for (Map.Entry<String, byte[]> entry : entries.entrySet()) {
+                ZipEntry zipEntry = new ZipEntry(entry.getKey());
+                zipEntry.setTime(0);
+                zipEntry.setUnixMode(0100644);
+                out.putNextEntry(zipEntry);
+                out.write(entry.getValue());
+                out.closeEntry();
+            }
+        }
+        return archiveFile.length();
+    }
+
+    @Benchmark
+    public long pluginArchiveWriter() throws IOException {
+        try (PluginArchiveWriter writer = new PluginArchiveWriter(archiveFile)) {
+            for (Map.Entry<String, byte[]> entry : entries.entrySet()) {
+                writer.putFile(entry.getKey(), entry.getValue(), 0, 0644);
+            }
+        }
+        return archiveFile.length();
+    }
+}
@@ -0,0 +1,135 @@
+/*
+ * Copyright 2022 Rod MacKenzie
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.rodm.teamcity;
+
+import com.github.rodm.teamcity.internal.LibraryMerger;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import static com.github.rodm.teamcity.TeamCityServerPlugin.PLUGIN_DEFINITION_PATTERN;
+
+/**
+ * Compares looking up every class of a plugin through a classloader for the plugin jar and many small
+ * libraries against a classloader for the jar written by the {@link LibraryMerger}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class PluginClassLoadingBenchmark {
+
+    @Param({"60"})
+    public int jars;
+
+    @Param({"50"})
+    public int classes;
+
+    private final List<String> resources = new ArrayList<>();
+    private File dir;
+    private URL[] separateJars;
+    private URL[] mergedJar;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        dir = Files.createTempDirectory("plugin").toFile();
+        File libDir = new File(dir, "lib");
+        File mergedDir = new File(dir, "merged");
+        libDir.mkdirs();
+        mergedDir.mkdirs();
+
+        List<File> files = new ArrayList<>();
+        for (int i = 0; i < jars; i++) {
+            File jar = new File(libDir, "library-" + i + ".jar");
+            try (ZipOutputStream out = new ZipOutputStream(new FileOutputStream(jar))) {
+                if (i == 0) {
+                    out.putNextEntry(new ZipEntry("META-INF/build-server-plugin.xml"));
+                    out.write("<beans/>".getBytes(StandardCharsets.UTF_8));
+                    out.closeEntry();
+                }
+                for (int j = 0; j < classes; j++) {
+                    String name = "com/example/library" + i + "/Class" + j + ".class";
+                    out.putNextEntry(new ZipEntry(name));
+                    out.write(name.getBytes(StandardCharsets.UTF_8));
+                    out.closeEntry();
+                    resources.add(name);
+                }
+            }
+            files.add(jar);
+        }
+        File merged = new LibraryMerger(PLUGIN_DEFINITION_PATTERN, Long.MAX_VALUE).merge(files, mergedDir).getMergedJar();
+
+        separateJars = new URL[files.size()];
+        for (int i = 0; i < files.size(); i++) {
+            separateJars[i] = files.get(i).toURI().toURL();
+        }
+        mergedJar = new URL[] { merged.toURI().toURL() };
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        Files.walk(dir.toPath())
+            .sorted((a, b) -> b.compareTo(a))
+            .forEach(path -> path.toFile().delete());
+    }
+
+    @Benchmark
+    public int separateJars() throws IOException {
+        return lookup(separateJars);
+    }
+
+    @Benchmark
+    public int mergedJar() throws IOException {
+        return lookup(mergedJar);
+    }
+
+    private int lookup(URL[] urls) throws IOException {
+        int found = 0;
+        try (URLClassLoader loader = new URLClassLoader(urls, null)) {
+            for (String resource : resources) {
+                if (loader.findResource(resource) != null) {
+                    found++;
+                }
+            }
+        }
+        return found;
+    }
+}
@@ -0,0 +1,185 @@
+/*
+ * Copyright 2022 Rod MacKenzie
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.rodm.teamcity;
+
+import com.github.rodm.teamcity.internal.FileCollectorAction;
+import com.github.rodm.teamcity.internal.PluginBean;
+import com.github.rodm.teamcity.internal.PluginDefinition;
+import com.github.rodm.teamcity.internal.PluginDefinitionCache;
+import com.github.rodm.teamcity.internal.PluginDescriptorContentsValidationAction;
+import com.github.rodm.teamcity.internal.PluginDescriptorValidation;
+import com.github.rodm.teamcity.internal.PluginExecutableFilesValidationAction;
+import com.github.rodm.teamcity.internal.PluginValidationLog;
+import org.gradle.api.Project;
+import org.gradle.testfixtures.ProjectBuilder;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the validation of the plugin descriptors and plugin definition files. The descriptors are
+ * validated against their schemas by a new {@link PluginDescriptorValidation} each time, the contents action
+ * checks the server descriptor and the executable files action checks the agent descriptor. The beans of a
+ * definition file are read by parsing the file and from a {@link PluginDefinitionCache}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class PluginValidationBenchmark {
+
+    private static final String SERVER_SCHEMA = "2020.1/teamcity-server-plugin-descriptor.xsd";
+    private static final String AGENT_SCHEMA = "teamcity-agent-plugin-descriptor.xsd";
+
+    @Param({"200"})
+    public int entries;
+
+    private File dir;
+    private File serverDescriptorFile;
+    private File agentDescriptorFile;
+    private PluginDescriptorValidation.Result serverDescriptor;
+    private PluginDescriptorValidation.Result agentDescriptor;
+    private PluginDescriptorContentsValidationAction contentsAction;
+    private PluginExecutableFilesValidationAction executableFilesAction;
+    private PluginDefinition definition;
+    private PluginDefinition cachedDefinition;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        dir = Files.createTempDirectory("validation").toFile();
+        Project project = ProjectBuilder.builder().withProjectDir(dir).build();
+
+        ServerPluginDescriptor server = project.getObjects().newInstance(ServerPluginDescriptor.class);
+        server.setName("benchmark-plugin");
+        server.setDisplayName("Benchmark Plugin");
+        server.setVersion("1.0");
+        server.setDescription("A plugin with many parameters and dependencies");
+        server.setVendorName("vendor");
+        server.setVendorUrl("https://example.com");
+        server.parameters(parameters -> {
+            for (int i = 0; i < entries; i++) {
+                parameters.parameter("parameter" + i, "value" + i);
+            }
+        });
+        server.dependencies(dependencies -> {
+            for (int i = 0; i < entries; i++) {
+                dependencies.plugin("plugin" + i);
+            }
+        });
+        serverDescriptorFile = new File(dir, "teamcity-plugin.xml");
+        try (Writer writer = Files.newBufferedWriter(serverDescriptorFile.toPath(), StandardCharsets.UTF_8)) {
+            new ServerPluginDescriptorGenerator(server, TeamCityVersion.VERSION_2020_1).writeTo(writer);
+        }
+
+        FileCollectorAction files = new FileCollectorAction();
+        AgentPluginDescriptor agent = project.getObjects().newInstance(AgentPluginDescriptor.class);
+        agent.pluginDeployment(deployment -> deployment.executableFiles(executableFiles -> {
+            for (int i = 0; i < entries; i++) {
+                executableFiles.include("bin/script" + i + ".sh");
+                files.add("bin/script" + i + ".sh");
+            }
+        }));
+        agentDescriptorFile = new File(dir, "teamcity-agent-plugin.xml");
+        try (Writer writer = Files.newBufferedWriter(agentDescriptorFile.toPath(), StandardCharsets.UTF_8)) {
+            new AgentPluginDescriptorGenerator(agent).writeTo(writer);
+        }
+
+        PluginValidationLog log = new PluginValidationLog("benchmark", null);
+        serverDescriptor = new PluginDescriptorValidation().validate(serverDescriptorFile, log);
+        agentDescriptor = new PluginDescriptorValidation().validate(agentDescriptorFile, log);
+        contentsAction = new PluginDescriptorContentsValidationAction();
+        executableFilesAction = new PluginExecutableFilesValidationAction(files);
+
+        File definitionFile = new File(dir, "build-server-plugin-benchmark.xml");
+        try (Writer writer = Files.newBufferedWriter(definitionFile.toPath(), StandardCharsets.UTF_8)) {
+            writer.write("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n");
+            writer.write("<!DOCTYPE beans PUBLIC \"-//SPRING//DTD BEAN//EN\" \"http://www.springframework.org/dtd/spring-beans.dtd\">\n");
+            writer.write("<beans default-autowire=\"constructor\">\n");
+            for (int i = 0; i < entries; i++) {
+                writer.write("  <bean id=\"bean" + i + "\" class=\"example.Bean" + i + "\"/>\n");
+            }
+            writer.write("</beans>\n");
+        }
+        definition = new PluginDefinition(definitionFile);
+        cachedDefinition = new PluginDefinition(definitionFile, new PluginDefinitionCache(new File(dir, "cache")));
+        cachedDefinition.getBeans();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        Files.walk(dir.toPath())
+            .sorted((a, b) -> b.compareTo(a))
+            .forEach(path -> path.toFile().delete());
+    }
+
+    @Benchmark
+    public List<String> serverDescriptorSchema() {
+        PluginValidationLog log = new PluginValidationLog("benchmark", null);
+        new PluginDescriptorValidation(SERVER_SCHEMA, null).validate(serverDescriptorFile, log);
+        return log.getMessages();
+    }
+
+    @Benchmark
+    public List<String> agentDescriptorSchema() {
+        PluginValidationLog log = new PluginValidationLog("benchmark", null);
+        new PluginDescriptorValidation(AGENT_SCHEMA, null).validate(agentDescriptorFile, log);
+        return log.getMessages();
+    }
+
+    @Benchmark
+    public List<String> descriptorContents() {
+        PluginValidationLog log = new PluginValidationLog("benchmark", null);
+        contentsAction.validate(serverDescriptor, log);
+        return log.getMessages();
+    }
+
+    @Benchmark
+    public List<String> executableFiles() {
+        PluginValidationLog log = new PluginValidationLog("benchmark", null);
+        executableFilesAction.validate(agentDescriptor, log);
+        return log.getMessages();
+    }
+
+    @Benchmark
+    public List<PluginBean> definitionBeans() throws IOException {
+        return definition.getBeans();
+    }
+
+    @Benchmark
+    public List<PluginBean> cachedDefinitionBeans() throws IOException {
+        return cachedDefinition.getBeans();
+    }
+}
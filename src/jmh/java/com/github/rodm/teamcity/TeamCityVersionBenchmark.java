@@ -0,0 +1,73 @@
+/*
+ * Copyright 2022 Rod MacKenzie
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.rodm.teamcity;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+import static com.github.rodm.teamcity.TeamCityVersion.VERSION_2018_2;
+import static com.github.rodm.teamcity.TeamCityVersion.VERSION_2020_1;
+
+/**
+ * Measures parsing TeamCity version strings and comparing versions. Comparing two versions splits both
+ * version strings with a regular expression and parses each part, the plugin compares the configured
+ * version against the versions that enable newer descriptor and environment features.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class TeamCityVersionBenchmark {
+
+    @Param({"2021.2.3", "2022.04-SNAPSHOT"})
+    public String version;
+
+    private TeamCityVersion teamcityVersion;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        teamcityVersion = TeamCityVersion.version(version, true);
+    }
+
+    @Benchmark
+    public TeamCityVersion parse() {
+        return TeamCityVersion.version(version, true);
+    }
+
+    @Benchmark
+    public int compareTo() {
+        return teamcityVersion.compareTo(VERSION_2020_1);
+    }
+
+    @Benchmark
+    public boolean equalOrGreaterThan() {
+        return teamcityVersion.equalOrGreaterThan(VERSION_2018_2) && teamcityVersion.equalOrGreaterThan(VERSION_2020_1);
+    }
+}
@@ -15,9 +15,9 @@
  */
 package com.github.rodm.teamcity;
 
-import groovy.util.Node;
-import groovy.xml.XmlUtil;
+import com.github.rodm.teamcity.internal.DescriptorXmlWriter;
 
+import java.io.IOException;
 import java.io.Writer;
 import java.util.Collections;
 import java.util.LinkedHashMap;
@@ -31,56 +31,66 @@ public class AgentPluginDescriptorGenerator {
         this.descriptor = descriptor;
     }
 
-    public void writeTo(Writer writer) {
+    public void writeTo(Writer writer) throws IOException {
         Map<String, String> attributes = new LinkedHashMap<>(2);
         attributes.put("xmlns:xsi", "http://www.w3.org/2001/XMLSchema-instance");
         attributes.put("xsi:noNamespaceSchemaLocation", "urn:schemas-jetbrains-com:teamcity-agent-plugin-v1-xml");
-        Node root = new Node(null, "teamcity-agent-plugin", attributes);
-        buildDeploymentNode(root, descriptor.getDeployment());
-        buildDependenciesNode(root, descriptor.getDependencies());
-        XmlUtil.serialize(root, writer);
+        DescriptorXmlWriter xml = new DescriptorXmlWriter(writer);
+        xml.startElement("teamcity-agent-plugin", attributes);
+        writeDeployment(xml, descriptor.getDeployment());
+        writeDependencies(xml, descriptor.getDependencies());
+        xml.endElement();
+        xml.finish();
     }
 
-    private void buildDeploymentNode(Node root, Deployment deployment) {
+    private void writeDeployment(DescriptorXmlWriter xml, Deployment deployment) throws IOException {
         if (deployment != null) {
             if (deployment instanceof PluginDeployment) {
-                buildPluginDeploymentNode(root, (PluginDeployment) deployment);
+                writePluginDeployment(xml, (PluginDeployment) deployment);
             } else {
-                buildToolDeploymentNode(root, deployment);
+                writeToolDeployment(xml, deployment);
             }
         }
     }
 
-    private void buildPluginDeploymentNode(Node root, PluginDeployment deployment) {
+    private void writePluginDeployment(DescriptorXmlWriter xml, PluginDeployment deployment) throws IOException {
         Map<String, Object> attributes = new LinkedHashMap<>();
         if (deployment.getUseSeparateClassloader() != null) {
             attributes.put("use-separate-classloader", deployment.getUseSeparateClassloader());
         }
-        Node deploymentNode = root.appendNode("plugin-deployment", attributes);
-        buildLayoutNode(deploymentNode, deployment.getExecutableFiles());
+        xml.startElement("plugin-deployment", attributes);
+        writeLayout(xml, deployment.getExecutableFiles());
+        xml.endElement();
     }
 
-    private void buildToolDeploymentNode(Node root, Deployment deployment) {
-        Node toolNode = root.appendNode("tool-deployment");
-        buildLayoutNode(toolNode, deployment.getExecutableFiles());
+    private void writeToolDeployment(DescriptorXmlWriter xml, Deployment deployment) throws IOException {
+        xml.startElement("tool-deployment");
+        writeLayout(xml, deployment.getExecutableFiles());
+        xml.endElement();
     }
 
-    private void buildLayoutNode(Node deploymentNode, ExecutableFiles executableFiles) {
+    private void writeLayout(DescriptorXmlWriter xml, ExecutableFiles executableFiles) throws IOException {
         if (executableFiles.hasFiles()) {
-            Node layoutNode = deploymentNode.appendNode("layout");
-            final Node executableFilesNode = layoutNode.appendNode("executable-files");
-            executableFiles.getIncludes().forEach(name ->
-                executableFilesNode.appendNode("include", Collections.singletonMap("name", name)));
+            xml.startElement("layout");
+            xml.startElement("executable-files");
+            for (String name : executableFiles.getIncludes()) {
+                xml.emptyElement("include", Collections.singletonMap("name", name));
+            }
+            xml.endElement();
+            xml.endElement();
         }
     }
 
-    private void buildDependenciesNode(Node root, Dependencies dependencies) {
+    private void writeDependencies(DescriptorXmlWriter xml, Dependencies dependencies) throws IOException {
         if (dependencies.hasDependencies()) {
-            Node dependenciesNode = root.appendNode("dependencies");
-            dependencies.getPlugins().forEach(name ->
-                dependenciesNode.appendNode("plugin", Collections.singletonMap("name", name)));
-            dependencies.getTools().forEach(name ->
-                dependenciesNode.appendNode("tool", Collections.singletonMap("name", name)));
+            xml.startElement("dependencies");
+            for (String name : dependencies.getPlugins()) {
+                xml.emptyElement("plugin", Collections.singletonMap("name", name));
+            }
+            for (String name : dependencies.getTools()) {
+                xml.emptyElement("tool", Collections.singletonMap("name", name));
+            }
+            xml.endElement();
         }
     }
 }
@@ -47,6 +47,7 @@ public abstract class BaseTeamCityEnvironment implements TeamCityEnvironment {
     private String version = "9.0";
     private final Property<String> dataDir;
     private final ConfigurableFileCollection plugins;
+    private final Property<Boolean> exploded;
     private final ListProperty<String> serverOptions;
     private final ListProperty<String> agentOptions;
 
@@ -56,6 +57,7 @@ public abstract class BaseTeamCityEnvironment implements TeamCityEnvironment {
         this.environments = environments;
         this.dataDir = factory.property(String.class).convention(defaultDataDir());
         this.plugins = factory.fileCollection();
+        this.exploded = factory.property(Boolean.class).convention(false);
         this.serverOptions = factory.listProperty(String.class);
         this.serverOptions.addAll(DEFAULT_SERVER_OPTIONS);
         this.agentOptions = factory.listProperty(String.class);
@@ -111,6 +113,22 @@ public abstract class BaseTeamCityEnvironment implements TeamCityEnvironment {
         this.plugins.from(plugin);
     }
 
+    /**
+     * Whether the plugin built by the project is deployed unpacked into the plugins directory
+     * instead of as an archive. Defaults to false.
+     */
+    public boolean isExploded() {
+        return getExplodedProperty().get();
+    }
+
+    public void setExploded(boolean exploded) {
+        this.exploded.set(exploded);
+    }
+
+    public Provider<Boolean> getExplodedProperty() {
+        return gradleProperty(propertyName("exploded")).map(Boolean::valueOf).orElse(exploded);
+    }
+
     /**
      * The Java command line options to be used when starting the TeamCity Server.
      * Defaults to
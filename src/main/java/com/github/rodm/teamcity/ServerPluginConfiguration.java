@@ -122,6 +122,24 @@ public class ServerPluginConfiguration extends PluginConfiguration implements Te
         return environments.getBaseDownloadUrl();
     }
 
+    public void setDownloadCache(boolean downloadCache) {
+        LOGGER.warn("downloadCache property in server configuration is deprecated");
+        environments.setDownloadCache(downloadCache);
+    }
+
+    public boolean getDownloadCache() {
+        return environments.getDownloadCache();
+    }
+
+    public void setDownloadConnections(int downloadConnections) {
+        LOGGER.warn("downloadConnections property in server configuration is deprecated");
+        environments.setDownloadConnections(downloadConnections);
+    }
+
+    public int getDownloadConnections() {
+        return environments.getDownloadConnections();
+    }
+
     public void setBaseHomeDir(String baseHomeDir) {
         LOGGER.warn("baseHomeDir property in server configuration is deprecated");
         environments.setBaseHomeDir(baseHomeDir);
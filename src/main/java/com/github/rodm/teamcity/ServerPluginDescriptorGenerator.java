@@ -15,9 +15,9 @@
  */
 package com.github.rodm.teamcity;
 
-import groovy.util.Node;
-import groovy.xml.XmlUtil;
+import com.github.rodm.teamcity.internal.DescriptorXmlWriter;
 
+import java.io.IOException;
 import java.io.Writer;
 import java.util.Collections;
 import java.util.LinkedHashMap;
@@ -37,48 +37,52 @@ public class ServerPluginDescriptorGenerator {
         this.version = version;
     }
 
-    public void writeTo(Writer writer) {
-        LinkedHashMap<String, String> attributes = new LinkedHashMap<>(2);
+    public void writeTo(Writer writer) throws IOException {
+        Map<String, String> attributes = new LinkedHashMap<>(2);
         attributes.put("xmlns:xsi", "http://www.w3.org/2001/XMLSchema-instance");
         attributes.put("xsi:noNamespaceSchemaLocation", "urn:schemas-jetbrains-com:teamcity-plugin-v1-xml");
-        Node root = new Node(null, "teamcity-plugin", attributes);
-        buildInfoNode(root);
-        buildRequirementsNode(root);
-        buildDeploymentNode(root);
-        buildParametersNode(root, descriptor.getParameters());
-        buildDependenciesNode(root, descriptor.getDependencies());
-        XmlUtil.serialize(root, writer);
+        DescriptorXmlWriter xml = new DescriptorXmlWriter(writer);
+        xml.startElement("teamcity-plugin", attributes);
+        writeInfo(xml);
+        writeRequirements(xml);
+        writeDeployment(xml);
+        writeParameters(xml, descriptor.getParameters());
+        writeDependencies(xml, descriptor.getDependencies());
+        xml.endElement();
+        xml.finish();
     }
 
-    private void buildInfoNode(Node root) {
-        Node infoNode = root.appendNode("info");
-        infoNode.appendNode("name", descriptor.getName());
-        infoNode.appendNode("display-name", descriptor.getDisplayName());
-        infoNode.appendNode("version", descriptor.getVersion());
+    private void writeInfo(DescriptorXmlWriter xml) throws IOException {
+        xml.startElement("info");
+        xml.textElement("name", descriptor.getName());
+        xml.textElement("display-name", descriptor.getDisplayName());
+        xml.textElement("version", descriptor.getVersion());
         if (descriptor.getDescription() != null) {
-            infoNode.appendNode("description", descriptor.getDescription());
+            xml.textElement("description", descriptor.getDescription());
         }
         if (descriptor.getDownloadUrl() != null) {
-            infoNode.appendNode("download-url", descriptor.getDownloadUrl());
+            xml.textElement("download-url", descriptor.getDownloadUrl());
         }
         if (descriptor.getEmail() != null) {
-            infoNode.appendNode("email", descriptor.getEmail());
+            xml.textElement("email", descriptor.getEmail());
         }
-        buildVendorNode(infoNode);
+        writeVendor(xml);
+        xml.endElement();
     }
 
-    private void buildVendorNode(Node info) {
-        Node vendorNode = info.appendNode("vendor");
-        vendorNode.appendNode("name", descriptor.getVendorName());
+    private void writeVendor(DescriptorXmlWriter xml) throws IOException {
+        xml.startElement("vendor");
+        xml.textElement("name", descriptor.getVendorName());
         if (descriptor.getVendorUrl() != null) {
-            vendorNode.appendNode("url", descriptor.getVendorUrl());
+            xml.textElement("url", descriptor.getVendorUrl());
         }
         if (descriptor.getVendorLogo() != null) {
-            vendorNode.appendNode("logo", descriptor.getVendorLogo());
+            xml.textElement("logo", descriptor.getVendorLogo());
         }
+        xml.endElement();
     }
 
-    private void buildRequirementsNode(Node root) {
+    private void writeRequirements(DescriptorXmlWriter xml) throws IOException {
         Map<String, String> attributes = new LinkedHashMap<>();
         if (descriptor.getMinimumBuild() != null) {
             attributes.put("min-build", descriptor.getMinimumBuild());
@@ -87,11 +91,11 @@ public class ServerPluginDescriptorGenerator {
             attributes.put("max-build", descriptor.getMaximumBuild());
         }
         if (attributes.size() > 0) {
-            root.appendNode("requirements", attributes);
+            xml.emptyElement("requirements", attributes);
         }
     }
 
-    private void buildDeploymentNode(Node root) {
+    private void writeDeployment(DescriptorXmlWriter xml) throws IOException {
         Map<String, Boolean> attributes = new LinkedHashMap<>();
         if (descriptor.getUseSeparateClassloader() != null) {
             attributes.put("use-separate-classloader", descriptor.getUseSeparateClassloader());
@@ -103,25 +107,30 @@ public class ServerPluginDescriptorGenerator {
             attributes.put("node-responsibilities-aware", descriptor.getNodeResponsibilitiesAware());
         }
         if (attributes.size() > 0) {
-            root.appendNode("deployment", attributes);
+            xml.emptyElement("deployment", attributes);
         }
     }
 
-    private void buildParametersNode(Node root, Parameters parameters) {
+    private void writeParameters(DescriptorXmlWriter xml, Parameters parameters) throws IOException {
         if (parameters.hasParameters()) {
-            final Node parametersNode = root.appendNode("parameters");
-            parameters.getParameters().forEach((name, value) ->
-                parametersNode.appendNode("parameter", Collections.singletonMap("name", name),value));
+            xml.startElement("parameters");
+            for (Map.Entry<String, String> parameter : parameters.getParameters().entrySet()) {
+                xml.textElement("parameter", Collections.singletonMap("name", parameter.getKey()), parameter.getValue());
+            }
+            xml.endElement();
         }
     }
 
-    private void buildDependenciesNode(Node root, Dependencies dependencies) {
+    private void writeDependencies(DescriptorXmlWriter xml, Dependencies dependencies) throws IOException {
         if (version.equalOrGreaterThan(VERSION_9_0) && dependencies.hasDependencies()) {
-            final Node dependenciesNode = root.appendNode("dependencies");
-            dependencies.getPlugins().forEach(name ->
-                dependenciesNode.appendNode("plugin", Collections.singletonMap("name", name)));
-            descriptor.getDependencies().getTools().forEach(name ->
-                dependenciesNode.appendNode("tool", Collections.singletonMap("name", name)));
+            xml.startElement("dependencies");
+            for (String name : dependencies.getPlugins()) {
+                xml.emptyElement("plugin", Collections.singletonMap("name", name));
+            }
+            for (String name : descriptor.getDependencies().getTools()) {
+                xml.emptyElement("tool", Collections.singletonMap("name", name));
+            }
+            xml.endElement();
         }
     }
 }
@@ -16,16 +16,14 @@
 package com.github.rodm.teamcity;
 
 import com.github.rodm.teamcity.internal.DefaultTeamCityPluginExtension;
-import com.github.rodm.teamcity.internal.FileCollectorAction;
-import com.github.rodm.teamcity.internal.PluginDescriptorValidationAction;
-import com.github.rodm.teamcity.internal.PluginExecutableFilesValidationAction;
 import com.github.rodm.teamcity.tasks.AgentPlugin;
 import com.github.rodm.teamcity.tasks.GenerateAgentPluginDescriptor;
 import com.github.rodm.teamcity.tasks.ProcessDescriptor;
+import com.github.rodm.teamcity.tasks.ProcessLibraries;
+import com.github.rodm.teamcity.tasks.ValidatePlugin;
 import org.gradle.api.GradleException;
 import org.gradle.api.Plugin;
 import org.gradle.api.Project;
-import org.gradle.api.file.FileCopyDetails;
 import org.gradle.api.file.RegularFile;
 import org.gradle.api.plugins.PluginManager;
 import org.gradle.api.provider.Provider;
@@ -33,9 +31,6 @@ import org.gradle.api.tasks.TaskContainer;
 import org.gradle.api.tasks.TaskProvider;
 import org.gradle.api.tasks.bundling.Zip;
 
-import java.util.LinkedHashSet;
-import java.util.Set;
-
 import static com.github.rodm.teamcity.TeamCityPlugin.AGENT_CONFIGURATION_NAME;
 import static com.github.rodm.teamcity.TeamCityPlugin.JAVA_PLUGIN_ID;
 import static com.github.rodm.teamcity.TeamCityPlugin.PLUGIN_CONFIGURATION_NAME;
@@ -44,8 +39,10 @@ import static com.github.rodm.teamcity.TeamCityPlugin.PLUGIN_DESCRIPTOR_FILENAME
 import static com.github.rodm.teamcity.TeamCityPlugin.PROVIDED_CONFIGURATION_NAME;
 import static com.github.rodm.teamcity.TeamCityPlugin.SERVER_PLUGIN_ID;
 import static com.github.rodm.teamcity.TeamCityPlugin.TEAMCITY_GROUP;
-import static com.github.rodm.teamcity.TeamCityPlugin.configureJarTask;
+import static com.github.rodm.teamcity.TeamCityPlugin.configureBeanDefinitionTask;
+import static com.github.rodm.teamcity.TeamCityPlugin.configureLibrariesTask;
 import static com.github.rodm.teamcity.TeamCityPlugin.configurePluginArchiveTask;
+import static com.github.rodm.teamcity.TeamCityPlugin.configureValidationTask;
 import static org.gradle.api.plugins.JavaPlugin.JAR_TASK_NAME;
 import static org.gradle.api.plugins.JavaPlugin.RUNTIME_CLASSPATH_CONFIGURATION_NAME;
 import static org.gradle.api.plugins.JavaPlugin.TEST_IMPLEMENTATION_CONFIGURATION_NAME;
@@ -54,12 +51,16 @@ import static org.gradle.language.base.plugins.LifecycleBasePlugin.ASSEMBLE_TASK
 public class TeamCityAgentPlugin implements Plugin<Project> {
 
     public static final String PLUGIN_DEFINITION_PATTERN = "META-INF/build-agent-plugin*.xml";
+    public static final String GENERATED_PLUGIN_DEFINITION = "build-agent-plugin-generated.xml";
 
     public static final String AGENT_PLUGIN_DESCRIPTOR_DIR = PLUGIN_DESCRIPTOR_DIR + "/agent";
 
     public static final String PROCESS_AGENT_DESCRIPTOR_TASK_NAME = "processAgentDescriptor";
     public static final String GENERATE_AGENT_DESCRIPTOR_TASK_NAME = "generateAgentDescriptor";
+    public static final String GENERATE_AGENT_BEAN_DEFINITION_TASK_NAME = "generateAgentBeanDefinition";
+    public static final String PROCESS_AGENT_LIBRARIES_TASK_NAME = "processAgentLibraries";
     public static final String AGENT_PLUGIN_TASK_NAME = "agentPlugin";
+    public static final String VALIDATE_AGENT_PLUGIN_TASK_NAME = "validateAgentPlugin";
 
     public void apply(final Project project) {
         PluginManager plugins = project.getPluginManager();
@@ -73,7 +74,7 @@ public class TeamCityAgentPlugin implements Plugin<Project> {
 
         TeamCityPluginExtension extension = project.getExtensions().getByType(TeamCityPluginExtension.class);
         configureDependencies(project, (DefaultTeamCityPluginExtension) extension);
-        configureJarTask(project, extension, PLUGIN_DEFINITION_PATTERN);
+        configureBeanDefinitionTask(project, GENERATE_AGENT_BEAN_DEFINITION_TASK_NAME, GENERATED_PLUGIN_DEFINITION);
         configureTasks(project, extension);
     }
 
@@ -117,12 +118,21 @@ public class TeamCityAgentPlugin implements Plugin<Project> {
             task.dependsOn(processDescriptor, generateDescriptor);
         });
 
-        project.getTasks().withType(AgentPlugin.class).configureEach(task -> {
-            task.doLast(new PluginDescriptorValidationAction("teamcity-agent-plugin-descriptor.xsd"));
-            Set<FileCopyDetails> files = new LinkedHashSet<>();
-            task.filesMatching("**/*", new FileCollectorAction(files));
-            task.doLast(new PluginExecutableFilesValidationAction(files));
+        final TaskProvider<ProcessLibraries> processLibraries =
+            configureLibrariesTask(project, PROCESS_AGENT_LIBRARIES_TASK_NAME, "agent", packagePlugin, AgentPlugin::getLib);
+        processLibraries.configure(task -> {
+            task.getShrinkLibraries().set(packagePlugin.flatMap(AgentPlugin::getShrinkLibraries));
+            task.getShrinkKeep().set(packagePlugin.flatMap(AgentPlugin::getShrinkKeep));
+        });
+
+        final TaskProvider<ValidatePlugin> validatePlugin = configureValidationTask(project, extension,
+            VALIDATE_AGENT_PLUGIN_TASK_NAME, PLUGIN_DEFINITION_PATTERN, GENERATE_AGENT_BEAN_DEFINITION_TASK_NAME);
+        validatePlugin.configure(task -> {
+            task.getDescriptor().set(descriptorFile);
+            task.getDescriptorSchema().set("teamcity-agent-plugin-descriptor.xsd");
+            task.getPluginArchive().set(packagePlugin.flatMap(AgentPlugin::getArchiveFile));
         });
+        packagePlugin.configure(task -> task.finalizedBy(validatePlugin));
 
         project.getPluginManager().withPlugin(SERVER_PLUGIN_ID, serverPlugin ->
             packagePlugin.configure(agentPlugin ->
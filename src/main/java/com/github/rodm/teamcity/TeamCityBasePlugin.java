@@ -16,6 +16,7 @@
 package com.github.rodm.teamcity;
 
 import com.github.rodm.teamcity.internal.DefaultTeamCityPluginExtension;
+import com.github.rodm.teamcity.internal.TeamCitySettingsService;
 import org.gradle.api.GradleException;
 import org.gradle.api.Plugin;
 import org.gradle.api.Project;
@@ -49,7 +50,10 @@ public class TeamCityBasePlugin implements Plugin<Project> {
     }
 
     private static void applyInheritedProperties(Project project, final DefaultTeamCityPluginExtension extension) {
-        if (isNotRootProject(project)) {
+        TeamCitySettingsService.Parameters settings = TeamCitySettingsService.findParameters(project.getGradle());
+        if (settings != null) {
+            applySettings(extension, settings);
+        } else if (isNotRootProject(project)) {
             DefaultTeamCityPluginExtension rootExtension = (DefaultTeamCityPluginExtension) getRootExtension(project);
             if (rootExtension != null) {
                 extension.getVersionProperty().set(rootExtension.getVersionProperty());
@@ -60,6 +64,23 @@ public class TeamCityBasePlugin implements Plugin<Project> {
         }
     }
 
+    /**
+     * Uses the values configured by the settings plugin as the conventions of the extension. The settings are
+     * evaluated before any project, so only the values the settings configure replace the default conventions.
+     */
+    private static void applySettings(DefaultTeamCityPluginExtension extension, TeamCitySettingsService.Parameters settings) {
+        if (settings.getVersion().isPresent()) {
+            extension.getVersionProperty().convention(settings.getVersion());
+        }
+        if (settings.getAllowSnapshotVersions().isPresent()) {
+            extension.getAllowSnapshotVersionsProperty().convention(settings.getAllowSnapshotVersions());
+        }
+        if (settings.getValidateBeanDefinition().isPresent()) {
+            extension.getValidateBeanDefinitionProperty().convention(settings.getValidateBeanDefinition());
+        }
+        extension.getDefaultRepositoriesProperty().convention(settings.getDefaultRepositories());
+    }
+
     private static TeamCityPluginExtension getRootExtension(Project project) {
         return project.getRootProject().getExtensions().findByType(TeamCityPluginExtension.class);
     }
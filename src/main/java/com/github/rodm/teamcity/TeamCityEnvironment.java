@@ -44,6 +44,15 @@ public interface TeamCityEnvironment extends Named {
     void setPlugins(Object plugins);
     void plugins(Object plugin);
 
+    /**
+     * Whether the plugin built by the project is deployed unpacked into the plugins directory
+     * instead of as an archive. Defaults to false.
+     *
+     * @return true if the plugin is deployed unpacked
+     */
+    boolean isExploded();
+    void setExploded(boolean exploded);
+
     /**
      * The Java command line options to be used when starting the TeamCity Server.
      * Defaults to
@@ -41,6 +41,24 @@ public interface TeamCityEnvironments {
     String getBaseDownloadUrl();
     void setBaseDownloadUrl(String baseDownloadUrl);
 
+    /**
+     * Whether TeamCity distributions are downloaded to a cache in the Gradle user home shared by all builds.
+     * Defaults to false.
+     *
+     * @return true if the download cache is used
+     */
+    boolean getDownloadCache();
+    void setDownloadCache(boolean downloadCache);
+
+    /**
+     * The number of connections used to download ranges of a TeamCity distribution in parallel when using the
+     * download cache. Defaults to 1.
+     *
+     * @return the number of connections
+     */
+    int getDownloadConnections();
+    void setDownloadConnections(int downloadConnections);
+
     /**
      * The base home directory used to install TeamCity distributions. Defaults to "servers"
      *
@@ -38,14 +38,17 @@ import org.gradle.api.Action;
 import org.gradle.api.NamedDomainObjectContainer;
 import org.gradle.api.Plugin;
 import org.gradle.api.Project;
+import org.gradle.api.file.ConfigurableFileCollection;
 import org.gradle.api.file.FileCollection;
+import org.gradle.api.tasks.TaskCollection;
 import org.gradle.api.tasks.TaskContainer;
 import org.gradle.api.tasks.TaskProvider;
 
 import java.io.File;
-import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
-import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.stream.Collectors;
 
 import static com.github.rodm.teamcity.TeamCityPlugin.TEAMCITY_GROUP;
 import static com.github.rodm.teamcity.TeamCityServerPlugin.SERVER_PLUGIN_TASK_NAME;
@@ -53,6 +56,9 @@ import static com.github.rodm.teamcity.TeamCityVersion.VERSION_2018_2;
 import static org.gradle.language.base.plugins.LifecycleBasePlugin.ASSEMBLE_TASK_NAME;
 
 public class TeamCityEnvironmentsPlugin implements Plugin<Project> {
+
+    private static final String DISTRIBUTIONS_CACHE_DIR = "caches/teamcity/distributions";
+
     @Override
     public void apply(Project project) {
         project.getPluginManager().apply(TeamCityPlugin.class);
@@ -87,48 +93,80 @@ public class TeamCityEnvironmentsPlugin implements Plugin<Project> {
 
         private void configureDeploymentTasks(Project project, BaseTeamCityEnvironment environment) {
             final TaskContainer tasks = project.getTasks();
+            final boolean exploded = environment.isExploded();
+            final boolean deployServerPlugins = ((ConfigurableFileCollection) environment.getPlugins()).getFrom().isEmpty();
+            final TaskCollection<ServerPlugin> serverPlugins = tasks.withType(ServerPlugin.class);
+            if (deployServerPlugins && !exploded && tasks.getNames().contains(SERVER_PLUGIN_TASK_NAME)) {
+                environment.plugins(tasks.named(SERVER_PLUGIN_TASK_NAME));
+            }
+
             final TaskProvider<Deploy> deployPlugin = tasks.register(environment.deployTaskName(), Deploy.class, task -> {
                 task.setGroup(TEAMCITY_GROUP);
                 task.getPlugins().from(environment.getPlugins());
                 task.getPluginsDir().set(project.file(environment.getPluginsDirProperty()));
-                task.dependsOn(tasks.named(ASSEMBLE_TASK_NAME));
+                task.getExploded().set(exploded);
+                if (!exploded) {
+                    task.dependsOn(tasks.named(ASSEMBLE_TASK_NAME));
+                } else if (deployServerPlugins) {
+                    serverPlugins.forEach(serverPlugin -> {
+                        String pluginName = explodedPluginName(serverPlugin);
+                        task.into(pluginName, spec -> spec.with(serverPlugin));
+                        task.dependsOn(serverPlugin.getTaskDependencies());
+                    });
+                }
             });
 
             final TaskProvider<Undeploy> undeployPlugin = tasks.register(environment.undeployTaskName(), Undeploy.class, task -> {
                 task.setGroup(TEAMCITY_GROUP);
                 task.getPlugins().from(environment.getPlugins());
                 task.getPluginsDir().set(project.file(environment.getPluginsDirProperty()));
+                if (exploded && deployServerPlugins) {
+                    serverPlugins.forEach(serverPlugin ->
+                        task.delete(task.getPluginsDir().dir(explodedPluginName(serverPlugin))));
+                }
             });
 
             if (TeamCityVersion.version(environment.getVersion()).equalOrGreaterThan(VERSION_2018_2)) {
                 final File dataDir = project.file(environment.getDataDirProperty().get());
+                final FileCollection plugins = project.files(environment.getPlugins(), (Callable<List<File>>) () ->
+                    exploded && deployServerPlugins ? explodedPlugins(serverPlugins) : Collections.emptyList());
                 deployPlugin.configure(task -> {
-                    Set<File> plugins = ((FileCollection) environment.getPlugins()).getFiles();
-                    List<String> disabledPlugins = new ArrayList<>();
-                    task.doFirst(new DisablePluginAction(project.getLogger(), dataDir, plugins, disabledPlugins));
-                    task.doLast(new EnablePluginAction(project.getLogger(), dataDir, plugins, disabledPlugins));
-                });
-                undeployPlugin.configure(task -> {
-                    Set<File> plugins = ((FileCollection) environment.getPlugins()).getFiles();
-                    task.doFirst(new DisablePluginAction(project.getLogger(), dataDir, plugins, new ArrayList<>()));
+                    task.doFirst(new DisablePluginAction(dataDir, plugins));
+                    task.doLast(new EnablePluginAction(dataDir, plugins));
                 });
+                undeployPlugin.configure(task ->
+                    task.doFirst(new DisablePluginAction(dataDir, plugins)));
             }
+        }
 
-            tasks.withType(ServerPlugin.class, task -> {
-                if (((FileCollection) environment.getPlugins()).isEmpty()) {
-                    environment.plugins(tasks.named(SERVER_PLUGIN_TASK_NAME));
-                }
-            });
+        private static List<File> explodedPlugins(TaskCollection<ServerPlugin> serverPlugins) {
+            return serverPlugins.stream()
+                .map(serverPlugin -> new File(explodedPluginName(serverPlugin)))
+                .collect(Collectors.toList());
+        }
+
+        private static String explodedPluginName(ServerPlugin serverPlugin) {
+            return explodedPluginName(serverPlugin.getArchiveFileName().get());
+        }
+
+        private static String explodedPluginName(String archiveFileName) {
+            int index = archiveFileName.lastIndexOf('.');
+            return index > 0 ? archiveFileName.substring(0, index) : archiveFileName;
         }
 
         private void configureLocalEnvironmentTasks(Project project, DefaultLocalTeamCityEnvironment environment) {
             final TaskContainer tasks = project.getTasks();
             final String name = capitalize(environment.getName());
             final String downloadTaskName = "download" + name;
+            final DefaultTeamCityEnvironments environments = (DefaultTeamCityEnvironments) extension.getEnvironments();
             tasks.register(downloadTaskName, DownloadTeamCity.class, task -> {
                 task.setGroup(TEAMCITY_GROUP);
                 task.src(environment.getDownloadUrl());
                 task.dest(project.file(environment.getInstallerFile()));
+                task.getUseCache().set(environments.getDownloadCacheProperty());
+                task.getCacheDir().set(new File(project.getGradle().getGradleUserHomeDir(), DISTRIBUTIONS_CACHE_DIR));
+                task.getVersion().set(environment.getVersion());
+                task.getConnections().set(environments.getDownloadConnectionsProperty());
             });
 
             tasks.register("install" + name, InstallTeamCity.class, task -> {
@@ -139,13 +177,14 @@ public class TeamCityEnvironmentsPlugin implements Plugin<Project> {
             });
 
             tasks.register(environment.startServerTaskName(), StartServer.class, task -> {
+                final File dataDir = project.file(environment.getDataDirProperty());
                 task.setGroup(TEAMCITY_GROUP);
                 task.getVersion().set(environment.getVersion());
                 task.getHomeDir().set(environment.getHomeDirProperty());
                 task.getDataDir().set(environment.getDataDirProperty());
                 task.getJavaHome().set(environment.getJavaHomeProperty());
                 task.getServerOptions().set(environment.getServerOptionsProvider());
-                task.doFirst(t -> project.mkdir(environment.getDataDir()));
+                task.doFirst(t -> dataDir.mkdirs());
                 task.dependsOn(tasks.named(environment.deployTaskName()));
             });
 
@@ -176,6 +215,7 @@ public class TeamCityEnvironmentsPlugin implements Plugin<Project> {
         private void configureDockerEnvironmentTasks(Project project, DefaultDockerTeamCityEnvironment environment) {
             final TaskContainer tasks = project.getTasks();
             tasks.register(environment.startServerTaskName(), StartDockerServer.class, task -> {
+                final File dataDir = project.file(environment.getDataDirProperty());
                 task.setGroup(TEAMCITY_GROUP);
                 task.getVersion().set(environment.getVersion());
                 task.getDataDir().set(environment.getDataDirProperty());
@@ -183,7 +223,7 @@ public class TeamCityEnvironmentsPlugin implements Plugin<Project> {
                 task.getImageName().set(environment.getServerImageProperty());
                 task.getContainerName().set(environment.getServerNameProperty());
                 task.getPort().set(environment.getPortProperty());
-                task.doFirst(t -> project.mkdir(environment.getDataDir()));
+                task.doFirst(t -> dataDir.mkdirs());
                 task.dependsOn(tasks.named(environment.deployTaskName()));
             });
 
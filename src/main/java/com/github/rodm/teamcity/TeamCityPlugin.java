@@ -15,22 +15,31 @@
  */
 package com.github.rodm.teamcity;
 
-import com.github.rodm.teamcity.internal.ClassCollectorAction;
-import com.github.rodm.teamcity.internal.PluginDefinition;
-import com.github.rodm.teamcity.internal.PluginDefinitionCollectorAction;
-import com.github.rodm.teamcity.internal.PluginDefinitionValidationAction;
+import com.github.rodm.teamcity.internal.AbstractPluginTask;
+import com.github.rodm.teamcity.internal.ClassIndexService;
+import com.github.rodm.teamcity.internal.PluginSchemaService;
+import com.github.rodm.teamcity.internal.TeamCitySettingsService;
+import com.github.rodm.teamcity.tasks.GenerateBeanDefinition;
+import com.github.rodm.teamcity.tasks.ProcessLibraries;
+import com.github.rodm.teamcity.tasks.ValidatePlugin;
 import org.gradle.api.Plugin;
 import org.gradle.api.Project;
+import org.gradle.api.Transformer;
 import org.gradle.api.artifacts.Configuration;
 import org.gradle.api.artifacts.ConfigurationContainer;
+import org.gradle.api.artifacts.dsl.RepositoryHandler;
+import org.gradle.api.file.FileCollection;
 import org.gradle.api.plugins.JavaPlugin;
+import org.gradle.api.provider.Provider;
+import org.gradle.api.tasks.SourceSet;
+import org.gradle.api.tasks.SourceSetContainer;
+import org.gradle.api.tasks.TaskProvider;
 import org.gradle.api.tasks.bundling.Jar;
 import org.gradle.api.tasks.bundling.Zip;
+import org.gradle.language.base.plugins.LifecycleBasePlugin;
 
-import java.util.ArrayList;
-import java.util.LinkedHashSet;
-import java.util.List;
-import java.util.Set;
+import java.io.File;
+import java.util.concurrent.Callable;
 
 public class TeamCityPlugin implements Plugin<Project> {
 
@@ -49,11 +58,17 @@ public class TeamCityPlugin implements Plugin<Project> {
     public static final String PLUGIN_CONFIGURATION_NAME = "plugin";
     public static final String PROVIDED_CONFIGURATION_NAME = "provided";
 
-    public static final String GRADLE_OFFLINE = "gradle-offline";
-
     private static final String JETBRAINS_MAVEN_REPOSITORY = "https://download.jetbrains.com/teamcity-repository";
 
-    private static final String CLASSES_PATTERN = "**/*.class";
+    private static final String BEAN_DEFINITION_DIR = "bean-definition";
+
+    private static final String CLASS_INDEX_CACHE_DIR = "caches/teamcity-plugin/class-index";
+
+    private static final String DEFINITION_CACHE_DIR = "caches/teamcity-plugin/bean-definitions";
+
+    private static final String VALIDATION_DIR = "plugin-validation";
+
+    private static final String LIBRARIES_DIR = "plugin-libraries";
 
     public void apply(Project project) {
         project.getPluginManager().apply(TeamCityBasePlugin.class);
@@ -66,20 +81,34 @@ public class TeamCityPlugin implements Plugin<Project> {
     private static void configureRepositories(Project project, TeamCityPluginExtension extension) {
         project.afterEvaluate(p ->
             project.getPluginManager().withPlugin(JAVA_PLUGIN_ID, plugin -> {
-                if (extension.getDefaultRepositories()) {
-                    project.getRepositories().mavenCentral(
-                        repository -> repository.content(
-                            descriptor -> {
-                                descriptor.excludeGroup("org.jetbrains.teamcity");
-                                descriptor.excludeGroup("org.jetbrains.teamcity.internal");
-                            })
-                    );
-                    project.getRepositories().maven(repository -> repository.setUrl(JETBRAINS_MAVEN_REPOSITORY));
+                if (extension.getDefaultRepositories() && !usesSettingsRepositories(project)) {
+                    addDefaultRepositories(project.getRepositories());
                 }
             })
         );
     }
 
+    private static boolean usesSettingsRepositories(Project project) {
+        TeamCitySettingsService.Parameters settings = TeamCitySettingsService.findParameters(project.getGradle());
+        if (settings == null) {
+            return false;
+        }
+        // the repositories added by the settings plugin are ignored by a project declaring its own repositories
+        // when project repositories are preferred, the default mode
+        return project.getRepositories().isEmpty() || !settings.getPreferProjectRepositories().getOrElse(true);
+    }
+
+    static void addDefaultRepositories(RepositoryHandler repositories) {
+        repositories.mavenCentral(
+            repository -> repository.content(
+                descriptor -> {
+                    descriptor.excludeGroup("org.jetbrains.teamcity");
+                    descriptor.excludeGroup("org.jetbrains.teamcity.internal");
+                })
+        );
+        repositories.maven(repository -> repository.setUrl(JETBRAINS_MAVEN_REPOSITORY));
+    }
+
     public static void configureConfigurations(final Project project) {
         final ConfigurationContainer configurations = project.getConfigurations();
         configurations.maybeCreate(AGENT_CONFIGURATION_NAME)
@@ -105,17 +134,68 @@ public class TeamCityPlugin implements Plugin<Project> {
         });
     }
 
-    public static void configureJarTask(final Project project, final TeamCityPluginExtension extension, final String pattern) {
-        project.getPluginManager().withPlugin(JAVA_PLUGIN_ID, plugin ->
-            project.getTasks().named(JavaPlugin.JAR_TASK_NAME, Jar.class).configure(task -> {
-            task.getInputs().property(GRADLE_OFFLINE, project.getGradle().getStartParameter().isOffline());
-            ValidationMode mode = extension.getValidateBeanDefinition();
-            List<PluginDefinition> pluginDefinitions = new ArrayList<>();
-            Set<String> classes = new LinkedHashSet<>();
-            task.filesMatching(pattern, new PluginDefinitionCollectorAction(pluginDefinitions));
-            task.filesMatching(CLASSES_PATTERN, new ClassCollectorAction(classes));
-            task.doLast(new PluginDefinitionValidationAction(mode, pluginDefinitions, classes));
+    public static TaskProvider<ValidatePlugin> configureValidationTask(final Project project, final TeamCityPluginExtension extension,
+                                                                       final String taskName, final String pattern, final String beanDefinitionTaskName) {
+        final Provider<PluginSchemaService> schemaService = PluginSchemaService.register(project);
+        final Provider<ClassIndexService> classIndexService = ClassIndexService.register(project);
+        final TaskProvider<ValidatePlugin> validatePlugin = project.getTasks().register(taskName, ValidatePlugin.class, task -> {
+            task.setGroup(TEAMCITY_GROUP);
+            task.getValidationMode().convention(ValidationMode.IGNORE);
+            task.getSchemaService().set(schemaService);
+            task.usesService(schemaService);
+            task.getClassIndexService().set(classIndexService);
+            task.usesService(classIndexService);
+            task.getClassIndexCache().set(new File(project.getGradle().getGradleUserHomeDir(), CLASS_INDEX_CACHE_DIR));
+            task.getDefinitionCache().set(new File(project.getGradle().getGradleUserHomeDir(), DEFINITION_CACHE_DIR));
+            task.getResultsDirectory().convention(project.getLayout().getBuildDirectory().dir(VALIDATION_DIR + "/" + taskName));
+            task.getReport().convention(project.getLayout().getBuildDirectory().file("reports/teamcity/" + taskName + ".json"));
+        });
+        project.getPluginManager().withPlugin(JAVA_PLUGIN_ID, plugin -> validatePlugin.configure(task -> {
+            SourceSet main = project.getExtensions().getByType(SourceSetContainer.class).getByName(SourceSet.MAIN_SOURCE_SET_NAME);
+            String definitionName = pattern.substring(pattern.lastIndexOf('/') + 1);
+            task.getValidationMode().set(project.provider(extension::getValidateBeanDefinition));
+            task.getDefinitions().from(main.getOutput().getAsFileTree().matching(files -> files.include(pattern)));
+            task.getDefinitions().from(project.files(project.getTasks().named(beanDefinitionTaskName)).getAsFileTree()
+                .matching(files -> files.include(definitionName)));
+            task.getClasspath().from(main.getOutput().getClassesDirs());
+            task.getClasspath().from(project.getConfigurations().getByName(JavaPlugin.RUNTIME_CLASSPATH_CONFIGURATION_NAME));
         }));
+        project.getTasks().named(LifecycleBasePlugin.CHECK_TASK_NAME, task -> task.dependsOn(validatePlugin));
+        return validatePlugin;
+    }
+
+    public static void configureBeanDefinitionTask(final Project project, final String taskName, final String definitionName) {
+        project.getPluginManager().withPlugin(JAVA_PLUGIN_ID, plugin -> {
+            SourceSetContainer sourceSets = project.getExtensions().getByType(SourceSetContainer.class);
+            TaskProvider<GenerateBeanDefinition> generateBeanDefinition =
+                project.getTasks().register(taskName, GenerateBeanDefinition.class, task -> {
+                    task.getClasses().from(sourceSets.getByName(SourceSet.MAIN_SOURCE_SET_NAME).getOutput().getClassesDirs());
+                    task.getClasspath().from(project.getConfigurations().getByName(JavaPlugin.COMPILE_CLASSPATH_CONFIGURATION_NAME));
+                    task.getDefinitionName().convention(definitionName);
+                    task.getDestinationDirectory().convention(project.getLayout().getBuildDirectory().dir(BEAN_DEFINITION_DIR + "/" + taskName));
+                });
+            project.getTasks().named(JavaPlugin.JAR_TASK_NAME, Jar.class).configure(task ->
+                task.into("META-INF", copySpec -> copySpec.from(generateBeanDefinition)));
+        });
+    }
+
+    public static <T extends AbstractPluginTask> TaskProvider<ProcessLibraries> configureLibrariesTask(final Project project,
+                                                                                                  final String taskName, final String section,
+                                                                                                  final TaskProvider<T> packagePlugin,
+                                                                                                  final Transformer<FileCollection, T> libraries) {
+        TaskProvider<ProcessLibraries> processLibraries = project.getTasks().register(taskName, ProcessLibraries.class, task -> {
+            task.getSection().set(section);
+            task.getLibraries().from((Callable<FileCollection>) () -> libraries.transform(packagePlugin.get()));
+            task.getCheckDuplicateLibraries().set(packagePlugin.flatMap(AbstractPluginTask::getCheckDuplicateLibraries));
+            task.getExcludeDuplicateLibraries().set(packagePlugin.flatMap(AbstractPluginTask::getExcludeDuplicateLibraries));
+            task.getExcludedLibrariesFile().convention(project.getLayout().getBuildDirectory().file(LIBRARIES_DIR + "/" + taskName + "/excluded-libraries.txt"));
+            task.getDestinationDir().convention(project.getLayout().getBuildDirectory().dir(LIBRARIES_DIR + "/" + taskName + "/libs"));
+        });
+        packagePlugin.configure(task -> {
+            task.getExcludedLibrariesFile().set(processLibraries.flatMap(ProcessLibraries::getExcludedLibrariesFile));
+            task.getProcessedLibraries().from(processLibraries.flatMap(ProcessLibraries::getDestinationDir));
+        });
+        return processLibraries;
     }
 
     public static void configurePluginArchiveTask(Zip task, String archiveName) {
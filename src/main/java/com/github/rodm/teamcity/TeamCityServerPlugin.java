@@ -18,17 +18,22 @@ package com.github.rodm.teamcity;
 import com.github.rodm.teamcity.internal.DefaultPublishConfiguration;
 import com.github.rodm.teamcity.internal.DefaultSignConfiguration;
 import com.github.rodm.teamcity.internal.DefaultTeamCityPluginExtension;
-import com.github.rodm.teamcity.internal.PluginDescriptorContentsValidationAction;
-import com.github.rodm.teamcity.internal.PluginDescriptorValidationAction;
 import com.github.rodm.teamcity.tasks.GenerateServerPluginDescriptor;
 import com.github.rodm.teamcity.tasks.ProcessDescriptor;
+import com.github.rodm.teamcity.tasks.ProcessLibraries;
 import com.github.rodm.teamcity.tasks.PublishPlugin;
 import com.github.rodm.teamcity.tasks.ServerPlugin;
 import com.github.rodm.teamcity.tasks.SignPlugin;
+import com.github.rodm.teamcity.tasks.ValidatePlugin;
 import org.gradle.api.GradleException;
 import org.gradle.api.Plugin;
 import org.gradle.api.Project;
+import org.gradle.api.Task;
+import org.gradle.api.artifacts.Configuration;
 import org.gradle.api.artifacts.ConfigurationContainer;
+import org.gradle.api.artifacts.component.ComponentIdentifier;
+import org.gradle.api.artifacts.component.ModuleComponentIdentifier;
+import org.gradle.api.file.FileCollection;
 import org.gradle.api.file.RegularFile;
 import org.gradle.api.plugins.PluginManager;
 import org.gradle.api.provider.Property;
@@ -38,6 +43,12 @@ import org.gradle.api.tasks.TaskProvider;
 import org.gradle.api.tasks.bundling.Jar;
 import org.gradle.api.tasks.bundling.Zip;
 
+import java.io.File;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+
 import static com.github.rodm.teamcity.TeamCityAgentPlugin.AGENT_PLUGIN_TASK_NAME;
 import static com.github.rodm.teamcity.TeamCityPlugin.AGENT_CONFIGURATION_NAME;
 import static com.github.rodm.teamcity.TeamCityPlugin.AGENT_PLUGIN_ID;
@@ -48,8 +59,10 @@ import static com.github.rodm.teamcity.TeamCityPlugin.PLUGIN_DESCRIPTOR_FILENAME
 import static com.github.rodm.teamcity.TeamCityPlugin.PROVIDED_CONFIGURATION_NAME;
 import static com.github.rodm.teamcity.TeamCityPlugin.SERVER_CONFIGURATION_NAME;
 import static com.github.rodm.teamcity.TeamCityPlugin.TEAMCITY_GROUP;
-import static com.github.rodm.teamcity.TeamCityPlugin.configureJarTask;
+import static com.github.rodm.teamcity.TeamCityPlugin.configureBeanDefinitionTask;
+import static com.github.rodm.teamcity.TeamCityPlugin.configureLibrariesTask;
 import static com.github.rodm.teamcity.TeamCityPlugin.configurePluginArchiveTask;
+import static com.github.rodm.teamcity.TeamCityPlugin.configureValidationTask;
 import static com.github.rodm.teamcity.TeamCityVersion.VERSION_2018_2;
 import static com.github.rodm.teamcity.TeamCityVersion.VERSION_2020_1;
 import static com.github.rodm.teamcity.TeamCityVersion.VERSION_9_0;
@@ -61,12 +74,16 @@ import static org.gradle.language.base.plugins.LifecycleBasePlugin.ASSEMBLE_TASK
 public class TeamCityServerPlugin implements Plugin<Project> {
 
     public static final String PLUGIN_DEFINITION_PATTERN = "META-INF/build-server-plugin*.xml";
+    public static final String GENERATED_PLUGIN_DEFINITION = "build-server-plugin-generated.xml";
 
     public static final String SERVER_PLUGIN_DESCRIPTOR_DIR = PLUGIN_DESCRIPTOR_DIR + "/server";
 
     public static final String PROCESS_SERVER_DESCRIPTOR_TASK_NAME = "processServerDescriptor";
     public static final String GENERATE_SERVER_DESCRIPTOR_TASK_NAME = "generateServerDescriptor";
+    public static final String GENERATE_SERVER_BEAN_DEFINITION_TASK_NAME = "generateServerBeanDefinition";
+    public static final String PROCESS_SERVER_LIBRARIES_TASK_NAME = "processServerLibraries";
     public static final String SERVER_PLUGIN_TASK_NAME = "serverPlugin";
+    public static final String VALIDATE_SERVER_PLUGIN_TASK_NAME = "validateServerPlugin";
     public static final String PUBLISH_PLUGIN_TASK_NAME = "publishPlugin";
     public static final String SIGN_PLUGIN_TASK_NAME = "signPlugin";
 
@@ -87,7 +104,7 @@ public class TeamCityServerPlugin implements Plugin<Project> {
 
         TeamCityPluginExtension extension = project.getExtensions().getByType(TeamCityPluginExtension.class);
         configureDependencies(project, (DefaultTeamCityPluginExtension) extension);
-        configureJarTask(project, extension, PLUGIN_DEFINITION_PATTERN);
+        configureBeanDefinitionTask(project, GENERATE_SERVER_BEAN_DEFINITION_TASK_NAME, GENERATED_PLUGIN_DEFINITION);
         configureServerPluginTasks(project, extension);
         configureSignPluginTask(project, extension);
         configurePublishPluginTask(project, extension);
@@ -150,6 +167,7 @@ public class TeamCityServerPlugin implements Plugin<Project> {
             project.getPluginManager().withPlugin(JAVA_PLUGIN_ID, plugin -> {
                 task.getServer().from(tasks.named(JAR_TASK_NAME));
                 task.getServer().from(project.getConfigurations().getByName(RUNTIME_CLASSPATH_CONFIGURATION_NAME));
+                task.getProvidedLibraries().from(project.getConfigurations().getByName(PROVIDED_CONFIGURATION_NAME));
             });
             if (project.getPluginManager().hasPlugin(AGENT_PLUGIN_ID)) {
                 task.getAgent().from(tasks.named(AGENT_PLUGIN_TASK_NAME));
@@ -160,11 +178,28 @@ public class TeamCityServerPlugin implements Plugin<Project> {
             task.dependsOn(processDescriptor, generateDescriptor);
         });
 
-        tasks.withType(ServerPlugin.class).configureEach(task -> {
-            String schemaPath = getSchemaPath(extension.getVersion(), extension.getAllowSnapshotVersions());
-            task.doLast(new PluginDescriptorValidationAction(schemaPath));
-            task.doLast(new PluginDescriptorContentsValidationAction());
+        final ConfigurationContainer configurations = project.getConfigurations();
+        final TaskProvider<ProcessLibraries> processLibraries =
+            configureLibrariesTask(project, PROCESS_SERVER_LIBRARIES_TASK_NAME, "server", packagePlugin, ServerPlugin::getServer);
+        processLibraries.configure(task -> {
+            task.getExcludeProvidedLibraries().set(packagePlugin.flatMap(ServerPlugin::getExcludeProvidedLibraries));
+            task.getMergeLibraries().set(packagePlugin.flatMap(ServerPlugin::getMergeLibraries));
+            task.getMergeLibrariesMaxSize().set(packagePlugin.flatMap(ServerPlugin::getMergeLibrariesMaxSize));
+            task.getProvidedLibraries().from((Callable<FileCollection>) () -> packagePlugin.get().getProvidedLibraries());
+            task.getModules().set(task.getExcludeProvidedLibraries().map(exclude -> exclude
+                ? moduleCoordinates(configurations, SERVER_CONFIGURATION_NAME, RUNTIME_CLASSPATH_CONFIGURATION_NAME, PROVIDED_CONFIGURATION_NAME)
+                : Collections.emptyMap()));
+        });
+
+        final TaskProvider<ValidatePlugin> validatePlugin = configureValidationTask(project, extension,
+            VALIDATE_SERVER_PLUGIN_TASK_NAME, PLUGIN_DEFINITION_PATTERN, GENERATE_SERVER_BEAN_DEFINITION_TASK_NAME);
+        validatePlugin.configure(task -> {
+            task.getDescriptor().set(descriptorFile);
+            task.getDescriptorSchema().set(project.getProviders().provider(() -> getSchemaPath(extension.getVersion(), extension.getAllowSnapshotVersions())));
+            task.getCheckDescriptorContents().set(true);
+            task.dependsOn(processDescriptor, generateDescriptor);
         });
+        packagePlugin.configure(task -> task.finalizedBy(validatePlugin));
 
         tasks.named(ASSEMBLE_TASK_NAME, task -> task.dependsOn(packagePlugin));
 
@@ -174,6 +209,24 @@ public class TeamCityServerPlugin implements Plugin<Project> {
             configurePluginArchiveTask(task, server.getArchiveName()));
     }
 
+    private static Map<File, String> moduleCoordinates(ConfigurationContainer configurations, String... names) {
+        Map<File, String> modules = new HashMap<>();
+        for (String name : names) {
+            Configuration configuration = configurations.findByName(name);
+            if (configuration == null) {
+                continue;
+            }
+            configuration.getIncoming().getArtifacts().forEach(artifact -> {
+                ComponentIdentifier id = artifact.getId().getComponentIdentifier();
+                if (id instanceof ModuleComponentIdentifier) {
+                    ModuleComponentIdentifier module = (ModuleComponentIdentifier) id;
+                    modules.put(artifact.getFile(), module.getGroup() + ":" + module.getModule() + ":" + module.getVersion());
+                }
+            });
+        }
+        return modules;
+    }
+
     private static String getSchemaPath(String version, boolean allowSnapshots) {
         TeamCityVersion teamcityVersion = TeamCityVersion.version(version, allowSnapshots);
         if (teamcityVersion.equalOrGreaterThan(VERSION_2020_1)) {
@@ -197,7 +250,7 @@ public class TeamCityServerPlugin implements Plugin<Project> {
         project.afterEvaluate(p -> {
             if (extension.getServer().getSign() != null) {
                 DefaultSignConfiguration configuration = (DefaultSignConfiguration) extension.getServer().getSign();
-                Zip packagePlugin = (Zip) p.getTasks().findByName(SERVER_PLUGIN_TASK_NAME);
+                TaskProvider<Zip> packagePlugin = p.getTasks().named(SERVER_PLUGIN_TASK_NAME, Zip.class);
 
                 p.getTasks().register(SIGN_PLUGIN_TASK_NAME, SignPlugin.class, task -> {
                     task.setGroup(TEAMCITY_GROUP);
@@ -205,7 +258,7 @@ public class TeamCityServerPlugin implements Plugin<Project> {
                     task.getCertificateChain().set(configuration.getCertificateChainProperty());
                     task.getPrivateKey().set(configuration.getPrivateKeyProperty());
                     task.getPassword().set(configuration.getPasswordProperty());
-                    task.getPluginFile().set(packagePlugin.getArchiveFile());
+                    task.getPluginFile().set(packagePlugin.flatMap(Zip::getArchiveFile));
                     task.dependsOn(packagePlugin);
                 });
             }
@@ -216,22 +269,28 @@ public class TeamCityServerPlugin implements Plugin<Project> {
         project.afterEvaluate(p -> {
             if (extension.getServer().getPublish() != null) {
                 DefaultPublishConfiguration configuration = (DefaultPublishConfiguration) extension.getServer().getPublish();
-                SignPlugin signTask = (SignPlugin) p.getTasks().findByName(SIGN_PLUGIN_TASK_NAME);
-                Zip packagePlugin = (Zip) p.getTasks().getByName(SERVER_PLUGIN_TASK_NAME);
-                Provider<RegularFile> distributionFile = signTask != null ? signTask.getSignedPluginFile() : packagePlugin.getArchiveFile();
+                final boolean offline = p.getGradle().getStartParameter().isOffline();
+                final TaskProvider<? extends Task> distributionTask;
+                final Provider<RegularFile> distributionFile;
+                if (extension.getServer().getSign() != null) {
+                    TaskProvider<SignPlugin> signPlugin = p.getTasks().named(SIGN_PLUGIN_TASK_NAME, SignPlugin.class);
+                    distributionTask = signPlugin;
+                    distributionFile = signPlugin.flatMap(SignPlugin::getSignedPluginFile);
+                } else {
+                    TaskProvider<Zip> packagePlugin = p.getTasks().named(SERVER_PLUGIN_TASK_NAME, Zip.class);
+                    distributionTask = packagePlugin;
+                    distributionFile = packagePlugin.flatMap(Zip::getArchiveFile);
+                }
 
                 p.getTasks().register(PUBLISH_PLUGIN_TASK_NAME, PublishPlugin.class, task -> {
                     task.setGroup(TEAMCITY_GROUP);
+                    task.setEnabled(!offline);
                     task.setClasspath(p.getConfigurations().getByName(MARKETPLACE_CONFIGURATION_NAME));
                     task.getChannels().set(configuration.getChannels());
                     task.getToken().set(configuration.getTokenProperty());
                     task.getNotes().set(configuration.getNotesProperty());
                     task.getDistributionFile().set(distributionFile);
-                    if (signTask != null) {
-                        task.dependsOn(signTask);
-                    } else {
-                        task.dependsOn(packagePlugin);
-                    }
+                    task.dependsOn(distributionTask);
                 });
             }
         });
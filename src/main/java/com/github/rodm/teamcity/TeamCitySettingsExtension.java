@@ -0,0 +1,114 @@
+/*
+ * Copyright 2022 Rod MacKenzie
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.rodm.teamcity;
+
+import org.gradle.api.model.ObjectFactory;
+import org.gradle.api.provider.Property;
+
+import javax.inject.Inject;
+
+/**
+ * TeamCity Settings plugin extension, the values are used by every project applying one of the TeamCity
+ * plugins unless the project's {@code teamcity} extension sets them.
+ */
+public class TeamCitySettingsExtension {
+
+    private final Property<String> version;
+    private final Property<Boolean> defaultRepositories;
+    private final Property<Boolean> allowSnapshotVersions;
+    private final Property<ValidationMode> validateBeanDefinition;
+
+    @Inject
+    public TeamCitySettingsExtension(ObjectFactory objects) {
+        this.version = objects.property(String.class);
+        this.defaultRepositories = objects.property(Boolean.class).convention(true);
+        this.allowSnapshotVersions = objects.property(Boolean.class);
+        this.validateBeanDefinition = objects.property(ValidationMode.class);
+    }
+
+    /**
+     * The version of the TeamCity API.
+     *
+     * @param version The API version.
+     */
+    public void setVersion(String version) {
+        this.version.set(version);
+    }
+
+    public String getVersion() {
+        return version.getOrNull();
+    }
+
+    public Property<String> getVersionProperty() {
+        return version;
+    }
+
+    /**
+     * Add the repositories for resolving the TeamCity dependencies to the dependency resolution management
+     * of the build, instead of to each project.
+     *
+     * @param useDefaultRepositories Configure default repositories
+     */
+    public void setDefaultRepositories(boolean useDefaultRepositories) {
+        defaultRepositories.set(useDefaultRepositories);
+    }
+
+    public boolean getDefaultRepositories() {
+        return defaultRepositories.get();
+    }
+
+    public Property<Boolean> getDefaultRepositoriesProperty() {
+        return defaultRepositories;
+    }
+
+    /**
+     * Allow version to include snapshot versions.
+     *
+     * @param allowSnapshots Allow snapshot versions
+     */
+    public void setAllowSnapshotVersions(boolean allowSnapshots) {
+        allowSnapshotVersions.set(allowSnapshots);
+    }
+
+    public boolean getAllowSnapshotVersions() {
+        return allowSnapshotVersions.getOrElse(false);
+    }
+
+    public Property<Boolean> getAllowSnapshotVersionsProperty() {
+        return allowSnapshotVersions;
+    }
+
+    /**
+     * Set the validation mode for validating plugin bean definition files
+     *
+     * @param mode The validation mode
+     */
+    public void setValidateBeanDefinition(ValidationMode mode) {
+        validateBeanDefinition.set(mode);
+    }
+
+    public void setValidateBeanDefinition(String mode) {
+        validateBeanDefinition.set(ValidationMode.valueOf(mode.toUpperCase()));
+    }
+
+    public ValidationMode getValidateBeanDefinition() {
+        return validateBeanDefinition.getOrNull();
+    }
+
+    public Property<ValidationMode> getValidateBeanDefinitionProperty() {
+        return validateBeanDefinition;
+    }
+}
@@ -0,0 +1,48 @@
+/*
+ * Copyright 2022 Rod MacKenzie
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.rodm.teamcity;
+
+import com.github.rodm.teamcity.internal.TeamCitySettingsService;
+import org.gradle.api.Plugin;
+import org.gradle.api.initialization.Settings;
+import org.gradle.api.provider.Provider;
+
+/**
+ * Configures the TeamCity version, validation mode and repositories once for all the projects of a build. The
+ * values are shared with the projects through the {@link TeamCitySettingsService}, and the repositories are
+ * added to the dependency resolution management of the build. A project that declares its own repositories
+ * ignores the build repositories when project repositories are preferred, so the repositories are also added
+ * to that project.
+ */
+public class TeamCitySettingsPlugin implements Plugin<Settings> {
+
+    private static final String TEAMCITY_EXTENSION_NAME = "teamcity";
+
+    public void apply(Settings settings) {
+        TeamCitySettingsExtension extension = settings.getExtensions()
+            .create(TEAMCITY_EXTENSION_NAME, TeamCitySettingsExtension.class);
+        Provider<TeamCitySettingsService> service = TeamCitySettingsService.register(settings, extension);
+
+        settings.getGradle().settingsEvaluated(s -> {
+            if (extension.getVersionProperty().isPresent()) {
+                service.get().getTeamCityVersion();
+            }
+            if (extension.getDefaultRepositories()) {
+                TeamCityPlugin.addDefaultRepositories(s.getDependencyResolutionManagement().getRepositories());
+            }
+        });
+    }
+}
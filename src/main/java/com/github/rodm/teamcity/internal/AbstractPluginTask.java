@@ -16,10 +16,20 @@
 package com.github.rodm.teamcity.internal;
 
 import org.gradle.api.Transformer;
+import org.gradle.api.file.ConfigurableFileCollection;
 import org.gradle.api.file.RegularFileProperty;
+import org.gradle.api.internal.file.copy.CopyAction;
+import org.gradle.api.provider.Property;
+import org.gradle.api.tasks.Input;
 import org.gradle.api.tasks.InputFile;
+import org.gradle.api.tasks.Internal;
+import org.gradle.api.tasks.Optional;
+import org.gradle.api.tasks.PathSensitive;
+import org.gradle.api.tasks.PathSensitivity;
 import org.gradle.api.tasks.bundling.Zip;
 
+import java.io.File;
+
 import static com.github.rodm.teamcity.TeamCityPlugin.PLUGIN_DESCRIPTOR_FILENAME;
 
 public abstract class AbstractPluginTask extends Zip {
@@ -31,6 +41,75 @@ public abstract class AbstractPluginTask extends Zip {
         }
     };
 
+    private static final int DIR_MODE = 0755;
+    private static final int FILE_MODE = 0644;
+
+    protected AbstractPluginTask() {
+        setPreserveFileTimestamps(false);
+        setReproducibleFileOrder(true);
+        setDirMode(DIR_MODE);
+        setFileMode(FILE_MODE);
+        getParallelCompression().convention(false);
+        getCheckDuplicateLibraries().convention(false);
+        getExcludeDuplicateLibraries().convention(false);
+        getIncrementalPackaging().convention(false);
+    }
+
     @InputFile
+    @PathSensitive(PathSensitivity.NONE)
     public abstract RegularFileProperty getDescriptor();
+
+    /**
+     * @return whether libraries and classes packaged more than once in the archive's library directory are reported
+     */
+    @Input
+    public abstract Property<Boolean> getCheckDuplicateLibraries();
+
+    /**
+     * @return whether libraries with the same content as another library in the archive are excluded
+     */
+    @Input
+    public abstract Property<Boolean> getExcludeDuplicateLibraries();
+
+    /**
+     * @return the file listing the names of the libraries excluded from the archive, written by the task
+     *         processing the libraries
+     */
+    @InputFile
+    @Optional
+    @PathSensitive(PathSensitivity.NONE)
+    public abstract RegularFileProperty getExcludedLibrariesFile();
+
+    /**
+     * @return the libraries added to the archive in place of the excluded libraries, written by the task
+     *         processing the libraries
+     */
+    @Internal
+    public abstract ConfigurableFileCollection getProcessedLibraries();
+
+    /**
+     * @return whether already compressed entries are stored and the remaining entries are compressed in parallel
+     */
+    @Input
+    public abstract Property<Boolean> getParallelCompression();
+
+    /**
+     * @return whether compressed entries with the same content and mode are copied from the previous archive
+     *         without being compressed again
+     */
+    @Input
+    public abstract Property<Boolean> getIncrementalPackaging();
+
+    @Override
+    protected CopyAction createCopyAction() {
+        File archiveFile = getArchiveFile().get().getAsFile();
+        if (getIncrementalPackaging().get()) {
+            File previousArchiveFile = new File(getTemporaryDir(), archiveFile.getName());
+            return new PluginArchiveCopyAction(archiveFile, isPreserveFileTimestamps(), previousArchiveFile);
+        }
+        if (getParallelCompression().get()) {
+            return new PluginArchiveCopyAction(archiveFile, isPreserveFileTimestamps());
+        }
+        return super.createCopyAction();
+    }
 }
@@ -0,0 +1,204 @@
+/*
+ * Copyright 2022 Rod MacKenzie
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.rodm.teamcity.internal;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/**
+ * Generates a Spring bean definition file for the classes of a plugin that carry one of the marker annotations
+ * or implement one of the extension types. Extension types are matched through the super classes and interfaces
+ * of the plugin classes, super types outside the plugin classes, such as the TeamCity adapter classes, are read
+ * from the classpath the plugin is compiled against.
+ */
+public class BeanDefinitionGenerator {
+
+    private static final String HEADER = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n" +
+        "<beans xmlns=\"http://www.springframework.org/schema/beans\"\n" +
+        "       xmlns:xsi=\"http://www.w3.org/2001/XMLSchema-instance\"\n" +
+        "       xsi:schemaLocation=\"http://www.springframework.org/schema/beans http://www.springframework.org/schema/beans/spring-beans-3.0.xsd\"\n" +
+        "       default-autowire=\"constructor\">\n";
+    private static final String FOOTER = "</beans>\n";
+
+    private final Set<String> annotations = new HashSet<>();
+    private final Set<String> extensionTypes = new HashSet<>();
+    private final Map<String, ClassFileReader.ClassFile> classes = new HashMap<>();
+    private final Map<String, ClassFileReader.ClassFile> classpathClasses = new HashMap<>();
+    private final List<File> classpath = new ArrayList<>();
+    private final ClassFileReader reader = new ClassFileReader();
+
+    /**
+     * @param annotations fully qualified names of the marker annotations
+     * @param extensionTypes fully qualified names of the extension interfaces and classes
+     */
+    public BeanDefinitionGenerator(Collection<String> annotations, Collection<String> extensionTypes) {
+        annotations.forEach(name -> this.annotations.add(name.replace('.', '/')));
+        extensionTypes.forEach(name -> this.extensionTypes.add(name.replace('.', '/')));
+    }
+
+    public void addClass(InputStream in) throws IOException {
+        ClassFileReader.ClassFile classFile = reader.read(in);
+        classes.put(classFile.getName(), classFile);
+    }
+
+    /**
+     * @param files the jars and class directories the super types of the plugin classes are read from
+     */
+    public void addClasspath(Collection<File> files) {
+        classpath.addAll(files);
+        classpathClasses.clear();
+    }
+
+    /**
+     * @return the bean ids mapped to the class names of the beans, ordered by class name
+     */
+    public Map<String, String> getBeans() throws IOException {
+        Set<String> beanClasses = new TreeSet<>();
+        Map<String, Boolean> extensions = new HashMap<>();
+        Map<File, ZipFile> jars = new HashMap<>();
+        try {
+            for (ClassFileReader.ClassFile classFile : classes.values()) {
+                if (isBeanCandidate(classFile) && (hasMarkerAnnotation(classFile) || isExtension(classFile.getName(), extensions, jars))) {
+                    beanClasses.add(classFile.getName().replace('/', '.'));
+                }
+            }
+        }
+        finally {
+            for (ZipFile jar : jars.values()) {
+                jar.close();
+            }
+        }
+
+        Map<String, String> beans = new LinkedHashMap<>();
+        for (String className : beanClasses) {
+            String id = beanId(className);
+            String uniqueId = id;
+            for (int i = 2; beans.containsKey(uniqueId); i++) {
+                uniqueId = id + i;
+            }
+            beans.put(uniqueId, className);
+        }
+        return beans;
+    }
+
+    /**
+     * @param beans the bean ids mapped to the class names of the beans, as returned by {@link #getBeans()}
+     */
+    public static void writeTo(Map<String, String> beans, Writer writer) throws IOException {
+        writer.write(HEADER);
+        for (Map.Entry<String, String> bean : beans.entrySet()) {
+            writer.write("    <bean id=\"" + bean.getKey() + "\" class=\"" + bean.getValue() + "\"/>\n");
+        }
+        writer.write(FOOTER);
+    }
+
+    private static boolean isBeanCandidate(ClassFileReader.ClassFile classFile) {
+        String name = classFile.getName();
+        int separator = name.lastIndexOf('$');
+        boolean anonymous = separator >= 0 && separator + 1 < name.length() && Character.isDigit(name.charAt(separator + 1));
+        return classFile.isConcrete() && (classFile.getAccess() & ClassFileReader.ACC_PUBLIC) != 0 && !anonymous;
+    }
+
+    private boolean hasMarkerAnnotation(ClassFileReader.ClassFile classFile) {
+        for (String annotation : classFile.getAnnotations()) {
+            if (annotations.contains(annotation)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean isExtension(String name, Map<String, Boolean> extensions, Map<File, ZipFile> jars) throws IOException {
+        if (name == null) {
+            return false;
+        }
+        if (extensionTypes.contains(name)) {
+            return true;
+        }
+        Boolean known = extensions.get(name);
+        if (known != null) {
+            return known;
+        }
+        extensions.put(name, false);
+        ClassFileReader.ClassFile classFile = classes.containsKey(name) ? classes.get(name) : findClass(name, jars);
+        boolean extension = false;
+        if (classFile != null) {
+            List<String> superTypes = new ArrayList<>(classFile.getInterfaces());
+            superTypes.add(classFile.getSuperName());
+            for (String superType : superTypes) {
+                if (isExtension(superType, extensions, jars)) {
+                    extension = true;
+                    break;
+                }
+            }
+        }
+        extensions.put(name, extension);
+        return extension;
+    }
+
+    private ClassFileReader.ClassFile findClass(String name, Map<File, ZipFile> jars) throws IOException {
+        if (classpathClasses.containsKey(name)) {
+            return classpathClasses.get(name);
+        }
+        String path = name + ".class";
+        ClassFileReader.ClassFile classFile = null;
+        for (File file : classpath) {
+            if (file.isDirectory()) {
+                File classPath = new File(file, path);
+                if (classPath.isFile()) {
+                    try (InputStream in = Files.newInputStream(classPath.toPath())) {
+                        classFile = reader.read(in);
+                    }
+                    break;
+                }
+            } else if (file.isFile()) {
+                ZipFile jar = jars.get(file);
+                if (jar == null) {
+                    jar = new ZipFile(file);
+                    jars.put(file, jar);
+                }
+                ZipEntry entry = jar.getEntry(path);
+                if (entry != null) {
+                    try (InputStream in = jar.getInputStream(entry)) {
+                        classFile = reader.read(in);
+                    }
+                    break;
+                }
+            }
+        }
+        classpathClasses.put(name, classFile);
+        return classFile;
+    }
+
+    private static String beanId(String className) {
+        String simpleName = className.substring(Math.max(className.lastIndexOf('.'), className.lastIndexOf('$')) + 1);
+        return Character.toLowerCase(simpleName.charAt(0)) + simpleName.substring(1);
+    }
+}
@@ -0,0 +1,300 @@
+/*
+ * Copyright 2022 Rod MacKenzie
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.rodm.teamcity.internal;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Reads the name, super types, class annotations and referenced classes of a class file. Referenced classes
+ * are read from the constant pool and include class entries, type descriptors and signatures, as well as string
+ * constants that look like class names, so that classes loaded by name are also found. The references may
+ * contain names of classes that do not exist. Class names are internal names, for example {@code com/example/Plugin}.
+ */
+public class ClassFileReader {
+
+    public static final int ACC_PUBLIC = 0x0001;
+    public static final int ACC_INTERFACE = 0x0200;
+    public static final int ACC_ABSTRACT = 0x0400;
+    public static final int ACC_SYNTHETIC = 0x1000;
+    public static final int ACC_ANNOTATION = 0x2000;
+    public static final int ACC_ENUM = 0x4000;
+
+    private static final int MAGIC = 0xCAFEBABE;
+
+    private static final int UTF8 = 1;
+    private static final int INTEGER = 3;
+    private static final int FLOAT = 4;
+    private static final int LONG = 5;
+    private static final int DOUBLE = 6;
+    private static final int CLASS = 7;
+    private static final int STRING = 8;
+    private static final int FIELD_REF = 9;
+    private static final int METHOD_REF = 10;
+    private static final int INTERFACE_METHOD_REF = 11;
+    private static final int NAME_AND_TYPE = 12;
+    private static final int METHOD_HANDLE = 15;
+    private static final int METHOD_TYPE = 16;
+    private static final int DYNAMIC = 17;
+    private static final int INVOKE_DYNAMIC = 18;
+    private static final int MODULE = 19;
+    private static final int PACKAGE = 20;
+
+    private static final String RUNTIME_VISIBLE_ANNOTATIONS = "RuntimeVisibleAnnotations";
+    private static final String RUNTIME_INVISIBLE_ANNOTATIONS = "RuntimeInvisibleAnnotations";
+
+    public ClassFile read(InputStream in) throws IOException {
+        DataInputStream data = new DataInputStream(in);
+        if (data.readInt() != MAGIC) {
+            throw new IOException("Not a class file");
+        }
+        data.readUnsignedShort();
+        data.readUnsignedShort();
+        int count = data.readUnsignedShort();
+        String[] strings = new String[count];
+        int[] classes = new int[count];
+        int[] constants = new int[count];
+        int constantCount = 0;
+        for (int i = 1; i < count; i++) {
+            int tag = data.readUnsignedByte();
+            switch (tag) {
+                case UTF8:
+                    strings[i] = data.readUTF();
+                    break;
+                case CLASS:
+                    classes[i] = data.readUnsignedShort();
+                    break;
+                case STRING:
+                    constants[constantCount++] = data.readUnsignedShort();
+                    break;
+                case METHOD_TYPE:
+                case MODULE:
+                case PACKAGE:
+                    data.readUnsignedShort();
+                    break;
+                case METHOD_HANDLE:
+                    data.readUnsignedByte();
+                    data.readUnsignedShort();
+                    break;
+                case INTEGER:
+                case FLOAT:
+                case FIELD_REF:
+                case METHOD_REF:
+                case INTERFACE_METHOD_REF:
+                case NAME_AND_TYPE:
+                case DYNAMIC:
+                case INVOKE_DYNAMIC:
+                    data.readInt();
+                    break;
+                case LONG:
+                case DOUBLE:
+                    data.readLong();
+                    i++;
+                    break;
+                default:
+                    throw new IOException("Unknown constant pool tag " + tag);
+            }
+        }
+
+        ClassFile classFile = new ClassFile();
+        for (int i = 1; i < count; i++) {
+            String name = classes[i] > 0 ? strings[classes[i]] : null;
+            if (name != null) {
+                if (name.startsWith("[")) {
+                    addDescriptorTypes(name, classFile.references);
+                } else {
+                    classFile.references.add(name);
+                }
+            }
+        }
+        for (int i = 0; i < constantCount; i++) {
+            String value = strings[constants[i]];
+            if (value != null && isClassName(value)) {
+                classFile.references.add(value.replace('.', '/'));
+            }
+        }
+        for (String value : strings) {
+            if (value != null && value.indexOf(';') > 0) {
+                addDescriptorTypes(value, classFile.references);
+            }
+        }
+
+        classFile.access = data.readUnsignedShort();
+        classFile.name = strings[classes[data.readUnsignedShort()]];
+        int superClass = data.readUnsignedShort();
+        classFile.superName = superClass > 0 ? strings[classes[superClass]] : null;
+        int interfaces = data.readUnsignedShort();
+        for (int i = 0; i < interfaces; i++) {
+            classFile.interfaces.add(strings[classes[data.readUnsignedShort()]]);
+        }
+        skipMembers(data);
+        skipMembers(data);
+        int attributes = data.readUnsignedShort();
+        for (int i = 0; i < attributes; i++) {
+            String name = strings[data.readUnsignedShort()];
+            int length = data.readInt();
+            if (RUNTIME_VISIBLE_ANNOTATIONS.equals(name) || RUNTIME_INVISIBLE_ANNOTATIONS.equals(name)) {
+                int annotations = data.readUnsignedShort();
+                for (int j = 0; j < annotations; j++) {
+                    String type = strings[data.readUnsignedShort()];
+                    classFile.annotations.add(type.substring(1, type.length() - 1));
+                    skipElementValuePairs(data);
+                }
+            } else {
+                skipFully(data, length);
+            }
+        }
+        return classFile;
+    }
+
+    private static void skipMembers(DataInputStream data) throws IOException {
+        int members = data.readUnsignedShort();
+        for (int i = 0; i < members; i++) {
+            data.readUnsignedShort();
+            data.readUnsignedShort();
+            data.readUnsignedShort();
+            int attributes = data.readUnsignedShort();
+            for (int j = 0; j < attributes; j++) {
+                data.readUnsignedShort();
+                skipFully(data, data.readInt());
+            }
+        }
+    }
+
+    private static void skipElementValuePairs(DataInputStream data) throws IOException {
+        int pairs = data.readUnsignedShort();
+        for (int i = 0; i < pairs; i++) {
+            data.readUnsignedShort();
+            skipElementValue(data);
+        }
+    }
+
+    private static void skipElementValue(DataInputStream data) throws IOException {
+        int tag = data.readUnsignedByte();
+        switch (tag) {
+            case 'e':
+                data.readUnsignedShort();
+                data.readUnsignedShort();
+                break;
+            case '@':
+                data.readUnsignedShort();
+                skipElementValuePairs(data);
+                break;
+            case '[':
+                int values = data.readUnsignedShort();
+                for (int i = 0; i < values; i++) {
+                    skipElementValue(data);
+                }
+                break;
+            default:
+                data.readUnsignedShort();
+        }
+    }
+
+    private static void skipFully(DataInputStream data, int length) throws IOException {
+        int remaining = length;
+        while (remaining > 0) {
+            int skipped = data.skipBytes(remaining);
+            if (skipped <= 0) {
+                throw new IOException("Unexpected end of class file");
+            }
+            remaining -= skipped;
+        }
+    }
+
+    private static void addDescriptorTypes(String value, Set<String> references) {
+        int start = value.indexOf('L');
+        while (start >= 0) {
+            int end = start + 1;
+            while (end < value.length() && isNameChar(value.charAt(end))) {
+                end++;
+            }
+            if (end < value.length() && end > start + 1 && (value.charAt(end) == ';' || value.charAt(end) == '<')) {
+                references.add(value.substring(start + 1, end));
+            }
+            start = value.indexOf('L', end);
+        }
+    }
+
+    private static boolean isNameChar(char c) {
+        return c == '/' || c == '$' || c == '_' || Character.isLetterOrDigit(c);
+    }
+
+    private static boolean isClassName(String value) {
+        if (value.isEmpty() || value.length() > 512 || value.indexOf('.') < 0) {
+            return false;
+        }
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c != '.' && !isNameChar(c)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public static class ClassFile {
+        private final Set<String> references = new HashSet<>();
+        private final List<String> interfaces = new ArrayList<>();
+        private final List<String> annotations = new ArrayList<>();
+        private int access;
+        private String name;
+        private String superName;
+
+        public int getAccess() {
+            return access;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        /**
+         * @return the name of the super class, or null for {@code java/lang/Object}
+         */
+        public String getSuperName() {
+            return superName;
+        }
+
+        public List<String> getInterfaces() {
+            return Collections.unmodifiableList(interfaces);
+        }
+
+        /**
+         * @return the types of the annotations on the class
+         */
+        public List<String> getAnnotations() {
+            return Collections.unmodifiableList(annotations);
+        }
+
+        /**
+         * @return the classes referenced by the class
+         */
+        public Set<String> getReferences() {
+            return Collections.unmodifiableSet(references);
+        }
+
+        public boolean isConcrete() {
+            return (access & (ACC_INTERFACE | ACC_ABSTRACT | ACC_ANNOTATION | ACC_ENUM | ACC_SYNTHETIC)) == 0;
+        }
+    }
+}
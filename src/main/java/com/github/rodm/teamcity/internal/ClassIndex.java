@@ -0,0 +1,147 @@
+/*
+ * Copyright 2022 Rod MacKenzie
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.rodm.teamcity.internal;
+
+/**
+ * Maps class names to the index of the library containing the class, or, using {@link #add}, holds a set of
+ * names. Only a 64-bit hash of each name is kept, in open addressing arrays, so large numbers of classes can
+ * be indexed without retaining the names.
+ */
+public class ClassIndex {
+
+    private static final long FNV_OFFSET_BASIS = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+    private static final long EMPTY = 0L;
+
+    private long[] keys;
+    private int[] values;
+    private int size;
+
+    public ClassIndex() {
+        this(1024);
+    }
+
+    public ClassIndex(int expectedSize) {
+        int capacity = Integer.highestOneBit(Math.max(16, expectedSize * 2) - 1) << 1;
+        keys = new long[capacity];
+        values = new int[capacity];
+    }
+
+    /**
+     * Adds the class to the index if it is not already present.
+     *
+     * @return the library index already associated with the class, or -1 if the class was added
+     */
+    public int putIfAbsent(CharSequence className, int library) {
+        return putHashIfAbsent(hash(className), library);
+    }
+
+    int putHashIfAbsent(long hash, int library) {
+        int mask = keys.length - 1;
+        int slot = mix(hash) & mask;
+        while (keys[slot] != EMPTY) {
+            if (keys[slot] == hash) {
+                return values[slot];
+            }
+            slot = (slot + 1) & mask;
+        }
+        keys[slot] = hash;
+        values[slot] = library;
+        if (++size * 2 > keys.length) {
+            resize();
+        }
+        return -1;
+    }
+
+    /**
+     * Adds the name to the index, associated with library index 0.
+     *
+     * @return true if the name was added, false if it was already present
+     */
+    public boolean add(CharSequence name) {
+        return putIfAbsent(name, 0) < 0;
+    }
+
+    /**
+     * @return the library index associated with the class, or -1 if the class is not in the index
+     */
+    public int get(CharSequence className) {
+        long hash = hash(className);
+        int mask = keys.length - 1;
+        int slot = mix(hash) & mask;
+        while (keys[slot] != EMPTY) {
+            if (keys[slot] == hash) {
+                return values[slot];
+            }
+            slot = (slot + 1) & mask;
+        }
+        return -1;
+    }
+
+    public boolean contains(CharSequence className) {
+        return get(className) >= 0;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return the hashes of the names in the index
+     */
+    long[] hashes() {
+        long[] hashes = new long[size];
+        int count = 0;
+        for (long key : keys) {
+            if (key != EMPTY) {
+                hashes[count++] = key;
+            }
+        }
+        return hashes;
+    }
+
+    private void resize() {
+        long[] oldKeys = keys;
+        int[] oldValues = values;
+        keys = new long[oldKeys.length * 2];
+        values = new int[oldValues.length * 2];
+        int mask = keys.length - 1;
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] != EMPTY) {
+                int slot = mix(oldKeys[i]) & mask;
+                while (keys[slot] != EMPTY) {
+                    slot = (slot + 1) & mask;
+                }
+                keys[slot] = oldKeys[i];
+                values[slot] = oldValues[i];
+            }
+        }
+    }
+
+    static long hash(CharSequence value) {
+        long hash = FNV_OFFSET_BASIS;
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            hash = (hash ^ (c & 0xff)) * FNV_PRIME;
+            hash = (hash ^ (c >>> 8)) * FNV_PRIME;
+        }
+        return hash == EMPTY ? 1L : hash;
+    }
+
+    private static int mix(long hash) {
+        return (int) (hash ^ (hash >>> 32));
+    }
+}
@@ -0,0 +1,66 @@
+/*
+ * Copyright 2022 Rod MacKenzie
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.rodm.teamcity.internal;
+
+import org.gradle.api.GradleException;
+import org.gradle.api.Project;
+import org.gradle.api.provider.Provider;
+import org.gradle.api.services.BuildService;
+import org.gradle.api.services.BuildServiceParameters;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Build service providing the class indexes of the classpaths searched for bean classes. A classpath is indexed
+ * once, by the first worker that needs it, and the index is shared by the workers validating the other plugin
+ * definition files. The jar indexes read from the cache directory are shared by all classpaths. The indexes are
+ * discarded with the service at the end of the build.
+ */
+public abstract class ClassIndexService implements BuildService<BuildServiceParameters.None> {
+
+    public static final String SERVICE_NAME = "teamcityClassIndexes";
+
+    private final Map<File, JarClassIndexCache> caches = new ConcurrentHashMap<>();
+    private final Map<List<File>, ClassIndex> classpaths = new ConcurrentHashMap<>();
+
+    public static Provider<ClassIndexService> register(Project project) {
+        return project.getGradle().getSharedServices()
+            .registerIfAbsent(SERVICE_NAME, ClassIndexService.class, spec -> {});
+    }
+
+    /**
+     * @param classpath the jars and class directories to index
+     * @param cacheDir the directory the jar index files are cached in
+     * @return the index of the classes on the classpath
+     */
+    public ClassIndex getClassIndex(Collection<File> classpath, File cacheDir) {
+        JarClassIndexCache cache = caches.computeIfAbsent(cacheDir, JarClassIndexCache::new);
+        return classpaths.computeIfAbsent(new ArrayList<>(classpath), files -> {
+            try {
+                return cache.index(files);
+            }
+            catch (IOException e) {
+                throw new GradleException("Failure indexing the classes of the runtime classpath", e);
+            }
+        });
+    }
+}
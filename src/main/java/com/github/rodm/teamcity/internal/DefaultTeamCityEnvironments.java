@@ -41,6 +41,8 @@ public class DefaultTeamCityEnvironments implements TeamCityEnvironments {
 
     public static final String DOWNLOADS_DIR_PROPERTY = "teamcity.environments.downloadsDir";
     public static final String BASE_DOWNLOAD_URL_PROPERTY = "teamcity.environments.baseDownloadUrl";
+    public static final String DOWNLOAD_CACHE_PROPERTY = "teamcity.environments.downloadCache";
+    public static final String DOWNLOAD_CONNECTIONS_PROPERTY = "teamcity.environments.downloadConnections";
     public static final String BASE_DATA_DIR_PROPERTY = "teamcity.environments.baseDataDir";
     public static final String BASE_HOME_DIR_PROPERTY = "teamcity.environments.baseHomeDir";
 
@@ -51,6 +53,8 @@ public class DefaultTeamCityEnvironments implements TeamCityEnvironments {
 
     private final Property<String> baseDownloadUrl;
     private final Property<String> downloadsDir;
+    private final Property<Boolean> downloadCache;
+    private final Property<Integer> downloadConnections;
     private final Property<String> baseHomeDir;
     private final Property<String> baseDataDir;
 
@@ -64,6 +68,8 @@ public class DefaultTeamCityEnvironments implements TeamCityEnvironments {
         this.providers = providers;
         this.baseDownloadUrl = objects.property(String.class).convention(DEFAULT_BASE_DOWNLOAD_URL);
         this.downloadsDir = objects.property(String.class).convention(DEFAULT_DOWNLOADS_DIR);
+        this.downloadCache = objects.property(Boolean.class).convention(false);
+        this.downloadConnections = objects.property(Integer.class).convention(1);
         this.baseHomeDir = objects.property(String.class).convention(dir(DEFAULT_BASE_HOME_DIR));
         this.baseDataDir = objects.property(String.class).convention(dir(DEFAULT_BASE_DATA_DIR));
         this.environments = objects.polymorphicDomainObjectContainer(TeamCityEnvironment.class);
@@ -105,6 +111,37 @@ public class DefaultTeamCityEnvironments implements TeamCityEnvironments {
         return gradleProperty(BASE_DOWNLOAD_URL_PROPERTY).orElse(baseDownloadUrl);
     }
 
+    /**
+     * Whether TeamCity distributions are downloaded to a cache in the Gradle user home shared by all builds.
+     * Defaults to true.
+     */
+    public boolean getDownloadCache() {
+        return getDownloadCacheProperty().get();
+    }
+
+    public void setDownloadCache(boolean downloadCache) {
+        this.downloadCache.set(downloadCache);
+    }
+
+    public Provider<Boolean> getDownloadCacheProperty() {
+        return gradleProperty(DOWNLOAD_CACHE_PROPERTY).map(Boolean::valueOf).orElse(downloadCache);
+    }
+
+    /**
+     * The number of connections used to download ranges of a TeamCity distribution in parallel. Defaults to 1.
+     */
+    public int getDownloadConnections() {
+        return getDownloadConnectionsProperty().get();
+    }
+
+    public void setDownloadConnections(int downloadConnections) {
+        this.downloadConnections.set(downloadConnections);
+    }
+
+    public Provider<Integer> getDownloadConnectionsProperty() {
+        return gradleProperty(DOWNLOAD_CONNECTIONS_PROPERTY).map(Integer::valueOf).orElse(downloadConnections);
+    }
+
     /**
      * The base home directory used to install TeamCity distributions. Defaults to "servers"
      */
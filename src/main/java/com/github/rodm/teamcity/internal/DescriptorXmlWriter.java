@@ -0,0 +1,169 @@
+/*
+ * Copyright 2022 Rod MacKenzie
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.rodm.teamcity.internal;
+
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * Writes a plugin descriptor to a {@link XMLStreamWriter}, indenting each element by two spaces. The output is
+ * the same as serializing a Groovy {@code Node} with {@code XmlUtil}: the XML declaration is followed by the root
+ * element on the same line, and elements without content are written as empty elements. The start tag of an
+ * element is held back until its first child is written, so elements can be opened before knowing if they
+ * have any children.
+ */
+public class DescriptorXmlWriter {
+
+    private static final XMLOutputFactory OUTPUT_FACTORY = XMLOutputFactory.newInstance();
+
+    private static final String INDENT = "  ";
+
+    private final Writer out;
+    private final XMLStreamWriter writer;
+
+    private String pendingName;
+    private Map<String, ?> pendingAttributes;
+    private int depth;
+
+    public DescriptorXmlWriter(Writer out) throws IOException {
+        this.out = out;
+        out.write("<?xml version=\"1.0\" encoding=\"UTF-8\"?>");
+        try {
+            this.writer = OUTPUT_FACTORY.createXMLStreamWriter(out);
+        }
+        catch (XMLStreamException e) {
+            throw new IOException("Failure creating descriptor writer", e);
+        }
+    }
+
+    public void startElement(String name) throws IOException {
+        startElement(name, Collections.emptyMap());
+    }
+
+    /**
+     * Starts an element, attributes with null values are not written.
+     */
+    public void startElement(String name, Map<String, ?> attributes) throws IOException {
+        try {
+            writePending();
+            if (depth > 0) {
+                writeIndent();
+            }
+            pendingName = name;
+            pendingAttributes = attributes;
+            depth++;
+        }
+        catch (XMLStreamException e) {
+            throw new IOException("Failure writing descriptor element " + name, e);
+        }
+    }
+
+    public void endElement() throws IOException {
+        try {
+            depth--;
+            if (pendingName != null) {
+                writer.writeEmptyElement(pendingName);
+                writeAttributes(pendingAttributes);
+                pendingName = null;
+            } else {
+                writeIndent();
+                writer.writeEndElement();
+            }
+        }
+        catch (XMLStreamException e) {
+            throw new IOException("Failure writing descriptor", e);
+        }
+    }
+
+    public void emptyElement(String name, Map<String, ?> attributes) throws IOException {
+        startElement(name, attributes);
+        endElement();
+    }
+
+    /**
+     * Writes an element containing the text, or an empty element if the text is empty. A null text is written
+     * as {@code null}, the same as a Groovy {@code Node} without a value.
+     */
+    public void textElement(String name, Map<String, ?> attributes, String text) throws IOException {
+        if (text == null) {
+            text = "null";
+        }
+        if (text.isEmpty()) {
+            emptyElement(name, attributes);
+            return;
+        }
+        try {
+            writePending();
+            writeIndent();
+            writer.writeStartElement(name);
+            writeAttributes(attributes);
+            writer.writeCharacters(text.replace("\r\n", "\n").replace('\r', '\n'));
+            writer.writeEndElement();
+        }
+        catch (XMLStreamException e) {
+            throw new IOException("Failure writing descriptor element " + name, e);
+        }
+    }
+
+    public void textElement(String name, String text) throws IOException {
+        textElement(name, Collections.emptyMap(), text);
+    }
+
+    /**
+     * Ends the document after the root element has been ended, the writer passed to the constructor is not closed.
+     */
+    public void finish() throws IOException {
+        try {
+            writer.writeEndDocument();
+            writer.flush();
+            writer.close();
+        }
+        catch (XMLStreamException e) {
+            throw new IOException("Failure writing descriptor", e);
+        }
+        out.write(System.lineSeparator());
+        out.flush();
+    }
+
+    private void writePending() throws XMLStreamException {
+        if (pendingName != null) {
+            writer.writeStartElement(pendingName);
+            writeAttributes(pendingAttributes);
+            pendingName = null;
+        }
+    }
+
+    private void writeAttributes(Map<String, ?> attributes) throws XMLStreamException {
+        for (Map.Entry<String, ?> attribute : attributes.entrySet()) {
+            if (attribute.getValue() != null) {
+                writer.writeAttribute(attribute.getKey(), attribute.getValue().toString());
+            }
+        }
+    }
+
+    private void writeIndent() throws XMLStreamException {
+        StringBuilder indent = new StringBuilder(System.lineSeparator());
+        for (int i = 0; i < depth; i++) {
+            indent.append(INDENT);
+        }
+        writer.writeCharacters(indent.toString());
+    }
+}
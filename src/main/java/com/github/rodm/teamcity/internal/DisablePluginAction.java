@@ -17,15 +17,15 @@ package com.github.rodm.teamcity.internal;
 
 import org.gradle.api.GradleException;
 import org.gradle.api.Task;
-import org.gradle.api.logging.Logger;
+import org.gradle.api.file.FileCollection;
 
 import java.io.BufferedReader;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStreamReader;
 import java.net.HttpURLConnection;
-import java.util.List;
-import java.util.Set;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 import java.util.stream.Collectors;
 
 public class DisablePluginAction extends PluginAction {
@@ -34,8 +34,20 @@ public class DisablePluginAction extends PluginAction {
     private static final String PLUGIN_PARTIALLY_UNLOADED = "{}: Plugin '{}' partially unloaded - some parts could still be running. Server restart could be needed.";
     private static final String DISABLING_PLUGIN_FAILED = "{}: Disabling plugin '{}' failed: {}";
 
-    public DisablePluginAction(Logger logger, File dataDir, Set<File> plugins, List<String> disabledPlugins) {
-        super(logger, dataDir, plugins, disabledPlugins, false);
+    public DisablePluginAction(File dataDir, FileCollection plugins) {
+        super(dataDir, plugins, false);
+    }
+
+    @Override
+    public void execute(Task task) {
+        unloadedPlugins.clear();
+        super.execute(task);
+        try {
+            Files.write(getUnloadedPluginsFile(task).toPath(), unloadedPlugins, StandardCharsets.UTF_8);
+        }
+        catch (IOException e) {
+            throw new GradleException("Failure writing unloaded plugins", e);
+        }
     }
 
     @Override
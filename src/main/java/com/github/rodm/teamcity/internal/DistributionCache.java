@@ -0,0 +1,389 @@
+/*
+ * Copyright 2022 Rod MacKenzie
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.rodm.teamcity.internal;
+
+import org.gradle.api.logging.Logger;
+import org.gradle.api.logging.Logging;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.net.URLConnection;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * A cache of TeamCity distributions shared by the builds on a machine. A distribution is kept in a directory
+ * named after its version and the SHA-256 digest of its URL, with a file recording the checksum of the
+ * distribution that is only written after the download is complete and verified.
+ *
+ * <p>Builds downloading the same distribution are serialized by a lock file. When the server supports range
+ * requests, the distribution is downloaded in one or more segments, each written to its own partial file, so an
+ * interrupted download resumes from where it stopped. The validator, the ETag or Last-Modified value, of the first
+ * response is kept with the partial files and sent in an {@code If-Range} header when resuming, partial files are
+ * discarded when the server returns no validator or a different one. The expected checksum is either given or read
+ * from the {@code .sha256} file published next to the distribution, if there is neither the checksum of the
+ * downloaded file is recorded.
+ */
+public class DistributionCache {
+
+    private static final Logger LOGGER = Logging.getLogger(DistributionCache.class);
+
+    static final long MIN_SEGMENT_SIZE = 1024 * 1024;
+
+    private static final int TIMEOUT = 30000;
+    private static final Pattern CONTENT_RANGE = Pattern.compile("bytes \\d+-\\d+/(\\d+)");
+    private static final ConcurrentMap<File, Object> LOCKS = new ConcurrentHashMap<>();
+
+    private final File cacheDir;
+    private final int connections;
+    private final Map<String, String> headers;
+
+    public DistributionCache(File cacheDir, int connections) {
+        this(cacheDir, connections, Collections.emptyMap());
+    }
+
+    /**
+     * @param cacheDir the directory the distributions are cached in
+     * @param connections the maximum number of connections used to download a distribution
+     * @param headers the headers sent with every request, for example the credentials of the server
+     */
+    public DistributionCache(File cacheDir, int connections, Map<String, String> headers) {
+        this.cacheDir = cacheDir;
+        this.connections = Math.max(1, connections);
+        this.headers = headers;
+    }
+
+    /**
+     * Returns the cached distribution, downloading it if it is not in the cache or does not match the checksum.
+     *
+     * @param version the version of the distribution
+     * @param url the URL of the distribution
+     * @param checksum the expected SHA-256 checksum of the distribution, or null
+     * @return the cached distribution
+     */
+    public File get(String version, URL url, String checksum) throws IOException {
+        File entryDir = new File(new File(cacheDir, version), digest(url.toString()));
+        File distribution = new File(entryDir, filename(url));
+        File checksumFile = new File(entryDir, distribution.getName() + ".sha256");
+
+        Object jvmLock = LOCKS.computeIfAbsent(entryDir.getAbsoluteFile(), dir -> new Object());
+        synchronized (jvmLock) {
+            Files.createDirectories(entryDir.toPath());
+            try (FileChannel channel = FileChannel.open(new File(entryDir, "download.lock").toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+                 FileLock ignored = channel.lock()) {
+                String cachedChecksum = readValue(checksumFile);
+                if (distribution.isFile() && cachedChecksum != null && (checksum == null || checksum.equalsIgnoreCase(cachedChecksum))) {
+                    LOGGER.info("Using cached TeamCity distribution {}", distribution);
+                    return distribution;
+                }
+                Files.deleteIfExists(checksumFile.toPath());
+                Files.deleteIfExists(distribution.toPath());
+
+                String expected = checksum != null ? checksum : publishedChecksum(url);
+                File downloaded = download(url, entryDir, distribution.getName());
+                String actual = LibraryAnalyzer.digest(downloaded);
+                if (expected != null && !expected.equalsIgnoreCase(actual)) {
+                    Files.delete(downloaded.toPath());
+                    throw new IOException("Checksum of " + url + " does not match, expected " + expected + " but was " + actual);
+                }
+                move(downloaded, distribution);
+                writeValue(checksumFile, actual);
+                return distribution;
+            }
+        }
+    }
+
+    private File download(URL url, File entryDir, String name) throws IOException {
+        File validatorFile = new File(entryDir, name + ".validator");
+        Probe probe = probe(url);
+        if (probe.validator == null || !probe.validator.equals(readValue(validatorFile))) {
+            // partial files of a different, or of an unidentified, version of the distribution cannot be resumed
+            deleteParts(entryDir, name);
+            Files.deleteIfExists(validatorFile.toPath());
+            if (probe.validator != null && probe.length >= 0) {
+                writeValue(validatorFile, probe.validator);
+            }
+        }
+        long length = probe.length;
+        if (length < 0) {
+            LOGGER.info("Downloading {} without range requests", url);
+            File part = new File(entryDir, name + ".part");
+            URLConnection connection = open(url);
+            try (InputStream in = connection.getInputStream();
+                 OutputStream out = Files.newOutputStream(part.toPath())) {
+                copy(in, out);
+            }
+            return part;
+        }
+
+        int segments = (int) Math.max(1, Math.min(connections, length / MIN_SEGMENT_SIZE));
+        List<Segment> parts = new ArrayList<>(segments);
+        long segmentSize = length / segments;
+        for (int i = 0; i < segments; i++) {
+            long start = i * segmentSize;
+            long end = i == segments - 1 ? length - 1 : start + segmentSize - 1;
+            parts.add(new Segment(url, probe.validator, new File(entryDir, name + ".part" + (i + 1) + "of" + segments), start, end));
+        }
+        LOGGER.info("Downloading {} in {} segment(s)", url, segments);
+        if (segments == 1) {
+            parts.get(0).download();
+            Files.deleteIfExists(validatorFile.toPath());
+            return parts.get(0).file;
+        }
+        downloadInParallel(parts);
+
+        File download = new File(entryDir, name + ".part");
+        try (FileChannel out = FileChannel.open(download.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            for (Segment segment : parts) {
+                try (FileChannel in = FileChannel.open(segment.file.toPath(), StandardOpenOption.READ)) {
+                    long position = 0;
+                    long size = in.size();
+                    while (position < size) {
+                        position += in.transferTo(position, size - position, out);
+                    }
+                }
+            }
+        }
+        for (Segment segment : parts) {
+            Files.delete(segment.file.toPath());
+        }
+        Files.deleteIfExists(validatorFile.toPath());
+        return download;
+    }
+
+    private static void deleteParts(File entryDir, String name) throws IOException {
+        File[] parts = entryDir.listFiles((dir, file) -> file.startsWith(name + ".part"));
+        if (parts != null) {
+            for (File part : parts) {
+                Files.delete(part.toPath());
+            }
+        }
+    }
+
+    private static void downloadInParallel(List<Segment> segments) throws IOException {
+        ExecutorService executor = Executors.newFixedThreadPool(segments.size());
+        try {
+            List<Future<Void>> futures = new ArrayList<>(segments.size());
+            for (Segment segment : segments) {
+                futures.add(executor.submit(() -> {
+                    segment.download();
+                    return null;
+                }));
+            }
+            for (Future<Void> future : futures) {
+                future.get();
+            }
+        }
+        catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            throw cause instanceof IOException ? (IOException) cause : new IOException("Failure downloading distribution", cause);
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Download of distribution interrupted", e);
+        }
+        finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Requests the first byte of the resource to find its length, -1 if the server does not support range requests,
+     * and its validator. A weak ETag cannot be used in an If-Range header, the Last-Modified value is used instead.
+     */
+    private Probe probe(URL url) throws IOException {
+        URLConnection connection = open(url);
+        connection.setRequestProperty("Range", "bytes=0-0");
+        try (InputStream ignored = connection.getInputStream()) {
+            String etag = connection.getHeaderField("ETag");
+            String validator = etag != null && !etag.startsWith("W/") ? etag : connection.getHeaderField("Last-Modified");
+            if (connection instanceof HttpURLConnection && ((HttpURLConnection) connection).getResponseCode() == 206) {
+                String contentRange = connection.getHeaderField("Content-Range");
+                Matcher matcher = contentRange == null ? null : CONTENT_RANGE.matcher(contentRange);
+                if (matcher != null && matcher.matches()) {
+                    return new Probe(Long.parseLong(matcher.group(1)), validator);
+                }
+            }
+            return new Probe(-1, validator);
+        }
+    }
+
+    private String publishedChecksum(URL url) {
+        URL checksumUrl;
+        try {
+            checksumUrl = new URL(url.toString() + ".sha256");
+            try (BufferedReader reader = new BufferedReader(new InputStreamReader(open(checksumUrl).getInputStream(), StandardCharsets.UTF_8))) {
+                String line = reader.readLine();
+                if (line != null && !line.trim().isEmpty()) {
+                    return line.trim().split("\\s+")[0];
+                }
+            }
+        }
+        catch (FileNotFoundException e) {
+            LOGGER.info("No checksum published for {}", url);
+        }
+        catch (IOException e) {
+            LOGGER.info("Failure reading checksum for {}: {}", url, e.getMessage());
+        }
+        return null;
+    }
+
+    private URLConnection open(URL url) throws IOException {
+        URLConnection connection = url.openConnection();
+        connection.setConnectTimeout(TIMEOUT);
+        connection.setReadTimeout(TIMEOUT);
+        headers.forEach(connection::setRequestProperty);
+        return connection;
+    }
+
+    private static void copy(InputStream in, OutputStream out) throws IOException {
+        byte[] buffer = new byte[64 * 1024];
+        int count;
+        while ((count = in.read(buffer)) != -1) {
+            out.write(buffer, 0, count);
+        }
+    }
+
+    private static void move(File source, File target) throws IOException {
+        try {
+            Files.move(source.toPath(), target.toPath(), StandardCopyOption.ATOMIC_MOVE);
+        }
+        catch (AtomicMoveNotSupportedException e) {
+            Files.move(source.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    private static String readValue(File file) throws IOException {
+        if (!file.isFile()) {
+            return null;
+        }
+        return new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8).trim();
+    }
+
+    private static void writeValue(File file, String value) throws IOException {
+        File temp = new File(file.getParentFile(), file.getName() + ".tmp");
+        Files.write(temp.toPath(), value.getBytes(StandardCharsets.UTF_8));
+        move(temp, file);
+    }
+
+    private static String filename(URL url) {
+        String path = url.getPath();
+        return path.substring(path.lastIndexOf('/') + 1);
+    }
+
+    private static String digest(String value) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            StringBuilder hex = new StringBuilder();
+            for (byte b : digest.digest(value.getBytes(StandardCharsets.UTF_8))) {
+                hex.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+            }
+            return hex.substring(0, 32);
+        }
+        catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static class Probe {
+        private final long length;
+        private final String validator;
+
+        Probe(long length, String validator) {
+            this.length = length;
+            this.validator = validator;
+        }
+    }
+
+    /**
+     * A range of the distribution downloaded to its own file, a partial file is resumed from its length only if
+     * the server confirms the distribution has not changed.
+     */
+    private class Segment {
+        private final URL url;
+        private final String validator;
+        private final File file;
+        private final long start;
+        private final long end;
+
+        Segment(URL url, String validator, File file, long start, long end) {
+            this.url = url;
+            this.validator = validator;
+            this.file = file;
+            this.start = start;
+            this.end = end;
+        }
+
+        void download() throws IOException {
+            long size = end - start + 1;
+            long downloaded = file.isFile() ? file.length() : 0;
+            if (downloaded > size) {
+                Files.delete(file.toPath());
+                downloaded = 0;
+            }
+            if (downloaded == size) {
+                return;
+            }
+            if (downloaded > 0) {
+                LOGGER.info("Resuming download of {} at byte {}", file.getName(), start + downloaded);
+            }
+            HttpURLConnection connection = (HttpURLConnection) open(url);
+            connection.setRequestProperty("Range", "bytes=" + (start + downloaded) + "-" + end);
+            if (validator != null) {
+                connection.setRequestProperty("If-Range", validator);
+            }
+            try (InputStream in = connection.getInputStream()) {
+                if (connection.getResponseCode() != 206) {
+                    // the distribution changed since the download started, the partial file cannot be resumed
+                    Files.deleteIfExists(file.toPath());
+                    throw new IOException("Server did not return the requested range of " + url);
+                }
+                try (OutputStream out = Files.newOutputStream(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.APPEND)) {
+                    copy(in, out);
+                }
+            }
+            if (file.length() != size) {
+                throw new IOException("Incomplete download of " + url + ", received " + file.length() + " of " + size + " bytes");
+            }
+        }
+    }
+}
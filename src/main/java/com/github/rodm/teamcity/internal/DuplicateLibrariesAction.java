@@ -0,0 +1,106 @@
+/*
+ * Copyright 2022 Rod MacKenzie
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.rodm.teamcity.internal;
+
+import com.github.rodm.teamcity.tasks.ProcessLibraries;
+import org.gradle.api.Action;
+import org.gradle.api.GradleException;
+import org.gradle.api.logging.Logger;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * Reports libraries and classes packaged more than once in a section of the plugin archive. When enabled, jars
+ * that are exact duplicates of another jar in the section are excluded from the archive.
+ */
+public class DuplicateLibrariesAction implements Action<ProcessLibraries> {
+
+    static final String DUPLICATE_JAR_WARNING = "{}: {} library {} is a duplicate of {}.";
+    static final String DUPLICATE_JAR_EXCLUDED = "{}: {} library {} is a duplicate of {} and is excluded from the archive.";
+    static final String MULTIPLE_VERSIONS_WARNING = "{}: {} libraries contain multiple versions of {}: {}.";
+    static final String DUPLICATE_CLASSES_WARNING = "{}: {} {} classes in {} are also in {}, for example {}.";
+    static final String SPLIT_PACKAGES_WARNING = "{}: {} packages {} are split across {}.";
+
+    private static final int MAX_PACKAGES = 5;
+
+    private final Set<File> excluded = new LinkedHashSet<>();
+
+    @Override
+    public void execute(ProcessLibraries task) {
+        excluded.clear();
+        boolean exclude = task.getExcludeDuplicateLibraries().get();
+        if (!exclude && !task.getCheckDuplicateLibraries().get()) {
+            return;
+        }
+
+        String section = task.getSection().get();
+        LibraryAnalyzer.Report report;
+        try {
+            report = new LibraryAnalyzer().analyze(task.getLibraries().getFiles());
+        }
+        catch (IOException e) {
+            throw new GradleException("Failure analyzing " + section + " libraries", e);
+        }
+
+        Logger logger = task.getLogger();
+        String path = task.getPath();
+        report.getDuplicateJars().forEach((duplicate, original) -> {
+            if (exclude) {
+                excluded.add(duplicate);
+                logger.warn(DUPLICATE_JAR_EXCLUDED, path, section, duplicate.getName(), original.getName());
+            } else {
+                logger.warn(DUPLICATE_JAR_WARNING, path, section, duplicate.getName(), original.getName());
+            }
+        });
+        report.getMultipleVersions().forEach((name, jars) ->
+            logger.warn(MULTIPLE_VERSIONS_WARNING, path, section, name, names(jars)));
+        report.getDuplicateClasses().forEach((jars, classes) ->
+            logger.warn(DUPLICATE_CLASSES_WARNING, path, classes.getCount(), section, jars.get(1).getName(),
+                jars.get(0).getName(), String.join(", ", classes.getExamples())));
+
+        Map<Set<File>, List<String>> packagesByJars = new LinkedHashMap<>();
+        report.getSplitPackages().forEach((name, jars) ->
+            packagesByJars.computeIfAbsent(jars, key -> new ArrayList<>()).add(name));
+        packagesByJars.forEach((jars, packages) ->
+            logger.warn(SPLIT_PACKAGES_WARNING, path, section, summary(packages), names(jars)));
+    }
+
+    /**
+     * @return the jars excluded from the archive
+     */
+    public Set<File> getExcludedLibraries() {
+        return excluded;
+    }
+
+    private static String names(Iterable<File> files) {
+        List<String> names = new ArrayList<>();
+        files.forEach(file -> names.add(file.getName()));
+        return String.join(", ", names);
+    }
+
+    private static String summary(List<String> packages) {
+        String names = packages.stream().limit(MAX_PACKAGES).collect(Collectors.joining(", "));
+        return packages.size() > MAX_PACKAGES ? names + " and " + (packages.size() - MAX_PACKAGES) + " more" : names;
+    }
+}
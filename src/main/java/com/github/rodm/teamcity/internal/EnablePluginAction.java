@@ -17,15 +17,15 @@ package com.github.rodm.teamcity.internal;
 
 import org.gradle.api.GradleException;
 import org.gradle.api.Task;
-import org.gradle.api.logging.Logger;
+import org.gradle.api.file.FileCollection;
 
 import java.io.BufferedReader;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStreamReader;
 import java.net.HttpURLConnection;
-import java.util.List;
-import java.util.Set;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 import java.util.stream.Collectors;
 
 public class EnablePluginAction extends PluginAction {
@@ -33,8 +33,24 @@ public class EnablePluginAction extends PluginAction {
     private static final String PLUGIN_SUCCESSFULLY_LOADED = "{}: Plugin '{}' successfully loaded";
     private static final String ENABLING_PLUGIN_FAILED = "{}: Enabling plugin '{}' failed: {}";
 
-    public EnablePluginAction(Logger logger, File dataDir, Set<File> plugins, List<String> disabledPlugins) {
-        super(logger, dataDir, plugins, disabledPlugins, true);
+    public EnablePluginAction(File dataDir, FileCollection plugins) {
+        super(dataDir, plugins, true);
+    }
+
+    @Override
+    public void execute(Task task) {
+        unloadedPlugins.clear();
+        File unloadedPluginsFile = getUnloadedPluginsFile(task);
+        if (unloadedPluginsFile.isFile()) {
+            try {
+                unloadedPlugins.addAll(Files.readAllLines(unloadedPluginsFile.toPath(), StandardCharsets.UTF_8));
+                Files.delete(unloadedPluginsFile.toPath());
+            }
+            catch (IOException e) {
+                throw new GradleException("Failure reading unloaded plugins", e);
+            }
+        }
+        super.execute(task);
     }
 
     @Override
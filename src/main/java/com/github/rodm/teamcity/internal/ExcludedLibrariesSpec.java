@@ -0,0 +1,74 @@
+/*
+ * Copyright 2022 Rod MacKenzie
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.rodm.teamcity.internal;
+
+import org.gradle.api.GradleException;
+import org.gradle.api.file.FileTreeElement;
+import org.gradle.api.file.RegularFile;
+import org.gradle.api.provider.Provider;
+import org.gradle.api.specs.Spec;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Matches the libraries listed in the file written by the task processing the libraries of the plugin archive.
+ * The file is only read when the archive is created, after the libraries have been processed.
+ */
+public class ExcludedLibrariesSpec implements Spec<FileTreeElement> {
+
+    private final Provider<RegularFile> excludedLibrariesFile;
+    private transient Set<String> excluded;
+
+    public ExcludedLibrariesSpec(Provider<RegularFile> excludedLibrariesFile) {
+        this.excludedLibrariesFile = excludedLibrariesFile;
+    }
+
+    @Override
+    public boolean isSatisfiedBy(FileTreeElement element) {
+        return !element.isDirectory()
+            && element.getRelativePath().getSegments().length == 1
+            && getExcluded().contains(element.getName());
+    }
+
+    /**
+     * @return whether the file is one of the libraries excluded from the archive
+     */
+    public boolean isExcluded(File file) {
+        return getExcluded().contains(file.getName());
+    }
+
+    private Set<String> getExcluded() {
+        if (excluded == null) {
+            File file = excludedLibrariesFile.isPresent() ? excludedLibrariesFile.get().getAsFile() : null;
+            if (file == null || !file.isFile()) {
+                return Collections.emptySet();
+            }
+            try {
+                excluded = new HashSet<>(Files.readAllLines(file.toPath(), StandardCharsets.UTF_8));
+            }
+            catch (IOException e) {
+                throw new GradleException("Failure reading excluded libraries file " + file, e);
+            }
+        }
+        return excluded;
+    }
+}
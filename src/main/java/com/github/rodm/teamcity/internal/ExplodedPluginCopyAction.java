@@ -0,0 +1,128 @@
+/*
+ * Copyright 2022 Rod MacKenzie
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.rodm.teamcity.internal;
+
+import org.gradle.api.GradleException;
+import org.gradle.api.internal.file.copy.CopyAction;
+import org.gradle.api.internal.file.copy.CopyActionProcessingStream;
+import org.gradle.api.internal.file.copy.FileCopyDetailsInternal;
+import org.gradle.api.tasks.WorkResult;
+import org.gradle.api.tasks.WorkResults;
+
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Copy action used by the deploy task to lay out unpacked plugins in the plugins directory. Files are only
+ * written when their content differs from the file already deployed, and files in a plugin directory that
+ * are no longer part of the plugin are removed, along with any archive previously deployed for the plugin.
+ * The files are taken from the copy spec of the plugin task, the actions the task runs before creating the
+ * archive, excluding or merging libraries, are not applied.
+ */
+public class ExplodedPluginCopyAction implements CopyAction {
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final File pluginsDir;
+
+    public ExplodedPluginCopyAction(File pluginsDir) {
+        this.pluginsDir = pluginsDir;
+    }
+
+    @Override
+    public WorkResult execute(CopyActionProcessingStream stream) {
+        Set<Path> copied = new HashSet<>();
+        Set<String> explodedPlugins = new HashSet<>();
+        boolean[] didWork = new boolean[1];
+        stream.process(details -> {
+            File target = details.getRelativePath().getFile(pluginsDir);
+            for (Path path = target.toPath(); path != null && !path.equals(pluginsDir.toPath()); path = path.getParent()) {
+                copied.add(path);
+            }
+            String[] segments = details.getRelativePath().getSegments();
+            if (segments.length > 1) {
+                explodedPlugins.add(segments[0]);
+            }
+            if (details.isDirectory()) {
+                didWork[0] |= target.mkdirs();
+            } else if (!isUnchanged(details, target)) {
+                details.copyTo(target);
+                didWork[0] = true;
+            }
+        });
+        for (String plugin : explodedPlugins) {
+            didWork[0] |= removeStaleFiles(new File(pluginsDir, plugin).toPath(), copied);
+            didWork[0] |= new File(pluginsDir, plugin + ".zip").delete();
+        }
+        return WorkResults.didWork(didWork[0]);
+    }
+
+    private static boolean isUnchanged(FileCopyDetailsInternal details, File target) {
+        if (!target.isFile() || target.length() != details.getSize()) {
+            return false;
+        }
+        try (InputStream source = details.open();
+             DataInputStream deployed = new DataInputStream(Files.newInputStream(target.toPath()))) {
+            byte[] expected = new byte[BUFFER_SIZE];
+            byte[] actual = new byte[BUFFER_SIZE];
+            int count;
+            while ((count = source.read(expected)) >= 0) {
+                deployed.readFully(actual, 0, count);
+                for (int i = 0; i < count; i++) {
+                    if (expected[i] != actual[i]) {
+                        return false;
+                    }
+                }
+            }
+            return deployed.read() < 0;
+        }
+        catch (IOException e) {
+            return false;
+        }
+    }
+
+    private static boolean removeStaleFiles(Path pluginDir, Set<Path> copied) {
+        List<Path> stale;
+        try (Stream<Path> paths = Files.walk(pluginDir)) {
+            stale = paths
+                .filter(path -> !path.equals(pluginDir) && !copied.contains(path))
+                .sorted(Comparator.reverseOrder())
+                .collect(Collectors.toList());
+        }
+        catch (IOException e) {
+            throw new GradleException("Failure reading plugin directory " + pluginDir, e);
+        }
+        for (Path path : stale) {
+            try {
+                Files.deleteIfExists(path);
+            }
+            catch (IOException e) {
+                throw new GradleException("Failure removing " + path + " from plugin directory", e);
+            }
+        }
+        return !stale.isEmpty();
+    }
+}
@@ -18,18 +18,35 @@ package com.github.rodm.teamcity.internal;
 import org.gradle.api.Action;
 import org.gradle.api.file.FileCopyDetails;
 
-import java.util.Set;
-
+/**
+ * Records the paths of the files copied into a plugin archive. Only a hash of each path is kept, in a
+ * {@link ClassIndex}, so the file details are not retained and a path is looked up in constant time.
+ */
 public class FileCollectorAction implements Action<FileCopyDetails> {
 
-    private final Set<FileCopyDetails> files;
-
-    public FileCollectorAction(Set<FileCopyDetails> files) {
-        this.files = files;
-    }
+    private final ClassIndex paths = new ClassIndex();
 
     @Override
     public void execute(FileCopyDetails fileCopyDetails) {
-        files.add(fileCopyDetails);
+        add(fileCopyDetails.getPath());
+    }
+
+    /**
+     * @param path the path of the file relative to the root of the archive
+     */
+    public void add(String path) {
+        paths.add(path);
+    }
+
+    /**
+     * @param path the path of the file relative to the root of the archive
+     * @return true if a file with the path was copied
+     */
+    public boolean contains(String path) {
+        return paths.contains(path);
+    }
+
+    public int size() {
+        return paths.size();
     }
 }
@@ -0,0 +1,165 @@
+/*
+ * Copyright 2022 Rod MacKenzie
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.rodm.teamcity.internal;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Collection;
+import java.util.Enumeration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Stream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/**
+ * Adds the classes of a classpath to a {@link ClassIndex}. The hashes of the class paths of each jar are
+ * written to a file in the cache directory named after the SHA-256 digest of the jar, so a jar is read once
+ * and the index file is shared by all builds and projects using the same cache directory. The hashes are
+ * also kept in memory, for the lifetime of the cache instance, for jars that have not changed, which avoids
+ * digesting a jar again for another classpath in the same build.
+ */
+public class JarClassIndexCache {
+
+    private static final int FORMAT = 0x54434931;
+
+    private final Map<String, long[]> loaded = new ConcurrentHashMap<>();
+    private final File cacheDir;
+
+    /**
+     * @param cacheDir the directory the jar index files are written to
+     */
+    public JarClassIndexCache(File cacheDir) {
+        this.cacheDir = cacheDir;
+    }
+
+    /**
+     * @return a new index of the classes in the jars and class directories of the classpath
+     */
+    public ClassIndex index(Collection<File> classpath) throws IOException {
+        ClassIndex index = new ClassIndex();
+        addTo(index, classpath);
+        return index;
+    }
+
+    /**
+     * Adds the paths of the classes in the jars and class directories of the classpath to the index.
+     * Files that are not jars and entries that do not exist are ignored.
+     */
+    public void addTo(ClassIndex index, Iterable<File> classpath) throws IOException {
+        for (File file : classpath) {
+            if (file.isDirectory()) {
+                addDirectory(index, file.toPath());
+            } else if (file.isFile() && file.getName().endsWith(".jar")) {
+                for (long hash : hashes(file)) {
+                    index.putHashIfAbsent(hash, 0);
+                }
+            }
+        }
+    }
+
+    long[] hashes(File jar) throws IOException {
+        String key = jar.getAbsolutePath() + ':' + jar.length() + ':' + jar.lastModified();
+        long[] hashes = loaded.get(key);
+        if (hashes == null) {
+            hashes = load(jar);
+            loaded.put(key, hashes);
+        }
+        return hashes;
+    }
+
+    private long[] load(File jar) throws IOException {
+        File indexFile = new File(cacheDir, LibraryAnalyzer.digest(jar) + ".idx");
+        if (indexFile.isFile()) {
+            long[] hashes = read(indexFile);
+            if (hashes != null) {
+                return hashes;
+            }
+        }
+        long[] hashes = index(jar);
+        write(indexFile, hashes);
+        return hashes;
+    }
+
+    private static long[] index(File jar) throws IOException {
+        ClassIndex classes = new ClassIndex();
+        try (ZipFile zip = new ZipFile(jar)) {
+            Enumeration<? extends ZipEntry> entries = zip.entries();
+            while (entries.hasMoreElements()) {
+                ZipEntry entry = entries.nextElement();
+                if (!entry.isDirectory() && entry.getName().endsWith(".class")) {
+                    classes.add(entry.getName());
+                }
+            }
+        }
+        return classes.hashes();
+    }
+
+    private static void addDirectory(ClassIndex index, Path dir) throws IOException {
+        try (Stream<Path> paths = Files.walk(dir)) {
+            paths.filter(path -> path.toString().endsWith(".class") && Files.isRegularFile(path))
+                .forEach(path -> index.add(dir.relativize(path).toString().replace(File.separatorChar, '/')));
+        }
+    }
+
+    private static long[] read(File indexFile) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(indexFile.toPath())))) {
+            if (in.readInt() != FORMAT) {
+                return null;
+            }
+            long[] hashes = new long[in.readInt()];
+            for (int i = 0; i < hashes.length; i++) {
+                hashes[i] = in.readLong();
+            }
+            return hashes;
+        }
+    }
+
+    private void write(File indexFile, long[] hashes) throws IOException {
+        Files.createDirectories(cacheDir.toPath());
+        Path temp = Files.createTempFile(cacheDir.toPath(), indexFile.getName(), ".tmp");
+        try {
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp)))) {
+                out.writeInt(FORMAT);
+                out.writeInt(hashes.length);
+                for (long hash : hashes) {
+                    out.writeLong(hash);
+                }
+            }
+            try {
+                Files.move(temp, indexFile.toPath(), StandardCopyOption.ATOMIC_MOVE);
+            }
+            catch (AtomicMoveNotSupportedException e) {
+                Files.move(temp, indexFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            }
+            catch (FileAlreadyExistsException e) {
+                // written by another build
+            }
+        }
+        finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+}
@@ -0,0 +1,238 @@
+/*
+ * Copyright 2022 Rod MacKenzie
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.rodm.teamcity.internal;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/**
+ * Analyzes the libraries packaged in a section of a plugin archive for jars included more than once, jars
+ * included at different versions, classes contained in more than one jar and packages split across jars.
+ * Jars are read one at a time using only their central directory, class names are kept in a {@link ClassIndex}.
+ */
+public class LibraryAnalyzer {
+
+    private static final Pattern VERSIONED_JAR = Pattern.compile("^(.+?)-(\\d[\\w.\\-]*)\\.jar$");
+    private static final int MAX_EXAMPLES = 5;
+
+    public Report analyze(Collection<File> files) throws IOException {
+        List<File> jars = new ArrayList<>();
+        for (File file : files) {
+            if (file.isFile() && file.getName().endsWith(".jar")) {
+                jars.add(file);
+            }
+        }
+
+        Report report = new Report();
+        findDuplicateJars(jars, report);
+        findMultipleVersions(jars, report);
+
+        ClassIndex index = new ClassIndex();
+        Map<String, Set<File>> packages = new HashMap<>();
+        for (int i = 0; i < jars.size(); i++) {
+            File jar = jars.get(i);
+            if (report.duplicateJars.containsKey(jar)) {
+                continue;
+            }
+            try (ZipFile zip = new ZipFile(jar)) {
+                Enumeration<? extends ZipEntry> entries = zip.entries();
+                Set<String> jarPackages = new HashSet<>();
+                while (entries.hasMoreElements()) {
+                    String name = entries.nextElement().getName();
+                    if (!isClass(name)) {
+                        continue;
+                    }
+                    int owner = index.putIfAbsent(name, i);
+                    if (owner >= 0 && owner != i) {
+                        report.addDuplicateClass(jars.get(owner), jar, toClassName(name));
+                    }
+                    int separator = name.lastIndexOf('/');
+                    jarPackages.add(separator > 0 ? name.substring(0, separator).replace('/', '.') : "");
+                }
+                for (String jarPackage : jarPackages) {
+                    packages.computeIfAbsent(jarPackage, key -> new LinkedHashSet<>()).add(jar);
+                }
+            }
+        }
+        packages.entrySet().stream()
+            .filter(entry -> entry.getValue().size() > 1)
+            .sorted(Map.Entry.comparingByKey())
+            .forEach(entry -> report.splitPackages.put(entry.getKey(), entry.getValue()));
+        return report;
+    }
+
+    private static void findDuplicateJars(List<File> jars, Report report) throws IOException {
+        Map<Long, List<File>> bySize = new LinkedHashMap<>();
+        for (File jar : jars) {
+            bySize.computeIfAbsent(jar.length(), size -> new ArrayList<>()).add(jar);
+        }
+        for (List<File> candidates : bySize.values()) {
+            if (candidates.size() < 2) {
+                continue;
+            }
+            Map<String, File> byDigest = new HashMap<>();
+            for (File jar : candidates) {
+                File original = byDigest.putIfAbsent(digest(jar), jar);
+                if (original != null) {
+                    report.duplicateJars.put(jar, original);
+                }
+            }
+        }
+    }
+
+    private static void findMultipleVersions(List<File> jars, Report report) {
+        Map<String, List<File>> byName = new LinkedHashMap<>();
+        for (File jar : jars) {
+            Matcher matcher = VERSIONED_JAR.matcher(jar.getName());
+            if (matcher.matches() && !report.duplicateJars.containsKey(jar)) {
+                byName.computeIfAbsent(matcher.group(1), name -> new ArrayList<>()).add(jar);
+            }
+        }
+        byName.forEach((name, versions) -> {
+            if (versions.size() > 1) {
+                report.multipleVersions.put(name, versions);
+            }
+        });
+    }
+
+    /**
+     * @return the name of the jar without the version and extension
+     */
+    public static String libraryName(String fileName) {
+        Matcher matcher = VERSIONED_JAR.matcher(fileName);
+        if (matcher.matches()) {
+            return matcher.group(1);
+        }
+        return fileName.endsWith(".jar") ? fileName.substring(0, fileName.length() - ".jar".length()) : fileName;
+    }
+
+    public static String libraryVersion(String fileName) {
+        Matcher matcher = VERSIONED_JAR.matcher(fileName);
+        return matcher.matches() ? matcher.group(2) : "";
+    }
+
+    private static boolean isClass(String name) {
+        return name.endsWith(".class")
+            && !name.startsWith("META-INF/")
+            && !name.endsWith("module-info.class");
+    }
+
+    private static String toClassName(String name) {
+        return name.substring(0, name.length() - ".class".length()).replace('/', '.');
+    }
+
+    static String digest(File file) throws IOException {
+        try (InputStream in = Files.newInputStream(file.toPath())) {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            byte[] buffer = new byte[64 * 1024];
+            int count;
+            while ((count = in.read(buffer)) != -1) {
+                digest.update(buffer, 0, count);
+            }
+            StringBuilder hex = new StringBuilder();
+            for (byte b : digest.digest()) {
+                hex.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+            }
+            return hex.toString();
+        }
+        catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    public static class Report {
+        private final Map<File, File> duplicateJars = new LinkedHashMap<>();
+        private final Map<String, List<File>> multipleVersions = new LinkedHashMap<>();
+        private final Map<List<File>, DuplicateClasses> duplicateClasses = new LinkedHashMap<>();
+        private final Map<String, Set<File>> splitPackages = new LinkedHashMap<>();
+
+        /**
+         * @return jars with the same content as a jar earlier in the section, mapped to that jar
+         */
+        public Map<File, File> getDuplicateJars() {
+            return duplicateJars;
+        }
+
+        /**
+         * @return jars with the same name but different versions, keyed by the name without the version
+         */
+        public Map<String, List<File>> getMultipleVersions() {
+            return multipleVersions;
+        }
+
+        /**
+         * @return classes found in more than one jar, keyed by the pair of jars
+         */
+        public Map<List<File>, DuplicateClasses> getDuplicateClasses() {
+            return duplicateClasses;
+        }
+
+        /**
+         * @return packages containing classes from more than one jar
+         */
+        public Map<String, Set<File>> getSplitPackages() {
+            return splitPackages;
+        }
+
+        public boolean isEmpty() {
+            return duplicateJars.isEmpty() && multipleVersions.isEmpty()
+                && duplicateClasses.isEmpty() && splitPackages.isEmpty();
+        }
+
+        void addDuplicateClass(File first, File second, String className) {
+            duplicateClasses.computeIfAbsent(Arrays.asList(first, second), key -> new DuplicateClasses()).add(className);
+        }
+    }
+
+    public static class DuplicateClasses {
+        private int count;
+        private final List<String> examples = new ArrayList<>();
+
+        void add(String className) {
+            count++;
+            if (examples.size() < MAX_EXAMPLES) {
+                examples.add(className);
+            }
+        }
+
+        public int getCount() {
+            return count;
+        }
+
+        public List<String> getExamples() {
+            return examples;
+        }
+    }
+}
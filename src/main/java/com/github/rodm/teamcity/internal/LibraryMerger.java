@@ -0,0 +1,265 @@
+/*
+ * Copyright 2022 Rod MacKenzie
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.rodm.teamcity.internal;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Enumeration;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.jar.Attributes;
+import java.util.jar.JarFile;
+import java.util.jar.Manifest;
+import java.util.regex.Pattern;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipOutputStream;
+
+import static com.github.rodm.teamcity.internal.PluginArchiveCopyAction.CONSTANT_TIME_FOR_ZIP_ENTRIES;
+
+/**
+ * Merges the plugin jar and small dependency jars into a single jar, so the plugin classloader has fewer jars
+ * to search. The merged jar keeps the manifest attributes of the plugin jars, the plugin jars are written first
+ * so their classes take precedence over classes with the same name in other jars. Service files and Spring
+ * handler files are concatenated, plugin definition files with the same name are renamed so that all are still
+ * found. Signed and multi-release jars are never merged.
+ */
+public class LibraryMerger {
+
+    public static final String MERGED_JAR_NAME = "merged-libraries.jar";
+
+    private static final String MANIFEST = "META-INF/MANIFEST.MF";
+    private static final String INDEX = "META-INF/INDEX.LIST";
+    private static final int MAX_EXAMPLES = 5;
+    private static final Pattern SIGNATURE = Pattern.compile("META-INF/[^/]+\\.(SF|RSA|DSA|EC)");
+    private static final String SERVICES_PREFIX = "META-INF/services/";
+    private static final Set<String> CONCATENATED = new HashSet<>(Arrays.asList(
+        "META-INF/spring.handlers", "META-INF/spring.schemas", "META-INF/spring.factories", "META-INF/spring.tooling"));
+
+    private final Pattern definitionPattern;
+    private final long maxSize;
+
+    /**
+     * @param definitionPattern pattern matching the plugin definition files, for example {@code META-INF/build-server-plugin*.xml}
+     * @param maxSize the size of the largest dependency jar that is merged, jars containing a plugin definition are always merged
+     */
+    public LibraryMerger(String definitionPattern, long maxSize) {
+        this.definitionPattern = LibraryShrinker.entryPattern(definitionPattern);
+        this.maxSize = maxSize;
+    }
+
+    /**
+     * Writes the merged jar to the output directory, if at least two jars can be merged.
+     */
+    public Result merge(Collection<File> files, File outputDir) throws IOException {
+        List<File> pluginJars = new ArrayList<>();
+        List<File> libraryJars = new ArrayList<>();
+        for (File file : files) {
+            if (!file.isFile() || !file.getName().endsWith(".jar")) {
+                continue;
+            }
+            try (JarFile jar = new JarFile(file, false)) {
+                if (isSigned(jar) || isMultiRelease(jar)) {
+                    continue;
+                }
+                if (containsDefinition(jar)) {
+                    pluginJars.add(file);
+                } else if (file.length() <= maxSize) {
+                    libraryJars.add(file);
+                }
+            }
+        }
+
+        Result result = new Result();
+        List<File> jars = new ArrayList<>(pluginJars);
+        jars.addAll(libraryJars);
+        if (jars.size() < 2) {
+            return result;
+        }
+
+        String mergedName = pluginJars.isEmpty() ? MERGED_JAR_NAME : pluginJars.get(0).getName();
+        Map<String, ByteArrayOutputStream> concatenated = new LinkedHashMap<>();
+        Set<String> written = new HashSet<>();
+        File merged = new File(outputDir, mergedName);
+        byte[] buffer = new byte[64 * 1024];
+        try (ZipOutputStream out = new ZipOutputStream(new FileOutputStream(merged))) {
+            writeEntry(out, MANIFEST, manifest(pluginJars));
+            for (File file : jars) {
+                try (ZipFile zip = new ZipFile(file)) {
+                    Enumeration<? extends ZipEntry> entries = zip.entries();
+                    while (entries.hasMoreElements()) {
+                        ZipEntry entry = entries.nextElement();
+                        String name = entry.getName();
+                        if (entry.isDirectory() || name.equals(MANIFEST) || name.equals(INDEX) || name.endsWith("module-info.class")) {
+                            continue;
+                        }
+                        if (name.startsWith(SERVICES_PREFIX) || CONCATENATED.contains(name)) {
+                            ByteArrayOutputStream content = concatenated.computeIfAbsent(name, key -> new ByteArrayOutputStream());
+                            try (InputStream in = zip.getInputStream(entry)) {
+                                copy(in, content, buffer);
+                            }
+                            content.write('\n');
+                            continue;
+                        }
+                        if (!written.add(name)) {
+                            if (name.endsWith(".class")) {
+                                if (result.duplicateClasses.size() < MAX_EXAMPLES) {
+                                    result.duplicateClasses.add(name);
+                                }
+                                result.duplicateClassCount++;
+                                continue;
+                            }
+                            if (!definitionPattern.matcher(name).matches()) {
+                                result.duplicateEntries++;
+                                continue;
+                            }
+                            name = name.substring(0, name.length() - ".xml".length()) + "-" + LibraryAnalyzer.libraryName(file.getName()) + ".xml";
+                        }
+                        ZipEntry mergedEntry = new ZipEntry(name);
+                        mergedEntry.setTime(CONSTANT_TIME_FOR_ZIP_ENTRIES);
+                        out.putNextEntry(mergedEntry);
+                        try (InputStream in = zip.getInputStream(entry)) {
+                            copy(in, out, buffer);
+                        }
+                        out.closeEntry();
+                    }
+                }
+                result.mergedJars.add(file);
+            }
+            for (Map.Entry<String, ByteArrayOutputStream> entry : concatenated.entrySet()) {
+                writeEntry(out, entry.getKey(), entry.getValue().toByteArray());
+            }
+        }
+        result.mergedJar = merged;
+        return result;
+    }
+
+    private boolean containsDefinition(ZipFile zip) {
+        Enumeration<? extends ZipEntry> entries = zip.entries();
+        while (entries.hasMoreElements()) {
+            if (definitionPattern.matcher(entries.nextElement().getName()).matches()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean isSigned(ZipFile zip) {
+        Enumeration<? extends ZipEntry> entries = zip.entries();
+        while (entries.hasMoreElements()) {
+            if (SIGNATURE.matcher(entries.nextElement().getName()).matches()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean isMultiRelease(JarFile jar) throws IOException {
+        Manifest manifest = jar.getManifest();
+        return manifest != null && "true".equalsIgnoreCase(manifest.getMainAttributes().getValue("Multi-Release"));
+    }
+
+    /**
+     * Combines the manifests of the plugin jars, attributes of the first plugin jar take precedence.
+     */
+    private static byte[] manifest(List<File> pluginJars) throws IOException {
+        Manifest manifest = new Manifest();
+        manifest.getMainAttributes().put(Attributes.Name.MANIFEST_VERSION, "1.0");
+        for (File file : pluginJars) {
+            try (JarFile jar = new JarFile(file, false)) {
+                Manifest pluginManifest = jar.getManifest();
+                if (pluginManifest == null) {
+                    continue;
+                }
+                pluginManifest.getMainAttributes().forEach((name, value) ->
+                    manifest.getMainAttributes().putIfAbsent(name, value));
+                pluginManifest.getEntries().forEach((name, attributes) ->
+                    manifest.getEntries().putIfAbsent(name, attributes));
+            }
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        manifest.write(out);
+        return out.toByteArray();
+    }
+
+    private static void copy(InputStream in, OutputStream out, byte[] buffer) throws IOException {
+        int count;
+        while ((count = in.read(buffer)) != -1) {
+            out.write(buffer, 0, count);
+        }
+    }
+
+    private static void writeEntry(ZipOutputStream out, String name, byte[] content) throws IOException {
+        ZipEntry entry = new ZipEntry(name);
+        entry.setTime(CONSTANT_TIME_FOR_ZIP_ENTRIES);
+        out.putNextEntry(entry);
+        out.write(content);
+        out.closeEntry();
+    }
+
+    public static class Result {
+        private final List<File> mergedJars = new ArrayList<>();
+        private final List<String> duplicateClasses = new ArrayList<>();
+        private File mergedJar;
+        private int duplicateClassCount;
+        private int duplicateEntries;
+
+        /**
+         * @return the jars merged into the merged jar
+         */
+        public List<File> getMergedJars() {
+            return mergedJars;
+        }
+
+        /**
+         * @return the merged jar, or null if no jars were merged
+         */
+        public File getMergedJar() {
+            return mergedJar;
+        }
+
+        /**
+         * @return the number of classes left out of the merged jar because an earlier jar contained the same class
+         */
+        public int getDuplicateClassCount() {
+            return duplicateClassCount;
+        }
+
+        /**
+         * @return the names of the first classes left out of the merged jar, as examples for reporting
+         */
+        public List<String> getDuplicateClasses() {
+            return duplicateClasses;
+        }
+
+        /**
+         * @return the number of resources left out of the merged jar because an earlier jar contained the same resource
+         */
+        public int getDuplicateEntries() {
+            return duplicateEntries;
+        }
+    }
+}
@@ -0,0 +1,286 @@
+/*
+ * Copyright 2022 Rod MacKenzie
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.rodm.teamcity.internal;
+
+import groovy.util.Node;
+import org.gradle.api.GradleException;
+import org.xml.sax.SAXException;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Pattern;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipOutputStream;
+
+import static com.github.rodm.teamcity.internal.PluginArchiveCopyAction.CONSTANT_TIME_FOR_ZIP_ENTRIES;
+
+/**
+ * Removes classes that cannot be reached from the plugin from the dependency jars of a plugin. Jars containing
+ * a plugin definition file are kept whole and all their classes, the bean classes declared in the definition
+ * files, service providers and classes matching the keep patterns are the roots. Class references are followed
+ * across all the jars using {@link ClassFileReader}. Resources are always kept.
+ */
+public class LibraryShrinker {
+
+    private static final String SERVICES_PREFIX = "META-INF/services/";
+
+    private final Pattern definitionPattern;
+    private final List<String> keep;
+
+    /**
+     * @param definitionPattern pattern matching the plugin definition files, for example {@code META-INF/build-agent-plugin*.xml}
+     * @param keep class names to keep, a name ending in {@code .*} keeps a package and {@code .**} its sub-packages
+     */
+    public LibraryShrinker(String definitionPattern, Collection<String> keep) {
+        this.definitionPattern = entryPattern(definitionPattern);
+        this.keep = new ArrayList<>(keep);
+    }
+
+    /**
+     * Writes a shrunk copy of each dependency jar that contains unreachable classes to the output directory.
+     */
+    public Result shrink(Collection<File> files, File outputDir) throws IOException {
+        List<File> jars = new ArrayList<>();
+        for (File file : files) {
+            if (file.isFile() && file.getName().endsWith(".jar")) {
+                jars.add(file);
+            }
+        }
+
+        Map<String, Integer> owners = new HashMap<>();
+        Set<Integer> pluginJars = new HashSet<>();
+        Deque<String> pending = new ArrayDeque<>();
+        List<ZipFile> zips = new ArrayList<>();
+        try {
+            for (int i = 0; i < jars.size(); i++) {
+                ZipFile zip = new ZipFile(jars.get(i));
+                zips.add(zip);
+                Enumeration<? extends ZipEntry> entries = zip.entries();
+                while (entries.hasMoreElements()) {
+                    ZipEntry entry = entries.nextElement();
+                    String name = entry.getName();
+                    if (isClass(name)) {
+                        String className = name.substring(0, name.length() - ".class".length());
+                        owners.putIfAbsent(className, i);
+                        if (isKept(className)) {
+                            pending.add(className);
+                        }
+                    } else if (definitionPattern.matcher(name).matches()) {
+                        pluginJars.add(i);
+                        pending.addAll(readBeanClasses(zip, entry));
+                    } else if (name.startsWith(SERVICES_PREFIX) && !entry.isDirectory()) {
+                        pending.addAll(readServiceProviders(zip, entry));
+                    }
+                }
+            }
+            owners.forEach((className, owner) -> {
+                if (pluginJars.contains(owner)) {
+                    pending.add(className);
+                }
+            });
+
+            Set<String> reachable = new HashSet<>();
+            ClassFileReader reader = new ClassFileReader();
+            while (!pending.isEmpty()) {
+                String className = pending.pop();
+                Integer owner = owners.get(className);
+                if (owner == null || !reachable.add(className)) {
+                    continue;
+                }
+                ZipFile zip = zips.get(owner);
+                try (InputStream in = zip.getInputStream(zip.getEntry(className + ".class"))) {
+                    for (String reference : reader.read(in).getReferences()) {
+                        if (!reachable.contains(reference)) {
+                            pending.add(reference);
+                        }
+                    }
+                }
+                catch (IOException e) {
+                    throw new GradleException("Failure reading class " + className + " from " + jars.get(owner), e);
+                }
+            }
+
+            Result result = new Result();
+            for (int i = 0; i < jars.size(); i++) {
+                File jar = jars.get(i);
+                result.originalSize += jar.length();
+                if (pluginJars.contains(i) || !hasUnreachableClasses(zips.get(i), reachable)) {
+                    result.shrunkSize += jar.length();
+                    continue;
+                }
+                File shrunk = new File(outputDir, jar.getName());
+                writeShrunkJar(zips.get(i), reachable, shrunk);
+                result.shrunkJars.put(jar, shrunk);
+                result.shrunkSize += shrunk.length();
+            }
+            return result;
+        }
+        finally {
+            for (ZipFile zip : zips) {
+                zip.close();
+            }
+        }
+    }
+
+    static Pattern entryPattern(String pattern) {
+        return Pattern.compile(pattern.replace(".", "\\.").replace("*", "[^/]*"));
+    }
+
+    private boolean isKept(String className) {
+        String name = className.replace('/', '.');
+        for (String pattern : keep) {
+            if (pattern.endsWith(".**")) {
+                if (name.startsWith(pattern.substring(0, pattern.length() - 2))) {
+                    return true;
+                }
+            } else if (pattern.endsWith(".*")) {
+                String packageName = pattern.substring(0, pattern.length() - 1);
+                if (name.startsWith(packageName) && name.indexOf('.', packageName.length()) < 0) {
+                    return true;
+                }
+            } else if (name.equals(pattern) || name.startsWith(pattern + "$")) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static List<String> readBeanClasses(ZipFile zip, ZipEntry entry) throws IOException {
+        List<String> classes = new ArrayList<>();
+        try (InputStream in = zip.getInputStream(entry)) {
+            Node beans = ValidationSupport.parseXml(in);
+            for (Object child : beans.depthFirst()) {
+                if (child instanceof Node) {
+                    Object className = ((Node) child).attribute("class");
+                    if (className != null) {
+                        classes.add(className.toString().trim().replace('.', '/'));
+                    }
+                }
+            }
+        }
+        catch (SAXException e) {
+            throw new GradleException("Failure parsing bean definition file " + entry.getName() + " in " + zip.getName(), e);
+        }
+        return classes;
+    }
+
+    private static List<String> readServiceProviders(ZipFile zip, ZipEntry entry) throws IOException {
+        List<String> providers = new ArrayList<>();
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(zip.getInputStream(entry), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                int comment = line.indexOf('#');
+                String provider = (comment >= 0 ? line.substring(0, comment) : line).trim();
+                if (!provider.isEmpty()) {
+                    providers.add(provider.replace('.', '/'));
+                }
+            }
+        }
+        return providers;
+    }
+
+    private static boolean hasUnreachableClasses(ZipFile zip, Set<String> reachable) {
+        Enumeration<? extends ZipEntry> entries = zip.entries();
+        while (entries.hasMoreElements()) {
+            String name = entries.nextElement().getName();
+            if (isClass(name) && !reachable.contains(name.substring(0, name.length() - ".class".length()))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static void writeShrunkJar(ZipFile zip, Set<String> reachable, File shrunk) throws IOException {
+        byte[] buffer = new byte[64 * 1024];
+        try (ZipOutputStream out = new ZipOutputStream(new FileOutputStream(shrunk))) {
+            Enumeration<? extends ZipEntry> entries = zip.entries();
+            while (entries.hasMoreElements()) {
+                ZipEntry entry = entries.nextElement();
+                String name = entry.getName();
+                if (isClass(name) && !reachable.contains(name.substring(0, name.length() - ".class".length()))) {
+                    continue;
+                }
+                ZipEntry copy = new ZipEntry(name);
+                copy.setTime(CONSTANT_TIME_FOR_ZIP_ENTRIES);
+                out.putNextEntry(copy);
+                if (!entry.isDirectory()) {
+                    try (InputStream in = zip.getInputStream(entry)) {
+                        copy(in, out, buffer);
+                    }
+                }
+                out.closeEntry();
+            }
+        }
+    }
+
+    private static void copy(InputStream in, OutputStream out, byte[] buffer) throws IOException {
+        int count;
+        while ((count = in.read(buffer)) != -1) {
+            out.write(buffer, 0, count);
+        }
+    }
+
+    private static boolean isClass(String name) {
+        return name.endsWith(".class")
+            && !name.startsWith("META-INF/")
+            && !name.endsWith("module-info.class");
+    }
+
+    public static class Result {
+        private final Map<File, File> shrunkJars = new LinkedHashMap<>();
+        private long originalSize;
+        private long shrunkSize;
+
+        /**
+         * @return the shrunk copies of the jars, keyed by the original jar
+         */
+        public Map<File, File> getShrunkJars() {
+            return shrunkJars;
+        }
+
+        /**
+         * @return the total size of the jars before shrinking
+         */
+        public long getOriginalSize() {
+            return originalSize;
+        }
+
+        /**
+         * @return the total size of the jars after shrinking
+         */
+        public long getShrunkSize() {
+            return shrunkSize;
+        }
+    }
+}
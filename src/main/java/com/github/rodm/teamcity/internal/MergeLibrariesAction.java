@@ -0,0 +1,92 @@
+/*
+ * Copyright 2022 Rod MacKenzie
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.rodm.teamcity.internal;
+
+import com.github.rodm.teamcity.tasks.ProcessLibraries;
+import org.gradle.api.Action;
+import org.gradle.api.GradleException;
+import org.gradle.api.specs.Spec;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import static com.github.rodm.teamcity.TeamCityServerPlugin.PLUGIN_DEFINITION_PATTERN;
+
+/**
+ * Replaces the plugin jar and small libraries in the server directory of the plugin archive with a single
+ * merged jar, see {@link LibraryMerger}. The merged jar is written to the destination directory of the task.
+ * Libraries already excluded from the archive are not merged.
+ */
+public class MergeLibrariesAction implements Action<ProcessLibraries> {
+
+    static final String MERGED_LIBRARIES = "{}: Merged {} libraries into {}.";
+    static final String DUPLICATE_CLASSES = "{}: {} classes were found in more than one merged library, the first was used, for example {}.";
+    static final String DUPLICATE_ENTRIES = "{}: {} resources were found in more than one merged library, the first was used.";
+
+    private final Spec<File> excludedLibraries;
+    private final Set<File> excluded = new LinkedHashSet<>();
+
+    /**
+     * @param excludedLibraries matches the libraries excluded from the archive by other actions
+     */
+    public MergeLibrariesAction(Spec<File> excludedLibraries) {
+        this.excludedLibraries = excludedLibraries;
+    }
+
+    @Override
+    public void execute(ProcessLibraries task) {
+        excluded.clear();
+        if (!task.getMergeLibraries().get()) {
+            return;
+        }
+
+        List<File> libraries = task.getLibraries().getFiles().stream()
+            .filter(file -> !excludedLibraries.isSatisfiedBy(file))
+            .collect(Collectors.toList());
+        LibraryMerger merger = new LibraryMerger(PLUGIN_DEFINITION_PATTERN, task.getMergeLibrariesMaxSize().get());
+        LibraryMerger.Result result;
+        try {
+            result = merger.merge(libraries, task.getDestinationDir().get().getAsFile());
+        }
+        catch (IOException e) {
+            throw new GradleException("Failure merging server libraries", e);
+        }
+
+        if (result.getMergedJar() != null) {
+            excluded.addAll(result.getMergedJars());
+            task.getLogger().lifecycle(MERGED_LIBRARIES, task.getPath(), result.getMergedJars().size(),
+                result.getMergedJar().getName());
+            if (result.getDuplicateClassCount() > 0) {
+                task.getLogger().warn(DUPLICATE_CLASSES, task.getPath(), result.getDuplicateClassCount(),
+                    String.join(", ", result.getDuplicateClasses()));
+            }
+            if (result.getDuplicateEntries() > 0) {
+                task.getLogger().info(DUPLICATE_ENTRIES, task.getPath(), result.getDuplicateEntries());
+            }
+        }
+    }
+
+    /**
+     * @return the libraries replaced by the merged jar
+     */
+    public Set<File> getExcludedLibraries() {
+        return excluded;
+    }
+}
@@ -18,7 +18,9 @@ package com.github.rodm.teamcity.internal;
 import org.gradle.api.Action;
 import org.gradle.api.GradleException;
 import org.gradle.api.Task;
+import org.gradle.api.file.FileCollection;
 import org.gradle.api.logging.Logger;
+import org.gradle.api.logging.Logging;
 
 import java.io.File;
 import java.io.IOException;
@@ -30,34 +32,41 @@ import java.net.URL;
 import java.net.URLEncoder;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
+import java.util.ArrayList;
 import java.util.Base64;
 import java.util.List;
-import java.util.Set;
 
+/**
+ * Disables or enables the plugins deployed to a TeamCity Server. The plugins are only resolved when the action
+ * is executed. The names of the plugins unloaded by a disable action are written to a file in the task's
+ * temporary directory and read by the enable action of the same task, actions do not share state in memory
+ * when they are restored from the configuration cache.
+ */
 public abstract class PluginAction implements Action<Task> {
 
+    private static final Logger LOGGER = Logging.getLogger(PluginAction.class);
+
     private static final String SUPER_USER_TOKEN_PATH = "system/pluginData/superUser/token.txt";
 
-    private final Logger logger;
-    protected File dataDir;
-    protected Set<File> plugins;
-    protected List<String> unloadedPlugins;
+    private static final String UNLOADED_PLUGINS_FILE = "unloaded-plugins.txt";
+
+    protected final File dataDir;
+    protected final FileCollection plugins;
+    protected final List<String> unloadedPlugins = new ArrayList<>();
     private final boolean enable;
     private String path;
 
     private static final String host = "localhost";
     private static final int port = 8111;
 
-    protected PluginAction(Logger logger, File dataDir, Set<File> plugins, List<String> unloadedPlugins, boolean enable) {
-        this.logger = logger;
+    protected PluginAction(File dataDir, FileCollection plugins, boolean enable) {
         this.dataDir = dataDir;
         this.plugins = plugins;
-        this.unloadedPlugins = unloadedPlugins;
         this.enable = enable;
     }
 
     public Logger getLogger() {
-        return logger;
+        return LOGGER;
     }
 
     public String getPath() {
@@ -67,7 +76,7 @@ public abstract class PluginAction implements Action<Task> {
     @Override
     public void execute(final Task task) {
         path = task.getPath();
-        plugins.forEach(file -> {
+        plugins.getFiles().forEach(file -> {
             if (canExecuteAction(task, file.getName())) {
                 executeAction(file.getName());
             } else {
@@ -76,13 +85,17 @@ public abstract class PluginAction implements Action<Task> {
         });
     }
 
+    protected File getUnloadedPluginsFile(Task task) {
+        return new File(task.getTemporaryDir(), UNLOADED_PLUGINS_FILE);
+    }
+
     public abstract boolean canExecuteAction(Task task, String pluginName);
 
     public abstract void sendRequest(HttpURLConnection request, String pluginName);
 
     public void executeAction(String pluginName) {
         if (!isServerAvailable()) {
-            logger.info("{}: Cannot connect to the server on http://{}:{}.", getPath(), host, port);
+            LOGGER.info("{}: Cannot connect to the server on http://{}:{}.", getPath(), host, port);
             return;
         }
 
@@ -92,26 +105,26 @@ public abstract class PluginAction implements Action<Task> {
             try {
                 String content = new String(Files.readAllBytes(tokenFile.toPath()));
                 password = Long.valueOf(content).toString();
-                logger.debug("{}: Using {} maintenance token to authenticate", getPath(), password);
+                LOGGER.debug("{}: Using {} maintenance token to authenticate", getPath(), password);
             }
             catch (IOException ignored) {
-                logger.warn("{}: Failure reading super user token file", getPath());
+                LOGGER.warn("{}: Failure reading super user token file", getPath());
                 return;
             }
             catch (NumberFormatException ignored) {
-                logger.warn("{}: Malformed maintenance token", getPath());
+                LOGGER.warn("{}: Malformed maintenance token", getPath());
                 return;
             }
         } else {
-            logger.warn("{}: Maintenance token file does not exist. Cannot reload plugin.", getPath());
-            logger.warn("{}: Check the server was started with '-Dteamcity.superUser.token.saveToFile=true' property.", getPath());
+            LOGGER.warn("{}: Maintenance token file does not exist. Cannot reload plugin.", getPath());
+            LOGGER.warn("{}: Check the server was started with '-Dteamcity.superUser.token.saveToFile=true' property.", getPath());
             return;
         }
 
         String authToken = "Basic " + Base64.getEncoder().encodeToString((":" + password).getBytes(StandardCharsets.UTF_8));
 
         URL actionURL = getPluginActionURL(pluginName);
-        logger.debug("{}: Sending {}", getPath(), actionURL);
+        LOGGER.debug("{}: Sending {}", getPath(), actionURL);
 
         try {
             HttpURLConnection request = (HttpURLConnection) actionURL.openConnection();
@@ -122,14 +135,14 @@ public abstract class PluginAction implements Action<Task> {
             }
             catch (IOException ex) {
                 if (request.getResponseCode() == 401) {
-                    logger.warn("{}: Cannot authenticate with server on http://{}:{} with maintenance token {}.", getPath(), host, port, password);
-                    logger.warn("{}: Check the server was started with '-Dteamcity.superUser.token.saveToFile=true' property.", getPath());
+                    LOGGER.warn("{}: Cannot authenticate with server on http://{}:{} with maintenance token {}.", getPath(), host, port, password);
+                    LOGGER.warn("{}: Check the server was started with '-Dteamcity.superUser.token.saveToFile=true' property.", getPath());
                 }
-                logger.warn(getPath() + ": Cannot connect to the server on http://" + host + ":" + port + ": " + request.getResponseCode(), ex);
+                LOGGER.warn(getPath() + ": Cannot connect to the server on http://" + host + ":" + port + ": " + request.getResponseCode(), ex);
             }
         }
         catch (IOException e) {
-            logger.warn("{}: Cannot connect to server.", getPath());
+            LOGGER.warn("{}: Cannot connect to server.", getPath());
         }
     }
 
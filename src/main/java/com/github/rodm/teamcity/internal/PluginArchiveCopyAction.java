@@ -0,0 +1,206 @@
+/*
+ * Copyright 2022 Rod MacKenzie
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.rodm.teamcity.internal;
+
+import org.gradle.api.GradleException;
+import org.gradle.api.internal.file.copy.CopyAction;
+import org.gradle.api.internal.file.copy.CopyActionProcessingStream;
+import org.gradle.api.internal.file.copy.FileCopyDetailsInternal;
+import org.gradle.api.logging.Logger;
+import org.gradle.api.logging.Logging;
+import org.gradle.api.tasks.WorkResult;
+import org.gradle.api.tasks.WorkResults;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Calendar;
+import java.util.GregorianCalendar;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Copy action used by the plugin archive tasks to write the archive with a {@link PluginArchiveWriter}.
+ */
+public class PluginArchiveCopyAction implements CopyAction {
+
+    /**
+     * The same constant timestamp the Gradle archive tasks use for entries when file timestamps are not preserved.
+     */
+    public static final long CONSTANT_TIME_FOR_ZIP_ENTRIES = new GregorianCalendar(1980, Calendar.FEBRUARY, 1, 0, 0, 0).getTimeInMillis();
+
+    private static final Logger LOGGER = Logging.getLogger(PluginArchiveCopyAction.class);
+
+    /**
+     * Entries larger than this are streamed to the archive instead of being compressed in parallel in memory.
+     */
+    static final long MAX_BUFFERED_ENTRY_SIZE = 4 * 1024 * 1024;
+
+    private final File archiveFile;
+    private final boolean preserveFileTimestamps;
+    private final File previousArchiveFile;
+    private final File indexFile;
+
+    public PluginArchiveCopyAction(File archiveFile, boolean preserveFileTimestamps) {
+        this(archiveFile, preserveFileTimestamps, null);
+    }
+
+    /**
+     * @param previousArchiveFile location the existing archive is moved to, so that unchanged entries
+     *                            can be copied from it, or null to always rewrite every entry
+     */
+    public PluginArchiveCopyAction(File archiveFile, boolean preserveFileTimestamps, File previousArchiveFile) {
+        this.archiveFile = archiveFile;
+        this.preserveFileTimestamps = preserveFileTimestamps;
+        this.previousArchiveFile = previousArchiveFile;
+        this.indexFile = previousArchiveFile != null ? new File(previousArchiveFile.getPath() + ".entries") : null;
+    }
+
+    @Override
+    public WorkResult execute(CopyActionProcessingStream stream) {
+        Map<String, String> previousSources = readIndex();
+        PluginArchiveReader previous = previousSources.isEmpty() ? null : openPreviousArchive();
+        Map<String, String> sources = new HashMap<>();
+        try {
+            PluginArchiveWriter writer = new PluginArchiveWriter(archiveFile, previous);
+            try {
+                stream.process(details -> visit(writer, details, previousSources, sources));
+            }
+            catch (RuntimeException e) {
+                writer.abort(e);
+                throw e;
+            }
+            writer.close();
+            if (previous != null) {
+                LOGGER.info("Copied {} unchanged entries from the previous plugin archive", writer.getReusedEntries());
+            }
+            writeIndex(sources);
+        }
+        catch (IOException e) {
+            throw new GradleException("Failure creating plugin archive " + archiveFile, e);
+        }
+        finally {
+            if (previousArchiveFile != null) {
+                previousArchiveFile.delete();
+            }
+        }
+        return WorkResults.didWork(true);
+    }
+
+    private PluginArchiveReader openPreviousArchive() {
+        try {
+            Files.move(archiveFile.toPath(), previousArchiveFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            return new PluginArchiveReader(previousArchiveFile);
+        }
+        catch (IOException e) {
+            LOGGER.info("Cannot read previous plugin archive, all entries will be written", e);
+            return null;
+        }
+    }
+
+    /**
+     * Reads the digest of the content and the mode of each entry in the existing archive, recorded when the
+     * archive was written. The index is ignored if the archive has been replaced since.
+     */
+    private Map<String, String> readIndex() {
+        Map<String, String> sources = new HashMap<>();
+        if (indexFile == null || !indexFile.isFile() || !archiveFile.isFile()) {
+            return sources;
+        }
+        try (BufferedReader reader = Files.newBufferedReader(indexFile.toPath(), StandardCharsets.UTF_8)) {
+            if (archiveKey().equals(reader.readLine())) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    int index = line.indexOf('\t');
+                    sources.put(line.substring(index + 1), line.substring(0, index));
+                }
+            }
+        }
+        catch (IOException | RuntimeException e) {
+            LOGGER.info("Cannot read previous plugin archive entries, all entries will be written", e);
+            sources.clear();
+        }
+        return sources;
+    }
+
+    private void writeIndex(Map<String, String> sources) throws IOException {
+        if (indexFile == null) {
+            return;
+        }
+        try (BufferedWriter writer = Files.newBufferedWriter(indexFile.toPath(), StandardCharsets.UTF_8)) {
+            writer.write(archiveKey());
+            writer.newLine();
+            for (Map.Entry<String, String> source : sources.entrySet()) {
+                writer.write(source.getValue() + '\t' + source.getKey());
+                writer.newLine();
+            }
+        }
+    }
+
+    private String archiveKey() {
+        return archiveFile.length() + ":" + archiveFile.lastModified();
+    }
+
+    private void visit(PluginArchiveWriter writer, FileCopyDetailsInternal details, Map<String, String> previousSources, Map<String, String> sources) {
+        long time = preserveFileTimestamps ? details.getLastModified() : CONSTANT_TIME_FOR_ZIP_ENTRIES;
+        String path = details.getRelativePath().getPathString();
+        try {
+            if (details.isDirectory()) {
+                writer.putDirectory(path, time, details.getMode());
+                return;
+            }
+            if (details.getSize() > MAX_BUFFERED_ENTRY_SIZE) {
+                try (InputStream content = details.open()) {
+                    writer.putFile(path, content, time, details.getMode());
+                }
+                return;
+            }
+            // the content is compared rather than the source file, filter and expand change it without changing the file
+            ByteArrayOutputStream content = new ByteArrayOutputStream((int) Math.max(32, details.getSize()));
+            details.copyTo(content);
+            byte[] bytes = content.toByteArray();
+            String source = digest(bytes) + ":" + details.getMode();
+            sources.put(path, source);
+            if (!source.equals(previousSources.get(path)) || !writer.putUnchangedFile(path, time, details.getMode())) {
+                writer.putFile(path, bytes, time, details.getMode());
+            }
+        }
+        catch (IOException e) {
+            throw new GradleException("Failure adding " + details.getRelativePath() + " to plugin archive " + archiveFile, e);
+        }
+    }
+
+    private static String digest(byte[] content) {
+        try {
+            StringBuilder hex = new StringBuilder();
+            for (byte b : MessageDigest.getInstance("SHA-256").digest(content)) {
+                hex.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+            }
+            return hex.toString();
+        }
+        catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,178 @@
+/*
+ * Copyright 2022 Rod MacKenzie
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.rodm.teamcity.internal;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Reads the central directory of an existing archive and provides the raw, still compressed, data of its entries.
+ */
+public class PluginArchiveReader implements Closeable {
+
+    private static final int CENTRAL_FILE_HEADER = 0x02014b50;
+    private static final int END_OF_CENTRAL_DIRECTORY = 0x06054b50;
+    private static final int END_OF_CENTRAL_DIRECTORY_SIZE = 22;
+    private static final int MAX_COMMENT_SIZE = 0xffff;
+    private static final long ZIP64_MAGIC = 0xffffffffL;
+
+    private final FileChannel channel;
+    private final Map<String, ArchiveEntry> entries = new HashMap<>();
+
+    public PluginArchiveReader(File archiveFile) throws IOException {
+        this.channel = FileChannel.open(archiveFile.toPath(), StandardOpenOption.READ);
+        try {
+            readCentralDirectory();
+        }
+        catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    public ArchiveEntry getEntry(String name) {
+        return entries.get(name);
+    }
+
+    public Map<String, ArchiveEntry> getEntries() {
+        return entries;
+    }
+
+    /**
+     * Returns the data of the entry as stored in the archive, without decompressing it.
+     */
+    public byte[] readRawData(ArchiveEntry entry) throws IOException {
+        ByteBuffer header = read(entry.localHeaderOffset + 26, 4);
+        int nameLength = header.getShort() & 0xffff;
+        int extraLength = header.getShort() & 0xffff;
+        return read(entry.localHeaderOffset + 30 + nameLength + extraLength, (int) entry.compressedSize).array();
+    }
+
+    private void readCentralDirectory() throws IOException {
+        long size = channel.size();
+        if (size < END_OF_CENTRAL_DIRECTORY_SIZE) {
+            throw new IOException("Not a zip archive");
+        }
+        int tailLength = (int) Math.min(size, END_OF_CENTRAL_DIRECTORY_SIZE + MAX_COMMENT_SIZE);
+        ByteBuffer tail = read(size - tailLength, tailLength);
+        int position = tailLength - END_OF_CENTRAL_DIRECTORY_SIZE;
+        while (position >= 0 && tail.getInt(position) != END_OF_CENTRAL_DIRECTORY) {
+            position--;
+        }
+        if (position < 0) {
+            throw new IOException("End of central directory not found");
+        }
+        int count = tail.getShort(position + 10) & 0xffff;
+        long directorySize = tail.getInt(position + 12) & ZIP64_MAGIC;
+        long directoryOffset = tail.getInt(position + 16) & ZIP64_MAGIC;
+        if (directoryOffset == ZIP64_MAGIC || directorySize > Integer.MAX_VALUE) {
+            throw new IOException("Zip64 archives are not supported");
+        }
+
+        ByteBuffer directory = read(directoryOffset, (int) directorySize);
+        for (int i = 0; i < count; i++) {
+            if (directory.getInt() != CENTRAL_FILE_HEADER) {
+                throw new IOException("Invalid central directory");
+            }
+            directory.position(directory.position() + 6);
+            int method = directory.getShort() & 0xffff;
+            int dosTime = directory.getInt();
+            long crc = directory.getInt() & ZIP64_MAGIC;
+            long compressedSize = directory.getInt() & ZIP64_MAGIC;
+            long uncompressedSize = directory.getInt() & ZIP64_MAGIC;
+            int nameLength = directory.getShort() & 0xffff;
+            int extraLength = directory.getShort() & 0xffff;
+            int commentLength = directory.getShort() & 0xffff;
+            directory.position(directory.position() + 8);
+            long localHeaderOffset = directory.getInt() & ZIP64_MAGIC;
+            byte[] name = new byte[nameLength];
+            directory.get(name);
+            directory.position(directory.position() + extraLength + commentLength);
+            if (compressedSize != ZIP64_MAGIC && uncompressedSize != ZIP64_MAGIC && localHeaderOffset != ZIP64_MAGIC) {
+                String entryName = new String(name, StandardCharsets.UTF_8);
+                entries.put(entryName, new ArchiveEntry(entryName, method, dosTime, crc, compressedSize, uncompressedSize, localHeaderOffset));
+            }
+        }
+    }
+
+    private ByteBuffer read(long position, int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(length).order(ByteOrder.LITTLE_ENDIAN);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new IOException("Unexpected end of archive");
+            }
+        }
+        buffer.flip();
+        return buffer;
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    public static class ArchiveEntry {
+        private final String name;
+        private final int method;
+        private final int dosTime;
+        private final long crc;
+        private final long compressedSize;
+        private final long size;
+        private final long localHeaderOffset;
+
+        ArchiveEntry(String name, int method, int dosTime, long crc, long compressedSize, long size, long localHeaderOffset) {
+            this.name = name;
+            this.method = method;
+            this.dosTime = dosTime;
+            this.crc = crc;
+            this.compressedSize = compressedSize;
+            this.size = size;
+            this.localHeaderOffset = localHeaderOffset;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public int getMethod() {
+            return method;
+        }
+
+        public int getDosTime() {
+            return dosTime;
+        }
+
+        public long getCrc() {
+            return crc;
+        }
+
+        public long getCompressedSize() {
+            return compressedSize;
+        }
+
+        public long getSize() {
+            return size;
+        }
+    }
+}
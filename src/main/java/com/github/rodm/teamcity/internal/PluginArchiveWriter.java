@@ -0,0 +1,438 @@
+/*
+ * Copyright 2022 Rod MacKenzie
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.rodm.teamcity.internal;
+
+import org.gradle.api.GradleException;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * Writes a zip archive in a single streaming pass. Entries that are already compressed, such as jars,
+ * nested zips and images, are stored as is, all other entries are deflated in parallel and written to
+ * the archive in the order they were added. Large entries can be streamed to the archive instead of being
+ * held in memory. If a previous version of the archive is provided, deflated entries the caller knows to be
+ * unchanged are copied from it without being read or compressed again. If writing the archive fails the
+ * partial archive is deleted.
+ */
+public class PluginArchiveWriter implements Closeable {
+
+    public static final Set<String> STORED_EXTENSIONS = Collections.unmodifiableSet(new HashSet<>(Arrays.asList(
+        "jar", "zip", "war", "ear", "gz", "tgz", "bz2", "xz", "7z", "png", "jpg", "jpeg", "gif", "woff", "woff2")));
+
+    static final int METHOD_STORED = 0;
+    static final int METHOD_DEFLATED = 8;
+
+    private static final int LOCAL_FILE_HEADER = 0x04034b50;
+    private static final int CENTRAL_FILE_HEADER = 0x02014b50;
+    private static final int END_OF_CENTRAL_DIRECTORY = 0x06054b50;
+
+    private static final int VERSION = 20;
+    private static final int VERSION_MADE_BY_UNIX = (3 << 8) | VERSION;
+    private static final int UTF8_FLAG = 1 << 11;
+    private static final int FILE_FLAG = 0100000;
+    private static final int DIR_FLAG = 040000;
+    private static final int MSDOS_DIR_FLAG = 0x10;
+
+    private static final int MAX_ENTRIES = 0xffff;
+    private static final long MAX_SIZE = 0xffffffffL;
+
+    private final File archiveFile;
+    private final FileChannel channel;
+    private final OutputStream out;
+    private final ExecutorService executor;
+    private final int window;
+    private final Deque<Future<Entry>> pending = new ArrayDeque<>();
+    private final List<Entry> entries = new ArrayList<>();
+    private final PluginArchiveReader previous;
+    private final AtomicInteger reusedEntries = new AtomicInteger();
+    private long offset;
+
+    public PluginArchiveWriter(File archiveFile) throws IOException {
+        this(archiveFile, Runtime.getRuntime().availableProcessors());
+    }
+
+    public PluginArchiveWriter(File archiveFile, int parallelism) throws IOException {
+        this(archiveFile, null, parallelism);
+    }
+
+    public PluginArchiveWriter(File archiveFile, PluginArchiveReader previous) throws IOException {
+        this(archiveFile, previous, Runtime.getRuntime().availableProcessors());
+    }
+
+    public PluginArchiveWriter(File archiveFile, PluginArchiveReader previous, int parallelism) throws IOException {
+        this.archiveFile = archiveFile;
+        this.previous = previous;
+        this.channel = FileChannel.open(archiveFile.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+        this.out = new BufferedOutputStream(Channels.newOutputStream(channel), 64 * 1024);
+        this.executor = Executors.newFixedThreadPool(Math.max(1, parallelism), runnable -> {
+            Thread thread = new Thread(runnable, "plugin-archive-writer");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.window = Math.max(1, parallelism) * 4;
+    }
+
+    public static boolean isCompressed(String path) {
+        int index = path.lastIndexOf('.');
+        return index >= 0 && STORED_EXTENSIONS.contains(path.substring(index + 1).toLowerCase(Locale.ROOT));
+    }
+
+    public void putDirectory(String path, long time, int mode) throws IOException {
+        String name = path.endsWith("/") ? path : path + "/";
+        Entry entry = new Entry(name, METHOD_STORED, time, ((DIR_FLAG | mode) << 16) | MSDOS_DIR_FLAG);
+        entry.data = new byte[0];
+        enqueue(CompletableFuture.completedFuture(entry));
+    }
+
+    public void putFile(String path, byte[] content, long time, int mode) throws IOException {
+        int method = isCompressed(path) ? METHOD_STORED : METHOD_DEFLATED;
+        Entry entry = new Entry(path, method, time, (FILE_FLAG | mode) << 16);
+        enqueue(executor.submit(() -> entry.compress(content)));
+    }
+
+    /**
+     * Copies the compressed data of a deflated entry from the previous archive. Stored entries are not copied,
+     * writing them again costs no more than copying them.
+     *
+     * @return false if the previous archive has no deflated entry with the same name and timestamp,
+     *         and the file must be added with its content
+     */
+    public boolean putUnchangedFile(String path, long time, int mode) throws IOException {
+        PluginArchiveReader.ArchiveEntry previousEntry = previous != null ? previous.getEntry(path) : null;
+        if (previousEntry == null || isCompressed(path) || previousEntry.getMethod() != METHOD_DEFLATED) {
+            return false;
+        }
+        Entry entry = new Entry(path, METHOD_DEFLATED, time, (FILE_FLAG | mode) << 16);
+        if (previousEntry.getDosTime() != entry.dosTime) {
+            return false;
+        }
+        reusedEntries.incrementAndGet();
+        enqueue(executor.submit(() -> entry.copy(previousEntry, previous)));
+        return true;
+    }
+
+    /**
+     * Writes the content of the entry directly to the archive, after the entries already added, without
+     * holding the content in memory. The local header is updated with the checksum and sizes once the
+     * content has been written.
+     */
+    public void putFile(String path, InputStream content, long time, int mode) throws IOException {
+        int method = isCompressed(path) ? METHOD_STORED : METHOD_DEFLATED;
+        Entry entry = new Entry(path, method, time, (FILE_FLAG | mode) << 16);
+        while (!pending.isEmpty()) {
+            write(pending.removeFirst());
+        }
+        checkLimits(0);
+        entry.offset = offset;
+        writeLocalHeader(entry);
+        CRC32 checksum = new CRC32();
+        byte[] buffer = new byte[64 * 1024];
+        if (method == METHOD_DEFLATED) {
+            Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+            try {
+                byte[] compressed = new byte[64 * 1024];
+                int count;
+                while ((count = content.read(buffer)) >= 0) {
+                    checksum.update(buffer, 0, count);
+                    entry.size += count;
+                    deflater.setInput(buffer, 0, count);
+                    while (!deflater.needsInput()) {
+                        entry.compressedSize += writeDeflated(deflater, compressed);
+                    }
+                }
+                deflater.finish();
+                while (!deflater.finished()) {
+                    entry.compressedSize += writeDeflated(deflater, compressed);
+                }
+            }
+            finally {
+                deflater.end();
+            }
+        } else {
+            int count;
+            while ((count = content.read(buffer)) >= 0) {
+                checksum.update(buffer, 0, count);
+                out.write(buffer, 0, count);
+                entry.size += count;
+            }
+            entry.compressedSize = entry.size;
+        }
+        entry.crc = checksum.getValue();
+        checkLimits(Math.max(entry.size, entry.compressedSize));
+        offset += entry.compressedSize;
+        out.flush();
+        ByteBuffer header = ByteBuffer.allocate(12).order(ByteOrder.LITTLE_ENDIAN);
+        header.putInt((int) entry.crc).putInt((int) entry.compressedSize).putInt((int) entry.size).flip();
+        while (header.hasRemaining()) {
+            channel.write(header, entry.offset + 14 + header.position());
+        }
+        entries.add(entry);
+    }
+
+    private int writeDeflated(Deflater deflater, byte[] buffer) throws IOException {
+        int count = deflater.deflate(buffer);
+        out.write(buffer, 0, count);
+        return count;
+    }
+
+    /**
+     * @return the number of entries copied from the previous archive
+     */
+    public int getReusedEntries() {
+        return reusedEntries.get();
+    }
+
+    private void enqueue(Future<Entry> future) throws IOException {
+        pending.addLast(future);
+        while (pending.size() > window) {
+            write(pending.removeFirst());
+        }
+    }
+
+    private void write(Future<Entry> future) throws IOException {
+        Entry entry;
+        try {
+            entry = future.get();
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while compressing archive entry", e);
+        }
+        catch (ExecutionException e) {
+            throw new IOException("Failure compressing archive entry", e.getCause());
+        }
+        checkLimits(entry.data.length);
+        entry.offset = offset;
+        writeLocalHeader(entry);
+        out.write(entry.data);
+        offset += entry.data.length;
+        entry.data = null;
+        entries.add(entry);
+    }
+
+    private void checkLimits(long entrySize) {
+        if (entries.size() == MAX_ENTRIES || offset > MAX_SIZE || entrySize > MAX_SIZE) {
+            throw new GradleException("Plugin archive exceeds the zip format limits, disable parallel compression to create a Zip64 archive");
+        }
+    }
+
+    private void writeLocalHeader(Entry entry) throws IOException {
+        writeInt(LOCAL_FILE_HEADER);
+        writeShort(VERSION);
+        writeShort(UTF8_FLAG);
+        writeShort(entry.method);
+        writeInt(entry.dosTime);
+        writeInt((int) entry.crc);
+        writeInt((int) entry.compressedSize);
+        writeInt((int) entry.size);
+        writeShort(entry.name.length);
+        writeShort(0);
+        out.write(entry.name);
+        offset += 30 + entry.name.length;
+    }
+
+    private void writeCentralDirectory() throws IOException {
+        long start = offset;
+        for (Entry entry : entries) {
+            writeInt(CENTRAL_FILE_HEADER);
+            writeShort(VERSION_MADE_BY_UNIX);
+            writeShort(VERSION);
+            writeShort(UTF8_FLAG);
+            writeShort(entry.method);
+            writeInt(entry.dosTime);
+            writeInt((int) entry.crc);
+            writeInt((int) entry.compressedSize);
+            writeInt((int) entry.size);
+            writeShort(entry.name.length);
+            writeShort(0);
+            writeShort(0);
+            writeShort(0);
+            writeShort(0);
+            writeInt(entry.attributes);
+            writeInt((int) entry.offset);
+            out.write(entry.name);
+            offset += 46 + entry.name.length;
+        }
+        writeInt(END_OF_CENTRAL_DIRECTORY);
+        writeShort(0);
+        writeShort(0);
+        writeShort(entries.size());
+        writeShort(entries.size());
+        writeInt((int) (offset - start));
+        writeInt((int) start);
+        writeShort(0);
+    }
+
+    /**
+     * Writes the remaining entries and the central directory. If this fails the partial archive is deleted.
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            while (!pending.isEmpty()) {
+                write(pending.removeFirst());
+            }
+            writeCentralDirectory();
+            release();
+        }
+        catch (IOException | RuntimeException e) {
+            abort(e);
+            throw e;
+        }
+    }
+
+    /**
+     * Stops writing the archive and deletes the partial archive, without writing the central directory.
+     * Failures releasing the archive are added as suppressed exceptions of the failure causing the abort.
+     */
+    public void abort(Throwable cause) {
+        try {
+            release();
+        }
+        catch (IOException | RuntimeException e) {
+            cause.addSuppressed(e);
+        }
+        try {
+            Files.deleteIfExists(archiveFile.toPath());
+        }
+        catch (IOException e) {
+            cause.addSuppressed(e);
+        }
+    }
+
+    private void release() throws IOException {
+        executor.shutdownNow();
+        try {
+            out.close();
+        }
+        finally {
+            if (previous != null) {
+                previous.close();
+            }
+        }
+    }
+
+    private void writeShort(int value) throws IOException {
+        out.write(value & 0xff);
+        out.write((value >>> 8) & 0xff);
+    }
+
+    private void writeInt(int value) throws IOException {
+        writeShort(value & 0xffff);
+        writeShort((value >>> 16) & 0xffff);
+    }
+
+    static int toDosTime(long time) {
+        Calendar calendar = Calendar.getInstance();
+        calendar.setTimeInMillis(time);
+        int year = calendar.get(Calendar.YEAR);
+        if (year < 1980) {
+            return (1 << 21) | (1 << 16);
+        }
+        return (year - 1980) << 25
+            | (calendar.get(Calendar.MONTH) + 1) << 21
+            | calendar.get(Calendar.DAY_OF_MONTH) << 16
+            | calendar.get(Calendar.HOUR_OF_DAY) << 11
+            | calendar.get(Calendar.MINUTE) << 5
+            | calendar.get(Calendar.SECOND) >> 1;
+    }
+
+    static class Entry {
+        final byte[] name;
+        final int method;
+        final int dosTime;
+        final int attributes;
+        long crc;
+        long size;
+        long compressedSize;
+        long offset;
+        byte[] data;
+
+        Entry(String name, int method, long time, int attributes) {
+            this.name = name.getBytes(StandardCharsets.UTF_8);
+            this.method = method;
+            this.dosTime = toDosTime(time);
+            this.attributes = attributes;
+        }
+
+        Entry copy(PluginArchiveReader.ArchiveEntry entry, PluginArchiveReader previous) throws IOException {
+            crc = entry.getCrc();
+            size = entry.getSize();
+            data = previous.readRawData(entry);
+            compressedSize = data.length;
+            return this;
+        }
+
+        Entry compress(byte[] content) {
+            CRC32 checksum = new CRC32();
+            checksum.update(content, 0, content.length);
+            crc = checksum.getValue();
+            size = content.length;
+            if (method == METHOD_DEFLATED) {
+                Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+                try {
+                    deflater.setInput(content);
+                    deflater.finish();
+                    ByteArrayOutputStream compressed = new ByteArrayOutputStream(Math.max(64, content.length / 2));
+                    byte[] buffer = new byte[8192];
+                    while (!deflater.finished()) {
+                        int count = deflater.deflate(buffer);
+                        compressed.write(buffer, 0, count);
+                    }
+                    data = compressed.toByteArray();
+                }
+                finally {
+                    deflater.end();
+                }
+            } else {
+                data = content;
+            }
+            compressedSize = data.length;
+            return this;
+        }
+    }
+}
@@ -16,7 +16,6 @@
 package com.github.rodm.teamcity.internal;
 
 import groovy.util.Node;
-import groovy.xml.XmlParser;
 import org.gradle.api.GradleException;
 import org.jetbrains.annotations.NotNull;
 import org.xml.sax.SAXException;
@@ -29,21 +28,33 @@ import java.util.stream.Collectors;
 public class PluginDefinition {
 
     private final File definitionFile;
+    private final PluginDefinitionCache cache;
 
     public PluginDefinition(File file) {
+        this(file, null);
+    }
+
+    /**
+     * @param cache the cache of the beans of definition files, or null to always parse the file
+     */
+    public PluginDefinition(File file, PluginDefinitionCache cache) {
         this.definitionFile = file;
+        this.cache = cache;
     }
 
     public String getName() {
         return this.definitionFile.getName();
     }
 
-    public List<PluginBean> getBeans(boolean offline) throws IOException {
-        XmlParser parser = ValidationSupport.createXmlParser(offline);
+    public List<PluginBean> getBeans() throws IOException {
+        return cache != null ? cache.getBeans(definitionFile, PluginDefinition::parse) : parse(definitionFile);
+    }
+
+    private static List<PluginBean> parse(File definitionFile) throws IOException {
         try {
-            Node beans = parser.parse(definitionFile);
+            Node beans = ValidationSupport.parseXml(definitionFile);
             return ((List<Node>) beans.get("bean")).stream()
-                .map(this::createPluginBean)
+                .map(PluginDefinition::createPluginBean)
                 .collect(Collectors.toList());
         }
         catch (SAXException e) {
@@ -52,7 +63,7 @@ public class PluginDefinition {
     }
 
     @NotNull
-    private PluginBean createPluginBean(Node node) {
+    private static PluginBean createPluginBean(Node node) {
         return new PluginBean((String) node.attribute("id"), (String) node.attribute("class"));
     }
 }
@@ -0,0 +1,121 @@
+/*
+ * Copyright 2022 Rod MacKenzie
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.rodm.teamcity.internal;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Caches the beans of plugin definition files. The beans of each file are written to a file in the cache
+ * directory named after the SHA-256 digest of the definition file, so a definition file is only parsed again
+ * when its content changes, including after a clean build when the cache directory is kept.
+ */
+public class PluginDefinitionCache {
+
+    private static final int FORMAT = 0x54434231;
+
+    private final File cacheDir;
+
+    /**
+     * @param cacheDir the directory the bean files are written to
+     */
+    public PluginDefinitionCache(File cacheDir) {
+        this.cacheDir = cacheDir;
+    }
+
+    /**
+     * Returns the beans of the definition file, the file is only parsed if the beans are not in the cache.
+     */
+    public List<PluginBean> getBeans(File definitionFile, BeanReader reader) throws IOException {
+        File beansFile = new File(cacheDir, LibraryAnalyzer.digest(definitionFile) + ".beans");
+        if (beansFile.isFile()) {
+            List<PluginBean> beans = read(beansFile);
+            if (beans != null) {
+                return beans;
+            }
+        }
+        List<PluginBean> beans = reader.read(definitionFile);
+        write(beansFile, beans);
+        return beans;
+    }
+
+    public interface BeanReader {
+        List<PluginBean> read(File definitionFile) throws IOException;
+    }
+
+    private static List<PluginBean> read(File beansFile) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(beansFile.toPath())))) {
+            if (in.readInt() != FORMAT) {
+                return null;
+            }
+            int count = in.readInt();
+            List<PluginBean> beans = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                beans.add(new PluginBean(readString(in), readString(in)));
+            }
+            return beans;
+        }
+    }
+
+    private void write(File beansFile, List<PluginBean> beans) throws IOException {
+        Files.createDirectories(cacheDir.toPath());
+        Path temp = Files.createTempFile(cacheDir.toPath(), beansFile.getName(), ".tmp");
+        try {
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp)))) {
+                out.writeInt(FORMAT);
+                out.writeInt(beans.size());
+                for (PluginBean bean : beans) {
+                    writeString(out, bean.getId());
+                    writeString(out, bean.getClassName());
+                }
+            }
+            try {
+                Files.move(temp, beansFile.toPath(), StandardCopyOption.ATOMIC_MOVE);
+            }
+            catch (AtomicMoveNotSupportedException e) {
+                Files.move(temp, beansFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            }
+            catch (FileAlreadyExistsException e) {
+                // written by another build
+            }
+        }
+        finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        return in.readBoolean() ? in.readUTF() : null;
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        out.writeBoolean(value != null);
+        if (value != null) {
+            out.writeUTF(value);
+        }
+    }
+}
@@ -1,35 +0,0 @@
-/*
- * Copyright 2020 Rod MacKenzie
- *
- * Licensed under the Apache License, Version 2.0 (the "License");
- * you may not use this file except in compliance with the License.
- * You may obtain a copy of the License at
- *
- *     https://www.apache.org/licenses/LICENSE-2.0
- *
- * Unless required by applicable law or agreed to in writing, software
- * distributed under the License is distributed on an "AS IS" BASIS,
- * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
- * See the License for the specific language governing permissions and
- * limitations under the License.
- */
-package com.github.rodm.teamcity.internal;
-
-import org.gradle.api.Action;
-import org.gradle.api.file.FileCopyDetails;
-
-import java.util.List;
-
-public class PluginDefinitionCollectorAction implements Action<FileCopyDetails> {
-
-    private final List<PluginDefinition> pluginDefinitions;
-
-    public PluginDefinitionCollectorAction(List<PluginDefinition> pluginDefinitions) {
-        this.pluginDefinitions = pluginDefinitions;
-    }
-
-    @Override
-    public void execute(FileCopyDetails fileCopyDetails) {
-        pluginDefinitions.add(new PluginDefinition(fileCopyDetails.getFile()));
-    }
-}
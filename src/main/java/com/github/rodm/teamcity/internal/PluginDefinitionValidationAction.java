@@ -16,19 +16,14 @@
 package com.github.rodm.teamcity.internal;
 
 import com.github.rodm.teamcity.ValidationMode;
-import org.gradle.api.Action;
-import org.gradle.api.GradleException;
-import org.gradle.api.Task;
 
 import java.io.IOException;
 import java.util.List;
-import java.util.Set;
+import java.util.function.Supplier;
 
-import static com.github.rodm.teamcity.TeamCityPlugin.GRADLE_OFFLINE;
-import static com.github.rodm.teamcity.ValidationMode.FAIL;
 import static com.github.rodm.teamcity.ValidationMode.IGNORE;
 
-public class PluginDefinitionValidationAction implements Action<Task> {
+public class PluginDefinitionValidationAction {
 
     private static final String NO_BEAN_CLASS_WARNING_MESSAGE = "%s: Plugin definition file %s defines a bean but the implementation class %s was not found in the jar.";
     private static final String NO_BEAN_CLASSES_WARNING_MESSAGE = "%s: Plugin definition file %s contains no beans.";
@@ -37,61 +32,73 @@ public class PluginDefinitionValidationAction implements Action<Task> {
 
     private final ValidationMode mode;
     private final List<PluginDefinition> definitions;
-    private final Set<String> classes;
+    private final ClassIndex classes;
+    private final Supplier<ClassIndex> classpathClasses;
     private boolean warningShown;
 
-    public PluginDefinitionValidationAction(ValidationMode mode, List<PluginDefinition> definitions, Set<String> classes) {
+    public PluginDefinitionValidationAction(ValidationMode mode, List<PluginDefinition> definitions, ClassIndex classes) {
+        this(mode, definitions, classes, null);
+    }
+
+    /**
+     * @param classpathClasses provides the index of the classpath searched for bean classes that are not in
+     *                         the classes index, only requested when such a bean class is found
+     */
+    public PluginDefinitionValidationAction(ValidationMode mode, List<PluginDefinition> definitions, ClassIndex classes,
+                                            Supplier<ClassIndex> classpathClasses) {
         this.mode = mode;
         this.definitions = definitions;
         this.classes = classes;
+        this.classpathClasses = classpathClasses;
         this.warningShown = false;
     }
 
-    @Override
-    public void execute(Task task) {
+    /**
+     * @return true if any warnings were written to the log
+     */
+    public boolean validate(PluginValidationLog log) {
         if (mode.equals(IGNORE)) {
-            return;
+            return false;
         }
 
         if (definitions.isEmpty()) {
-            report(task, String.format(NO_DEFINITION_WARNING_MESSAGE, task.getPath()));
+            report(log, String.format(NO_DEFINITION_WARNING_MESSAGE, log.getPath()));
         } else {
             for (PluginDefinition definition : definitions) {
-                validateDefinition(definition, task);
+                validateDefinition(definition, log);
             }
         }
-
-        if (mode.equals(FAIL) && warningShown) {
-            throw new GradleException("Plugin definition validation failed");
-        }
+        return warningShown;
     }
 
-    private void validateDefinition(PluginDefinition definition, Task task) {
-        Object value = task.getInputs().getProperties().getOrDefault(GRADLE_OFFLINE, false);
-        boolean offline = Boolean.parseBoolean(value.toString());
+    private void validateDefinition(PluginDefinition definition, PluginValidationLog log) {
         List<PluginBean> beans;
         try {
-            beans = definition.getBeans(offline);
+            beans = definition.getBeans();
         }
         catch (IOException e) {
-            report(task, String.format(NO_BEAN_CLASSES_NON_PARSED_WARNING_MESSAGE, task.getPath(), definition.getName(), e.getMessage()), e);
+            report(log, String.format(NO_BEAN_CLASSES_NON_PARSED_WARNING_MESSAGE, log.getPath(), definition.getName(), e.getMessage()), e);
             return;
         }
 
         if (beans.isEmpty()) {
-            report(task, String.format(NO_BEAN_CLASSES_WARNING_MESSAGE, task.getPath(), definition.getName()));
+            report(log, String.format(NO_BEAN_CLASSES_WARNING_MESSAGE, log.getPath(), definition.getName()));
         } else {
             for (PluginBean bean : beans) {
                 String fqcn = bean.getClassName().replace(".", "/") + ".class";
-                if (!classes.contains(fqcn)) {
-                    report(task, String.format(NO_BEAN_CLASS_WARNING_MESSAGE, task.getPath(), definition.getName(), bean.getClassName()));
+                if (!classes.contains(fqcn) && !classpathContains(fqcn)) {
+                    report(log, String.format(NO_BEAN_CLASS_WARNING_MESSAGE, log.getPath(), definition.getName(), bean.getClassName()));
                 }
             }
         }
     }
 
-    private void report(Task task, String message, Object... objects) {
-        task.getLogger().warn(message, objects);
+    private boolean classpathContains(String fqcn) {
+        return classpathClasses != null && classpathClasses.get().contains(fqcn);
+    }
+
+    private void report(PluginValidationLog log, String message, Object... objects) {
+        log.warn(message, objects);
         warningShown = true;
     }
 }
@@ -0,0 +1,62 @@
+/*
+ * Copyright 2022 Rod MacKenzie
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.rodm.teamcity.internal;
+
+import com.github.rodm.teamcity.ValidationMode;
+import org.gradle.api.file.ConfigurableFileCollection;
+import org.gradle.api.file.DirectoryProperty;
+import org.gradle.api.file.RegularFileProperty;
+import org.gradle.api.provider.Property;
+import org.gradle.workers.WorkAction;
+import org.gradle.workers.WorkParameters;
+
+import java.io.File;
+import java.util.Collections;
+
+/**
+ * Validates a single plugin definition file, the bean classes are looked up in the index of the classpath
+ * shared by the workers of the task.
+ */
+public abstract class PluginDefinitionValidationWork implements WorkAction<PluginDefinitionValidationWork.Parameters> {
+
+    public interface Parameters extends WorkParameters {
+        Property<String> getTaskPath();
+        Property<ValidationMode> getMode();
+        RegularFileProperty getDefinition();
+        ConfigurableFileCollection getClasspath();
+        DirectoryProperty getClassIndexCache();
+        Property<ClassIndexService> getClassIndexService();
+        DirectoryProperty getDefinitionCache();
+        RegularFileProperty getResultFile();
+    }
+
+    @Override
+    public void execute() {
+        Parameters parameters = getParameters();
+        File definition = parameters.getDefinition().get().getAsFile();
+        PluginValidationLog log = new PluginValidationLog(parameters.getTaskPath().get(), null);
+        File classIndexCache = parameters.getClassIndexCache().get().getAsFile();
+        ClassIndexService classIndexService = parameters.getClassIndexService().get();
+        new PluginDefinitionValidationAction(parameters.getMode().get(),
+            Collections.singletonList(new PluginDefinition(definition, definitionCache(parameters))), new ClassIndex(),
+            () -> classIndexService.getClassIndex(parameters.getClasspath().getFiles(), classIndexCache)).validate(log);
+        PluginValidationResult.write(parameters.getResultFile().get().getAsFile(), definition.getName(), log.getMessages());
+    }
+
+    private static PluginDefinitionCache definitionCache(Parameters parameters) {
+        return parameters.getDefinitionCache().isPresent() ? new PluginDefinitionCache(parameters.getDefinitionCache().get().getAsFile()) : null;
+    }
+}
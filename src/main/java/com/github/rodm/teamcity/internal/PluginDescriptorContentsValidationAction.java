@@ -15,62 +15,22 @@
  */
 package com.github.rodm.teamcity.internal;
 
-import groovy.namespace.QName;
-import groovy.util.NodeList;
-import org.gradle.api.Action;
-import org.gradle.api.GradleException;
-import org.gradle.api.Task;
-
-import groovy.util.Node;
-import groovy.xml.XmlParser;
-import org.xml.sax.SAXException;
-
-import java.io.IOException;
-
-public class PluginDescriptorContentsValidationAction implements Action<Task> {
+public class PluginDescriptorContentsValidationAction {
 
     private static final String EMPTY_VALUE_WARNING_MESSAGE = "{}: Plugin descriptor value for {} must not be empty.";
 
-    @Override
-    public void execute(Task task) {
-        AbstractPluginTask pluginTask = (AbstractPluginTask) task;
-        XmlParser parser = ValidationSupport.createXmlParser();
-        try {
-            Node descriptor = parser.parse(pluginTask.getDescriptor().get().getAsFile());
-            NodeList info = descriptor.getAt(QName.valueOf("info"));
-
-            final String path = task.getPath();
-            NodeList name = info.getAt("name");
-            if (name.text().trim().isEmpty()) {
-                task.getLogger().warn(EMPTY_VALUE_WARNING_MESSAGE, path, "name");
-            }
-            NodeList display = info.getAt("display-name");
-            if (display.text().trim().isEmpty()) {
-                task.getLogger().warn(EMPTY_VALUE_WARNING_MESSAGE, path, "display name");
-            }
-            NodeList version = info.getAt("version");
-            if (version.text().trim().isEmpty()) {
-                task.getLogger().warn(EMPTY_VALUE_WARNING_MESSAGE, path, "version");
-            }
-
-            NodeList vendor = info.getAt("vendor");
-            NodeList vendorName = vendor.getAt("name");
-            if (vendorName.text().trim().isEmpty()) {
-                task.getLogger().warn(EMPTY_VALUE_WARNING_MESSAGE, path, "vendor name");
-            }
-
-            NodeList description = info.getAt("description");
-            if (description.text().trim().isEmpty()) {
-                task.getLogger().warn(EMPTY_VALUE_WARNING_MESSAGE, path, "description");
-            }
+    public void validate(PluginDescriptorValidation.Result descriptor, PluginValidationLog log) {
+        warnIfEmpty(log, descriptor.getValue("info/name"), "name");
+        warnIfEmpty(log, descriptor.getValue("info/display-name"), "display name");
+        warnIfEmpty(log, descriptor.getValue("info/version"), "version");
+        warnIfEmpty(log, descriptor.getValue("info/vendor/name"), "vendor name");
+        warnIfEmpty(log, descriptor.getValue("info/description"), "description");
+        warnIfEmpty(log, descriptor.getValue("info/vendor/url"), "vendor url");
+    }
 
-            NodeList vendorUrl = vendor.getAt("url");
-            if (vendorUrl.text().trim().isEmpty()) {
-                task.getLogger().warn(EMPTY_VALUE_WARNING_MESSAGE, path, "vendor url");
-            }
-        }
-        catch (IOException | SAXException e) {
-            throw new GradleException("Failure parsing descriptor", e);
+    private static void warnIfEmpty(PluginValidationLog log, String value, String name) {
+        if (value.trim().isEmpty()) {
+            log.warn(EMPTY_VALUE_WARNING_MESSAGE, log.getPath(), name);
         }
     }
 }
@@ -15,17 +15,16 @@
  */
 package com.github.rodm.teamcity.internal;
 
-import org.gradle.api.Task;
 import org.xml.sax.ErrorHandler;
 import org.xml.sax.SAXException;
 import org.xml.sax.SAXParseException;
 
 public class PluginDescriptorErrorHandler implements ErrorHandler {
 
-    private final Task task;
+    private final PluginValidationLog log;
 
-    public PluginDescriptorErrorHandler(Task task) {
-        this.task = task;
+    public PluginDescriptorErrorHandler(PluginValidationLog log) {
+        this.log = log;
     }
 
     @Override
@@ -44,6 +43,6 @@ public class PluginDescriptorErrorHandler implements ErrorHandler {
     }
 
     private void outputMessage(SAXParseException exception) {
-        task.getLogger().warn(task.getPath() + ": Plugin descriptor is invalid: " + exception.getMessage());
+        log.warn("{}: Plugin descriptor is invalid: {}", log.getPath(), exception.getMessage());
     }
 }
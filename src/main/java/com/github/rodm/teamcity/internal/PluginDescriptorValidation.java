@@ -0,0 +1,194 @@
+/*
+ * Copyright 2022 Rod MacKenzie
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.rodm.teamcity.internal;
+
+import org.gradle.api.GradleException;
+import org.gradle.api.provider.Provider;
+import org.xml.sax.SAXException;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import javax.xml.stream.util.StreamReaderDelegate;
+import javax.xml.transform.stax.StAXSource;
+import javax.xml.validation.Schema;
+import javax.xml.validation.Validator;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Reads a plugin descriptor in a single streaming pass. The same stream of events is validated against the
+ * schema, if there is one, and used to collect the values of the info elements and the executable files.
+ * The result is kept, so the validation actions of a task can share one pass over the descriptor.
+ */
+public class PluginDescriptorValidation {
+
+    private static final XMLInputFactory INPUT_FACTORY = createInputFactory();
+
+    private final String schemaName;
+    private final Provider<PluginSchemaService> schemaService;
+
+    private File descriptorFile;
+    private long lastModified;
+    private long length;
+    private Result result;
+
+    public PluginDescriptorValidation() {
+        this(null, null);
+    }
+
+    /**
+     * @param schemaName the schema the descriptor is validated against, or null to not validate the descriptor
+     * @param schemaService the service providing the compiled schema, or null to use the schemas shared by the plugin
+     */
+    public PluginDescriptorValidation(String schemaName, Provider<PluginSchemaService> schemaService) {
+        this.schemaName = schemaName;
+        this.schemaService = schemaService;
+    }
+
+    /**
+     * Reads the descriptor, schema errors are written to the log by the first call for a descriptor.
+     */
+    public synchronized Result validate(File file, PluginValidationLog log) {
+        if (result != null && file.equals(descriptorFile) && file.lastModified() == lastModified && file.length() == length) {
+            return result;
+        }
+
+        Schema schema = null;
+        if (schemaName != null) {
+            schema = schemaService != null ? schemaService.get().getSchema(schemaName) : PluginSchemaService.schema(schemaName);
+        }
+        result = read(file, schema, log);
+        descriptorFile = file;
+        lastModified = file.lastModified();
+        length = file.length();
+        return result;
+    }
+
+    private static Result read(File file, Schema schema, PluginValidationLog log) {
+        Result result = new Result();
+        try (InputStream in = Files.newInputStream(file.toPath())) {
+            XMLStreamReader reader = INPUT_FACTORY.createXMLStreamReader(in);
+            DescriptorReader descriptorReader = new DescriptorReader(reader, result);
+            try {
+                if (schema != null) {
+                    Validator validator = schema.newValidator();
+                    validator.setErrorHandler(new PluginDescriptorErrorHandler(log));
+                    validator.validate(new StAXSource(descriptorReader));
+                } else {
+                    while (descriptorReader.hasNext()) {
+                        descriptorReader.next();
+                    }
+                }
+            }
+            finally {
+                reader.close();
+            }
+        }
+        catch (SAXException e) {
+            throw new GradleException("Failure validating descriptor", e);
+        }
+        catch (IOException | XMLStreamException e) {
+            throw new GradleException("Failure parsing descriptor", e);
+        }
+        return result;
+    }
+
+    private static XMLInputFactory createInputFactory() {
+        XMLInputFactory factory = XMLInputFactory.newInstance();
+        factory.setProperty(XMLInputFactory.IS_NAMESPACE_AWARE, true);
+        factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+        return factory;
+    }
+
+    /**
+     * Records the values of interest as events are pulled from the underlying reader.
+     */
+    private static class DescriptorReader extends StreamReaderDelegate {
+        private final Result result;
+        private final Deque<String> path = new ArrayDeque<>();
+        private final StringBuilder text = new StringBuilder();
+
+        DescriptorReader(XMLStreamReader reader, Result result) {
+            super(reader);
+            this.result = result;
+        }
+
+        @Override
+        public int next() throws XMLStreamException {
+            int event = super.next();
+            switch (event) {
+                case XMLStreamConstants.START_ELEMENT:
+                    String name = getLocalName();
+                    path.addLast(path.isEmpty() ? "" : (path.size() == 1 ? name : path.peekLast() + "/" + name));
+                    text.setLength(0);
+                    if ("include".equals(name)) {
+                        String file = getAttributeValue(null, "name");
+                        if (file != null) {
+                            result.executableFiles.add(file);
+                        }
+                    }
+                    break;
+                case XMLStreamConstants.CHARACTERS:
+                case XMLStreamConstants.CDATA:
+                case XMLStreamConstants.SPACE:
+                    text.append(getTextCharacters(), getTextStart(), getTextLength());
+                    break;
+                case XMLStreamConstants.END_ELEMENT:
+                    String elementPath = path.removeLast();
+                    if (elementPath.startsWith("info/")) {
+                        result.values.merge(elementPath, text.toString(), String::concat);
+                    }
+                    text.setLength(0);
+                    break;
+                default:
+                    break;
+            }
+            return event;
+        }
+    }
+
+    public static class Result {
+        private final Map<String, String> values = new HashMap<>();
+        private final List<String> executableFiles = new ArrayList<>();
+
+        /**
+         * @param path the path of the element below the root element, for example {@code info/vendor/name}
+         * @return the text of the element, or an empty string if the element is missing
+         */
+        public String getValue(String path) {
+            return values.getOrDefault(path, "");
+        }
+
+        /**
+         * @return the names of the executable files in the order they appear in the descriptor
+         */
+        public List<String> getExecutableFiles() {
+            return Collections.unmodifiableList(executableFiles);
+        }
+    }
+}
@@ -0,0 +1,80 @@
+/*
+ * Copyright 2022 Rod MacKenzie
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.rodm.teamcity.internal;
+
+import org.gradle.api.GradleException;
+import org.gradle.api.file.RegularFileProperty;
+import org.gradle.api.provider.Property;
+import org.gradle.workers.WorkAction;
+import org.gradle.workers.WorkParameters;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Enumeration;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/**
+ * Validates the plugin descriptor against its schema, and optionally checks the descriptor values are not
+ * empty and the executable files listed by the descriptor are in the plugin archive.
+ */
+public abstract class PluginDescriptorValidationWork implements WorkAction<PluginDescriptorValidationWork.Parameters> {
+
+    public interface Parameters extends WorkParameters {
+        Property<String> getTaskPath();
+        RegularFileProperty getDescriptor();
+        Property<String> getSchema();
+        Property<PluginSchemaService> getSchemaService();
+        Property<Boolean> getCheckContents();
+        RegularFileProperty getArchive();
+        RegularFileProperty getResultFile();
+    }
+
+    @Override
+    public void execute() {
+        Parameters parameters = getParameters();
+        File descriptor = parameters.getDescriptor().get().getAsFile();
+        PluginValidationLog log = new PluginValidationLog(parameters.getTaskPath().get(), null);
+        PluginDescriptorValidation validation = new PluginDescriptorValidation(parameters.getSchema().getOrNull(),
+            parameters.getSchemaService().isPresent() ? parameters.getSchemaService() : null);
+        PluginDescriptorValidation.Result result = validation.validate(descriptor, log);
+        if (parameters.getCheckContents().getOrElse(false)) {
+            new PluginDescriptorContentsValidationAction().validate(result, log);
+        }
+        if (parameters.getArchive().isPresent()) {
+            FileCollectorAction files = archiveFiles(parameters.getArchive().get().getAsFile());
+            new PluginExecutableFilesValidationAction(files).validate(result, log);
+        }
+        PluginValidationResult.write(parameters.getResultFile().get().getAsFile(), descriptor.getName(), log.getMessages());
+    }
+
+    private static FileCollectorAction archiveFiles(File archive) {
+        FileCollectorAction files = new FileCollectorAction();
+        try (ZipFile zip = new ZipFile(archive)) {
+            Enumeration<? extends ZipEntry> entries = zip.entries();
+            while (entries.hasMoreElements()) {
+                ZipEntry entry = entries.nextElement();
+                if (!entry.isDirectory()) {
+                    files.add(entry.getName());
+                }
+            }
+        }
+        catch (IOException e) {
+            throw new GradleException("Failure reading plugin archive " + archive.getName(), e);
+        }
+        return files;
+    }
+}
@@ -0,0 +1,61 @@
+/*
+ * Copyright 2022 Rod MacKenzie
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.rodm.teamcity.internal;
+
+import org.xml.sax.EntityResolver;
+import org.xml.sax.InputSource;
+
+import java.io.InputStream;
+import java.io.StringReader;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Resolves the DTDs and schemas referenced by plugin definition and descriptor files from a catalog of
+ * resources bundled with the plugin. Entities that are not in the catalog resolve to an empty document,
+ * so parsing never fetches anything over the network.
+ */
+public class PluginEntityResolver implements EntityResolver {
+
+    public static final PluginEntityResolver INSTANCE = new PluginEntityResolver();
+
+    private static final String SPRING_BEANS_DTD = "/dtd/spring-beans.dtd";
+
+    private static final Map<String, String> PUBLIC_IDS = new HashMap<>();
+    private static final Map<String, String> SYSTEM_NAMES = new HashMap<>();
+
+    static {
+        PUBLIC_IDS.put("-//SPRING//DTD BEAN//EN", SPRING_BEANS_DTD);
+        PUBLIC_IDS.put("-//SPRING//DTD BEAN 2.0//EN", SPRING_BEANS_DTD);
+        SYSTEM_NAMES.put("spring-beans.dtd", SPRING_BEANS_DTD);
+        SYSTEM_NAMES.put("spring-beans-2.0.dtd", SPRING_BEANS_DTD);
+        SYSTEM_NAMES.put("teamcity-server-plugin-descriptor.xsd", "/schema/teamcity-server-plugin-descriptor.xsd");
+        SYSTEM_NAMES.put("teamcity-agent-plugin-descriptor.xsd", "/schema/teamcity-agent-plugin-descriptor.xsd");
+    }
+
+    @Override
+    public InputSource resolveEntity(String publicId, String systemId) {
+        String resource = publicId != null ? PUBLIC_IDS.get(publicId) : null;
+        if (resource == null && systemId != null) {
+            resource = SYSTEM_NAMES.get(systemId.substring(systemId.lastIndexOf('/') + 1));
+        }
+        InputStream in = resource != null ? PluginEntityResolver.class.getResourceAsStream(resource) : null;
+        InputSource source = in != null ? new InputSource(in) : new InputSource(new StringReader(""));
+        source.setPublicId(publicId);
+        source.setSystemId(systemId);
+        return source;
+    }
+}
@@ -15,57 +15,21 @@
  */
 package com.github.rodm.teamcity.internal;
 
-import groovy.util.Node;
-import groovy.xml.XmlParser;
-import org.gradle.api.Action;
-import org.gradle.api.GradleException;
-import org.gradle.api.Task;
-import org.gradle.api.file.FileCopyDetails;
-import org.xml.sax.SAXException;
-
-import java.io.File;
-import java.io.IOException;
-import java.util.List;
-import java.util.Set;
-import java.util.stream.Collectors;
-
-public class PluginExecutableFilesValidationAction implements Action<Task> {
+public class PluginExecutableFilesValidationAction {
 
     private static final String MISSING_EXECUTABLE_FILE_WARNING = "{}: Executable file {} is missing.";
 
-    private final Set<FileCopyDetails> files;
+    private final FileCollectorAction files;
 
-    public PluginExecutableFilesValidationAction(Set<FileCopyDetails> files) {
+    public PluginExecutableFilesValidationAction(FileCollectorAction files) {
         this.files = files;
     }
 
-    @Override
-    public void execute(Task task) {
-        AbstractPluginTask pluginTask = (AbstractPluginTask) task;
-        List<String> paths = files.stream()
-            .map(FileCopyDetails::getPath)
-            .collect(Collectors.toList());
-
-        List<String> executableFiles = getExecutableFiles(pluginTask.getDescriptor().get().getAsFile());
-        for (String executableFile : executableFiles) {
-            if (!paths.contains(executableFile)) {
-                task.getLogger().warn(MISSING_EXECUTABLE_FILE_WARNING, task.getPath(), executableFile);
+    public void validate(PluginDescriptorValidation.Result descriptor, PluginValidationLog log) {
+        for (String executableFile : descriptor.getExecutableFiles()) {
+            if (!files.contains(executableFile)) {
+                log.warn(MISSING_EXECUTABLE_FILE_WARNING, log.getPath(), executableFile);
             }
         }
     }
-
-    public static List<String> getExecutableFiles(File descriptorFile) {
-        XmlParser parser = ValidationSupport.createXmlParser();
-        try {
-            Node descriptor = parser.parse(descriptorFile);
-            List<Node> nodes = descriptor.breadthFirst();
-            return nodes.stream()
-                .filter(node -> node.name().equals("include"))
-                .map(node -> (String) node.attribute("name"))
-                .collect(Collectors.toList());
-        }
-        catch (IOException | SAXException e) {
-            throw new GradleException("Failure parsing descriptor", e);
-        }
-    }
 }
@@ -0,0 +1,87 @@
+/*
+ * Copyright 2022 Rod MacKenzie
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.rodm.teamcity.internal;
+
+import org.gradle.api.GradleException;
+import org.gradle.api.Project;
+import org.gradle.api.provider.Provider;
+import org.gradle.api.services.BuildService;
+import org.gradle.api.services.BuildServiceParameters;
+import org.xml.sax.SAXException;
+import org.xml.sax.SAXNotRecognizedException;
+import org.xml.sax.SAXNotSupportedException;
+
+import javax.xml.XMLConstants;
+import javax.xml.validation.Schema;
+import javax.xml.validation.SchemaFactory;
+import java.net.URL;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Build service providing the compiled plugin descriptor schemas bundled with the plugin. Each schema is compiled
+ * once and shared by all projects and tasks, a {@link Schema} is thread-safe and only the validators created from
+ * it are not. The schemas never change, so they are kept for as long as the plugin classes are loaded, which
+ * allows a Gradle daemon to reuse them across builds.
+ */
+public abstract class PluginSchemaService implements BuildService<BuildServiceParameters.None> {
+
+    public static final String SERVICE_NAME = "teamcityPluginSchemas";
+
+    private static final Map<String, Schema> SCHEMAS = new ConcurrentHashMap<>();
+
+    public static Provider<PluginSchemaService> register(Project project) {
+        return project.getGradle().getSharedServices()
+            .registerIfAbsent(SERVICE_NAME, PluginSchemaService.class, spec -> {});
+    }
+
+    /**
+     * @param name the path of the schema relative to the {@code /schema} resource directory
+     * @return the compiled schema
+     */
+    public Schema getSchema(String name) {
+        return schema(name);
+    }
+
+    static Schema schema(String name) {
+        return SCHEMAS.computeIfAbsent(name, PluginSchemaService::compile);
+    }
+
+    private static Schema compile(String name) {
+        URL url = PluginSchemaService.class.getResource("/schema/" + name);
+        if (url == null) {
+            throw new GradleException("Plugin descriptor schema " + name + " not found");
+        }
+        try {
+            SchemaFactory factory = SchemaFactory.newInstance(XMLConstants.W3C_XML_SCHEMA_NS_URI);
+            setProperty(factory, XMLConstants.ACCESS_EXTERNAL_SCHEMA);
+            setProperty(factory, XMLConstants.ACCESS_EXTERNAL_DTD);
+            return factory.newSchema(url);
+        }
+        catch (SAXException e) {
+            throw new GradleException("Failure compiling plugin descriptor schema " + name, e);
+        }
+    }
+
+    private static void setProperty(SchemaFactory factory, String uri) {
+        try {
+            factory.setProperty(uri, "");
+        }
+        catch (SAXNotRecognizedException | SAXNotSupportedException e) {
+            // ignore
+        }
+    }
+}
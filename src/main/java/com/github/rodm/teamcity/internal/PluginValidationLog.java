@@ -0,0 +1,60 @@
+/*
+ * Copyright 2022 Rod MacKenzie
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.rodm.teamcity.internal;
+
+import org.gradle.api.logging.Logger;
+import org.slf4j.helpers.FormattingTuple;
+import org.slf4j.helpers.MessageFormatter;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Collects the warnings of the plugin validations. The validations run in workers, the warnings are collected
+ * and reported by the task, or are logged straight away when a logger is given.
+ */
+public class PluginValidationLog {
+
+    private final String path;
+    private final Logger logger;
+    private final List<String> messages = new ArrayList<>();
+
+    /**
+     * @param path the path of the task the validation is performed for
+     * @param logger the logger the warnings are written to, or null to only collect the warnings
+     */
+    public PluginValidationLog(String path, Logger logger) {
+        this.path = path;
+        this.logger = logger;
+    }
+
+    public String getPath() {
+        return path;
+    }
+
+    public void warn(String format, Object... args) {
+        FormattingTuple message = MessageFormatter.arrayFormat(format, args);
+        messages.add(message.getMessage());
+        if (logger != null) {
+            logger.warn(message.getMessage(), message.getThrowable());
+        }
+    }
+
+    public List<String> getMessages() {
+        return Collections.unmodifiableList(messages);
+    }
+}
@@ -0,0 +1,129 @@
+/*
+ * Copyright 2022 Rod MacKenzie
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.rodm.teamcity.internal;
+
+import org.gradle.api.GradleException;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The warnings of validating one plugin file, kept between builds so that only the files that changed need
+ * to be validated again. The first line of a result file is the name of the validated file, followed by a
+ * line for each warning.
+ */
+public class PluginValidationResult {
+
+    private final String source;
+    private final List<String> messages;
+
+    public PluginValidationResult(String source, List<String> messages) {
+        this.source = source;
+        this.messages = messages;
+    }
+
+    public String getSource() {
+        return source;
+    }
+
+    public List<String> getMessages() {
+        return messages;
+    }
+
+    public static void write(File file, String source, List<String> messages) {
+        List<String> lines = new ArrayList<>();
+        lines.add(source);
+        for (String message : messages) {
+            lines.add(message.replace('\r', ' ').replace('\n', ' '));
+        }
+        try {
+            Files.createDirectories(file.getParentFile().toPath());
+            Files.write(file.toPath(), lines, StandardCharsets.UTF_8);
+        }
+        catch (IOException e) {
+            throw new GradleException("Failure writing validation result " + file.getName(), e);
+        }
+    }
+
+    public static PluginValidationResult read(File file) {
+        try {
+            List<String> lines = Files.readAllLines(file.toPath(), StandardCharsets.UTF_8);
+            if (lines.isEmpty()) {
+                return new PluginValidationResult(file.getName(), new ArrayList<>());
+            }
+            return new PluginValidationResult(lines.get(0), new ArrayList<>(lines.subList(1, lines.size())));
+        }
+        catch (IOException e) {
+            throw new GradleException("Failure reading validation result " + file.getName(), e);
+        }
+    }
+
+    /**
+     * Writes the results as a JSON document listing each warning with the file it was found in.
+     */
+    public static void writeReport(Writer writer, String taskPath, List<PluginValidationResult> results, boolean failed) throws IOException {
+        writer.write("{\n");
+        writer.write("  \"task\": " + quote(taskPath) + ",\n");
+        writer.write("  \"failed\": " + failed + ",\n");
+        writer.write("  \"issues\": [");
+        String separator = "\n";
+        for (PluginValidationResult result : results) {
+            for (String message : result.getMessages()) {
+                writer.write(separator);
+                writer.write("    { \"source\": " + quote(result.getSource()) + ", \"message\": " + quote(message) + " }");
+                separator = ",\n";
+            }
+        }
+        writer.write(separator.equals("\n") ? "]\n" : "\n  ]\n");
+        writer.write("}\n");
+    }
+
+    private static String quote(String value) {
+        StringBuilder quoted = new StringBuilder("\"");
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '"':
+                    quoted.append("\\\"");
+                    break;
+                case '\\':
+                    quoted.append("\\\\");
+                    break;
+                case '\n':
+                    quoted.append("\\n");
+                    break;
+                case '\r':
+                    quoted.append("\\r");
+                    break;
+                case '\t':
+                    quoted.append("\\t");
+                    break;
+                default:
+                    if (c < 0x20) {
+                        quoted.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        quoted.append(c);
+                    }
+            }
+        }
+        return quoted.append('"').toString();
+    }
+}
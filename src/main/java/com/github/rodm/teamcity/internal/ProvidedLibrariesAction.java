@@ -0,0 +1,122 @@
+/*
+ * Copyright 2022 Rod MacKenzie
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.rodm.teamcity.internal;
+
+import com.github.rodm.teamcity.tasks.ProcessLibraries;
+import org.gradle.api.Action;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * Excludes libraries from the server section of the plugin archive that are already provided by the TeamCity
+ * server. Libraries are matched by the group and name of their module, or by name, ignoring the version, when
+ * the module of a library is not known. A library is only excluded when the server provides the same version.
+ */
+public class ProvidedLibrariesAction implements Action<ProcessLibraries> {
+
+    static final String EXCLUDED_LIBRARY = "{}: Excluding {}, provided by the TeamCity server.";
+    static final String DIFFERENT_VERSION = "{}: Keeping {}, the TeamCity server provides {}.";
+    static final String EXCLUDED_LIBRARIES_SUMMARY = "{}: Excluded {} libraries provided by the TeamCity server, saving {} bytes.";
+
+    private final Set<File> excluded = new LinkedHashSet<>();
+
+    @Override
+    public void execute(ProcessLibraries task) {
+        excluded.clear();
+        if (!task.getExcludeProvidedLibraries().get()) {
+            return;
+        }
+
+        Map<String, List<Module>> provided = new HashMap<>();
+        task.getProvidedModules().get().forEach(id -> {
+            Module module = Module.parse(id);
+            provided.computeIfAbsent(module.name, name -> new ArrayList<>()).add(module);
+        });
+        Map<File, String> modules = task.getModules().get();
+        long bytes = 0;
+        for (File file : task.getLibraries().getFiles()) {
+            if (!file.isFile()) {
+                continue;
+            }
+            Module library = Module.parse(modules.getOrDefault(file, file.getName()));
+            List<Module> matches = provided.getOrDefault(library.name, Collections.emptyList()).stream()
+                .filter(library::isSameLibrary)
+                .collect(Collectors.toList());
+            if (matches.isEmpty()) {
+                continue;
+            }
+            if (matches.stream().anyMatch(module -> module.version.equals(library.version))) {
+                excluded.add(file);
+                bytes += file.length();
+                task.getLogger().info(EXCLUDED_LIBRARY, task.getPath(), file.getName());
+            } else {
+                String versions = matches.stream().map(module -> module.id).collect(Collectors.joining(", "));
+                task.getLogger().warn(DIFFERENT_VERSION, task.getPath(), file.getName(), versions);
+            }
+        }
+        if (!excluded.isEmpty()) {
+            task.getLogger().lifecycle(EXCLUDED_LIBRARIES_SUMMARY, task.getPath(), excluded.size(), bytes);
+        }
+    }
+
+    /**
+     * @return the libraries excluded from the archive
+     */
+    public Set<File> getExcludedLibraries() {
+        return excluded;
+    }
+
+    /**
+     * A library identified by the group, name and version of its module, or by the name and version in its
+     * file name when the module is not known.
+     */
+    private static class Module {
+        private final String id;
+        private final String group;
+        private final String name;
+        private final String version;
+
+        private Module(String id, String group, String name, String version) {
+            this.id = id;
+            this.group = group;
+            this.name = name;
+            this.version = version;
+        }
+
+        static Module parse(String id) {
+            String[] coordinates = id.split(":");
+            if (coordinates.length == 3) {
+                return new Module(id, coordinates[0], coordinates[1], coordinates[2]);
+            }
+            return new Module(id, null, LibraryAnalyzer.libraryName(id), LibraryAnalyzer.libraryVersion(id));
+        }
+
+        boolean isSameLibrary(Module other) {
+            if (group != null && other.group != null) {
+                return group.equals(other.group) && name.equals(other.name);
+            }
+            return name.equals(other.name);
+        }
+    }
+}
@@ -0,0 +1,84 @@
+/*
+ * Copyright 2022 Rod MacKenzie
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.rodm.teamcity.internal;
+
+import com.github.rodm.teamcity.tasks.ProcessLibraries;
+import org.gradle.api.Action;
+import org.gradle.api.GradleException;
+import org.gradle.api.specs.Spec;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import static com.github.rodm.teamcity.TeamCityAgentPlugin.PLUGIN_DEFINITION_PATTERN;
+
+/**
+ * Replaces the libraries of an agent plugin with copies containing only the classes reachable from the
+ * plugin, see {@link LibraryShrinker}, and reports the size of the libraries before and after. The copies are
+ * written to the destination directory of the task. Libraries already excluded from the archive are not shrunk.
+ */
+public class ShrinkLibrariesAction implements Action<ProcessLibraries> {
+
+    static final String SHRUNK_LIBRARY = "{}: Shrunk {} from {} to {} bytes.";
+    static final String SHRUNK_LIBRARIES_SUMMARY = "{}: Shrunk agent libraries from {} to {} bytes.";
+
+    private final Spec<File> excludedLibraries;
+    private final Set<File> excluded = new LinkedHashSet<>();
+
+    /**
+     * @param excludedLibraries matches the libraries excluded from the archive by other actions
+     */
+    public ShrinkLibrariesAction(Spec<File> excludedLibraries) {
+        this.excludedLibraries = excludedLibraries;
+    }
+
+    @Override
+    public void execute(ProcessLibraries task) {
+        excluded.clear();
+        if (!task.getShrinkLibraries().get()) {
+            return;
+        }
+
+        List<File> libraries = task.getLibraries().getFiles().stream()
+            .filter(file -> !excludedLibraries.isSatisfiedBy(file))
+            .collect(Collectors.toList());
+        LibraryShrinker shrinker = new LibraryShrinker(PLUGIN_DEFINITION_PATTERN, task.getShrinkKeep().get());
+        LibraryShrinker.Result result;
+        try {
+            result = shrinker.shrink(libraries, task.getDestinationDir().get().getAsFile());
+        }
+        catch (IOException e) {
+            throw new GradleException("Failure shrinking agent libraries", e);
+        }
+
+        result.getShrunkJars().forEach((original, copy) -> {
+            excluded.add(original);
+            task.getLogger().info(SHRUNK_LIBRARY, task.getPath(), original.getName(), original.length(), copy.length());
+        });
+        task.getLogger().lifecycle(SHRUNK_LIBRARIES_SUMMARY, task.getPath(), result.getOriginalSize(), result.getShrunkSize());
+    }
+
+    /**
+     * @return the libraries replaced by a shrunk copy
+     */
+    public Set<File> getExcludedLibraries() {
+        return excluded;
+    }
+}
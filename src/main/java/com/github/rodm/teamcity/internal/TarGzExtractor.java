@@ -0,0 +1,490 @@
+/*
+ * Copyright 2022 Rod MacKenzie
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.rodm.teamcity.internal;
+
+import org.gradle.api.logging.Logger;
+import org.gradle.api.logging.Logging;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystemException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.OpenOption;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.nio.file.attribute.PosixFilePermission;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Extracts a tar.gz archive into a directory, replacing the top-level directory of each entry with the target
+ * directory. The archive is read and decompressed in a single pass, the contents of small files are handed to
+ * worker threads that write them, while large files are written by the reading thread. Permissions, modification
+ * times and symbolic links are preserved, hard links are extracted as copies of the file they link to.
+ *
+ * <p>Symbolic links to paths outside the target directory are skipped, as are entries below a symbolic link, so
+ * the archive cannot write outside the target directory. Where symbolic links cannot be created the file linked
+ * to is copied, or the link is skipped with a warning if it is not a file extracted earlier.
+ *
+ * <p>A marker file containing the SHA-256 digest of the archive is written to the target directory after the
+ * archive is extracted, an archive is not extracted again if the marker matches its digest.
+ */
+public class TarGzExtractor {
+
+    private static final Logger LOGGER = Logging.getLogger(TarGzExtractor.class);
+
+    public static final String MARKER_FILE = ".teamcity-install";
+
+    private static final int BLOCK_SIZE = 512;
+    private static final int MAX_QUEUED_FILE_SIZE = 4 * 1024 * 1024;
+    private static final int MAX_QUEUED_BYTES = 64 * 1024 * 1024;
+
+    private static final boolean POSIX = FileSystems.getDefault().supportedFileAttributeViews().contains("posix");
+
+    private static final OpenOption[] WRITE_OPTIONS = {
+        StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE, LinkOption.NOFOLLOW_LINKS
+    };
+
+    private final int threads;
+
+    public TarGzExtractor() {
+        this(Runtime.getRuntime().availableProcessors());
+    }
+
+    public TarGzExtractor(int threads) {
+        this.threads = Math.max(1, threads);
+    }
+
+    /**
+     * Returns true if the target directory contains the marker written after extracting the archive.
+     */
+    public boolean isExtracted(File archive, File target) throws IOException {
+        File marker = new File(target, MARKER_FILE);
+        if (!marker.isFile()) {
+            return false;
+        }
+        String digest = new String(Files.readAllBytes(marker.toPath()), StandardCharsets.UTF_8).trim();
+        return digest.equals(LibraryAnalyzer.digest(archive));
+    }
+
+    /**
+     * Extracts the archive into the target directory and writes the install marker.
+     */
+    public void extract(File archive, File target) throws IOException {
+        Path targetPath = target.toPath().toAbsolutePath().normalize();
+        Files.createDirectories(targetPath);
+        Path marker = targetPath.resolve(MARKER_FILE);
+        Files.deleteIfExists(marker);
+
+        MessageDigest digest = sha256();
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        EntryWriter writer = new EntryWriter(executor);
+        List<Link> hardLinks = new ArrayList<>();
+        Set<Path> directories = new HashSet<>();
+        try (DigestInputStream raw = new DigestInputStream(Files.newInputStream(archive.toPath()), digest);
+             InputStream gzip = new GZIPInputStream(new BufferedInputStream(raw, 64 * 1024), 64 * 1024)) {
+            DataInputStream in = new DataInputStream(new BufferedInputStream(gzip, 64 * 1024));
+            TarHeader header;
+            while ((header = TarHeader.read(in)) != null) {
+                Path path = resolve(targetPath, header.name);
+                if (path != null && isBelowSymbolicLink(targetPath, path, directories)) {
+                    LOGGER.warn("Skipping {}, the entry is below a symbolic link", header.name);
+                    path = null;
+                }
+                char type = path == null ? TarHeader.SKIPPED : header.type;
+                switch (type) {
+                    case TarHeader.DIRECTORY:
+                        Files.createDirectories(path);
+                        break;
+                    case TarHeader.SYMLINK:
+                        createSymbolicLink(targetPath, path, header);
+                        directories.remove(path);
+                        break;
+                    case TarHeader.HARD_LINK:
+                        Path linkTarget = resolve(targetPath, header.linkName);
+                        if (linkTarget != null) {
+                            hardLinks.add(new Link(path, linkTarget));
+                        }
+                        break;
+                    case TarHeader.FILE:
+                        writer.write(in, path, header);
+                        break;
+                    default:
+                        skip(in, header.size);
+                }
+                skip(in, padding(header.size));
+            }
+            writer.await();
+            byte[] buffer = new byte[64 * 1024];
+            while (gzip.read(buffer) != -1) {
+                // read the remaining archive to include it in the digest
+            }
+        }
+        finally {
+            executor.shutdownNow();
+        }
+
+        for (Link link : hardLinks) {
+            if (isBelowSymbolicLink(targetPath, link.path, directories) || isBelowSymbolicLink(targetPath, link.target, directories)) {
+                LOGGER.warn("Skipping hard link {}, the link or its target is below a symbolic link", link.path);
+                continue;
+            }
+            Files.createDirectories(link.path.getParent());
+            Files.copy(link.target, link.path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.COPY_ATTRIBUTES);
+        }
+        Files.write(marker, hex(digest.digest()).getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Returns the path of the entry with the top-level directory replaced by the target directory, or null
+     * for the top-level directory itself and for entries outside the target directory.
+     */
+    private static Path resolve(Path target, String name) {
+        int index = name.indexOf('/');
+        if (index < 0 || index == name.length() - 1) {
+            return null;
+        }
+        Path path = target.resolve(name.substring(index + 1)).normalize();
+        return path.startsWith(target) && !path.equals(target) ? path : null;
+    }
+
+    /**
+     * Returns true if a directory between the target directory and the path is a symbolic link. The directories
+     * found not to be links are remembered, the set is updated when a link replaces one of them.
+     */
+    private static boolean isBelowSymbolicLink(Path target, Path path, Set<Path> directories) {
+        for (Path parent = path.getParent(); !parent.equals(target) && !directories.contains(parent); parent = parent.getParent()) {
+            if (Files.isSymbolicLink(parent)) {
+                return true;
+            }
+            if (Files.isDirectory(parent, LinkOption.NOFOLLOW_LINKS)) {
+                directories.add(parent);
+            }
+        }
+        return false;
+    }
+
+    private static void createSymbolicLink(Path target, Path path, TarHeader header) throws IOException {
+        Path link = path.getFileSystem().getPath(header.linkName);
+        Path linked = path.getParent().resolve(link).normalize();
+        if (link.isAbsolute() || !linked.startsWith(target)) {
+            LOGGER.warn("Skipping symbolic link {}, the link target {} is outside the target directory", header.name, header.linkName);
+            return;
+        }
+        Files.createDirectories(path.getParent());
+        Files.deleteIfExists(path);
+        try {
+            Files.createSymbolicLink(path, link);
+        }
+        catch (UnsupportedOperationException | FileSystemException e) {
+            if (Files.isRegularFile(linked)) {
+                Files.copy(linked, path, StandardCopyOption.COPY_ATTRIBUTES);
+            } else {
+                LOGGER.warn("Skipping symbolic link {}, the link could not be created: {}", header.name, e.getMessage());
+            }
+        }
+    }
+
+    private static void skip(DataInputStream in, long count) throws IOException {
+        long remaining = count;
+        while (remaining > 0) {
+            long skipped = in.skip(remaining);
+            if (skipped <= 0) {
+                if (in.read() == -1) {
+                    throw new EOFException("Unexpected end of archive");
+                }
+                skipped = 1;
+            }
+            remaining -= skipped;
+        }
+    }
+
+    private static long padding(long size) {
+        long remainder = size % BLOCK_SIZE;
+        return remainder == 0 ? 0 : BLOCK_SIZE - remainder;
+    }
+
+    private static void copy(InputStream in, OutputStream out, long size) throws IOException {
+        byte[] buffer = new byte[64 * 1024];
+        long remaining = size;
+        while (remaining > 0) {
+            int count = in.read(buffer, 0, (int) Math.min(buffer.length, remaining));
+            if (count == -1) {
+                throw new EOFException("Unexpected end of archive");
+            }
+            out.write(buffer, 0, count);
+            remaining -= count;
+        }
+    }
+
+    private static void setAttributes(Path path, TarHeader header) throws IOException {
+        if (POSIX) {
+            Files.setPosixFilePermissions(path, permissions(header.mode));
+        } else if ((header.mode & 0100) != 0) {
+            path.toFile().setExecutable(true);
+        }
+        Files.setLastModifiedTime(path, FileTime.from(header.modTime, TimeUnit.SECONDS));
+    }
+
+    private static Set<PosixFilePermission> permissions(int mode) {
+        Set<PosixFilePermission> permissions = EnumSet.noneOf(PosixFilePermission.class);
+        PosixFilePermission[] values = PosixFilePermission.values();
+        for (int i = 0; i < values.length; i++) {
+            if ((mode & (0400 >> i)) != 0) {
+                permissions.add(values[i]);
+            }
+        }
+        return permissions;
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        }
+        catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static String hex(byte[] bytes) {
+        StringBuilder hex = new StringBuilder();
+        for (byte b : bytes) {
+            hex.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+        }
+        return hex.toString();
+    }
+
+    /**
+     * Writes files, small files are queued to the worker threads up to a limit on the bytes held in memory.
+     */
+    private static class EntryWriter {
+        private final ExecutorService executor;
+        private final Semaphore queuedBytes = new Semaphore(MAX_QUEUED_BYTES);
+        private final AtomicReference<IOException> failure = new AtomicReference<>();
+
+        EntryWriter(ExecutorService executor) {
+            this.executor = executor;
+        }
+
+        void write(DataInputStream in, Path path, TarHeader header) throws IOException {
+            checkFailure();
+            Files.createDirectories(path.getParent());
+            if (Files.isSymbolicLink(path)) {
+                // the file replaces the link, the file linked to is not written
+                Files.delete(path);
+            }
+            if (header.size > MAX_QUEUED_FILE_SIZE) {
+                try (OutputStream out = Files.newOutputStream(path, WRITE_OPTIONS)) {
+                    copy(in, out, header.size);
+                }
+                setAttributes(path, header);
+                return;
+            }
+
+            byte[] content = new byte[(int) header.size];
+            in.readFully(content);
+            int permits = Math.max(1, content.length);
+            queuedBytes.acquireUninterruptibly(permits);
+            executor.execute(() -> {
+                try {
+                    Files.write(path, content, WRITE_OPTIONS);
+                    setAttributes(path, header);
+                }
+                catch (IOException e) {
+                    failure.compareAndSet(null, e);
+                }
+                finally {
+                    queuedBytes.release(permits);
+                }
+            });
+        }
+
+        void await() throws IOException {
+            queuedBytes.acquireUninterruptibly(MAX_QUEUED_BYTES);
+            queuedBytes.release(MAX_QUEUED_BYTES);
+            checkFailure();
+        }
+
+        private void checkFailure() throws IOException {
+            IOException e = failure.get();
+            if (e != null) {
+                throw new IOException("Failure extracting archive", e);
+            }
+        }
+    }
+
+    private static class Link {
+        private final Path path;
+        private final Path target;
+
+        Link(Path path, Path target) {
+            this.path = path;
+            this.target = target;
+        }
+    }
+
+    /**
+     * A tar entry header, GNU long names and pax extended headers are applied to the following entry.
+     */
+    static class TarHeader {
+        static final char FILE = '0';
+        static final char HARD_LINK = '1';
+        static final char SYMLINK = '2';
+        static final char DIRECTORY = '5';
+        static final char SKIPPED = 0;
+
+        private static final char GNU_LONG_NAME = 'L';
+        private static final char GNU_LONG_LINK = 'K';
+        private static final char PAX_HEADER = 'x';
+
+        String name;
+        String linkName;
+        char type;
+        int mode;
+        long size;
+        long modTime;
+
+        static TarHeader read(DataInputStream in) throws IOException {
+            String longName = null;
+            String longLink = null;
+            Long paxSize = null;
+            byte[] block = new byte[BLOCK_SIZE];
+            while (true) {
+                try {
+                    in.readFully(block);
+                }
+                catch (EOFException e) {
+                    return null;
+                }
+                if (isZero(block)) {
+                    return null;
+                }
+                TarHeader header = new TarHeader();
+                header.name = string(block, 0, 100);
+                header.mode = (int) number(block, 100, 8);
+                header.size = number(block, 124, 12);
+                header.modTime = number(block, 136, 12);
+                header.type = block[156] == 0 ? FILE : (char) block[156];
+                header.linkName = string(block, 157, 100);
+                String prefix = string(block, 345, 155);
+                if (string(block, 257, 5).equals("ustar") && !prefix.isEmpty()) {
+                    header.name = prefix + "/" + header.name;
+                }
+
+                if (header.type == GNU_LONG_NAME || header.type == GNU_LONG_LINK || header.type == PAX_HEADER) {
+                    byte[] data = new byte[(int) header.size];
+                    in.readFully(data);
+                    skip(in, padding(header.size));
+                    if (header.type == GNU_LONG_NAME) {
+                        longName = string(data, 0, data.length);
+                    } else if (header.type == GNU_LONG_LINK) {
+                        longLink = string(data, 0, data.length);
+                    } else {
+                        for (String record : new String(data, StandardCharsets.UTF_8).split("\n")) {
+                            int space = record.indexOf(' ');
+                            int equals = record.indexOf('=');
+                            if (space < 0 || equals < space) {
+                                continue;
+                            }
+                            String key = record.substring(space + 1, equals);
+                            String value = record.substring(equals + 1);
+                            if (key.equals("path")) {
+                                longName = value;
+                            } else if (key.equals("linkpath")) {
+                                longLink = value;
+                            } else if (key.equals("size")) {
+                                paxSize = Long.parseLong(value);
+                            }
+                        }
+                    }
+                    continue;
+                }
+                if (header.type == '7') {
+                    header.type = FILE;
+                }
+                if (longName != null) {
+                    header.name = longName;
+                }
+                if (longLink != null) {
+                    header.linkName = longLink;
+                }
+                if (paxSize != null) {
+                    header.size = paxSize;
+                }
+                return header;
+            }
+        }
+
+        private static boolean isZero(byte[] block) {
+            for (byte b : block) {
+                if (b != 0) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private static String string(byte[] bytes, int offset, int length) {
+            int end = offset;
+            while (end < offset + length && bytes[end] != 0) {
+                end++;
+            }
+            return new String(bytes, offset, end - offset, StandardCharsets.UTF_8);
+        }
+
+        private static long number(byte[] bytes, int offset, int length) {
+            if ((bytes[offset] & 0x80) != 0) {
+                long value = bytes[offset] & 0x7f;
+                for (int i = 1; i < length; i++) {
+                    value = (value << 8) | (bytes[offset + i] & 0xff);
+                }
+                return value;
+            }
+            long value = 0;
+            for (int i = offset; i < offset + length; i++) {
+                byte b = bytes[i];
+                if (b >= '0' && b <= '7') {
+                    value = (value << 3) + (b - '0');
+                } else if (b == 0 || (b == ' ' && value > 0)) {
+                    break;
+                }
+            }
+            return value;
+        }
+    }
+}
@@ -0,0 +1,81 @@
+/*
+ * Copyright 2022 Rod MacKenzie
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.rodm.teamcity.internal;
+
+import com.github.rodm.teamcity.TeamCitySettingsExtension;
+import com.github.rodm.teamcity.TeamCityVersion;
+import com.github.rodm.teamcity.ValidationMode;
+import org.gradle.api.initialization.Settings;
+import org.gradle.api.initialization.resolve.RepositoriesMode;
+import org.gradle.api.invocation.Gradle;
+import org.gradle.api.provider.Property;
+import org.gradle.api.provider.Provider;
+import org.gradle.api.services.BuildService;
+import org.gradle.api.services.BuildServiceParameters;
+import org.gradle.api.services.BuildServiceRegistration;
+
+/**
+ * Build service sharing the values configured by the TeamCity Settings plugin with every project of the build.
+ * The projects read the values from the parameters of the service registration, so a project does not need
+ * to look up the extension of the root project, and the version is parsed once for the whole build.
+ */
+public abstract class TeamCitySettingsService implements BuildService<TeamCitySettingsService.Parameters> {
+
+    public static final String SERVICE_NAME = "teamcitySettings";
+
+    public interface Parameters extends BuildServiceParameters {
+        Property<String> getVersion();
+        Property<Boolean> getAllowSnapshotVersions();
+        Property<ValidationMode> getValidateBeanDefinition();
+        Property<Boolean> getDefaultRepositories();
+        Property<Boolean> getPreferProjectRepositories();
+    }
+
+    private TeamCityVersion version;
+
+    public static Provider<TeamCitySettingsService> register(Settings settings, TeamCitySettingsExtension extension) {
+        return settings.getGradle().getSharedServices().registerIfAbsent(SERVICE_NAME, TeamCitySettingsService.class, spec -> {
+            spec.getParameters().getVersion().set(extension.getVersionProperty());
+            spec.getParameters().getAllowSnapshotVersions().set(extension.getAllowSnapshotVersionsProperty());
+            spec.getParameters().getValidateBeanDefinition().set(extension.getValidateBeanDefinitionProperty());
+            spec.getParameters().getDefaultRepositories().set(extension.getDefaultRepositoriesProperty());
+            spec.getParameters().getPreferProjectRepositories().set(settings.getDependencyResolutionManagement()
+                .getRepositoriesMode().map(mode -> mode == RepositoriesMode.PREFER_PROJECT));
+        });
+    }
+
+    /**
+     * @return the parameters of the service, or null if the TeamCity Settings plugin is not applied
+     */
+    public static Parameters findParameters(Gradle gradle) {
+        BuildServiceRegistration<?, ?> registration = gradle.getSharedServices().getRegistrations().findByName(SERVICE_NAME);
+        if (registration != null && registration.getParameters() instanceof Parameters) {
+            return (Parameters) registration.getParameters();
+        }
+        return null;
+    }
+
+    /**
+     * @return the TeamCity version configured in the settings, the version is only parsed on the first call
+     */
+    public synchronized TeamCityVersion getTeamCityVersion() {
+        if (version == null) {
+            Parameters parameters = getParameters();
+            version = TeamCityVersion.version(parameters.getVersion().get(), parameters.getAllowSnapshotVersions().getOrElse(false));
+        }
+        return version;
+    }
+}
@@ -15,6 +15,7 @@
  */
 package com.github.rodm.teamcity.internal;
 
+import groovy.util.Node;
 import groovy.xml.XmlParser;
 import org.gradle.api.GradleException;
 import org.xml.sax.SAXException;
@@ -23,21 +24,18 @@ import org.xml.sax.SAXNotSupportedException;
 
 import javax.xml.XMLConstants;
 import javax.xml.parsers.ParserConfigurationException;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
 
 public class ValidationSupport {
 
-    private static final String LOAD_EXTERNAL_DTD = "http://apache.org/xml/features/nonvalidating/load-external-dtd";
+    private static final ThreadLocal<XmlParser> PARSERS = ThreadLocal.withInitial(ValidationSupport::createXmlParser);
 
     public static XmlParser createXmlParser() {
-        return createXmlParser(false);
-    }
-
-    public static XmlParser createXmlParser(boolean offline) {
         try {
             XmlParser parser = new XmlParser(false, true, true);
-            if (offline) {
-                parser.setFeature(LOAD_EXTERNAL_DTD, false);
-            }
+            parser.setEntityResolver(PluginEntityResolver.INSTANCE);
 
             setParserProperty(parser, XMLConstants.ACCESS_EXTERNAL_DTD, "file,http");
             setParserProperty(parser, XMLConstants.ACCESS_EXTERNAL_SCHEMA, "file,http");
@@ -48,6 +46,35 @@ public class ValidationSupport {
         }
     }
 
+    /**
+     * Parses the file using a parser kept for the current thread. External entities are resolved by the
+     * {@link PluginEntityResolver}, so the network is never used.
+     */
+    public static Node parseXml(File file) throws IOException, SAXException {
+        XmlParser parser = PARSERS.get();
+        try {
+            return parser.parse(file);
+        }
+        catch (IOException | SAXException | RuntimeException e) {
+            PARSERS.remove();
+            throw e;
+        }
+    }
+
+    /**
+     * Parses the stream using a parser kept for the current thread, see {@link #parseXml(File)}.
+     */
+    public static Node parseXml(InputStream in) throws IOException, SAXException {
+        XmlParser parser = PARSERS.get();
+        try {
+            return parser.parse(in);
+        }
+        catch (IOException | SAXException | RuntimeException e) {
+            PARSERS.remove();
+            throw e;
+        }
+    }
+
     private static void setParserProperty(XmlParser parser, String uri, Object value) {
         try {
             parser.setProperty(uri, value);
@@ -16,16 +16,29 @@
 package com.github.rodm.teamcity.tasks;
 
 import com.github.rodm.teamcity.internal.AbstractPluginTask;
+import com.github.rodm.teamcity.internal.ExcludedLibrariesSpec;
 import org.gradle.api.file.ConfigurableFileCollection;
+import org.gradle.api.provider.ListProperty;
+import org.gradle.api.provider.Property;
+import org.gradle.api.tasks.CacheableTask;
+import org.gradle.api.tasks.Input;
 import org.gradle.api.tasks.InputFiles;
+import org.gradle.api.tasks.PathSensitive;
+import org.gradle.api.tasks.PathSensitivity;
 
+@CacheableTask
 public abstract class AgentPlugin extends AbstractPluginTask {
 
     public AgentPlugin() {
         setDescription("Package TeamCity Agent plugin");
         onlyIf(task -> getDescriptor().get().getAsFile().exists());
+        getShrinkLibraries().convention(false);
+        into("lib", copySpec -> {
+            copySpec.from(getLib());
+            copySpec.exclude(new ExcludedLibrariesSpec(getExcludedLibrariesFile()));
+        });
         into("lib", copySpec ->
-            copySpec.from(getLib())
+            copySpec.from(getProcessedLibraries())
         );
         into("", copySpec -> {
             copySpec.from(getDescriptor());
@@ -34,5 +47,18 @@ public abstract class AgentPlugin extends AbstractPluginTask {
     }
 
     @InputFiles
+    @PathSensitive(PathSensitivity.NAME_ONLY)
     public abstract ConfigurableFileCollection getLib();
+
+    /**
+     * @return whether classes not reachable from the plugin are removed from the dependency libraries
+     */
+    @Input
+    public abstract Property<Boolean> getShrinkLibraries();
+
+    /**
+     * @return class names kept when shrinking, a name ending in .* keeps a package and .** its sub-packages
+     */
+    @Input
+    public abstract ListProperty<String> getShrinkKeep();
 }
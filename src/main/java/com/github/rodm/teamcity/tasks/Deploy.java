@@ -15,9 +15,13 @@
  */
 package com.github.rodm.teamcity.tasks;
 
+import com.github.rodm.teamcity.internal.ExplodedPluginCopyAction;
 import org.gradle.api.file.ConfigurableFileCollection;
 import org.gradle.api.file.DirectoryProperty;
+import org.gradle.api.internal.file.copy.CopyAction;
+import org.gradle.api.provider.Property;
 import org.gradle.api.tasks.Copy;
+import org.gradle.api.tasks.Input;
 import org.gradle.api.tasks.InputFiles;
 import org.gradle.api.tasks.OutputDirectory;
 
@@ -27,6 +31,7 @@ public abstract class Deploy extends Copy {
         setDescription("Deploys plugins to the TeamCity Server");
         from(getPlugins());
         into(getPluginsDir());
+        getExploded().convention(false);
     }
 
     @InputFiles
@@ -34,4 +39,18 @@ public abstract class Deploy extends Copy {
 
     @OutputDirectory
     public abstract DirectoryProperty getPluginsDir();
+
+    /**
+     * @return whether plugins are deployed unpacked, only files that have changed are copied
+     */
+    @Input
+    public abstract Property<Boolean> getExploded();
+
+    @Override
+    protected CopyAction createCopyAction() {
+        if (getExploded().get()) {
+            return new ExplodedPluginCopyAction(getDestinationDir());
+        }
+        return super.createCopyAction();
+    }
 }
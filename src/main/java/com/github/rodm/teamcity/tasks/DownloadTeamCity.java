@@ -15,11 +15,130 @@
  */
 package com.github.rodm.teamcity.tasks;
 
+import com.github.rodm.teamcity.internal.DistributionCache;
 import de.undercouch.gradle.tasks.download.Download;
+import org.gradle.api.GradleException;
+import org.gradle.api.file.DirectoryProperty;
+import org.gradle.api.provider.Property;
+import org.gradle.api.tasks.Input;
+import org.gradle.api.tasks.Internal;
+import org.gradle.api.tasks.Optional;
+import org.gradle.api.tasks.TaskAction;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Base64;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Downloads a TeamCity distribution. When the download cache is enabled the distribution is downloaded to a cache
+ * shared by all the builds on the machine and linked, or copied if linking is not supported, to the destination.
+ * The cache sends the headers and the credentials, using basic authentication, configured for the task, and does
+ * not replace an existing destination when overwrite is disabled. A cached distribution is used without checking
+ * whether it was modified on the server.
+ */
+public abstract class DownloadTeamCity extends Download {
 
-public class DownloadTeamCity extends Download {
     public DownloadTeamCity() {
         setDescription("Downloads a TeamCity distribution");
         onlyIfModified(true);
+        getUseCache().convention(false);
+        getConnections().convention(1);
+    }
+
+    /**
+     * @return whether the distribution is downloaded to the shared cache
+     */
+    @Input
+    public abstract Property<Boolean> getUseCache();
+
+    /**
+     * @return the directory the distributions are cached in
+     */
+    @Internal
+    public abstract DirectoryProperty getCacheDir();
+
+    /**
+     * @return the version of the distribution, used with the URL to identify the distribution in the cache
+     */
+    @Input
+    @Optional
+    public abstract Property<String> getVersion();
+
+    /**
+     * @return the expected SHA-256 checksum of the distribution, by default the checksum published with the
+     * distribution is used if there is one
+     */
+    @Input
+    @Optional
+    public abstract Property<String> getChecksum();
+
+    /**
+     * @return the maximum number of connections used to download ranges of the distribution in parallel
+     */
+    @Internal
+    public abstract Property<Integer> getConnections();
+
+    @Override
+    @TaskAction
+    public void download() throws IOException {
+        if (!getUseCache().get()) {
+            super.download();
+            return;
+        }
+
+        File dest = getDest();
+        if (!isOverwrite() && (dest.isFile() || new File(dest, filename(getSrc().toString())).isFile())) {
+            setDidWork(false);
+            return;
+        }
+
+        URL url = new URL(getSrc().toString());
+        DistributionCache cache = new DistributionCache(getCacheDir().get().getAsFile(), getConnections().get(), requestHeaders());
+        File distribution;
+        try {
+            distribution = cache.get(getVersion().getOrElse("unknown"), url, getChecksum().getOrNull());
+        }
+        catch (IOException e) {
+            throw new GradleException("Failure downloading TeamCity distribution " + url, e);
+        }
+
+        if (dest.isDirectory()) {
+            dest = new File(dest, distribution.getName());
+        }
+        if (dest.isFile() && Files.isSameFile(dest.toPath(), distribution.toPath())) {
+            setDidWork(false);
+            return;
+        }
+        Files.createDirectories(dest.getParentFile().toPath());
+        Files.deleteIfExists(dest.toPath());
+        try {
+            Files.createLink(dest.toPath(), distribution.toPath());
+        }
+        catch (IOException | UnsupportedOperationException e) {
+            getLogger().info("Copying {} to {}, the file could not be linked: {}", distribution, dest, e.getMessage());
+            Files.copy(distribution.toPath(), dest.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    private Map<String, String> requestHeaders() {
+        Map<String, String> headers = new LinkedHashMap<>();
+        if (getHeaders() != null) {
+            headers.putAll(getHeaders());
+        }
+        if (getUsername() != null) {
+            String credentials = getUsername() + ":" + (getPassword() != null ? getPassword() : "");
+            headers.put("Authorization", "Basic " + Base64.getEncoder().encodeToString(credentials.getBytes(StandardCharsets.UTF_8)));
+        }
+        return headers;
+    }
+
+    private static String filename(String src) {
+        return src.substring(src.lastIndexOf('/') + 1);
     }
 }
@@ -0,0 +1,132 @@
+/*
+ * Copyright 2022 Rod MacKenzie
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.rodm.teamcity.tasks;
+
+import com.github.rodm.teamcity.internal.BeanDefinitionGenerator;
+import org.gradle.api.DefaultTask;
+import org.gradle.api.GradleException;
+import org.gradle.api.file.ConfigurableFileCollection;
+import org.gradle.api.file.DirectoryProperty;
+import org.gradle.api.provider.ListProperty;
+import org.gradle.api.provider.Property;
+import org.gradle.api.tasks.CacheableTask;
+import org.gradle.api.tasks.Classpath;
+import org.gradle.api.tasks.CompileClasspath;
+import org.gradle.api.tasks.Input;
+import org.gradle.api.tasks.OutputDirectory;
+import org.gradle.api.tasks.TaskAction;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Map;
+
+/**
+ * Generates a plugin definition file declaring a bean for each plugin class that carries one of the marker
+ * annotations or implements one of the extension types. No file is generated if no classes match.
+ */
+@CacheableTask
+public abstract class GenerateBeanDefinition extends DefaultTask {
+
+    private static final String GENERATED_BEANS = "{}: Generated {} with {} beans.";
+
+    public GenerateBeanDefinition() {
+        setDescription("Generates the plugin bean definition file from the compiled classes");
+    }
+
+    @Classpath
+    public abstract ConfigurableFileCollection getClasses();
+
+    /**
+     * @return the classpath the plugin classes are compiled against, used to find extension types implemented
+     *         through super classes from other jars, such as the TeamCity adapter classes
+     */
+    @CompileClasspath
+    public abstract ConfigurableFileCollection getClasspath();
+
+    /**
+     * @return the fully qualified names of the annotations marking classes as beans
+     */
+    @Input
+    public abstract ListProperty<String> getAnnotations();
+
+    /**
+     * @return the fully qualified names of the extension interfaces and classes implemented by beans
+     */
+    @Input
+    public abstract ListProperty<String> getExtensionTypes();
+
+    /**
+     * @return the name of the generated definition file, for example {@code build-server-plugin-generated.xml}
+     */
+    @Input
+    public abstract Property<String> getDefinitionName();
+
+    /**
+     * @return the directory the definition file is generated in, the directory is packaged as META-INF
+     */
+    @OutputDirectory
+    public abstract DirectoryProperty getDestinationDirectory();
+
+    @TaskAction
+    public void generateDefinition() {
+        File destinationFile = getDestinationDirectory().file(getDefinitionName()).get().getAsFile();
+        try {
+            Files.deleteIfExists(destinationFile.toPath());
+        }
+        catch (IOException e) {
+            throw new GradleException("Failure deleting bean definition file", e);
+        }
+        if (getAnnotations().get().isEmpty() && getExtensionTypes().get().isEmpty()) {
+            return;
+        }
+
+        BeanDefinitionGenerator generator = new BeanDefinitionGenerator(getAnnotations().get(), getExtensionTypes().get());
+        generator.addClasspath(getClasspath().getFiles());
+        getClasses().getAsFileTree().matching(filter -> filter.include("**/*.class")).visit(details -> {
+            if (details.isDirectory() || details.getName().equals("module-info.class")) {
+                return;
+            }
+            try (InputStream in = details.open()) {
+                generator.addClass(in);
+            }
+            catch (IOException e) {
+                throw new GradleException("Failure reading class " + details.getRelativePath(), e);
+            }
+        });
+
+        Map<String, String> beans;
+        try {
+            beans = generator.getBeans();
+        }
+        catch (IOException e) {
+            throw new GradleException("Failure reading classpath", e);
+        }
+        if (beans.isEmpty()) {
+            return;
+        }
+        try (Writer writer = Files.newBufferedWriter(destinationFile.toPath(), StandardCharsets.UTF_8)) {
+            BeanDefinitionGenerator.writeTo(beans, writer);
+        }
+        catch (IOException e) {
+            throw new GradleException("Failure writing bean definition file", e);
+        }
+        getLogger().info(GENERATED_BEANS, getPath(), destinationFile.getName(), beans.size());
+    }
+}
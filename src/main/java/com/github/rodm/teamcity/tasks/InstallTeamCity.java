@@ -15,26 +15,25 @@
  */
 package com.github.rodm.teamcity.tasks;
 
+import com.github.rodm.teamcity.internal.TarGzExtractor;
 import org.gradle.api.DefaultTask;
-import org.gradle.api.file.ArchiveOperations;
+import org.gradle.api.GradleException;
 import org.gradle.api.file.DirectoryProperty;
-import org.gradle.api.file.FileSystemOperations;
 import org.gradle.api.file.RegularFileProperty;
 import org.gradle.api.tasks.InputFile;
 import org.gradle.api.tasks.OutputDirectory;
 import org.gradle.api.tasks.TaskAction;
 
-import javax.inject.Inject;
+import java.io.File;
+import java.io.IOException;
 
+/**
+ * Installs a TeamCity distribution by extracting it into the target directory. The distribution is not
+ * extracted again if the install marker in the target directory matches the distribution.
+ */
 public abstract class InstallTeamCity extends DefaultTask {
 
-    private final FileSystemOperations fileSystemOperations;
-    private final ArchiveOperations archiveOperations;
-
-    @Inject
-    public InstallTeamCity(FileSystemOperations fileSystemOperations, ArchiveOperations archiveOperations) {
-        this.fileSystemOperations = fileSystemOperations;
-        this.archiveOperations = archiveOperations;
+    public InstallTeamCity() {
         setDescription("Installs a TeamCity distribution");
     }
 
@@ -46,14 +45,20 @@ public abstract class InstallTeamCity extends DefaultTask {
 
     @TaskAction
     public void install() {
-        getLogger().info("Installing TeamCity from {} into {}", getSource().get(), getTarget().get());
-        final String targetName = getTarget().get().getAsFile().getName();
-        fileSystemOperations.copy(copySpec -> {
-            copySpec.from(archiveOperations.tarTree(getSource().get()), copySpec1 -> {
-                copySpec1.setIncludeEmptyDirs(false);
-                copySpec1.eachFile(file -> file.setPath(targetName + "/" + getPath().split("/", 2)[1]));
-            });
-            copySpec.into(getTarget().get().getAsFile().getParentFile());
-        });
+        File source = getSource().get().getAsFile();
+        File target = getTarget().get().getAsFile();
+        TarGzExtractor extractor = new TarGzExtractor();
+        try {
+            if (extractor.isExtracted(source, target)) {
+                getLogger().info("TeamCity from {} is already installed in {}", source, target);
+                setDidWork(false);
+                return;
+            }
+            getLogger().info("Installing TeamCity from {} into {}", source, target);
+            extractor.extract(source, target);
+        }
+        catch (IOException e) {
+            throw new GradleException("Failure installing TeamCity from " + source, e);
+        }
     }
 }
@@ -0,0 +1,206 @@
+/*
+ * Copyright 2022 Rod MacKenzie
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.rodm.teamcity.tasks;
+
+import com.github.rodm.teamcity.internal.DuplicateLibrariesAction;
+import com.github.rodm.teamcity.internal.MergeLibrariesAction;
+import com.github.rodm.teamcity.internal.ProvidedLibrariesAction;
+import com.github.rodm.teamcity.internal.ShrinkLibrariesAction;
+import org.gradle.api.DefaultTask;
+import org.gradle.api.GradleException;
+import org.gradle.api.file.ConfigurableFileCollection;
+import org.gradle.api.file.DirectoryProperty;
+import org.gradle.api.file.RegularFileProperty;
+import org.gradle.api.provider.ListProperty;
+import org.gradle.api.provider.MapProperty;
+import org.gradle.api.provider.Property;
+import org.gradle.api.provider.Provider;
+import org.gradle.api.tasks.Input;
+import org.gradle.api.tasks.InputFiles;
+import org.gradle.api.tasks.Internal;
+import org.gradle.api.tasks.OutputDirectory;
+import org.gradle.api.tasks.OutputFile;
+import org.gradle.api.tasks.PathSensitive;
+import org.gradle.api.tasks.PathSensitivity;
+import org.gradle.api.tasks.TaskAction;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * Processes the libraries packaged in a directory of the plugin archive. The names of the libraries excluded
+ * from the archive are written to a file that is read by the task creating the archive.
+ */
+public abstract class ProcessLibraries extends DefaultTask {
+
+    static final long DEFAULT_MERGE_LIBRARIES_MAX_SIZE = 256 * 1024L;
+
+    public ProcessLibraries() {
+        setDescription("Processes the libraries packaged in the plugin archive");
+        getCheckDuplicateLibraries().convention(false);
+        getExcludeDuplicateLibraries().convention(false);
+        getExcludeProvidedLibraries().convention(false);
+        getMergeLibraries().convention(false);
+        getMergeLibrariesMaxSize().convention(DEFAULT_MERGE_LIBRARIES_MAX_SIZE);
+        getShrinkLibraries().convention(false);
+    }
+
+    @InputFiles
+    @PathSensitive(PathSensitivity.NAME_ONLY)
+    public abstract ConfigurableFileCollection getLibraries();
+
+    /**
+     * @return the name of the archive directory the libraries are packaged in, used in messages
+     */
+    @Internal
+    public abstract Property<String> getSection();
+
+    /**
+     * @return whether libraries and classes packaged more than once are reported
+     */
+    @Input
+    public abstract Property<Boolean> getCheckDuplicateLibraries();
+
+    /**
+     * @return whether libraries with the same content as another library are excluded
+     */
+    @Input
+    public abstract Property<Boolean> getExcludeDuplicateLibraries();
+
+    /**
+     * @return whether libraries provided by the TeamCity server are excluded
+     */
+    @Input
+    public abstract Property<Boolean> getExcludeProvidedLibraries();
+
+    /**
+     * @return the libraries provided by the TeamCity server
+     */
+    @Internal
+    public abstract ConfigurableFileCollection getProvidedLibraries();
+
+    /**
+     * @return the module coordinates, group:name:version, of the libraries resolved from a repository
+     */
+    @Internal
+    public abstract MapProperty<File, String> getModules();
+
+    /**
+     * @return the module coordinates of the libraries provided by the TeamCity server, or the file name when
+     *         the module of a library is not known
+     */
+    @Input
+    public Provider<Set<String>> getProvidedModules() {
+        return getExcludeProvidedLibraries().map(exclude -> {
+            Set<String> modules = new TreeSet<>();
+            if (exclude) {
+                Map<File, String> coordinates = getModules().get();
+                getProvidedLibraries().getFiles().forEach(file -> modules.add(coordinates.getOrDefault(file, file.getName())));
+            }
+            return modules;
+        });
+    }
+
+    /**
+     * @return whether the plugin jar and small libraries are merged into a single jar
+     */
+    @Input
+    public abstract Property<Boolean> getMergeLibraries();
+
+    /**
+     * @return the size in bytes of the largest library that is merged, defaults to 256KB
+     */
+    @Input
+    public abstract Property<Long> getMergeLibrariesMaxSize();
+
+    /**
+     * @return whether classes not reachable from the plugin are removed from the libraries
+     */
+    @Input
+    public abstract Property<Boolean> getShrinkLibraries();
+
+    /**
+     * @return class names kept when shrinking, a name ending in .* keeps a package and .** its sub-packages
+     */
+    @Input
+    public abstract ListProperty<String> getShrinkKeep();
+
+    /**
+     * @return the file listing the names of the libraries excluded from the archive
+     */
+    @OutputFile
+    public abstract RegularFileProperty getExcludedLibrariesFile();
+
+    /**
+     * @return the directory the libraries added to the archive in place of the excluded libraries are written to
+     */
+    @OutputDirectory
+    public abstract DirectoryProperty getDestinationDir();
+
+    @TaskAction
+    public void process() {
+        deleteFiles(getDestinationDir().get().getAsFile());
+
+        Set<File> excluded = new HashSet<>();
+        ProvidedLibrariesAction providedLibraries = new ProvidedLibrariesAction();
+        providedLibraries.execute(this);
+        excluded.addAll(providedLibraries.getExcludedLibraries());
+
+        DuplicateLibrariesAction duplicateLibraries = new DuplicateLibrariesAction();
+        duplicateLibraries.execute(this);
+        excluded.addAll(duplicateLibraries.getExcludedLibraries());
+
+        MergeLibrariesAction mergeLibraries = new MergeLibrariesAction(excluded::contains);
+        mergeLibraries.execute(this);
+        excluded.addAll(mergeLibraries.getExcludedLibraries());
+
+        ShrinkLibrariesAction shrinkLibraries = new ShrinkLibrariesAction(excluded::contains);
+        shrinkLibraries.execute(this);
+        excluded.addAll(shrinkLibraries.getExcludedLibraries());
+
+        writeExcludedLibraries(excluded);
+    }
+
+    private void writeExcludedLibraries(Set<File> excluded) {
+        Set<String> names = new TreeSet<>();
+        excluded.forEach(file -> names.add(file.getName()));
+
+        File excludedLibrariesFile = getExcludedLibrariesFile().get().getAsFile();
+        try {
+            Files.write(excludedLibrariesFile.toPath(), names, StandardCharsets.UTF_8);
+        }
+        catch (IOException e) {
+            throw new GradleException("Failure writing excluded libraries file " + excludedLibrariesFile, e);
+        }
+    }
+
+    private static void deleteFiles(File dir) {
+        File[] files = dir.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                if (!file.delete()) {
+                    throw new GradleException("Failure deleting " + file);
+                }
+            }
+        }
+    }
+}
@@ -44,7 +44,6 @@ public abstract class PublishPlugin extends DefaultTask {
     @Inject
     public PublishPlugin(WorkerExecutor executor) {
         setDescription("Publishes the plugin to the TeamCity plugin repository");
-        setEnabled(!getProject().getGradle().getStartParameter().isOffline());
         this.executor = executor;
     }
 
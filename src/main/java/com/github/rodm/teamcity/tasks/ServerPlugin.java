@@ -16,16 +16,31 @@
 package com.github.rodm.teamcity.tasks;
 
 import com.github.rodm.teamcity.internal.AbstractPluginTask;
+import com.github.rodm.teamcity.internal.ExcludedLibrariesSpec;
 import org.gradle.api.file.ConfigurableFileCollection;
+import org.gradle.api.provider.Property;
+import org.gradle.api.tasks.CacheableTask;
+import org.gradle.api.tasks.Input;
 import org.gradle.api.tasks.InputFiles;
+import org.gradle.api.tasks.Internal;
+import org.gradle.api.tasks.PathSensitive;
+import org.gradle.api.tasks.PathSensitivity;
 
+@CacheableTask
 public abstract class ServerPlugin extends AbstractPluginTask {
 
     public ServerPlugin() {
         setDescription("Package TeamCity plugin");
         onlyIf(task -> getDescriptor().get().getAsFile().exists());
+        getExcludeProvidedLibraries().convention(false);
+        getMergeLibraries().convention(false);
+        getMergeLibrariesMaxSize().convention(ProcessLibraries.DEFAULT_MERGE_LIBRARIES_MAX_SIZE);
+        into("server", copySpec -> {
+            copySpec.from(getServer());
+            copySpec.exclude(new ExcludedLibrariesSpec(getExcludedLibrariesFile()));
+        });
         into("server", copySpec ->
-            copySpec.from(getServer())
+            copySpec.from(getProcessedLibraries())
         );
         into("agent", copySpec ->
             copySpec.from(getAgent())
@@ -37,8 +52,34 @@ public abstract class ServerPlugin extends AbstractPluginTask {
     }
 
     @InputFiles
+    @PathSensitive(PathSensitivity.NAME_ONLY)
     public abstract ConfigurableFileCollection getServer();
 
     @InputFiles
+    @PathSensitive(PathSensitivity.NAME_ONLY)
     public abstract ConfigurableFileCollection getAgent();
+
+    /**
+     * @return whether libraries provided by the TeamCity server are excluded from the server directory
+     */
+    @Input
+    public abstract Property<Boolean> getExcludeProvidedLibraries();
+
+    /**
+     * @return the libraries provided by the TeamCity server, defaults to the dependencies of the provided configuration
+     */
+    @Internal
+    public abstract ConfigurableFileCollection getProvidedLibraries();
+
+    /**
+     * @return whether the plugin jar and small libraries are merged into a single jar
+     */
+    @Input
+    public abstract Property<Boolean> getMergeLibraries();
+
+    /**
+     * @return the size in bytes of the largest library that is merged, defaults to 256KB
+     */
+    @Input
+    public abstract Property<Long> getMergeLibrariesMaxSize();
 }
@@ -0,0 +1,296 @@
+/*
+ * Copyright 2022 Rod MacKenzie
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.rodm.teamcity.tasks;
+
+import com.github.rodm.teamcity.ValidationMode;
+import com.github.rodm.teamcity.internal.ClassIndexService;
+import com.github.rodm.teamcity.internal.PluginDefinitionValidationAction;
+import com.github.rodm.teamcity.internal.PluginDefinitionValidationWork;
+import com.github.rodm.teamcity.internal.PluginDescriptorValidationWork;
+import com.github.rodm.teamcity.internal.PluginSchemaService;
+import com.github.rodm.teamcity.internal.PluginValidationLog;
+import com.github.rodm.teamcity.internal.PluginValidationResult;
+import org.gradle.api.DefaultTask;
+import org.gradle.api.GradleException;
+import org.gradle.api.file.ConfigurableFileCollection;
+import org.gradle.api.file.DirectoryProperty;
+import org.gradle.api.file.FileType;
+import org.gradle.api.file.RegularFileProperty;
+import org.gradle.api.provider.Property;
+import org.gradle.api.tasks.CacheableTask;
+import org.gradle.api.tasks.Classpath;
+import org.gradle.api.tasks.Input;
+import org.gradle.api.tasks.InputFile;
+import org.gradle.api.tasks.InputFiles;
+import org.gradle.api.tasks.Internal;
+import org.gradle.api.tasks.Optional;
+import org.gradle.api.tasks.OutputDirectory;
+import org.gradle.api.tasks.OutputFile;
+import org.gradle.api.tasks.PathSensitive;
+import org.gradle.api.tasks.PathSensitivity;
+import org.gradle.api.tasks.TaskAction;
+import org.gradle.work.ChangeType;
+import org.gradle.work.FileChange;
+import org.gradle.work.Incremental;
+import org.gradle.work.InputChanges;
+import org.gradle.workers.WorkQueue;
+import org.gradle.workers.WorkerExecutor;
+
+import javax.inject.Inject;
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static com.github.rodm.teamcity.ValidationMode.FAIL;
+import static com.github.rodm.teamcity.ValidationMode.IGNORE;
+
+/**
+ * Validates the plugin descriptor and the plugin definition files. Only the files that changed since the
+ * previous execution are validated again, each file is validated by a separate worker. The warnings are
+ * logged and written to a JSON report, the validation mode decides whether warnings about the plugin
+ * definition files fail the task.
+ */
+@CacheableTask
+public abstract class ValidatePlugin extends DefaultTask {
+
+    private static final String DEFINITION_RESULT_PREFIX = "definition";
+    private static final String NO_DEFINITIONS_RESULT = "definitions.txt";
+    private static final String DESCRIPTOR_RESULT = "descriptor.txt";
+
+    private final WorkerExecutor workerExecutor;
+
+    @Inject
+    public ValidatePlugin(WorkerExecutor workerExecutor) {
+        this.workerExecutor = workerExecutor;
+        setDescription("Validates the plugin descriptor and plugin definition files");
+        onlyIf(task -> !getDescriptor().isPresent() || getDescriptor().get().getAsFile().exists());
+        getCheckDescriptorContents().convention(false);
+    }
+
+    /**
+     * @return the validation mode for the plugin definition files
+     */
+    @Input
+    public abstract Property<ValidationMode> getValidationMode();
+
+    /**
+     * @return the plugin definition files
+     */
+    @Incremental
+    @InputFiles
+    @PathSensitive(PathSensitivity.RELATIVE)
+    public abstract ConfigurableFileCollection getDefinitions();
+
+    /**
+     * @return the classes and libraries searched for the bean classes of the plugin definition files
+     */
+    @Classpath
+    public abstract ConfigurableFileCollection getClasspath();
+
+    /**
+     * @return the plugin descriptor, the task is skipped if the descriptor is set but was not generated, as for
+     * a server-side or agent-side library project, like the plugin archive tasks
+     */
+    @Incremental
+    @InputFile
+    @Optional
+    @PathSensitive(PathSensitivity.NONE)
+    public abstract RegularFileProperty getDescriptor();
+
+    /**
+     * @return the schema the descriptor is validated against
+     */
+    @Input
+    @Optional
+    public abstract Property<String> getDescriptorSchema();
+
+    /**
+     * @return whether the descriptor is checked for empty values
+     */
+    @Input
+    public abstract Property<Boolean> getCheckDescriptorContents();
+
+    /**
+     * @return the plugin archive checked for the executable files listed in the descriptor
+     */
+    @Incremental
+    @InputFile
+    @Optional
+    @PathSensitive(PathSensitivity.NONE)
+    public abstract RegularFileProperty getPluginArchive();
+
+    @Internal
+    public abstract Property<PluginSchemaService> getSchemaService();
+
+    /**
+     * @return the service indexing the classpath once for all the plugin definition files
+     */
+    @Internal
+    public abstract Property<ClassIndexService> getClassIndexService();
+
+    /**
+     * @return the directory the class indexes of the libraries on the classpath are cached in
+     */
+    @Internal
+    public abstract DirectoryProperty getClassIndexCache();
+
+    /**
+     * @return the directory the beans of the plugin definition files are cached in
+     */
+    @Internal
+    public abstract DirectoryProperty getDefinitionCache();
+
+    /**
+     * @return the directory the results of validating each file are kept in
+     */
+    @OutputDirectory
+    public abstract DirectoryProperty getResultsDirectory();
+
+    @OutputFile
+    public abstract RegularFileProperty getReport();
+
+    @TaskAction
+    public void validate(InputChanges changes) {
+        File resultsDir = getResultsDirectory().get().getAsFile();
+        if (!changes.isIncremental()) {
+            deleteResults(resultsDir);
+        }
+
+        WorkQueue workQueue = workerExecutor.noIsolation();
+        ValidationMode mode = getValidationMode().get();
+        if (!mode.equals(IGNORE)) {
+            submitDefinitions(workQueue, changes, mode, resultsDir);
+        }
+        if (getDescriptor().isPresent()) {
+            submitDescriptor(workQueue, changes, resultsDir);
+        } else {
+            delete(new File(resultsDir, DESCRIPTOR_RESULT));
+        }
+        workQueue.await();
+
+        List<PluginValidationResult> results = new ArrayList<>();
+        boolean definitionWarnings = false;
+        File[] resultFiles = resultsDir.listFiles();
+        if (resultFiles == null) {
+            resultFiles = new File[0];
+        }
+        Arrays.sort(resultFiles);
+        for (File resultFile : resultFiles) {
+            PluginValidationResult result = PluginValidationResult.read(resultFile);
+            for (String message : result.getMessages()) {
+                getLogger().warn(message);
+            }
+            if (resultFile.getName().startsWith(DEFINITION_RESULT_PREFIX) && !result.getMessages().isEmpty()) {
+                definitionWarnings = true;
+            }
+            results.add(result);
+        }
+
+        boolean failed = mode.equals(FAIL) && definitionWarnings;
+        writeReport(results, failed);
+        if (failed) {
+            throw new GradleException("Plugin definition validation failed");
+        }
+    }
+
+    private void submitDefinitions(WorkQueue workQueue, InputChanges changes, ValidationMode mode, File resultsDir) {
+        for (FileChange change : changes.getFileChanges(getDefinitions())) {
+            if (change.getFileType() != FileType.FILE) {
+                continue;
+            }
+            File resultFile = new File(resultsDir, DEFINITION_RESULT_PREFIX + "-" + change.getNormalizedPath().replaceAll("[^A-Za-z0-9._-]", "_") + ".txt");
+            if (change.getChangeType() == ChangeType.REMOVED) {
+                delete(resultFile);
+                continue;
+            }
+            workQueue.submit(PluginDefinitionValidationWork.class, parameters -> {
+                parameters.getTaskPath().set(getPath());
+                parameters.getMode().set(mode);
+                parameters.getDefinition().set(change.getFile());
+                parameters.getClasspath().from(getClasspath());
+                parameters.getClassIndexCache().set(getClassIndexCache());
+                parameters.getClassIndexService().set(getClassIndexService());
+                parameters.getDefinitionCache().set(getDefinitionCache());
+                parameters.getResultFile().set(resultFile);
+            });
+        }
+
+        File noDefinitionsResult = new File(resultsDir, NO_DEFINITIONS_RESULT);
+        if (getDefinitions().isEmpty()) {
+            PluginValidationLog log = new PluginValidationLog(getPath(), null);
+            new PluginDefinitionValidationAction(mode, Collections.emptyList(), null).validate(log);
+            PluginValidationResult.write(noDefinitionsResult, "META-INF", log.getMessages());
+        } else {
+            delete(noDefinitionsResult);
+        }
+    }
+
+    private void submitDescriptor(WorkQueue workQueue, InputChanges changes, File resultsDir) {
+        boolean changed = !changes.isIncremental() || changes.getFileChanges(getDescriptor()).iterator().hasNext();
+        if (getPluginArchive().isPresent() && changes.getFileChanges(getPluginArchive()).iterator().hasNext()) {
+            changed = true;
+        }
+        if (!changed) {
+            return;
+        }
+        workQueue.submit(PluginDescriptorValidationWork.class, parameters -> {
+            parameters.getTaskPath().set(getPath());
+            parameters.getDescriptor().set(getDescriptor());
+            parameters.getSchema().set(getDescriptorSchema());
+            parameters.getSchemaService().set(getSchemaService());
+            parameters.getCheckContents().set(getCheckDescriptorContents());
+            parameters.getArchive().set(getPluginArchive());
+            parameters.getResultFile().set(new File(resultsDir, DESCRIPTOR_RESULT));
+        });
+    }
+
+    private void writeReport(List<PluginValidationResult> results, boolean failed) {
+        File reportFile = getReport().get().getAsFile();
+        try {
+            Files.createDirectories(reportFile.getParentFile().toPath());
+            try (Writer writer = Files.newBufferedWriter(reportFile.toPath(), StandardCharsets.UTF_8)) {
+                PluginValidationResult.writeReport(writer, getPath(), results, failed);
+            }
+        }
+        catch (IOException e) {
+            throw new GradleException("Failure writing plugin validation report", e);
+        }
+    }
+
+    private static void deleteResults(File resultsDir) {
+        File[] files = resultsDir.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                delete(file);
+            }
+        }
+    }
+
+    private static void delete(File file) {
+        try {
+            Files.deleteIfExists(file.toPath());
+        }
+        catch (IOException e) {
+            throw new GradleException("Failure deleting validation result " + file.getName(), e);
+        }
+    }
+}
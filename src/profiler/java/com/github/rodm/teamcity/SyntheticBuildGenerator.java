@@ -0,0 +1,208 @@
+/*
+ * Copyright 2022 Rod MacKenzie
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.rodm.teamcity;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.jar.Attributes;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+import java.util.jar.Manifest;
+
+/**
+ * Generates synthetic builds used by the gradle-profiler scenarios. A build is generated for each combination of
+ * the number of plugin projects and the number of environments, named {@code projects-<P>-environments-<E>}.
+ * Each plugin project applies the server plugin, has a class, a plugin definition file and packages the shared
+ * dependency jars. The root project applies the environments plugin and deploys every plugin to each environment.
+ *
+ * <p>Arguments: output directory, plugin build directory, comma separated project counts, comma separated
+ * environment counts and the number of dependency jars.
+ */
+public class SyntheticBuildGenerator {
+
+    private static final int JAR_ENTRIES = 50;
+
+    private final Path buildDir;
+    private final Path pluginBuildDir;
+    private final int projects;
+    private final int environments;
+    private final int jars;
+
+    public SyntheticBuildGenerator(Path buildDir, Path pluginBuildDir, int projects, int environments, int jars) {
+        this.buildDir = buildDir;
+        this.pluginBuildDir = pluginBuildDir;
+        this.projects = projects;
+        this.environments = environments;
+        this.jars = jars;
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length != 5) {
+            throw new IllegalArgumentException("Usage: SyntheticBuildGenerator <output dir> <plugin build dir> <projects> <environments> <jars>");
+        }
+        Path outputDir = Paths.get(args[0]);
+        Path pluginBuildDir = Paths.get(args[1]).toAbsolutePath();
+        int jars = Integer.parseInt(args[4]);
+        for (int projects : counts(args[2])) {
+            for (int environments : counts(args[3])) {
+                Path buildDir = outputDir.resolve("projects-" + projects + "-environments-" + environments);
+                new SyntheticBuildGenerator(buildDir, pluginBuildDir, projects, environments, jars).generate();
+                System.out.println("Generated " + buildDir);
+            }
+        }
+    }
+
+    private static List<Integer> counts(String value) {
+        List<Integer> counts = new ArrayList<>();
+        for (String count : value.split(",")) {
+            counts.add(Integer.parseInt(count.trim()));
+        }
+        return counts;
+    }
+
+    public void generate() throws IOException {
+        Files.createDirectories(buildDir);
+        write(buildDir.resolve("settings.gradle"), settingsScript());
+        write(buildDir.resolve("build.gradle"), rootBuildScript());
+        write(buildDir.resolve("gradle.properties"), "org.gradle.jvmargs=-Xmx2g\norg.gradle.parallel=true\n");
+        for (int jar = 1; jar <= jars; jar++) {
+            writeJar(buildDir.resolve("libs").resolve("library" + jar + ".jar"), jar);
+        }
+        for (int project = 1; project <= projects; project++) {
+            generateProject("plugin" + project);
+        }
+    }
+
+    private String settingsScript() {
+        StringBuilder script = new StringBuilder();
+        script.append("pluginManagement {\n");
+        script.append("    includeBuild '").append(path(pluginBuildDir)).append("'\n");
+        script.append("}\n\n");
+        script.append("rootProject.name = '").append(buildDir.getFileName()).append("'\n\n");
+        for (int project = 1; project <= projects; project++) {
+            script.append("include 'plugin").append(project).append("'\n");
+        }
+        return script.toString();
+    }
+
+    private String rootBuildScript() {
+        StringBuilder script = new StringBuilder();
+        script.append("plugins {\n");
+        script.append("    id 'com.github.rodm.teamcity-environments'\n");
+        script.append("}\n\n");
+        script.append("configurations {\n");
+        script.append("    teamcityPlugins\n");
+        script.append("}\n\n");
+        script.append("dependencies {\n");
+        for (int project = 1; project <= projects; project++) {
+            script.append("    teamcityPlugins project(path: ':plugin").append(project).append("', configuration: 'plugin')\n");
+        }
+        script.append("}\n\n");
+        script.append("teamcity {\n");
+        script.append("    version = '2020.1'\n\n");
+        script.append("    environments {\n");
+        script.append("        downloadsDir = \"$buildDir/downloads\"\n");
+        script.append("        baseHomeDir = \"$buildDir/servers\"\n");
+        script.append("        baseDataDir = \"$buildDir/data\"\n");
+        for (int environment = 1; environment <= environments; environment++) {
+            script.append("\n");
+            script.append("        teamcity").append(environment).append(" {\n");
+            script.append("            version = '2020.1.5'\n");
+            script.append("            plugins = configurations.teamcityPlugins\n");
+            script.append("        }\n");
+        }
+        script.append("    }\n");
+        script.append("}\n");
+        return script.toString();
+    }
+
+    private void generateProject(String name) throws IOException {
+        Path projectDir = buildDir.resolve(name);
+        write(projectDir.resolve("build.gradle"), projectBuildScript(name));
+
+        String packageName = "example." + name;
+        write(projectDir.resolve("src/main/java/example/" + name + "/ExampleServerPlugin.java"),
+            "package " + packageName + ";\n\n" +
+            "public class ExampleServerPlugin {\n" +
+            "    public String getName() {\n" +
+            "        return \"" + name + "\";\n" +
+            "    }\n" +
+            "}\n");
+        write(projectDir.resolve("src/main/resources/META-INF/build-server-plugin-" + name + ".xml"),
+            "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n" +
+            "<beans xmlns=\"http://www.springframework.org/schema/beans\"\n" +
+            "       xmlns:xsi=\"http://www.w3.org/2001/XMLSchema-instance\"\n" +
+            "       xsi:schemaLocation=\"http://www.springframework.org/schema/beans http://www.springframework.org/schema/beans/spring-beans-3.0.xsd\"\n" +
+            "       default-autowire=\"constructor\">\n" +
+            "    <bean class=\"" + packageName + ".ExampleServerPlugin\"/>\n" +
+            "</beans>\n");
+    }
+
+    private String projectBuildScript(String name) {
+        StringBuilder script = new StringBuilder();
+        script.append("plugins {\n");
+        script.append("    id 'java'\n");
+        script.append("    id 'com.github.rodm.teamcity-server'\n");
+        script.append("}\n\n");
+        script.append("version = '1.0'\n\n");
+        script.append("dependencies {\n");
+        script.append("    server fileTree(dir: rootProject.file('libs'), include: '*.jar')\n");
+        script.append("}\n\n");
+        script.append("teamcity {\n");
+        script.append("    version = '2020.1'\n");
+        script.append("    server {\n");
+        script.append("        descriptor {\n");
+        script.append("            name = '").append(name).append("'\n");
+        script.append("            displayName = 'Synthetic ").append(name).append("'\n");
+        script.append("            version = project.version\n");
+        script.append("            vendorName = 'vendor'\n");
+        script.append("            useSeparateClassloader = true\n");
+        script.append("        }\n");
+        script.append("    }\n");
+        script.append("}\n");
+        return script.toString();
+    }
+
+    private static void writeJar(Path path, int index) throws IOException {
+        Files.createDirectories(path.getParent());
+        Manifest manifest = new Manifest();
+        manifest.getMainAttributes().put(Attributes.Name.MANIFEST_VERSION, "1.0");
+        try (OutputStream out = Files.newOutputStream(path);
+             JarOutputStream jar = new JarOutputStream(out, manifest)) {
+            byte[] content = new byte[1024];
+            for (int entry = 0; entry < JAR_ENTRIES; entry++) {
+                jar.putNextEntry(new JarEntry("library" + index + "/resource" + entry + ".txt"));
+                jar.write(content);
+                jar.closeEntry();
+            }
+        }
+    }
+
+    private static void write(Path path, String content) throws IOException {
+        Files.createDirectories(path.getParent());
+        Files.write(path, content.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static String path(Path path) {
+        return path.toString().replace('\\', '/');
+    }
+}
@@ -26,6 +26,7 @@ import java.nio.file.Path
 import java.nio.file.Paths
 
 import static org.hamcrest.MatcherAssert.assertThat
+import static org.hamcrest.CoreMatchers.containsString
 import static org.hamcrest.CoreMatchers.is
 import static org.gradle.testkit.runner.TaskOutcome.SUCCESS
 
@@ -126,6 +127,18 @@ class SamplesTest {
         }
     }
 
+    @Nested
+    @DisplayName("using the configuration cache")
+    class UsingConfigurationCache extends Samples {
+        @Override
+        BuildResult executeBuild(Path projectDir) {
+            SamplesTest.executeBuild(projectDir, '--configuration-cache', 'clean', 'build')
+            BuildResult result = SamplesTest.executeBuild(projectDir, '--configuration-cache', 'clean', 'build')
+            assertThat(result.output, containsString('Reusing configuration cache.'))
+            return result
+        }
+    }
+
     private static BuildResult executeBuild(Path projectDir, String... args = ['clean', 'build']) {
         BuildResult result = GradleRunner.create()
                 .withProjectDir(projectDir.toFile())
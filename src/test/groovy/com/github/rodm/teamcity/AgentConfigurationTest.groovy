@@ -15,17 +15,16 @@
  */
 package com.github.rodm.teamcity
 
-import com.github.rodm.teamcity.internal.PluginDescriptorValidationAction
-import com.github.rodm.teamcity.internal.PluginExecutableFilesValidationAction
 import com.github.rodm.teamcity.tasks.AgentPlugin
 import com.github.rodm.teamcity.tasks.GenerateAgentPluginDescriptor
+import com.github.rodm.teamcity.tasks.ValidatePlugin
 import org.gradle.api.InvalidUserDataException
+import org.gradle.api.Task
 import org.gradle.api.artifacts.Configuration
 import org.gradle.api.tasks.bundling.Zip
 import org.junit.jupiter.api.BeforeEach
 import org.junit.jupiter.api.Test
 
-import static com.github.rodm.teamcity.GradleMatchers.hasAction
 import static com.github.rodm.teamcity.GradleMatchers.hasDependency
 import static com.github.rodm.teamcity.GradleMatchers.hasTask
 import static com.github.rodm.teamcity.TestSupport.archiveEntries
@@ -275,6 +274,7 @@ class AgentConfigurationTest extends ConfigurationTestCase {
 
         assertThat(project, hasTask('generateAgentDescriptor'))
         assertThat(project, hasTask('processAgentDescriptor'))
+        assertThat(project, hasTask('processAgentLibraries'))
         assertThat(project, hasTask('agentPlugin'))
     }
 
@@ -565,12 +565,23 @@ class AgentConfigurationTest extends ConfigurationTestCase {
     }
 
     @Test
-    void 'applying agent plugin configures validation actions on all AgentPlugin tasks'() {
-        project.tasks.create('alternativeAgentPlugin', AgentPlugin)
+    void 'applying agent plugin configures validation task'() {
         project.evaluate()
 
-        AgentPlugin agentPlugin = project.tasks.getByName('alternativeAgentPlugin') as AgentPlugin
-        assertThat(agentPlugin, hasAction(PluginDescriptorValidationAction))
-        assertThat(agentPlugin, hasAction(PluginExecutableFilesValidationAction))
+        ValidatePlugin validate = project.tasks.getByName('validateAgentPlugin') as ValidatePlugin
+        assertThat(validate.descriptor.get().asFile, equalTo(project.file('build/descriptor/agent/teamcity-plugin.xml')))
+        assertThat(validate.descriptorSchema.get(), equalTo('teamcity-agent-plugin-descriptor.xsd'))
+        assertThat(validate.pluginArchive.get().asFile.name, endsWith('.zip'))
+        assertThat(validate.checkDescriptorContents.get(), is(false))
+    }
+
+    @Test
+    void 'agent plugin task is finalized by validation task'() {
+        project.evaluate()
+
+        Task agentPlugin = project.tasks.getByName('agentPlugin')
+        assertThat(agentPlugin.finalizedBy.getDependencies(agentPlugin)*.name, hasItem('validateAgentPlugin'))
+        Task check = project.tasks.getByName('check')
+        assertThat(check.taskDependencies.getDependencies(check)*.name, hasItem('validateAgentPlugin'))
     }
 }
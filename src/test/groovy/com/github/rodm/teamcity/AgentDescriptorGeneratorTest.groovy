@@ -68,6 +68,20 @@ class AgentDescriptorGeneratorTest {
         assertThat(writer.toString(), matcher)
     }
 
+    @Test
+    void 'writes elements without children as empty elements'() {
+        descriptor.pluginDeployment {}
+
+        generator.writeTo(writer)
+
+        String nl = System.lineSeparator()
+        String expected = '<?xml version="1.0" encoding="UTF-8"?>' +
+            '<teamcity-agent-plugin xmlns:xsi="http://www.w3.org/2001/XMLSchema-instance" xsi:noNamespaceSchemaLocation="urn:schemas-jetbrains-com:teamcity-agent-plugin-v1-xml">' + nl +
+            '  <plugin-deployment/>' + nl +
+            '</teamcity-agent-plugin>' + nl
+        assertThat(writer.toString(), equalTo(expected))
+    }
+
     @Test
     void writesPluginDeployment() {
         descriptor.pluginDeployment {}
@@ -17,6 +17,7 @@ package com.github.rodm.teamcity
 
 import org.gradle.api.GradleException
 import org.gradle.api.Project
+import org.gradle.api.tasks.CacheableTask
 import org.gradle.api.tasks.bundling.Zip
 import org.gradle.testfixtures.ProjectBuilder
 import org.junit.jupiter.api.BeforeEach
@@ -25,6 +26,7 @@ import org.junit.jupiter.api.io.TempDir
 
 import static org.hamcrest.CoreMatchers.containsString
 import static org.hamcrest.CoreMatchers.equalTo
+import static org.hamcrest.CoreMatchers.is
 import static org.hamcrest.CoreMatchers.isA
 import static org.hamcrest.CoreMatchers.not
 import static org.hamcrest.MatcherAssert.assertThat
@@ -153,4 +155,20 @@ class AgentServerConfigurationTest {
         Zip serverPlugin = (Zip) project.tasks.findByPath(':serverPlugin')
         assertThat(agentPlugin.archiveFileName, not(equalTo(serverPlugin.archiveFileName)))
     }
+
+    @Test
+    void 'agent and server archives are reproducible and cacheable'() {
+        project.apply plugin: 'com.github.rodm.teamcity-agent'
+        project.apply plugin: 'com.github.rodm.teamcity-server'
+
+        project.evaluate()
+
+        Zip agentPlugin = (Zip) project.tasks.findByPath(':agentPlugin')
+        Zip serverPlugin = (Zip) project.tasks.findByPath(':serverPlugin')
+        [agentPlugin, serverPlugin].each { task ->
+            assertThat(task.preserveFileTimestamps, is(false))
+            assertThat(task.reproducibleFileOrder, is(true))
+            assertThat(task.class.isAnnotationPresent(CacheableTask), is(true))
+        }
+    }
 }
@@ -0,0 +1,130 @@
+/*
+ * Copyright 2022 Rod MacKenzie
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.rodm.teamcity
+
+import com.github.rodm.teamcity.internal.BeanDefinitionGenerator
+import com.github.rodm.teamcity.tasks.GenerateBeanDefinition
+import org.gradle.api.Project
+import org.gradle.testfixtures.ProjectBuilder
+import org.junit.jupiter.api.Test
+import org.junit.jupiter.api.io.TempDir
+
+import java.util.zip.ZipEntry
+import java.util.zip.ZipOutputStream
+
+import static org.hamcrest.MatcherAssert.assertThat
+import static org.hamcrest.Matchers.anEmptyMap
+import static org.hamcrest.Matchers.containsString
+import static org.hamcrest.Matchers.equalTo
+import static org.hamcrest.Matchers.hasEntry
+import static org.hamcrest.Matchers.hasItem
+import static org.hamcrest.Matchers.is
+import static org.hamcrest.Matchers.not
+
+class BeanDefinitionGeneratorTest {
+
+    @Deprecated
+    static class AnnotatedBean {}
+
+    static class ExtensionBase implements Runnable {
+        void run() {}
+    }
+
+    static class ExtensionBean extends ExtensionBase {}
+
+    static abstract class AbstractExtension implements Runnable {}
+
+    static class PlainClass {}
+
+    @TempDir
+    File projectDir
+
+    private static InputStream classFile(Class type) {
+        return type.classLoader.getResourceAsStream(type.name.replace('.', '/') + '.class')
+    }
+
+    private static BeanDefinitionGenerator generator(List<String> annotations, List<String> extensionTypes) {
+        BeanDefinitionGenerator generator = new BeanDefinitionGenerator(annotations, extensionTypes)
+        [AnnotatedBean, ExtensionBase, ExtensionBean, AbstractExtension, PlainClass].each { type ->
+            classFile(type).withCloseable { generator.addClass(it) }
+        }
+        return generator
+    }
+
+    @Test
+    void 'generates beans for classes with a marker annotation'() {
+        Map<String, String> beans = generator(['java.lang.Deprecated'], []).beans
+
+        assertThat(beans, equalTo([annotatedBean: AnnotatedBean.name]))
+    }
+
+    @Test
+    void 'generates beans for concrete classes implementing an extension type'() {
+        Map<String, String> beans = generator([], ['java.lang.Runnable']).beans
+
+        assertThat(beans, hasEntry('extensionBase', ExtensionBase.name))
+        assertThat(beans, hasEntry('extensionBean', ExtensionBean.name))
+        assertThat(beans.size(), is(2))
+    }
+
+    @Test
+    void 'generates beans for classes extending an adapter class from the classpath'() {
+        File adapterJar = new File(projectDir, 'server-api.jar')
+        new ZipOutputStream(new FileOutputStream(adapterJar)).withCloseable { out ->
+            out.putNextEntry(new ZipEntry(ExtensionBase.name.replace('.', '/') + '.class'))
+            classFile(ExtensionBase).withCloseable { out << it }
+            out.closeEntry()
+        }
+        BeanDefinitionGenerator generator = new BeanDefinitionGenerator([], ['java.lang.Runnable'])
+        classFile(ExtensionBean).withCloseable { generator.addClass(it) }
+
+        assertThat(generator.beans, is(anEmptyMap()))
+
+        generator.addClasspath([adapterJar])
+
+        assertThat(generator.beans, equalTo([extensionBean: ExtensionBean.name]))
+    }
+
+    @Test
+    void 'generates no beans without annotations or extension types'() {
+        Map<String, String> beans = generator([], []).beans
+
+        assertThat(beans, is(anEmptyMap()))
+    }
+
+    @Test
+    void 'writes bean definition file'() {
+        StringWriter writer = new StringWriter()
+        BeanDefinitionGenerator.writeTo(generator(['java.lang.Deprecated'], []).beans, writer)
+
+        assertThat(writer.toString(), containsString("<bean id=\"annotatedBean\" class=\"${AnnotatedBean.name}\"/>"))
+        assertThat(writer.toString(), containsString('default-autowire="constructor"'))
+    }
+
+    @Test
+    void 'server plugin configures bean definition task to package generated file'() {
+        Project project = ProjectBuilder.builder().withProjectDir(projectDir).build()
+        project.apply plugin: 'java'
+        project.apply plugin: 'com.github.rodm.teamcity-server'
+
+        GenerateBeanDefinition task = project.tasks.getByName('generateServerBeanDefinition') as GenerateBeanDefinition
+
+        assertThat(task.definitionName.get(), equalTo('build-server-plugin-generated.xml'))
+        assertThat(task.annotations.get().isEmpty(), is(true))
+        assertThat(task.classes.files, not(is(Collections.emptySet())))
+        assertThat(task.classpath.from, hasItem(project.configurations.getByName('compileClasspath')))
+    }
+}
@@ -0,0 +1,317 @@
+/*
+ * Copyright 2022 Rod MacKenzie
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.rodm.teamcity
+
+import com.github.rodm.teamcity.internal.DistributionCache
+import com.sun.net.httpserver.HttpExchange
+import com.sun.net.httpserver.HttpServer
+import org.junit.jupiter.api.AfterEach
+import org.junit.jupiter.api.BeforeEach
+import org.junit.jupiter.api.Test
+import org.junit.jupiter.api.io.TempDir
+
+import java.security.MessageDigest
+import java.util.concurrent.Callable
+import java.util.concurrent.CopyOnWriteArrayList
+import java.util.concurrent.ExecutorService
+import java.util.concurrent.Executors
+
+import static org.hamcrest.MatcherAssert.assertThat
+import static org.hamcrest.Matchers.containsString
+import static org.hamcrest.Matchers.equalTo
+import static org.hamcrest.Matchers.everyItem
+import static org.hamcrest.Matchers.hasItem
+import static org.hamcrest.Matchers.hasSize
+import static org.hamcrest.Matchers.is
+import static org.hamcrest.Matchers.not
+import static org.junit.jupiter.api.Assertions.assertThrows
+
+class DistributionCacheTest {
+
+    private static final String PATH = '/teamcity/TeamCity-2021.2.tar.gz'
+
+    @TempDir
+    File cacheDir
+
+    private HttpServer server
+    private byte[] distribution
+    private boolean rangeSupport = true
+    private String publishedChecksum
+    private String etag = '"v1"'
+    private List<String> requests = new CopyOnWriteArrayList<>()
+    private List<String> ifRanges = new CopyOnWriteArrayList<>()
+    private List<String> authorizations = new CopyOnWriteArrayList<>()
+
+    @BeforeEach
+    void startServer() {
+        distribution = new byte[4 * 1024 * 1024 + 123]
+        new Random(42).nextBytes(distribution)
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0)
+        server.createContext(PATH, { HttpExchange exchange -> serve(exchange) })
+        server.executor = Executors.newCachedThreadPool()
+        server.start()
+    }
+
+    @AfterEach
+    void stopServer() {
+        server.stop(0)
+        (server.executor as ExecutorService).shutdownNow()
+    }
+
+    private void serve(HttpExchange exchange) {
+        String path = exchange.requestURI.path
+        String range = exchange.requestHeaders.getFirst('Range')
+        String ifRange = exchange.requestHeaders.getFirst('If-Range')
+        requests.add(path + (range ? ' ' + range : ''))
+        if (ifRange != null) {
+            ifRanges.add(ifRange)
+        }
+        authorizations.add(String.valueOf(exchange.requestHeaders.getFirst('Authorization')))
+        if (etag != null) {
+            exchange.responseHeaders.add('ETag', etag)
+        }
+        if (path.endsWith('.sha256')) {
+            if (publishedChecksum == null) {
+                exchange.sendResponseHeaders(404, -1)
+            } else {
+                byte[] body = "${publishedChecksum} *TeamCity-2021.2.tar.gz\n".getBytes('UTF-8')
+                exchange.sendResponseHeaders(200, body.length)
+                exchange.responseBody.write(body)
+            }
+        } else if (rangeSupport && range != null && (ifRange == null || ifRange == etag)) {
+            def matcher = range =~ /bytes=(\d+)-(\d+)/
+            matcher.find()
+            int start = matcher.group(1) as int
+            int end = matcher.group(2) as int
+            exchange.responseHeaders.add('Content-Range', "bytes ${start}-${end}/${distribution.length}")
+            exchange.sendResponseHeaders(206, end - start + 1)
+            exchange.responseBody.write(distribution, start, end - start + 1)
+        } else {
+            exchange.sendResponseHeaders(200, distribution.length)
+            exchange.responseBody.write(distribution)
+        }
+        exchange.close()
+    }
+
+    private URL url() {
+        return new URL("http://127.0.0.1:${server.address.port}${PATH}")
+    }
+
+    private static String sha256(byte[] bytes) {
+        MessageDigest.getInstance('SHA-256').digest(bytes).encodeHex().toString()
+    }
+
+    private List<String> distributionRequests() {
+        requests.findAll { !it.contains('.sha256') && it != "${PATH} bytes=0-0".toString() }
+    }
+
+    @Test
+    void 'downloads distribution to the cache'() {
+        DistributionCache cache = new DistributionCache(cacheDir, 1)
+
+        File file = cache.get('2021.2', url(), null)
+
+        assertThat(file.name, equalTo('TeamCity-2021.2.tar.gz'))
+        assertThat(file.bytes, equalTo(distribution))
+        assertThat(file.parentFile.parentFile.name, equalTo('2021.2'))
+        assertThat(new File(file.parentFile, 'TeamCity-2021.2.tar.gz.sha256').text, equalTo(sha256(distribution)))
+    }
+
+    @Test
+    void 'uses the cached distribution without downloading it again'() {
+        DistributionCache cache = new DistributionCache(cacheDir, 1)
+        File first = cache.get('2021.2', url(), null)
+        requests.clear()
+
+        File second = new DistributionCache(cacheDir, 1).get('2021.2', url(), null)
+
+        assertThat(second, equalTo(first))
+        assertThat(requests, hasSize(0))
+    }
+
+    @Test
+    void 'downloads distributions with different URLs to different entries'() {
+        DistributionCache cache = new DistributionCache(cacheDir, 1)
+        File first = cache.get('2021.2', url(), null)
+
+        URL other = new URL("http://127.0.0.1:${server.address.port}${PATH}?mirror=1")
+        File second = cache.get('2021.2', other, null)
+
+        assertThat(second.parentFile, is(not(first.parentFile)))
+        assertThat(second.bytes, equalTo(distribution))
+    }
+
+    @Test
+    void 'verifies distribution against the given checksum'() {
+        DistributionCache cache = new DistributionCache(cacheDir, 1)
+
+        IOException e = assertThrows(IOException, { cache.get('2021.2', url(), '0' * 64) })
+
+        assertThat(e.message, containsString('does not match'))
+        assertThat(new File(cacheDir, '2021.2').listFiles()[0].list().toList(), equalTo(['download.lock']))
+    }
+
+    @Test
+    void 'verifies distribution against the published checksum'() {
+        publishedChecksum = 'f' * 64
+        DistributionCache cache = new DistributionCache(cacheDir, 1)
+
+        IOException e = assertThrows(IOException, { cache.get('2021.2', url(), null) })
+
+        assertThat(e.message, containsString('expected ' + publishedChecksum))
+    }
+
+    @Test
+    void 'accepts distribution matching the published checksum'() {
+        publishedChecksum = sha256(distribution)
+        DistributionCache cache = new DistributionCache(cacheDir, 1)
+
+        File file = cache.get('2021.2', url(), null)
+
+        assertThat(file.bytes, equalTo(distribution))
+        assertThat(requests, hasItem(PATH + '.sha256'))
+    }
+
+    @Test
+    void 'downloads distribution again when the given checksum differs from the cached checksum'() {
+        DistributionCache cache = new DistributionCache(cacheDir, 1)
+        File file = cache.get('2021.2', url(), null)
+        new File(file.parentFile, 'TeamCity-2021.2.tar.gz.sha256').text = 'a' * 64
+        requests.clear()
+
+        cache.get('2021.2', url(), sha256(distribution))
+
+        assertThat(distributionRequests(), hasSize(1))
+    }
+
+    @Test
+    void 'resumes a partial download with a range request'() {
+        File entryDir = partialDownload(Arrays.copyOf(distribution, 1000), '"v1"')
+        DistributionCache cache = new DistributionCache(cacheDir, 1)
+
+        File file = cache.get('2021.2', url(), null)
+
+        assertThat(file.bytes, equalTo(distribution))
+        assertThat(distributionRequests(), equalTo([PATH + ' bytes=1000-' + (distribution.length - 1)]))
+        assertThat(ifRanges, equalTo(['"v1"']))
+        assertThat(entryDir.list().toList().findAll { it.contains('.part') || it.contains('.validator') }, hasSize(0))
+    }
+
+    @Test
+    void 'restarts a partial download when the distribution changed on the server'() {
+        partialDownload(new byte[1000], '"v0"')
+        DistributionCache cache = new DistributionCache(cacheDir, 1)
+
+        File file = cache.get('2021.2', url(), null)
+
+        assertThat(file.bytes, equalTo(distribution))
+        assertThat(distributionRequests(), equalTo([PATH + ' bytes=0-' + (distribution.length - 1)]))
+    }
+
+    @Test
+    void 'restarts a partial download when the server returns no validator'() {
+        etag = null
+        partialDownload(new byte[1000], '"v1"')
+        DistributionCache cache = new DistributionCache(cacheDir, 1)
+
+        File file = cache.get('2021.2', url(), null)
+
+        assertThat(file.bytes, equalTo(distribution))
+        assertThat(distributionRequests(), equalTo([PATH + ' bytes=0-' + (distribution.length - 1)]))
+        assertThat(ifRanges, hasSize(0))
+    }
+
+    @Test
+    void 'discards a partial download when the distribution changes during the download'() {
+        File entryDir = partialDownload(new byte[1000], '"v1"')
+        DistributionCache cache = new DistributionCache(cacheDir, 1)
+        etag = '"v2"'
+        server.removeContext(PATH)
+        server.createContext(PATH, { HttpExchange exchange ->
+            // the validator changes after the first request of the download
+            if (exchange.requestHeaders.getFirst('If-Range') != null) {
+                etag = '"v3"'
+            }
+            serve(exchange)
+        })
+
+        assertThrows(IOException, { cache.get('2021.2', url(), null) })
+
+        assertThat(entryDir.list().toList().findAll { it.contains('.part') }, hasSize(0))
+        assertThat(new File(entryDir, 'TeamCity-2021.2.tar.gz.sha256').exists(), is(false))
+    }
+
+    @Test
+    void 'sends the request headers to the server'() {
+        DistributionCache cache = new DistributionCache(cacheDir, 1, ['Authorization': 'Basic dXNlcjpwYXNz'])
+
+        cache.get('2021.2', url(), null)
+
+        assertThat(authorizations, everyItem(equalTo('Basic dXNlcjpwYXNz')))
+    }
+
+    @Test
+    void 'downloads ranges of the distribution in parallel'() {
+        DistributionCache cache = new DistributionCache(cacheDir, 4)
+
+        File file = cache.get('2021.2', url(), null)
+
+        assertThat(file.bytes, equalTo(distribution))
+        assertThat(distributionRequests(), hasSize(4))
+        assertThat(file.parentFile.list().toList().findAll { it.contains('.part') }, hasSize(0))
+    }
+
+    @Test
+    void 'downloads whole distribution when the server does not support range requests'() {
+        rangeSupport = false
+        DistributionCache cache = new DistributionCache(cacheDir, 4)
+
+        File file = cache.get('2021.2', url(), null)
+
+        assertThat(file.bytes, equalTo(distribution))
+        assertThat(distributionRequests(), everyItem(equalTo(PATH)))
+    }
+
+    @Test
+    void 'concurrent requests download the distribution once'() {
+        ExecutorService executor = Executors.newFixedThreadPool(4)
+        try {
+            def tasks = (1..4).collect {
+                { -> new DistributionCache(cacheDir, 2).get('2021.2', url(), null) } as Callable<File>
+            }
+            List<File> files = executor.invokeAll(tasks)*.get()
+
+            assertThat(files.toSet(), hasSize(1))
+            assertThat(files[0].bytes, equalTo(distribution))
+            assertThat(distributionRequests(), hasSize(2))
+        }
+        finally {
+            executor.shutdown()
+        }
+    }
+
+    private File partialDownload(byte[] content, String validator) {
+        File entryDir = new File(new File(cacheDir, '2021.2'), digest(url().toString()))
+        entryDir.mkdirs()
+        new File(entryDir, 'TeamCity-2021.2.tar.gz.part1of1').bytes = content
+        new File(entryDir, 'TeamCity-2021.2.tar.gz.validator').text = validator
+        return entryDir
+    }
+
+    private static String digest(String value) {
+        MessageDigest.getInstance('SHA-256').digest(value.getBytes('UTF-8')).encodeHex().toString().substring(0, 32)
+    }
+}
@@ -35,8 +35,8 @@ import com.github.rodm.teamcity.tasks.Undeploy
 import org.gradle.api.InvalidUserDataException
 import org.gradle.api.Project
 import org.gradle.api.Task
+import org.gradle.api.file.FileCollection
 import org.gradle.api.internal.project.ProjectInternal
-import org.gradle.api.logging.Logger
 import org.gradle.api.tasks.Copy
 import org.gradle.api.tasks.Delete
 import org.gradle.initialization.GradlePropertiesController
@@ -64,6 +64,7 @@ import static org.hamcrest.Matchers.endsWith
 import static org.hamcrest.Matchers.equalTo
 import static org.hamcrest.Matchers.hasItem
 import static org.hamcrest.Matchers.hasSize
+import static org.hamcrest.Matchers.is
 import static org.hamcrest.Matchers.isA
 import static org.hamcrest.Matchers.not
 import static org.hamcrest.Matchers.startsWith
@@ -750,6 +751,45 @@ class EnvironmentsTest {
         assertThat(normalizePath(undeployPlugin.pluginsDir), endsWith('data/10.0/plugins'))
     }
 
+    @Test
+    void 'environments plugin configures deploy task to deploy exploded project plugin'() {
+        project.apply plugin: 'com.github.rodm.teamcity-server'
+        project.apply plugin: 'com.github.rodm.teamcity-environments'
+        project.teamcity {
+            environments {
+                test {
+                    version = '10.0.3'
+                    exploded = true
+                }
+            }
+        }
+        project.evaluate()
+
+        def deployPlugin = project.tasks.getByName('deployToTest') as Deploy
+        assertThat(deployPlugin.exploded.get(), is(true))
+        assertThat(deployPlugin.plugins.files, hasSize(0))
+        Set<Task> dependencies = deployPlugin.taskDependencies.getDependencies(deployPlugin) as Set<Task>
+        assertThat(dependencies, hasItem(project.tasks.getByName('generateServerDescriptor')))
+        assertThat(dependencies, not(hasItem(project.tasks.getByName('assemble'))))
+    }
+
+    @Test
+    void 'environments plugin configures deploy task to deploy plugin archives by default'() {
+        project.apply plugin: 'com.github.rodm.teamcity-server'
+        project.apply plugin: 'com.github.rodm.teamcity-environments'
+        project.teamcity {
+            environments {
+                test {
+                    version = '10.0.3'
+                }
+            }
+        }
+        project.evaluate()
+
+        def deployPlugin = project.tasks.getByName('deployToTest') as Deploy
+        assertThat(deployPlugin.exploded.get(), is(false))
+    }
+
     @Test
     void 'environments plugin configures deploy and undeploy tasks with multiple plugins'() {
         project.apply plugin: 'com.github.rodm.teamcity-environments'
@@ -1098,6 +1138,41 @@ class EnvironmentsTest {
         assertThat(normalizePath(download.getDest()), endsWith('downloads/TeamCity-10.0.4.tar.gz'))
     }
 
+    @Test
+    void 'configures download task to not use the shared download cache by default'() {
+        project.apply plugin: 'com.github.rodm.teamcity-environments'
+        project.teamcity TEAMCITY10_ENVIRONMENT
+
+        project.evaluate()
+
+        DownloadTeamCity download = project.tasks.getByName('downloadTeamcity10') as DownloadTeamCity
+        assertThat(download.useCache.get(), is(false))
+        assertThat(download.version.get(), equalTo('10.0.4'))
+        assertThat(download.connections.get(), equalTo(1))
+        def gradleUserHome = project.gradle.gradleUserHomeDir
+        assertThat(download.cacheDir.get().asFile, equalTo(new File(gradleUserHome, 'caches/teamcity/distributions')))
+    }
+
+    @Test
+    void 'configures download task with download cache properties'() {
+        project.apply plugin: 'com.github.rodm.teamcity-environments'
+        project.teamcity {
+            environments {
+                downloadCache = true
+                downloadConnections = 4
+                test {
+                    version = '2021.2.3'
+                }
+            }
+        }
+
+        project.evaluate()
+
+        DownloadTeamCity download = project.tasks.getByName('downloadTest') as DownloadTeamCity
+        assertThat(download.useCache.get(), is(true))
+        assertThat(download.connections.get(), equalTo(4))
+    }
+
     @Test
     void 'extension has named child extensions'() {
         project.apply plugin: 'com.github.rodm.teamcity-environments'
@@ -1502,8 +1577,8 @@ class EnvironmentsTest {
         HttpURLConnection request
         String pluginName
 
-        TestPluginAction(Logger logger, File dataDir, boolean enable) {
-            super(logger, dataDir, [] as Set, [], enable)
+        TestPluginAction(File dataDir, FileCollection plugins, boolean enable) {
+            super(dataDir, plugins, enable)
         }
 
         @Override
@@ -1530,7 +1605,7 @@ class EnvironmentsTest {
 
     @Test
     void 'does not send plugin action request when maintenance token file is not available'() {
-        def action = new TestPluginAction(project.logger, projectDir.toFile(), false) {
+        def action = new TestPluginAction(projectDir.toFile(), project.files(), false) {
             @Override
             void sendRequest(HttpURLConnection request, String pluginName) {
                 fail('Should not send request when maintenance token file not available')
@@ -1545,7 +1620,7 @@ class EnvironmentsTest {
 
     @Test
     void 'sends plugin action to correct path'() {
-        def action = new TestPluginAction(project.logger, projectDir.toFile(), false)
+        def action = new TestPluginAction(projectDir.toFile(), project.files(), false)
         createMaintenanceTokenFile()
 
         action.executeAction('test-plugin.zip')
@@ -1556,7 +1631,7 @@ class EnvironmentsTest {
 
     @Test
     void 'sends plugin action with authorization token from maintenance file'() {
-        def action = new TestPluginAction(project.logger, projectDir.toFile(), true)
+        def action = new TestPluginAction(projectDir.toFile(), project.files(), true)
         createMaintenanceTokenFile()
 
         action.executeAction('test-plugin.zip')
@@ -1567,7 +1642,7 @@ class EnvironmentsTest {
 
     @Test
     void 'sends plugin action with settings to disable plugin'() {
-        def action = new TestPluginAction(project.logger, projectDir.toFile(), false)
+        def action = new TestPluginAction(projectDir.toFile(), project.files(), false)
         createMaintenanceTokenFile()
 
         action.executeAction('test-plugin.zip')
@@ -1578,7 +1653,7 @@ class EnvironmentsTest {
 
     @Test
     void 'sends plugin action with settings to enable plugin'() {
-        def action = new TestPluginAction(project.logger, projectDir.toFile(), true)
+        def action = new TestPluginAction(projectDir.toFile(), project.files(), true)
         createMaintenanceTokenFile()
 
         action.executeAction('test-plugin.zip')
@@ -1589,7 +1664,7 @@ class EnvironmentsTest {
 
     @Test
     void 'sends plugin action with encoded plugin path'() {
-        def action = new TestPluginAction(project.logger, projectDir.toFile(), true)
+        def action = new TestPluginAction(projectDir.toFile(), project.files(), true)
         createMaintenanceTokenFile()
 
         action.executeAction('plugin-1.0.0+test.zip')
@@ -1600,7 +1675,7 @@ class EnvironmentsTest {
 
     @Test
     void 'disabling plugin unload response logs success'() {
-        def action = new DisablePluginAction(project.logger, projectDir.toFile(), [] as Set, [])
+        def action = new DisablePluginAction(projectDir.toFile(), project.files())
         createMaintenanceTokenFile()
 
         def request = mock(HttpURLConnection)
@@ -1615,7 +1690,7 @@ class EnvironmentsTest {
 
     @Test
     void 'disabling plugin unexpected response logs failure'() {
-        def action = new DisablePluginAction(project.logger, projectDir.toFile(), [] as Set, [])
+        def action = new DisablePluginAction(projectDir.toFile(), project.files())
         createMaintenanceTokenFile()
 
         def request = mock(HttpURLConnection)
@@ -1628,7 +1703,7 @@ class EnvironmentsTest {
 
     @Test
     void 'enabling plugin loaded response logs success'() {
-        def action = new EnablePluginAction(project.logger, projectDir.toFile(), [] as Set, [])
+        def action = new EnablePluginAction(projectDir.toFile(), project.files())
         createMaintenanceTokenFile()
 
         def request = mock(HttpURLConnection)
@@ -1641,7 +1716,7 @@ class EnvironmentsTest {
 
     @Test
     void 'enabling plugin unexpected response logs failure'() {
-        def action = new EnablePluginAction(project.logger, projectDir.toFile(), [] as Set, [])
+        def action = new EnablePluginAction(projectDir.toFile(), project.files())
         createMaintenanceTokenFile()
 
         def request = mock(HttpURLConnection)
@@ -1654,14 +1729,14 @@ class EnvironmentsTest {
 
     boolean wasRequestSent = false
 
-    private DisablePluginAction createDisablePluginAction(def plugins, def unloaded) {
-        createDisablePluginAction(plugins, unloaded, 'Plugin unloaded successfully')
+    private DisablePluginAction createDisablePluginAction(def plugins) {
+        createDisablePluginAction(plugins, 'Plugin unloaded successfully')
     }
 
-    private DisablePluginAction createDisablePluginAction(def plugins, def unloaded, String response) {
+    private DisablePluginAction createDisablePluginAction(def plugins, String response) {
         def request = mock(HttpURLConnection)
         when(request.inputStream).thenReturn(new ByteArrayInputStream(response.bytes))
-        new DisablePluginAction(project.logger, projectDir.toFile(), plugins , unloaded) {
+        new DisablePluginAction(projectDir.toFile(), project.files(plugins)) {
             void executeAction(String pluginName) {
                 sendRequest(request, pluginName)
                 EnvironmentsTest.this.wasRequestSent = true
@@ -1669,11 +1744,11 @@ class EnvironmentsTest {
         }
     }
 
-    private EnablePluginAction createEnablePluginAction(def plugins, def unloaded) {
+    private EnablePluginAction createEnablePluginAction(def plugins) {
         def request = mock(HttpURLConnection)
         def response = 'Plugin loaded successfully'
         when(request.inputStream).thenReturn(new ByteArrayInputStream(response.bytes))
-        new EnablePluginAction(project.logger, projectDir.toFile(), plugins, unloaded) {
+        new EnablePluginAction(projectDir.toFile(), project.files(plugins)) {
             void executeAction(String pluginName) {
                 sendRequest(request, pluginName)
                 EnvironmentsTest.this.wasRequestSent = true
@@ -1692,13 +1767,12 @@ class EnvironmentsTest {
         }
 
         Set<File> plugins = [pluginFile] as Set
-        List<String> unloaded = []
-        def action = createDisablePluginAction(plugins, unloaded)
+        def action = createDisablePluginAction(plugins)
 
         action.execute(deploy)
 
         assertFalse(wasRequestSent)
-        assertThat('new plugin requires enabling', unloaded, hasItem(pluginName))
+        assertThat('new plugin requires enabling', unloadedPlugins(deploy), hasItem(pluginName))
     }
 
     @Test
@@ -1712,13 +1786,12 @@ class EnvironmentsTest {
         }
 
         Set<File> plugins = [pluginFile] as Set
-        List<String> unloaded = []
-        def action = createDisablePluginAction(plugins, unloaded)
+        def action = createDisablePluginAction(plugins)
 
         action.execute(deploy)
 
         assertTrue(wasRequestSent)
-        assertThat('existing plugin requires re-enabling', unloaded, hasItem(pluginName))
+        assertThat('existing plugin requires re-enabling', unloadedPlugins(deploy), hasItem(pluginName))
     }
 
     @Test
@@ -1732,13 +1805,12 @@ class EnvironmentsTest {
         }
 
         Set<File> plugins = [pluginFile] as Set
-        List<String> unloaded = []
-        def action = createDisablePluginAction(plugins, unloaded, 'Plugin unloaded partially')
+        def action = createDisablePluginAction(plugins, 'Plugin unloaded partially')
 
         action.execute(deploy)
 
         assertTrue(wasRequestSent)
-        assertThat('partially unloaded plugin should be in reload list', unloaded, hasItem(pluginName))
+        assertThat('partially unloaded plugin should be in reload list', unloadedPlugins(deploy), hasItem(pluginName))
     }
 
     @Test
@@ -1751,8 +1823,7 @@ class EnvironmentsTest {
             into { pluginDir }
         }
         Set<File> plugins = [pluginFile] as Set
-        List<String> unloaded = []
-        def action = createEnablePluginAction(plugins, unloaded)
+        def action = createEnablePluginAction(plugins)
 
         action.execute(deploy)
 
@@ -1769,15 +1840,38 @@ class EnvironmentsTest {
             into { pluginDir }
         }
         Set<File> plugins = [pluginFile] as Set
-        // disabled and new plugins are added to list by disable action
-        List<String> unloaded = [pluginName]
-        def action = createEnablePluginAction(plugins, unloaded)
+        // disabled and new plugins are written to a file by disable action
+        new File(deploy.temporaryDir, 'unloaded-plugins.txt').text = pluginName + '\n'
+        def action = createEnablePluginAction(plugins)
 
         action.execute(deploy)
 
         assertTrue(wasRequestSent)
     }
 
+    @Test
+    void 'enable plugin action uses plugins unloaded by a separate disable action'() {
+        def pluginName = 'test-plugin.zip'
+        File pluginDir = createDirectory(projectDir.resolve('plugins'))
+        File pluginFile = createFile(pluginDir.toPath().resolve(pluginName))
+        def deploy = project.tasks.create('deploy', Copy) {
+            from { "${pluginFile.name}" }
+            into { pluginDir }
+        }
+        Set<File> plugins = [pluginFile] as Set
+        createDisablePluginAction(plugins).execute(deploy)
+        wasRequestSent = false
+
+        createEnablePluginAction(plugins).execute(deploy)
+
+        assertTrue(wasRequestSent)
+        assertFalse(new File(deploy.temporaryDir, 'unloaded-plugins.txt').exists())
+    }
+
+    private static List<String> unloadedPlugins(Task task) {
+        new File(task.temporaryDir, 'unloaded-plugins.txt').readLines()
+    }
+
     private static File createFakeTeamCityInstall(Path folder, String baseDir, String version) {
         File homeDir = createDirectory(folder, "${baseDir}/TeamCity-${version}".toString())
         createCommonApiJar(homeDir.toPath(), version)
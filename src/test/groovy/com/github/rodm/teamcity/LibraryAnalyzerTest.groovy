@@ -0,0 +1,190 @@
+/*
+ * Copyright 2022 Rod MacKenzie
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.rodm.teamcity
+
+import com.github.rodm.teamcity.internal.ClassIndex
+import com.github.rodm.teamcity.internal.ExcludedLibrariesSpec
+import com.github.rodm.teamcity.internal.LibraryAnalyzer
+import com.github.rodm.teamcity.tasks.ProcessLibraries
+import org.gradle.api.Project
+import org.gradle.api.file.FileTreeElement
+import org.gradle.api.file.RelativePath
+import org.gradle.testfixtures.ProjectBuilder
+import org.junit.jupiter.api.BeforeEach
+import org.junit.jupiter.api.Test
+import org.junit.jupiter.api.io.TempDir
+
+import java.util.zip.ZipEntry
+import java.util.zip.ZipOutputStream
+
+import static org.hamcrest.MatcherAssert.assertThat
+import static org.hamcrest.Matchers.anEmptyMap
+import static org.hamcrest.Matchers.contains
+import static org.hamcrest.Matchers.empty
+import static org.hamcrest.Matchers.equalTo
+import static org.hamcrest.Matchers.hasEntry
+import static org.hamcrest.Matchers.hasKey
+import static org.hamcrest.Matchers.is
+import static org.mockito.Mockito.mock
+import static org.mockito.Mockito.when
+
+class LibraryAnalyzerTest {
+
+    @TempDir
+    File libDir
+
+    private LibraryAnalyzer analyzer
+
+    @BeforeEach
+    void setup() {
+        analyzer = new LibraryAnalyzer()
+    }
+
+    private File createJar(String name, List<String> entries) {
+        File jar = new File(libDir, name)
+        new ZipOutputStream(new FileOutputStream(jar)).withCloseable { out ->
+            entries.each { entry ->
+                out.putNextEntry(new ZipEntry(entry))
+                out.write(entry.bytes)
+                out.closeEntry()
+            }
+        }
+        return jar
+    }
+
+    @Test
+    void 'no duplicates reported for distinct libraries'() {
+        File first = createJar('first-1.0.jar', ['com/example/first/A.class'])
+        File second = createJar('second-1.0.jar', ['com/example/second/B.class'])
+
+        LibraryAnalyzer.Report report = analyzer.analyze([first, second])
+
+        assertThat(report.isEmpty(), is(true))
+    }
+
+    @Test
+    void 'reports jars with the same content'() {
+        File original = createJar('library-1.0.jar', ['com/example/A.class'])
+        File copy = new File(libDir, 'copy.jar')
+        copy.bytes = original.bytes
+
+        LibraryAnalyzer.Report report = analyzer.analyze([original, copy])
+
+        assertThat(report.duplicateJars, hasEntry(copy, original))
+        assertThat(report.duplicateClasses, is(anEmptyMap()))
+    }
+
+    @Test
+    void 'reports multiple versions of a library'() {
+        File version1 = createJar('library-1.0.jar', ['com/example/A.class'])
+        File version2 = createJar('library-1.1.jar', ['com/example/A.class', 'com/example/B.class'])
+
+        LibraryAnalyzer.Report report = analyzer.analyze([version1, version2])
+
+        assertThat(report.multipleVersions, hasKey('library'))
+        assertThat(report.multipleVersions.get('library'), contains(version1, version2))
+    }
+
+    @Test
+    void 'reports classes contained in more than one jar'() {
+        File first = createJar('first.jar', ['com/example/A.class', 'com/example/B.class'])
+        File second = createJar('second.jar', ['com/example/B.class', 'com/example/C.class'])
+
+        LibraryAnalyzer.Report report = analyzer.analyze([first, second])
+
+        LibraryAnalyzer.DuplicateClasses duplicates = report.duplicateClasses.get([first, second])
+        assertThat(duplicates.count, equalTo(1))
+        assertThat(duplicates.examples, contains('com.example.B'))
+        assertThat(report.splitPackages.get('com.example'), contains(first, second))
+    }
+
+    @Test
+    void 'ignores module and versioned classes'() {
+        File first = createJar('first.jar', ['module-info.class', 'META-INF/versions/9/module-info.class', 'first/A.class'])
+        File second = createJar('second.jar', ['module-info.class', 'META-INF/versions/9/module-info.class', 'second/B.class'])
+
+        LibraryAnalyzer.Report report = analyzer.analyze([first, second])
+
+        assertThat(report.isEmpty(), is(true))
+    }
+
+    @Test
+    void 'class index stores large number of classes'() {
+        ClassIndex index = new ClassIndex()
+        (0..<100000).each { i -> index.putIfAbsent("com/example/package${i % 100}/Class${i}.class", i % 7) }
+
+        assertThat(index.size(), equalTo(100000))
+        assertThat(index.get('com/example/package42/Class142.class'), equalTo(142 % 7))
+        assertThat(index.putIfAbsent('com/example/package1/Class1.class', 6), equalTo(1))
+        assertThat(index.contains('com/example/Missing.class'), is(false))
+    }
+
+    @Test
+    void 'process task excludes duplicate jars when enabled'(@TempDir File projectDir) {
+        File original = createJar('library-1.0.jar', ['com/example/A.class'])
+        File copy = new File(libDir, 'copy.jar')
+        copy.bytes = original.bytes
+
+        Project project = ProjectBuilder.builder().withProjectDir(projectDir).build()
+        ProcessLibraries task = project.tasks.create('processServerLibraries', ProcessLibraries)
+        task.section.set('server')
+        task.libraries.from(original, copy)
+        task.excludeDuplicateLibraries.set(true)
+        task.excludedLibrariesFile.set(new File(projectDir, 'excluded-libraries.txt'))
+
+        task.process()
+
+        assertThat(task.excludedLibrariesFile.get().asFile.readLines(), contains('copy.jar'))
+    }
+
+    @Test
+    void 'process task does not exclude duplicate jars by default'(@TempDir File projectDir) {
+        File original = createJar('library-1.0.jar', ['com/example/A.class'])
+        File copy = new File(libDir, 'copy.jar')
+        copy.bytes = original.bytes
+
+        Project project = ProjectBuilder.builder().withProjectDir(projectDir).build()
+        ProcessLibraries task = project.tasks.create('processServerLibraries', ProcessLibraries)
+        task.section.set('server')
+        task.libraries.from(original, copy)
+        task.excludedLibrariesFile.set(new File(projectDir, 'excluded-libraries.txt'))
+
+        task.process()
+
+        assertThat(task.checkDuplicateLibraries.get(), is(false))
+        assertThat(task.excludedLibrariesFile.get().asFile.readLines(), is(empty()))
+    }
+
+    @Test
+    void 'archive excludes the libraries listed by the process task'(@TempDir File projectDir) {
+        File excludedLibrariesFile = new File(projectDir, 'excluded-libraries.txt')
+        excludedLibrariesFile.text = 'copy.jar\n'
+
+        Project project = ProjectBuilder.builder().withProjectDir(projectDir).build()
+        ExcludedLibrariesSpec spec = new ExcludedLibrariesSpec(project.provider { project.layout.projectDirectory.file('excluded-libraries.txt') })
+
+        assertThat(spec.isSatisfiedBy(element('copy.jar')), is(true))
+        assertThat(spec.isSatisfiedBy(element('library-1.0.jar')), is(false))
+        assertThat(spec.isSatisfiedBy(element('lib', 'copy.jar')), is(false))
+    }
+
+    private static FileTreeElement element(String... segments) {
+        FileTreeElement element = mock(FileTreeElement)
+        when(element.getName()).thenReturn(segments.last())
+        when(element.getRelativePath()).thenReturn(new RelativePath(true, segments))
+        return element
+    }
+}
@@ -0,0 +1,183 @@
+/*
+ * Copyright 2022 Rod MacKenzie
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.rodm.teamcity
+
+import com.github.rodm.teamcity.internal.LibraryMerger
+import com.github.rodm.teamcity.tasks.ProcessLibraries
+import org.gradle.api.Project
+import org.gradle.testfixtures.ProjectBuilder
+import org.junit.jupiter.api.Test
+import org.junit.jupiter.api.io.TempDir
+
+import java.util.jar.Attributes
+import java.util.jar.JarFile
+import java.util.jar.JarOutputStream
+import java.util.jar.Manifest
+import java.util.zip.ZipEntry
+import java.util.zip.ZipFile
+import java.util.zip.ZipOutputStream
+
+import static com.github.rodm.teamcity.TeamCityServerPlugin.PLUGIN_DEFINITION_PATTERN
+import static org.hamcrest.MatcherAssert.assertThat
+import static org.hamcrest.Matchers.contains
+import static org.hamcrest.Matchers.equalTo
+import static org.hamcrest.Matchers.hasItems
+import static org.hamcrest.Matchers.is
+import static org.hamcrest.Matchers.nullValue
+
+class LibraryMergerTest {
+
+    @TempDir
+    File libDir
+
+    @TempDir
+    File outputDir
+
+    private File createJar(String name, Map<String, String> entries) {
+        File jar = new File(libDir, name)
+        new ZipOutputStream(new FileOutputStream(jar)).withCloseable { out ->
+            entries.each { entry, content ->
+                out.putNextEntry(new ZipEntry(entry))
+                out.write(content.bytes)
+                out.closeEntry()
+            }
+        }
+        return jar
+    }
+
+    private static Map<String, String> contents(File jar) {
+        new ZipFile(jar).withCloseable { zip ->
+            zip.entries().collectEntries { [(it.name): zip.getInputStream(it).text] }
+        }
+    }
+
+    @Test
+    void 'merges plugin jar and small libraries'() {
+        File plugin = createJar('plugin.jar', [
+            'META-INF/build-server-plugin-test.xml': '<beans/>',
+            'com/example/plugin/Plugin.class': 'plugin'])
+        File library = createJar('library-1.0.jar', [
+            'META-INF/INDEX.LIST': 'JarIndex-Version: 1.0\n\nlibrary-1.0.jar\ncom/example/library\n\n',
+            'com/example/library/Library.class': 'library'])
+
+        LibraryMerger.Result result = new LibraryMerger(PLUGIN_DEFINITION_PATTERN, 1024).merge([library, plugin], outputDir)
+
+        assertThat(result.mergedJars, contains(plugin, library))
+        assertThat(result.mergedJar.name, equalTo('plugin.jar'))
+        Map<String, String> entries = contents(result.mergedJar)
+        assertThat(entries.keySet(), hasItems('META-INF/build-server-plugin-test.xml',
+            'com/example/plugin/Plugin.class', 'com/example/library/Library.class'))
+        assertThat(entries.containsKey('META-INF/INDEX.LIST'), is(false))
+    }
+
+    @Test
+    void 'merged jar keeps the manifest of the plugin jar'() {
+        Manifest manifest = new Manifest()
+        manifest.mainAttributes.put(Attributes.Name.MANIFEST_VERSION, '1.0')
+        manifest.mainAttributes.put(Attributes.Name.IMPLEMENTATION_TITLE, 'test-plugin')
+        manifest.mainAttributes.put(Attributes.Name.IMPLEMENTATION_VERSION, '1.2.3')
+        File plugin = new File(libDir, 'plugin.jar')
+        new JarOutputStream(new FileOutputStream(plugin), manifest).withCloseable { out ->
+            out.putNextEntry(new ZipEntry('META-INF/build-server-plugin.xml'))
+            out.write('<beans/>'.bytes)
+            out.closeEntry()
+        }
+        File library = createJar('library-1.0.jar', [
+            'com/example/library/Library.class': 'library'])
+
+        LibraryMerger.Result result = new LibraryMerger(PLUGIN_DEFINITION_PATTERN, 1024).merge([plugin, library], outputDir)
+
+        new JarFile(result.mergedJar).withCloseable { jar ->
+            Attributes attributes = jar.manifest.mainAttributes
+            assertThat(attributes.getValue(Attributes.Name.IMPLEMENTATION_TITLE), equalTo('test-plugin'))
+            assertThat(attributes.getValue(Attributes.Name.IMPLEMENTATION_VERSION), equalTo('1.2.3'))
+        }
+    }
+
+    @Test
+    void 'reports classes found in more than one merged library'() {
+        File plugin = createJar('plugin.jar', [
+            'META-INF/build-server-plugin.xml': '<beans/>',
+            'com/example/shared/Shared.class': 'plugin'])
+        File library = createJar('library-1.0.jar', [
+            'com/example/shared/Shared.class': 'library',
+            'com/example/library/Library.class': 'library'])
+
+        LibraryMerger.Result result = new LibraryMerger(PLUGIN_DEFINITION_PATTERN, 1024).merge([plugin, library], outputDir)
+
+        assertThat(result.duplicateClassCount, equalTo(1))
+        assertThat(result.duplicateClasses, contains('com/example/shared/Shared.class'))
+        assertThat(contents(result.mergedJar)['com/example/shared/Shared.class'], equalTo('plugin'))
+    }
+
+    @Test
+    void 'concatenates service files and renames clashing plugin definitions'() {
+        File plugin = createJar('plugin.jar', [
+            'META-INF/build-server-plugin.xml': '<beans id="plugin"/>',
+            'META-INF/services/com.example.Service': 'com.example.plugin.PluginService'])
+        File extension = createJar('extension-1.0.jar', [
+            'META-INF/build-server-plugin.xml': '<beans id="extension"/>',
+            'META-INF/services/com.example.Service': 'com.example.extension.ExtensionService'])
+
+        LibraryMerger.Result result = new LibraryMerger(PLUGIN_DEFINITION_PATTERN, 1024).merge([plugin, extension], outputDir)
+
+        Map<String, String> entries = contents(result.mergedJar)
+        assertThat(entries['META-INF/build-server-plugin.xml'], equalTo('<beans id="plugin"/>'))
+        assertThat(entries['META-INF/build-server-plugin-extension.xml'], equalTo('<beans id="extension"/>'))
+        assertThat(entries['META-INF/services/com.example.Service'],
+            equalTo('com.example.plugin.PluginService\ncom.example.extension.ExtensionService\n'))
+    }
+
+    @Test
+    void 'does not merge signed or large libraries'() {
+        File plugin = createJar('plugin.jar', [
+            'META-INF/build-server-plugin.xml': '<beans/>'])
+        File signed = createJar('signed-1.0.jar', [
+            'META-INF/SIGNER.SF': 'signature',
+            'com/example/signed/Signed.class': 'signed'])
+        File large = createJar('large-1.0.jar', [
+            'com/example/large/Large.class': (1..200).collect { UUID.randomUUID().toString() }.join()])
+
+        LibraryMerger.Result result = new LibraryMerger(PLUGIN_DEFINITION_PATTERN, 1024).merge([plugin, signed, large], outputDir)
+
+        assertThat(result.mergedJar, is(nullValue()))
+        assertThat(result.mergedJars.isEmpty(), is(true))
+    }
+
+    @Test
+    void 'process task writes the merged jar and excludes the merged libraries'(@TempDir File projectDir) {
+        File plugin = createJar('plugin.jar', [
+            'META-INF/build-server-plugin.xml': '<beans/>',
+            'com/example/plugin/Plugin.class': 'plugin'])
+        File library = createJar('library-1.0.jar', [
+            'com/example/library/Library.class': 'library'])
+
+        Project project = ProjectBuilder.builder().withProjectDir(projectDir).build()
+        ProcessLibraries task = project.tasks.create('processServerLibraries', ProcessLibraries)
+        task.section.set('server')
+        task.libraries.from(plugin, library)
+        task.mergeLibraries.set(true)
+        task.excludedLibrariesFile.set(new File(projectDir, 'excluded-libraries.txt'))
+        task.destinationDir.set(outputDir)
+
+        task.process()
+
+        assertThat(task.excludedLibrariesFile.get().asFile.readLines(), contains('library-1.0.jar', 'plugin.jar'))
+        assertThat(outputDir.list() as List, contains('plugin.jar'))
+        assertThat(contents(new File(outputDir, 'plugin.jar')).keySet(), hasItems(
+            'META-INF/build-server-plugin.xml', 'com/example/plugin/Plugin.class', 'com/example/library/Library.class'))
+    }
+}
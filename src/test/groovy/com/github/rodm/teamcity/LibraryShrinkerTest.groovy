@@ -0,0 +1,158 @@
+/*
+ * Copyright 2022 Rod MacKenzie
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.rodm.teamcity
+
+import com.github.rodm.teamcity.internal.ClassFileReader
+import com.github.rodm.teamcity.internal.ClassIndex
+import com.github.rodm.teamcity.internal.LibraryShrinker
+import com.github.rodm.teamcity.internal.PluginBean
+import com.github.rodm.teamcity.internal.PluginDefinition
+import com.github.rodm.teamcity.internal.ValidationSupport
+import com.github.rodm.teamcity.tasks.ProcessLibraries
+import org.gradle.api.Project
+import org.gradle.testfixtures.ProjectBuilder
+import org.junit.jupiter.api.Test
+import org.junit.jupiter.api.io.TempDir
+
+import java.util.zip.ZipEntry
+import java.util.zip.ZipFile
+import java.util.zip.ZipOutputStream
+
+import static com.github.rodm.teamcity.TeamCityAgentPlugin.PLUGIN_DEFINITION_PATTERN
+import static org.hamcrest.MatcherAssert.assertThat
+import static org.hamcrest.Matchers.contains
+import static org.hamcrest.Matchers.containsInAnyOrder
+import static org.hamcrest.Matchers.hasItems
+import static org.hamcrest.Matchers.hasKey
+import static org.hamcrest.Matchers.is
+import static org.hamcrest.Matchers.lessThan
+import static org.hamcrest.Matchers.not
+
+class LibraryShrinkerTest {
+
+    private static final String DEFINITION = '''<?xml version="1.0" encoding="UTF-8"?>
+        <beans>
+            <bean id="definition" class="com.github.rodm.teamcity.internal.PluginDefinition"/>
+        </beans>
+        '''
+
+    @TempDir
+    File libDir
+
+    @TempDir
+    File outputDir
+
+    private static byte[] classBytes(Class type) {
+        String name = type.name.replace('.', '/') + '.class'
+        return type.classLoader.getResourceAsStream(name).bytes
+    }
+
+    private File createJar(String name, Map<String, byte[]> entries) {
+        File jar = new File(libDir, name)
+        new ZipOutputStream(new FileOutputStream(jar)).withCloseable { out ->
+            entries.each { entry, content ->
+                out.putNextEntry(new ZipEntry(entry))
+                out.write(content)
+                out.closeEntry()
+            }
+        }
+        return jar
+    }
+
+    private static List<String> entries(File jar) {
+        new ZipFile(jar).withCloseable { zip ->
+            zip.entries().collect { it.name }
+        }
+    }
+
+    private static String entryName(Class type) {
+        return type.name.replace('.', '/') + '.class'
+    }
+
+    @Test
+    void 'reads classes referenced by a class file'() {
+        Set<String> references = new ClassFileReader().read(new ByteArrayInputStream(classBytes(PluginDefinition))).references
+
+        assertThat(references, hasItems(
+            'com/github/rodm/teamcity/internal/PluginBean',
+            'com/github/rodm/teamcity/internal/ValidationSupport',
+            'java/io/File'))
+        assertThat(references, not(hasItems('com/github/rodm/teamcity/internal/ClassIndex')))
+    }
+
+    @Test
+    void 'removes classes not reachable from the plugin beans'() {
+        File plugin = createJar('plugin.jar', [
+            'META-INF/build-agent-plugin-test.xml': DEFINITION.bytes,
+            (entryName(PluginDefinition)): classBytes(PluginDefinition)])
+        File library = createJar('library-1.0.jar', [
+            'library.properties': 'name=library'.bytes,
+            (entryName(PluginBean)): classBytes(PluginBean),
+            (entryName(ValidationSupport)): classBytes(ValidationSupport),
+            (entryName(ClassIndex)): classBytes(ClassIndex)])
+
+        LibraryShrinker shrinker = new LibraryShrinker(PLUGIN_DEFINITION_PATTERN, [])
+        LibraryShrinker.Result result = shrinker.shrink([plugin, library], outputDir)
+
+        assertThat(result.shrunkJars, not(hasKey(plugin)))
+        File shrunk = result.shrunkJars.get(library)
+        assertThat(entries(shrunk), containsInAnyOrder(
+            'library.properties', entryName(PluginBean), entryName(ValidationSupport)))
+        assertThat(result.shrunkSize, lessThan(result.originalSize))
+    }
+
+    @Test
+    void 'keeps classes matching the keep patterns'() {
+        File plugin = createJar('plugin.jar', [
+            'META-INF/build-agent-plugin-test.xml': DEFINITION.bytes,
+            (entryName(PluginDefinition)): classBytes(PluginDefinition)])
+        File library = createJar('library-1.0.jar', [
+            (entryName(PluginBean)): classBytes(PluginBean),
+            (entryName(ValidationSupport)): classBytes(ValidationSupport),
+            (entryName(ClassIndex)): classBytes(ClassIndex)])
+
+        LibraryShrinker shrinker = new LibraryShrinker(PLUGIN_DEFINITION_PATTERN, ['com.github.rodm.teamcity.internal.*'])
+        LibraryShrinker.Result result = shrinker.shrink([plugin, library], outputDir)
+
+        assertThat(result.shrunkJars.isEmpty(), is(true))
+        assertThat(result.shrunkSize, is(result.originalSize))
+    }
+
+    @Test
+    void 'process task replaces shrunk libraries and excludes the originals'(@TempDir File projectDir) {
+        File plugin = createJar('plugin.jar', [
+            'META-INF/build-agent-plugin-test.xml': DEFINITION.bytes,
+            (entryName(PluginDefinition)): classBytes(PluginDefinition)])
+        File library = createJar('library-1.0.jar', [
+            (entryName(PluginBean)): classBytes(PluginBean),
+            (entryName(ValidationSupport)): classBytes(ValidationSupport),
+            (entryName(ClassIndex)): classBytes(ClassIndex)])
+
+        Project project = ProjectBuilder.builder().withProjectDir(projectDir).build()
+        ProcessLibraries task = project.tasks.create('processAgentLibraries', ProcessLibraries)
+        task.section.set('agent')
+        task.libraries.from(plugin, library)
+        task.shrinkLibraries.set(true)
+        task.excludedLibrariesFile.set(new File(projectDir, 'excluded-libraries.txt'))
+        task.destinationDir.set(outputDir)
+
+        task.process()
+
+        assertThat(task.excludedLibrariesFile.get().asFile.readLines(), contains('library-1.0.jar'))
+        assertThat(outputDir.list() as List, contains('library-1.0.jar'))
+        assertThat(entries(new File(outputDir, 'library-1.0.jar')), not(hasItems(entryName(ClassIndex))))
+    }
+}
@@ -0,0 +1,260 @@
+/*
+ * Copyright 2022 Rod MacKenzie
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.rodm.teamcity
+
+import com.github.rodm.teamcity.internal.AbstractPluginTask
+import com.github.rodm.teamcity.internal.PluginArchiveCopyAction
+import com.github.rodm.teamcity.internal.PluginArchiveReader
+import com.github.rodm.teamcity.internal.PluginArchiveWriter
+import org.gradle.api.Project
+import org.gradle.testfixtures.ProjectBuilder
+import org.junit.jupiter.api.BeforeEach
+import org.junit.jupiter.api.Test
+import org.junit.jupiter.api.io.TempDir
+
+import java.util.zip.ZipEntry
+import java.util.zip.ZipFile
+import java.util.zip.ZipInputStream
+
+import static org.hamcrest.CoreMatchers.equalTo
+import static org.hamcrest.CoreMatchers.instanceOf
+import static org.hamcrest.CoreMatchers.is
+import static org.hamcrest.CoreMatchers.not
+import static org.hamcrest.MatcherAssert.assertThat
+
+class PluginArchiveWriterTest {
+
+    private File archiveFile
+
+    @BeforeEach
+    void setup(@TempDir File tempDir) {
+        archiveFile = new File(tempDir, 'plugin.zip')
+    }
+
+    @Test
+    void 'stores already compressed entries'() {
+        new PluginArchiveWriter(archiveFile).withCloseable { writer ->
+            writer.putFile('server/library.jar', 'jar contents'.bytes, 0, 0644)
+            writer.putFile('agent/agent-plugin.zip', 'zip contents'.bytes, 0, 0644)
+            writer.putFile('server/icon.PNG', 'image contents'.bytes, 0, 0644)
+        }
+
+        new ZipFile(archiveFile).withCloseable { zip ->
+            assertThat(zip.getEntry('server/library.jar').method, equalTo(ZipEntry.STORED))
+            assertThat(zip.getEntry('agent/agent-plugin.zip').method, equalTo(ZipEntry.STORED))
+            assertThat(zip.getEntry('server/icon.PNG').method, equalTo(ZipEntry.STORED))
+            assertThat(zip.getInputStream(zip.getEntry('server/library.jar')).text, equalTo('jar contents'))
+        }
+    }
+
+    @Test
+    void 'deflates other entries'() {
+        String descriptor = '<teamcity-plugin/>\n' * 100
+        new PluginArchiveWriter(archiveFile).withCloseable { writer ->
+            writer.putFile('teamcity-plugin.xml', descriptor.bytes, 0, 0644)
+        }
+
+        new ZipFile(archiveFile).withCloseable { zip ->
+            ZipEntry entry = zip.getEntry('teamcity-plugin.xml')
+            assertThat(entry.method, equalTo(ZipEntry.DEFLATED))
+            assertThat(entry.compressedSize < entry.size, is(true))
+            assertThat(zip.getInputStream(entry).text, equalTo(descriptor))
+        }
+    }
+
+    @Test
+    void 'writes entries in the order they are added'() {
+        List<String> names = (1..200).collect { "server/file-${it}.txt".toString() }
+        new PluginArchiveWriter(archiveFile, 4).withCloseable { writer ->
+            writer.putDirectory('server', 0, 0755)
+            names.each { name -> writer.putFile(name, (name * 50).bytes, 0, 0644) }
+        }
+
+        new ZipFile(archiveFile).withCloseable { zip ->
+            List<String> entries = zip.entries().collect { it.name }
+            assertThat(entries, equalTo(['server/'] + names))
+            assertThat(zip.getEntry('server/').directory, is(true))
+            assertThat(zip.getInputStream(zip.getEntry('server/file-42.txt')).text, equalTo('server/file-42.txt' * 50))
+        }
+    }
+
+    @Test
+    void 'writes empty archive'() {
+        new PluginArchiveWriter(archiveFile).close()
+
+        new ZipFile(archiveFile).withCloseable { zip ->
+            assertThat(zip.size(), equalTo(0))
+        }
+    }
+
+    @Test
+    void 'streams entries to the archive'() {
+        byte[] contents = ('<teamcity-plugin/>\n' * 10000).bytes
+        new PluginArchiveWriter(archiveFile).withCloseable { writer ->
+            writer.putFile('teamcity-plugin.xml', 'descriptor'.bytes, 0, 0644)
+            writer.putFile('server/large.txt', new ByteArrayInputStream(contents), 0, 0644)
+            writer.putFile('server/large.jar', new ByteArrayInputStream(contents), 0, 0644)
+            writer.putFile('server/small.txt', 'small'.bytes, 0, 0644)
+        }
+
+        new ZipFile(archiveFile).withCloseable { zip ->
+            assertThat(zip.entries().collect { it.name }, equalTo(['teamcity-plugin.xml', 'server/large.txt', 'server/large.jar', 'server/small.txt']))
+            assertThat(zip.getEntry('server/large.txt').method, equalTo(ZipEntry.DEFLATED))
+            assertThat(zip.getEntry('server/large.jar').method, equalTo(ZipEntry.STORED))
+            assertThat(zip.getInputStream(zip.getEntry('server/large.txt')).bytes, equalTo(contents))
+            assertThat(zip.getInputStream(zip.getEntry('server/large.jar')).bytes, equalTo(contents))
+        }
+        new ZipInputStream(new FileInputStream(archiveFile)).withCloseable { zip ->
+            List<String> names = []
+            ZipEntry entry
+            while ((entry = zip.nextEntry) != null) {
+                names << entry.name
+                zip.bytes
+            }
+            assertThat(names.size(), equalTo(4))
+        }
+    }
+
+    @Test
+    void 'abort deletes the partial archive'() {
+        PluginArchiveWriter writer = new PluginArchiveWriter(archiveFile)
+        writer.putFile('teamcity-plugin.xml', 'descriptor'.bytes, 0, 0644)
+        RuntimeException failure = new RuntimeException('failure')
+
+        writer.abort(failure)
+
+        assertThat(archiveFile.exists(), is(false))
+        assertThat(failure.suppressed.length, equalTo(0))
+    }
+
+    @Test
+    void 'reads entries of an existing archive'() {
+        new PluginArchiveWriter(archiveFile).withCloseable { writer ->
+            writer.putDirectory('server', 0, 0755)
+            writer.putFile('server/library.jar', 'jar contents'.bytes, 0, 0644)
+        }
+
+        new PluginArchiveReader(archiveFile).withCloseable { reader ->
+            assertThat(reader.entries.keySet(), equalTo(['server/', 'server/library.jar'] as Set))
+            PluginArchiveReader.ArchiveEntry entry = reader.getEntry('server/library.jar')
+            assertThat(entry.size, equalTo(12L))
+            assertThat(new String(reader.readRawData(entry)), equalTo('jar contents'))
+        }
+    }
+
+    @Test
+    void 'copies unchanged deflated entries from previous archive'(@TempDir File tempDir) {
+        String descriptor = '<teamcity-plugin/>\n' * 100
+        File previousFile = new File(tempDir, 'previous.zip')
+        new PluginArchiveWriter(previousFile).withCloseable { writer ->
+            writer.putFile('teamcity-plugin.xml', descriptor.bytes, 0, 0644)
+            writer.putFile('server/library.jar', 'jar contents'.bytes, 0, 0644)
+        }
+
+        PluginArchiveWriter writer = new PluginArchiveWriter(archiveFile, new PluginArchiveReader(previousFile))
+        List<Boolean> copied = []
+        writer.withCloseable {
+            copied << writer.putUnchangedFile('teamcity-plugin.xml', 0, 0644)
+            copied << writer.putUnchangedFile('server/library.jar', 0, 0644)
+            copied << writer.putUnchangedFile('server/added.txt', 0, 0644)
+            writer.putFile('server/library.jar', 'jar contents'.bytes, 0, 0644)
+            writer.putFile('server/added.txt', 'added contents'.bytes, 0, 0644)
+        }
+
+        assertThat(copied, equalTo([true, false, false]))
+        assertThat(writer.reusedEntries, equalTo(1))
+        new ZipFile(archiveFile).withCloseable { zip ->
+            assertThat(zip.entries().collect { it.name }, equalTo(['teamcity-plugin.xml', 'server/library.jar', 'server/added.txt']))
+            assertThat(zip.getEntry('teamcity-plugin.xml').method, equalTo(ZipEntry.DEFLATED))
+            assertThat(zip.getInputStream(zip.getEntry('teamcity-plugin.xml')).text, equalTo(descriptor))
+            assertThat(zip.getInputStream(zip.getEntry('server/library.jar')).text, equalTo('jar contents'))
+            assertThat(zip.getInputStream(zip.getEntry('server/added.txt')).text, equalTo('added contents'))
+        }
+    }
+
+    @Test
+    void 'does not copy entries with a different timestamp'(@TempDir File tempDir) {
+        File previousFile = new File(tempDir, 'previous.zip')
+        new PluginArchiveWriter(previousFile).withCloseable { writer ->
+            writer.putFile('server/file.txt', 'contents'.bytes, 0, 0644)
+        }
+
+        PluginArchiveWriter writer = new PluginArchiveWriter(archiveFile, new PluginArchiveReader(previousFile))
+        writer.withCloseable {
+            assertThat(writer.putUnchangedFile('server/file.txt', PluginArchiveCopyAction.CONSTANT_TIME_FOR_ZIP_ENTRIES, 0644), is(false))
+            writer.putFile('server/file.txt', 'contents'.bytes, PluginArchiveCopyAction.CONSTANT_TIME_FOR_ZIP_ENTRIES, 0644)
+        }
+
+        assertThat(writer.reusedEntries, equalTo(0))
+    }
+
+    static abstract class DummyPluginTask extends AbstractPluginTask {}
+
+    @Test
+    void 'plugin task uses the Zip copy action by default'(@TempDir File projectDir) {
+        Project project = ProjectBuilder.builder().withProjectDir(projectDir).build()
+        project.pluginManager.apply('base')
+        DummyPluginTask task = project.tasks.create('dummy', DummyPluginTask)
+
+        assertThat(task.parallelCompression.get(), is(false))
+        assertThat(task.incrementalPackaging.get(), is(false))
+        assertThat(task.createCopyAction(), not(instanceOf(PluginArchiveCopyAction)))
+    }
+
+    @Test
+    void 'plugin task uses the plugin archive copy action with parallel compression'(@TempDir File projectDir) {
+        Project project = ProjectBuilder.builder().withProjectDir(projectDir).build()
+        project.pluginManager.apply('base')
+        DummyPluginTask task = project.tasks.create('dummy', DummyPluginTask)
+        task.parallelCompression.set(true)
+
+        assertThat(task.createCopyAction(), instanceOf(PluginArchiveCopyAction))
+    }
+
+    @Test
+    void 'plugin task uses the plugin archive copy action with incremental packaging'(@TempDir File projectDir) {
+        Project project = ProjectBuilder.builder().withProjectDir(projectDir).build()
+        project.pluginManager.apply('base')
+        DummyPluginTask task = project.tasks.create('dummy', DummyPluginTask)
+        task.incrementalPackaging.set(true)
+
+        assertThat(task.createCopyAction(), instanceOf(PluginArchiveCopyAction))
+    }
+
+    @Test
+    void 'incremental packaging writes entries changed by a filter'(@TempDir File projectDir) {
+        Project project = ProjectBuilder.builder().withProjectDir(projectDir).build()
+        project.pluginManager.apply('base')
+        File descriptor = project.file('teamcity-plugin.xml')
+        descriptor.text = '<teamcity-plugin version="@version@"/>'
+        String version = '1.0'
+        DummyPluginTask task = project.tasks.create('dummy', DummyPluginTask)
+        task.incrementalPackaging.set(true)
+        task.archiveFileName.set('plugin.zip')
+        task.destinationDirectory.set(project.file('build'))
+        task.from(descriptor) { it.filter { String line -> line.replace('@version@', version) } }
+        project.file('build').mkdirs()
+
+        task.copy()
+        version = '2.0'
+        task.copy()
+
+        new ZipFile(task.archiveFile.get().asFile).withCloseable { zip ->
+            String content = zip.getInputStream(zip.getEntry('teamcity-plugin.xml')).text
+            assertThat(content, equalTo('<teamcity-plugin version="2.0"/>'))
+        }
+    }
+}
@@ -15,8 +15,6 @@
  */
 package com.github.rodm.teamcity
 
-import com.github.rodm.teamcity.internal.PluginDescriptorContentsValidationAction
-import com.github.rodm.teamcity.internal.PluginDescriptorValidationAction
 import com.github.rodm.teamcity.internal.PublishAction
 import com.github.rodm.teamcity.internal.SignAction
 import com.github.rodm.teamcity.tasks.GenerateServerPluginDescriptor
@@ -24,6 +22,7 @@ import com.github.rodm.teamcity.tasks.ProcessDescriptor
 import com.github.rodm.teamcity.tasks.PublishPlugin
 import com.github.rodm.teamcity.tasks.ServerPlugin
 import com.github.rodm.teamcity.tasks.SignPlugin
+import com.github.rodm.teamcity.tasks.ValidatePlugin
 import com.jetbrains.plugin.structure.base.plugin.PluginCreationFail
 import com.jetbrains.plugin.structure.base.plugin.PluginCreationResult
 import com.jetbrains.plugin.structure.base.plugin.PluginCreationSuccess
@@ -40,6 +39,7 @@ import org.bouncycastle.operator.jcajce.JcaContentSignerBuilder
 import org.gradle.api.GradleException
 import org.gradle.api.InvalidUserDataException
 import org.gradle.api.Project
+import org.gradle.api.Task
 import org.gradle.api.file.RegularFileProperty
 import org.gradle.api.internal.tasks.TaskExecutionOutcome
 import org.gradle.api.provider.ListProperty
@@ -60,7 +60,6 @@ import java.time.LocalDate
 import java.util.zip.ZipEntry
 import java.util.zip.ZipOutputStream
 
-import static com.github.rodm.teamcity.GradleMatchers.hasAction
 import static com.github.rodm.teamcity.GradleMatchers.hasTask
 import static com.github.rodm.teamcity.TestSupport.archiveEntries
 import static com.github.rodm.teamcity.TestSupport.createDirectory
@@ -192,6 +191,7 @@ class ServerConfigurationTest extends ConfigurationTestCase {
 
         assertThat(project, hasTask('processServerDescriptor'))
         assertThat(project, hasTask('generateServerDescriptor'))
+        assertThat(project, hasTask('processServerLibraries'))
         assertThat(project, hasTask('serverPlugin'))
     }
 
@@ -551,13 +551,27 @@ class ServerConfigurationTest extends ConfigurationTestCase {
     }
 
     @Test
-    void 'applying server plugin configures validation actions on all ServerPlugin tasks'() {
-        project.tasks.create('alternativeServerPlugin', ServerPlugin)
+    void 'applying server plugin configures validation task'() {
+        project.teamcity {
+            version = '2020.1'
+        }
         project.evaluate()
 
-        ServerPlugin serverPlugin = project.tasks.getByName('alternativeServerPlugin') as ServerPlugin
-        assertThat(serverPlugin, hasAction(PluginDescriptorValidationAction))
-        assertThat(serverPlugin, hasAction(PluginDescriptorContentsValidationAction))
+        ValidatePlugin validate = project.tasks.getByName('validateServerPlugin') as ValidatePlugin
+        assertThat(validate.descriptor.get().asFile, equalTo(project.file('build/descriptor/server/teamcity-plugin.xml')))
+        assertThat(validate.descriptorSchema.get(), equalTo('2020.1/teamcity-server-plugin-descriptor.xsd'))
+        assertThat(validate.checkDescriptorContents.get(), is(true))
+        assertThat(validate.pluginArchive.isPresent(), is(false))
+    }
+
+    @Test
+    void 'server plugin task is finalized by validation task'() {
+        project.evaluate()
+
+        Task serverPlugin = project.tasks.getByName('serverPlugin')
+        assertThat(serverPlugin.finalizedBy.getDependencies(serverPlugin)*.name, hasItem('validateServerPlugin'))
+        Task check = project.tasks.getByName('check')
+        assertThat(check.taskDependencies.getDependencies(check)*.name, hasItem('validateServerPlugin'))
     }
 
     @Nested
@@ -843,6 +857,23 @@ class ServerConfigurationTest extends ConfigurationTestCase {
             assertThat(publishPlugin.distributionFile.get(), equalTo(serverPlugin.archiveFile.get()))
         }
 
+        @Test
+        void 'publish task is disabled when the build is offline'() {
+            project.gradle.startParameter.offline = true
+            project.teamcity {
+                server {
+                    publish {
+                        token = 'token'
+                    }
+                }
+            }
+
+            project.evaluate()
+
+            PublishPlugin publishPlugin = (PublishPlugin) project.tasks.findByPath(':publishPlugin')
+            assertThat(publishPlugin.enabled, is(false))
+        }
+
         @Test
         void 'publish task is configured with change notes'() {
             project.teamcity {
@@ -85,6 +85,47 @@ class ServerDescriptorGeneratorTest {
         assertThat(writer.toString(), matcher)
     }
 
+    @Test
+    void 'writes indented descriptor with escaped values'() {
+        project.teamcity {
+            server {
+                descriptor {
+                    name = 'plugin name'
+                    displayName = 'Plugin <one> & "two"'
+                    version = '1.2.3'
+                    vendorName = 'vendor name'
+                    minimumBuild = '1<2'
+                    parameters {
+                        parameter 'name1', 'value1'
+                        parameter 'name2', ''
+                    }
+                }
+            }
+        }
+        ServerPluginDescriptorGenerator generator = createGenerator()
+
+        generator.writeTo(writer)
+
+        String nl = System.lineSeparator()
+        String expected = '<?xml version="1.0" encoding="UTF-8"?>' +
+            '<teamcity-plugin xmlns:xsi="http://www.w3.org/2001/XMLSchema-instance" xsi:noNamespaceSchemaLocation="urn:schemas-jetbrains-com:teamcity-plugin-v1-xml">' + nl +
+            '  <info>' + nl +
+            '    <name>plugin name</name>' + nl +
+            '    <display-name>Plugin &lt;one&gt; &amp; "two"</display-name>' + nl +
+            '    <version>1.2.3</version>' + nl +
+            '    <vendor>' + nl +
+            '      <name>vendor name</name>' + nl +
+            '    </vendor>' + nl +
+            '  </info>' + nl +
+            '  <requirements min-build="1&lt;2"/>' + nl +
+            '  <parameters>' + nl +
+            '    <parameter name="name1">value1</parameter>' + nl +
+            '    <parameter name="name2"/>' + nl +
+            '  </parameters>' + nl +
+            '</teamcity-plugin>' + nl
+        assertThat(writer.toString(), equalTo(expected))
+    }
+
     @Test
     void writesRequiredInfoProperties() {
         project.teamcity {
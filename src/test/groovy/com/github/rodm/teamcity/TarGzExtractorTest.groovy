@@ -0,0 +1,236 @@
+/*
+ * Copyright 2022 Rod MacKenzie
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.rodm.teamcity
+
+import com.github.rodm.teamcity.internal.TarGzExtractor
+import org.apache.commons.compress.archivers.tar.TarArchiveEntry
+import org.apache.commons.compress.archivers.tar.TarArchiveOutputStream
+import org.apache.commons.compress.compressors.gzip.GzipCompressorOutputStream
+import org.junit.jupiter.api.Test
+import org.junit.jupiter.api.io.TempDir
+
+import java.nio.file.FileSystems
+import java.nio.file.Files
+import java.nio.file.LinkOption
+
+import static org.hamcrest.MatcherAssert.assertThat
+import static org.hamcrest.Matchers.equalTo
+import static org.hamcrest.Matchers.is
+import static org.junit.jupiter.api.Assumptions.assumeTrue
+
+class TarGzExtractorTest {
+
+    @TempDir
+    File tempDir
+
+    private File createArchive(int longFileMode = TarArchiveOutputStream.LONGFILE_GNU, Closure entries) {
+        File archive = new File(tempDir, 'TeamCity-2021.2.tar.gz')
+        new TarArchiveOutputStream(new GzipCompressorOutputStream(new FileOutputStream(archive))).withCloseable { out ->
+            out.longFileMode = longFileMode
+            out.bigNumberMode = TarArchiveOutputStream.BIGNUMBER_POSIX
+            entries.call(out)
+        }
+        return archive
+    }
+
+    private static void file(TarArchiveOutputStream out, String name, byte[] content, int mode = 0644) {
+        TarArchiveEntry entry = new TarArchiveEntry(name)
+        entry.size = content.length
+        entry.mode = mode
+        out.putArchiveEntry(entry)
+        out.write(content)
+        out.closeArchiveEntry()
+    }
+
+    private static void directory(TarArchiveOutputStream out, String name) {
+        out.putArchiveEntry(new TarArchiveEntry(name))
+        out.closeArchiveEntry()
+    }
+
+    private static void symlink(TarArchiveOutputStream out, String name, String target) {
+        TarArchiveEntry entry = new TarArchiveEntry(name, TarArchiveEntry.LF_SYMLINK)
+        entry.linkName = target
+        out.putArchiveEntry(entry)
+        out.closeArchiveEntry()
+    }
+
+    @Test
+    void 'extracts files replacing the top-level directory'() {
+        File archive = createArchive { out ->
+            directory(out, 'TeamCity/')
+            directory(out, 'TeamCity/bin/')
+            file(out, 'TeamCity/bin/teamcity-server.sh', 'server'.bytes)
+            file(out, 'TeamCity/conf/server.xml', 'config'.bytes)
+        }
+        File target = new File(tempDir, 'servers/TeamCity-2021.2')
+
+        new TarGzExtractor(2).extract(archive, target)
+
+        assertThat(new File(target, 'bin/teamcity-server.sh').text, equalTo('server'))
+        assertThat(new File(target, 'conf/server.xml').text, equalTo('config'))
+        assertThat(new File(target, 'TeamCity').exists(), is(false))
+    }
+
+    @Test
+    void 'extracts large files and many small files'() {
+        byte[] large = new byte[6 * 1024 * 1024]
+        new Random(1).nextBytes(large)
+        File archive = createArchive { out ->
+            file(out, 'TeamCity/webapps/ROOT/WEB-INF/lib/large.jar', large)
+            (1..500).each { i -> file(out, "TeamCity/lib/file${i}.txt", "content ${i}".bytes) }
+        }
+        File target = new File(tempDir, 'TeamCity-2021.2')
+
+        new TarGzExtractor(4).extract(archive, target)
+
+        assertThat(new File(target, 'webapps/ROOT/WEB-INF/lib/large.jar').bytes, equalTo(large))
+        (1..500).each { i ->
+            assertThat(new File(target, "lib/file${i}.txt").text, equalTo("content ${i}".toString()))
+        }
+    }
+
+    @Test
+    void 'extracts entries with long names'() {
+        String longName = 'TeamCity/' + ('directory/' * 12) + 'file-with-a-long-name.txt'
+        [TarArchiveOutputStream.LONGFILE_GNU, TarArchiveOutputStream.LONGFILE_POSIX].each { mode ->
+            File archive = createArchive(mode) { out ->
+                file(out, longName, 'long'.bytes)
+            }
+            File target = new File(tempDir, "TeamCity-${mode}")
+
+            new TarGzExtractor(1).extract(archive, target)
+
+            assertThat(new File(target, longName.substring('TeamCity/'.length())).text, equalTo('long'))
+        }
+    }
+
+    @Test
+    void 'preserves executable permissions'() {
+        assumeTrue(FileSystems.default.supportedFileAttributeViews().contains('posix'))
+        File archive = createArchive { out ->
+            file(out, 'TeamCity/bin/teamcity-server.sh', 'server'.bytes, 0755)
+            file(out, 'TeamCity/bin/teamcity-server.bat', 'server'.bytes, 0644)
+        }
+        File target = new File(tempDir, 'TeamCity-2021.2')
+
+        new TarGzExtractor(1).extract(archive, target)
+
+        assertThat(new File(target, 'bin/teamcity-server.sh').canExecute(), is(true))
+        assertThat(new File(target, 'bin/teamcity-server.bat').canExecute(), is(false))
+    }
+
+    @Test
+    void 'extracts symbolic links'() {
+        assumeTrue(FileSystems.default.supportedFileAttributeViews().contains('posix'))
+        File archive = createArchive { out ->
+            file(out, 'TeamCity/bin/teamcity-server.sh', 'server'.bytes)
+            symlink(out, 'TeamCity/teamcity-server.sh', 'bin/teamcity-server.sh')
+        }
+        File target = new File(tempDir, 'TeamCity-2021.2')
+
+        new TarGzExtractor(1).extract(archive, target)
+
+        File link = new File(target, 'teamcity-server.sh')
+        assertThat(Files.isSymbolicLink(link.toPath()), is(true))
+        assertThat(Files.readSymbolicLink(link.toPath()).toString(), equalTo('bin/teamcity-server.sh'))
+        assertThat(link.text, equalTo('server'))
+    }
+
+    @Test
+    void 'skips symbolic links to paths outside the target directory'() {
+        assumeTrue(FileSystems.default.supportedFileAttributeViews().contains('posix'))
+        File outside = new File(tempDir, 'outside.txt')
+        outside.text = 'outside'
+        File archive = createArchive { out ->
+            symlink(out, 'TeamCity/absolute', outside.absolutePath)
+            symlink(out, 'TeamCity/bin/relative', '../../../outside.txt')
+            symlink(out, 'TeamCity/bin/inside', '../conf/server.xml')
+            file(out, 'TeamCity/conf/server.xml', 'config'.bytes)
+        }
+        File target = new File(tempDir, 'servers/TeamCity-2021.2')
+
+        new TarGzExtractor(1).extract(archive, target)
+
+        assertThat(Files.exists(new File(target, 'absolute').toPath(), LinkOption.NOFOLLOW_LINKS), is(false))
+        assertThat(Files.exists(new File(target, 'bin/relative').toPath(), LinkOption.NOFOLLOW_LINKS), is(false))
+        assertThat(new File(target, 'bin/inside').text, equalTo('config'))
+    }
+
+    @Test
+    void 'does not write through symbolic links'() {
+        assumeTrue(FileSystems.default.supportedFileAttributeViews().contains('posix'))
+        File archive = createArchive { out ->
+            directory(out, 'TeamCity/conf/')
+            file(out, 'TeamCity/conf/server.xml', 'config'.bytes)
+            symlink(out, 'TeamCity/link', 'conf')
+            file(out, 'TeamCity/link/server.xml', 'replaced'.bytes)
+            symlink(out, 'TeamCity/server.xml', 'conf/server.xml')
+            file(out, 'TeamCity/server.xml', 'file'.bytes)
+        }
+        File target = new File(tempDir, 'TeamCity-2021.2')
+
+        new TarGzExtractor(1).extract(archive, target)
+
+        assertThat(new File(target, 'conf/server.xml').text, equalTo('config'))
+        assertThat(Files.isSymbolicLink(new File(target, 'server.xml').toPath()), is(false))
+        assertThat(new File(target, 'server.xml').text, equalTo('file'))
+    }
+
+    @Test
+    void 'skips entries outside the target directory'() {
+        File archive = createArchive { out ->
+            file(out, 'TeamCity/../../outside.txt', 'outside'.bytes)
+            file(out, 'TeamCity/inside.txt', 'inside'.bytes)
+        }
+        File target = new File(tempDir, 'servers/TeamCity-2021.2')
+
+        new TarGzExtractor(1).extract(archive, target)
+
+        assertThat(new File(tempDir, 'outside.txt').exists(), is(false))
+        assertThat(new File(target, 'inside.txt').text, equalTo('inside'))
+    }
+
+    @Test
+    void 'writes install marker matching the archive'() {
+        File archive = createArchive { out ->
+            file(out, 'TeamCity/bin/teamcity-server.sh', 'server'.bytes)
+        }
+        File target = new File(tempDir, 'TeamCity-2021.2')
+        TarGzExtractor extractor = new TarGzExtractor(1)
+
+        assertThat(extractor.isExtracted(archive, target), is(false))
+        extractor.extract(archive, target)
+
+        assertThat(new File(target, TarGzExtractor.MARKER_FILE).isFile(), is(true))
+        assertThat(extractor.isExtracted(archive, target), is(true))
+    }
+
+    @Test
+    void 'install marker does not match a different archive'() {
+        File archive = createArchive { out ->
+            file(out, 'TeamCity/bin/teamcity-server.sh', 'server'.bytes)
+        }
+        File target = new File(tempDir, 'TeamCity-2021.2')
+        TarGzExtractor extractor = new TarGzExtractor(1)
+        extractor.extract(archive, target)
+
+        archive = createArchive { out ->
+            file(out, 'TeamCity/bin/teamcity-server.sh', 'updated server'.bytes)
+        }
+
+        assertThat(extractor.isExtracted(archive, target), is(false))
+    }
+}
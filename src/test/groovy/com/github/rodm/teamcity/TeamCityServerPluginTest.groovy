@@ -15,6 +15,8 @@
  */
 package com.github.rodm.teamcity
 
+import com.github.rodm.teamcity.tasks.ProcessLibraries
+import com.github.rodm.teamcity.tasks.ServerPlugin
 import org.gradle.api.Project
 import org.gradle.api.artifacts.Configuration
 import org.gradle.testfixtures.ProjectBuilder
@@ -24,6 +26,8 @@ import org.junit.jupiter.api.io.TempDir
 
 import static com.github.rodm.teamcity.GradleMatchers.hasDefaultDependency
 import static com.github.rodm.teamcity.GradleMatchers.hasDependency
+import static com.github.rodm.teamcity.TestSupport.createDirectory
+import static com.github.rodm.teamcity.TestSupport.createFile
 import static com.github.rodm.teamcity.TestSupport.normalizePath
 import static org.hamcrest.CoreMatchers.anyOf
 import static org.hamcrest.CoreMatchers.endsWith
@@ -32,6 +36,7 @@ import static org.hamcrest.CoreMatchers.hasItem
 import static org.hamcrest.CoreMatchers.not
 import static org.hamcrest.CoreMatchers.notNullValue
 import static org.hamcrest.MatcherAssert.assertThat
+import static org.hamcrest.Matchers.empty
 import static org.hamcrest.Matchers.hasSize
 import static org.hamcrest.Matchers.is
 
@@ -220,4 +225,67 @@ class TeamCityServerPluginTest {
         assertThat(configuration.artifacts, hasSize(1))
         assertThat(normalizePath(configuration.artifacts[0].file), endsWith('/build/distributions/test.zip'))
     }
+
+    @Test
+    void 'server plugin task uses the provided configuration for provided libraries'() {
+        project.apply plugin: 'java'
+        project.apply plugin: 'com.github.rodm.teamcity-server'
+
+        ServerPlugin serverPlugin = project.tasks.getByName('serverPlugin') as ServerPlugin
+
+        assertThat(serverPlugin.excludeProvidedLibraries.get(), is(false))
+        assertThat(serverPlugin.providedLibraries.from, hasItem(project.configurations.getByName('provided')))
+
+        ProcessLibraries processLibraries = project.tasks.getByName('processServerLibraries') as ProcessLibraries
+        assertThat(processLibraries.providedModules.get(), hasSize(0))
+    }
+
+    @Test
+    void 'process task excludes libraries provided by the server at the same version'() {
+        project.apply plugin: 'java'
+        project.apply plugin: 'com.github.rodm.teamcity-server'
+        createDirectory(project.file('libs').toPath())
+        createDirectory(project.file('webapps/ROOT/WEB-INF/lib').toPath())
+        File springCore = createFile(project.file('libs/spring-core-5.3.20.jar').toPath())
+        File commonsLang = createFile(project.file('libs/commons-lang3-3.12.0.jar').toPath())
+        File library = createFile(project.file('libs/library-1.0.jar').toPath())
+        File providedSpringCore = createFile(project.file('webapps/ROOT/WEB-INF/lib/spring-core-5.3.18.jar').toPath())
+        File providedCommonsLang = createFile(project.file('webapps/ROOT/WEB-INF/lib/commons-lang3-3.12.0.jar').toPath())
+        springCore << 'spring core'
+        commonsLang << 'commons lang'
+
+        ServerPlugin serverPlugin = project.tasks.getByName('serverPlugin') as ServerPlugin
+        serverPlugin.server.setFrom(springCore, commonsLang, library)
+        serverPlugin.providedLibraries.setFrom(providedSpringCore, providedCommonsLang)
+        serverPlugin.excludeProvidedLibraries.set(true)
+        ProcessLibraries processLibraries = project.tasks.getByName('processServerLibraries') as ProcessLibraries
+        processLibraries.modules.set([:])
+        processLibraries.excludedLibrariesFile.set(project.file('excluded-libraries.txt'))
+
+        processLibraries.process()
+
+        assertThat(processLibraries.providedModules.get(), equalTo(['commons-lang3-3.12.0.jar', 'spring-core-5.3.18.jar'] as Set))
+        assertThat(project.file('excluded-libraries.txt').readLines(), equalTo(['commons-lang3-3.12.0.jar']))
+    }
+
+    @Test
+    void 'process task matches provided libraries by module'() {
+        project.apply plugin: 'java'
+        project.apply plugin: 'com.github.rodm.teamcity-server'
+        createDirectory(project.file('libs').toPath())
+        createDirectory(project.file('provided').toPath())
+        File annotations = createFile(project.file('libs/annotations-13.0.jar').toPath())
+        File providedAnnotations = createFile(project.file('provided/annotations-13.0.jar').toPath())
+
+        ProcessLibraries processLibraries = project.tasks.getByName('processServerLibraries') as ProcessLibraries
+        processLibraries.libraries.setFrom(annotations)
+        processLibraries.providedLibraries.setFrom(providedAnnotations)
+        processLibraries.excludeProvidedLibraries.set(true)
+        processLibraries.modules.set([(annotations): 'org.jetbrains:annotations:13.0', (providedAnnotations): 'com.example:annotations:13.0'])
+        processLibraries.excludedLibrariesFile.set(project.file('excluded-libraries.txt'))
+
+        processLibraries.process()
+
+        assertThat(project.file('excluded-libraries.txt').readLines(), is(empty()))
+    }
 }
@@ -16,9 +16,12 @@
 
 package com.github.rodm.teamcity
 
+import com.github.rodm.teamcity.internal.ClassIndex
 import com.github.rodm.teamcity.internal.PluginDefinition
 import com.github.rodm.teamcity.internal.PluginDefinitionValidationAction
-import org.gradle.api.Action
+import com.github.rodm.teamcity.internal.PluginEntityResolver
+import com.github.rodm.teamcity.internal.PluginValidationLog
+import com.github.rodm.teamcity.internal.ValidationSupport
 import org.gradle.api.Project
 import org.gradle.api.Task
 import org.gradle.testfixtures.ProjectBuilder
@@ -27,9 +30,11 @@ import org.junit.jupiter.api.BeforeEach
 import org.junit.jupiter.api.Test
 import org.junit.jupiter.api.extension.RegisterExtension
 import org.junit.jupiter.api.io.TempDir
+import org.xml.sax.InputSource
 
 import static com.github.rodm.teamcity.ValidationMode.WARN
 import static org.hamcrest.CoreMatchers.containsString
+import static org.hamcrest.CoreMatchers.equalTo
 import static org.hamcrest.CoreMatchers.not
 import static org.hamcrest.MatcherAssert.assertThat
 
@@ -51,7 +56,7 @@ class ValidateDefinitionActionOfflineTest {
     private Project project
     private Task stubTask
     private List<PluginDefinition> definitions = []
-    private Set<String> classes = new HashSet<>()
+    private ClassIndex classes = new ClassIndex()
 
     @BeforeEach
     void setup(@TempDir File projectDir) {
@@ -82,21 +87,34 @@ class ValidateDefinitionActionOfflineTest {
     }
 
     @Test
-    void 'output warning message on failed bean definition parsing failure'() {
-        Action<Task> validationAction = createValidationAction()
+    void 'no warning message on bean definition parsing without network access'() {
+        PluginDefinitionValidationAction validationAction = createValidationAction()
 
-        validationAction.execute(stubTask)
+        validationAction.validate(new PluginValidationLog(stubTask.path, stubTask.logger))
 
-        assertThat(outputEventListener.toString(), containsString(NO_BEANS_PARSING_MESSAGE))
+        assertThat(outputEventListener.toString(), not(containsString(NO_BEANS_PARSING_MESSAGE)))
     }
 
     @Test
-    void 'no warning message on failed bean definition parsing failure with offline option'() {
-        Action<Task> validationAction = createValidationAction()
+    void 'bean definition DTD is resolved from the plugin'() {
+        InputSource source = PluginEntityResolver.INSTANCE.resolveEntity('-//SPRING//DTD BEAN//EN', 'http://www.springframework.org/dtd/spring-beans.dtd')
 
-        stubTask.inputs.property('gradle-offline', true)
-        validationAction.execute(stubTask)
+        assertThat(source.byteStream.text, containsString('<!ELEMENT beans'))
+    }
 
-        assertThat(outputEventListener.toString(), not(containsString(NO_BEANS_PARSING_MESSAGE)))
+    @Test
+    void 'unknown external entities resolve to an empty document'() {
+        InputSource source = PluginEntityResolver.INSTANCE.resolveEntity(null, 'http://example.com/unknown.dtd')
+
+        assertThat(source.characterStream.text, equalTo(''))
+    }
+
+    @Test
+    void 'bean definition is parsed with default attribute values from the DTD'() {
+        Node beans = ValidationSupport.parseXml(project.file('build-server-plugin.xml'))
+
+        Node bean = beans.get('bean')[0] as Node
+        assertThat(bean.attribute('class'), equalTo('example.Plugin'))
+        assertThat(bean.attribute('lazy-init'), equalTo('default'))
     }
 }
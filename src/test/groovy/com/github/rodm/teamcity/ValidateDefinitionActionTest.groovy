@@ -16,26 +16,28 @@
 
 package com.github.rodm.teamcity
 
-import com.github.rodm.teamcity.internal.ClassCollectorAction
+import com.github.rodm.teamcity.internal.ClassIndex
+import com.github.rodm.teamcity.internal.ClassIndexService
+import com.github.rodm.teamcity.internal.JarClassIndexCache
+import com.github.rodm.teamcity.internal.PluginBean
 import com.github.rodm.teamcity.internal.PluginDefinition
-import com.github.rodm.teamcity.internal.PluginDefinitionCollectorAction
+import com.github.rodm.teamcity.internal.PluginDefinitionCache
 import com.github.rodm.teamcity.internal.PluginDefinitionValidationAction
-import org.gradle.api.Action
-import org.gradle.api.GradleException
+import com.github.rodm.teamcity.internal.PluginValidationLog
+import com.github.rodm.teamcity.internal.PluginValidationResult
+import com.github.rodm.teamcity.tasks.ValidatePlugin
 import org.gradle.api.Project
 import org.gradle.api.Task
-import org.gradle.api.file.FileCopyDetails
-import org.gradle.api.file.RelativePath
 import org.gradle.api.plugins.JavaPlugin
-import org.gradle.api.tasks.AbstractCopyTask
-import org.gradle.api.tasks.bundling.Jar
 import org.gradle.testfixtures.ProjectBuilder
 import org.junit.jupiter.api.BeforeEach
 import org.junit.jupiter.api.Test
 import org.junit.jupiter.api.extension.RegisterExtension
 import org.junit.jupiter.api.io.TempDir
 
-import static com.github.rodm.teamcity.GradleMatchers.hasAction
+import java.util.zip.ZipEntry
+import java.util.zip.ZipOutputStream
+
 import static com.github.rodm.teamcity.ValidationMode.FAIL
 import static com.github.rodm.teamcity.ValidationMode.IGNORE
 import static com.github.rodm.teamcity.ValidationMode.WARN
@@ -45,12 +47,10 @@ import static com.github.rodm.teamcity.internal.PluginDefinitionValidationAction
 import static org.hamcrest.CoreMatchers.containsString
 import static org.hamcrest.CoreMatchers.equalTo
 import static org.hamcrest.CoreMatchers.hasItem
+import static org.hamcrest.CoreMatchers.is
 import static org.hamcrest.CoreMatchers.not
+import static org.hamcrest.CoreMatchers.sameInstance
 import static org.hamcrest.MatcherAssert.assertThat
-import static org.hamcrest.Matchers.hasKey
-import static org.junit.jupiter.api.Assertions.fail
-import static org.mockito.Mockito.mock
-import static org.mockito.Mockito.when
 
 class ValidateDefinitionActionTest {
 
@@ -79,7 +79,7 @@ class ValidateDefinitionActionTest {
     private Project project
     private Task stubTask
     private List<PluginDefinition> definitions = []
-    private Set<String> classes = new HashSet<>()
+    private ClassIndex classes = new ClassIndex()
 
     @BeforeEach
     void setup(@TempDir File projectDir) {
@@ -91,11 +91,15 @@ class ValidateDefinitionActionTest {
         new PluginDefinitionValidationAction(mode, definitions, classes)
     }
 
+    private PluginValidationLog log() {
+        new PluginValidationLog(stubTask.path, stubTask.logger)
+    }
+
     @Test
     void logWarningMessageForMissingPluginDefinitionFiles() {
-        Action<Task> pluginValidationAction = createValidationAction()
+        PluginDefinitionValidationAction pluginValidationAction = createValidationAction()
 
-        pluginValidationAction.execute(stubTask)
+        pluginValidationAction.validate(log())
 
         assertThat(outputEventListener.toString(), containsString(NO_DEFINITION_WARNING))
     }
@@ -105,10 +109,10 @@ class ValidateDefinitionActionTest {
         File definitionFile = project.file('build-server-plugin.xml')
         definitionFile << BEAN_DEFINITION_FILE
         definitions.add(new PluginDefinition(definitionFile))
-        Action<Task> pluginValidationAction = createValidationAction()
+        PluginDefinitionValidationAction pluginValidationAction = createValidationAction()
         outputEventListener.reset()
 
-        pluginValidationAction.execute(stubTask)
+        pluginValidationAction.validate(log())
 
         assertThat(outputEventListener.toString(), not(containsString(NO_DEFINITION_WARNING)))
     }
@@ -118,10 +122,10 @@ class ValidateDefinitionActionTest {
         File definitionFile = project.file('build-server-plugin.xml')
         definitionFile << EMPTY_BEAN_DEFINITION_FILE
         definitions.add(new PluginDefinition(definitionFile))
-        Action<Task> pluginValidationAction = createValidationAction()
+        PluginDefinitionValidationAction pluginValidationAction = createValidationAction()
         outputEventListener.reset()
 
-        pluginValidationAction.execute(stubTask)
+        pluginValidationAction.validate(log())
 
         String expectedMessage = String.format(NO_BEAN_CLASSES_WARNING, 'build-server-plugin.xml')
         assertThat(outputEventListener.toString(), containsString(expectedMessage))
@@ -132,10 +136,10 @@ class ValidateDefinitionActionTest {
         File definitionFile = project.file('build-server-plugin.xml')
         definitionFile << BEAN_DEFINITION_FILE
         definitions.add(new PluginDefinition(definitionFile))
-        Action<Task> pluginValidationAction = createValidationAction()
+        PluginDefinitionValidationAction pluginValidationAction = createValidationAction()
         outputEventListener.reset()
 
-        pluginValidationAction.execute(stubTask)
+        pluginValidationAction.validate(log())
 
         String expectedMessage = String.format(NO_BEAN_CLASS_WARNING, 'build-server-plugin.xml', 'example.Plugin')
         assertThat(outputEventListener.toString(), containsString(expectedMessage))
@@ -147,10 +151,10 @@ class ValidateDefinitionActionTest {
         definitionFile << BEAN_DEFINITION_FILE
         definitions.add(new PluginDefinition(definitionFile))
         classes.add('example/Plugin.class')
-        Action<Task> pluginValidationAction = createValidationAction()
+        PluginDefinitionValidationAction pluginValidationAction = createValidationAction()
         outputEventListener.reset()
 
-        pluginValidationAction.execute(stubTask)
+        pluginValidationAction.validate(log())
 
         String expectedMessage = String.format(NO_BEAN_CLASS_WARNING, 'build-server-plugin.xml', 'example.Plugin')
         assertThat(outputEventListener.toString(), not(containsString(expectedMessage)))
@@ -158,9 +162,9 @@ class ValidateDefinitionActionTest {
 
     @Test
     void 'no warning message for missing plugin definition files with validation mode set to ignore'() {
-        Action<Task> pluginValidationAction = createValidationAction(IGNORE)
+        PluginDefinitionValidationAction pluginValidationAction = createValidationAction(IGNORE)
 
-        pluginValidationAction.execute(stubTask)
+        pluginValidationAction.validate(log())
 
         assertThat(outputEventListener.toString(), not(containsString(NO_DEFINITION_WARNING)))
     }
@@ -175,8 +179,8 @@ class ValidateDefinitionActionTest {
         definitions.add(new PluginDefinition(definitionFile))
         outputEventListener.reset()
 
-        Action<Task> pluginValidationAction = createValidationAction(IGNORE)
-        pluginValidationAction.execute(stubTask)
+        PluginDefinitionValidationAction pluginValidationAction = createValidationAction(IGNORE)
+        pluginValidationAction.validate(log())
 
         String noBeanClassesMessage = String.format(NO_BEAN_CLASSES_WARNING, 'build-server-plugin1.xml')
         assertThat(outputEventListener.toString(), not(containsString(noBeanClassesMessage)))
@@ -185,22 +189,17 @@ class ValidateDefinitionActionTest {
     }
 
     @Test
-    void 'throws exception for missing plugin definition files with validation mode set to fail'() {
-        Action<Task> pluginValidationAction = createValidationAction(FAIL)
+    void 'reports failure for missing plugin definition files with validation mode set to fail'() {
+        PluginDefinitionValidationAction pluginValidationAction = createValidationAction(FAIL)
 
-        try {
-            pluginValidationAction.execute(stubTask)
-            fail("Should throw exception when plugin definition is missing and mode is set to fail")
-        }
-        catch (GradleException e) {
-            assertThat(e.message, equalTo('Plugin definition validation failed'))
-        }
+        boolean failed = pluginValidationAction.validate(log())
 
+        assertThat(failed, is(true))
         assertThat(outputEventListener.toString(), containsString(NO_DEFINITION_WARNING))
     }
 
     @Test
-    void 'throws exception for invalid plugin definition files with validation mode set to fail'() {
+    void 'reports failure for invalid plugin definition files with validation mode set to fail'() {
         File emptyDefinitionFile = project.file('build-server-plugin1.xml')
         emptyDefinitionFile << EMPTY_BEAN_DEFINITION_FILE
         definitions.add(new PluginDefinition(emptyDefinitionFile))
@@ -209,15 +208,10 @@ class ValidateDefinitionActionTest {
         definitions.add(new PluginDefinition(definitionFile))
         outputEventListener.reset()
 
-        try {
-            Action<Task> pluginValidationAction = createValidationAction(FAIL)
-            pluginValidationAction.execute(stubTask)
-            fail("Should throw exception when plugin definitions are invalid and mode is set to fail")
-        }
-        catch (GradleException e) {
-            assertThat(e.message, equalTo('Plugin definition validation failed'))
-        }
+        PluginDefinitionValidationAction pluginValidationAction = createValidationAction(FAIL)
+        boolean failed = pluginValidationAction.validate(log())
 
+        assertThat(failed, is(true))
         String noBeanClassesMessage = String.format(NO_BEAN_CLASSES_WARNING, 'build-server-plugin1.xml')
         assertThat(outputEventListener.toString(), containsString(noBeanClassesMessage))
         String noBeanClassMessage = String.format(NO_BEAN_CLASS_WARNING, 'build-server-plugin2.xml', 'example.Plugin')
@@ -225,117 +219,217 @@ class ValidateDefinitionActionTest {
     }
 
     @Test
-    void 'server plugin apply configures filesMatching actions on jar spec'() {
-        project.pluginManager.apply(JavaPlugin)
-        Jar jar = replaceJar(project)
+    void noWarningMessageWithClassInRuntimeClasspathJar() {
+        File definitionFile = project.file('build-server-plugin.xml')
+        definitionFile << BEAN_DEFINITION_FILE
+        definitions.add(new PluginDefinition(definitionFile))
+        File library = createJar('library.jar', 'example/Plugin.class')
+        File cacheDir = project.file('cache')
+        PluginDefinitionValidationAction pluginValidationAction = new PluginDefinitionValidationAction(WARN, definitions, classes,
+            { -> new JarClassIndexCache(cacheDir).index([library]) })
+        outputEventListener.reset()
 
-        project.pluginManager.apply(TeamCityServerPlugin)
-        project.evaluate()
+        pluginValidationAction.validate(log())
+
+        String expectedMessage = String.format(NO_BEAN_CLASS_WARNING, 'build-server-plugin.xml', 'example.Plugin')
+        assertThat(outputEventListener.toString(), not(containsString(expectedMessage)))
+        assertThat(cacheDir.listFiles().findAll { it.name.endsWith('.idx') }.size(), equalTo(1))
+    }
+
+    @Test
+    void logWarningMessageForClassMissingFromRuntimeClasspath() {
+        File definitionFile = project.file('build-server-plugin.xml')
+        definitionFile << BEAN_DEFINITION_FILE
+        definitions.add(new PluginDefinition(definitionFile))
+        File library = createJar('library.jar', 'example/Other.class')
+        PluginDefinitionValidationAction pluginValidationAction = new PluginDefinitionValidationAction(WARN, definitions, classes,
+            { -> new JarClassIndexCache(project.file('cache')).index([library]) })
+        outputEventListener.reset()
+
+        pluginValidationAction.validate(log())
+
+        String expectedMessage = String.format(NO_BEAN_CLASS_WARNING, 'build-server-plugin.xml', 'example.Plugin')
+        assertThat(outputEventListener.toString(), containsString(expectedMessage))
+    }
+
+    @Test
+    void 'jar class index is read from the cache directory'() {
+        File cacheDir = project.file('cache')
+        File library = createJar('library-1.0.jar', 'example/Plugin.class')
+        new JarClassIndexCache(cacheDir).addTo(new ClassIndex(), [library])
+        File copy = project.file('copy/library-1.0.jar')
+        copy.parentFile.mkdirs()
+        copy.bytes = library.bytes
+
+        ClassIndex index = new ClassIndex()
+        new JarClassIndexCache(cacheDir).addTo(index, [copy])
+
+        assertThat(index.contains('example/Plugin.class'), is(true))
+        assertThat(cacheDir.listFiles().findAll { it.name.endsWith('.idx') }.size(), equalTo(1))
+    }
+
+    @Test
+    void 'class index service indexes a classpath once'() {
+        File cacheDir = project.file('cache')
+        File library = createJar('library.jar', 'example/Plugin.class')
+        ClassIndexService service = ClassIndexService.register(project).get()
 
-        def descriptorPattern = 'META-INF/build-server-plugin*.xml'
-        assertThat(jar.filesMatching, hasKey(descriptorPattern))
-        assertThat(jar.filesMatching.get(descriptorPattern).getClass().name, equalTo(PluginDefinitionCollectorAction.name))
-        def classPattern = '**/*.class'
-        assertThat(jar.filesMatching, hasKey(classPattern))
-        assertThat(jar.filesMatching.get(classPattern).getClass().name, equalTo(ClassCollectorAction.name))
+        ClassIndex first = service.getClassIndex([library], cacheDir)
+        ClassIndex second = service.getClassIndex([library], cacheDir)
+
+        assertThat(second, is(sameInstance(first)))
+        assertThat(first.contains('example/Plugin.class'), is(true))
     }
 
     @Test
-    void 'server plugin apply configures doLast action on jar task'() {
+    void 'server plugin apply configures validation task for plugin definitions'() {
         project.pluginManager.apply(JavaPlugin)
         project.pluginManager.apply(TeamCityServerPlugin)
         project.evaluate()
 
-        Jar jar = project.tasks.getByName('jar') as Jar
-        assertThat(jar, hasAction(PluginDefinitionValidationAction))
+        ValidatePlugin validate = project.tasks.getByName('validateServerPlugin') as ValidatePlugin
+        assertThat(validate.validationMode.get(), equalTo(WARN))
+        assertThat(validate.classpath.files, hasItem(project.file('build/classes/java/main')))
     }
 
     @Test
-    void 'applying java plugin after server plugin configures jar task'() {
+    void 'applying java plugin after server plugin configures validation task'() {
         project.pluginManager.apply(TeamCityServerPlugin)
         project.pluginManager.apply(JavaPlugin)
         project.evaluate()
 
-        Jar jar = project.tasks.getByName('jar') as Jar
-        assertThat(jar, hasAction(PluginDefinitionValidationAction))
+        ValidatePlugin validate = project.tasks.getByName('validateServerPlugin') as ValidatePlugin
+        assertThat(validate.validationMode.get(), equalTo(WARN))
     }
 
     @Test
-    void 'agent plugin apply configures filesMatching actions on jar spec'() {
-        project.pluginManager.apply(JavaPlugin)
-        SpyJar mockJarTask = replaceJar(project)
+    void 'server plugin without java plugin ignores plugin definitions'() {
+        project.pluginManager.apply(TeamCityServerPlugin)
+        project.evaluate()
 
-        project.pluginManager.apply(TeamCityAgentPlugin)
+        ValidatePlugin validate = project.tasks.getByName('validateServerPlugin') as ValidatePlugin
+        assertThat(validate.validationMode.get(), equalTo(IGNORE))
+    }
+
+    @Test
+    void 'validation task uses validation mode of the extension'() {
+        project.pluginManager.apply(JavaPlugin)
+        project.pluginManager.apply(TeamCityServerPlugin)
+        project.teamcity {
+            validateBeanDefinition = 'fail'
+        }
         project.evaluate()
 
-        def descriptorPattern = 'META-INF/build-agent-plugin*.xml'
-        assertThat(mockJarTask.filesMatching, hasKey(descriptorPattern))
-        assertThat(mockJarTask.filesMatching.get(descriptorPattern).getClass().name, equalTo(PluginDefinitionCollectorAction.name))
-        def classPattern = '**/*.class'
-        assertThat(mockJarTask.filesMatching, hasKey(classPattern))
-        assertThat(mockJarTask.filesMatching.get(classPattern).getClass().name, equalTo(ClassCollectorAction.name))
+        ValidatePlugin validate = project.tasks.getByName('validateServerPlugin') as ValidatePlugin
+        assertThat(validate.validationMode.get(), equalTo(FAIL))
     }
 
     @Test
-    void 'agent plugin apply configures doLast action on jar task'() {
+    void 'agent plugin apply configures validation task for plugin definitions'() {
         project.pluginManager.apply(JavaPlugin)
         project.pluginManager.apply(TeamCityAgentPlugin)
         project.evaluate()
 
-        Jar jar = project.tasks.getByName('jar') as Jar
-        assertThat(jar, hasAction(PluginDefinitionValidationAction))
+        ValidatePlugin validate = project.tasks.getByName('validateAgentPlugin') as ValidatePlugin
+        assertThat(validate.validationMode.get(), equalTo(WARN))
+        assertThat(validate.classpath.files, hasItem(project.file('build/classes/java/main')))
     }
 
     @Test
-    void 'applying java plugin after agent plugin configures jar task'() {
+    void 'applying java plugin after agent plugin configures validation task'() {
         project.pluginManager.apply(TeamCityAgentPlugin)
         project.pluginManager.apply(JavaPlugin)
         project.evaluate()
 
-        Jar jar = project.tasks.getByName('jar') as Jar
-        assertThat(jar, hasAction(PluginDefinitionValidationAction))
+        ValidatePlugin validate = project.tasks.getByName('validateAgentPlugin') as ValidatePlugin
+        assertThat(validate.validationMode.get(), equalTo(WARN))
     }
 
     @Test
-    void 'PluginDefinitionCollector collects plugin definition files'() {
-        List<PluginDefinition> definitions = new ArrayList<PluginDefinition>()
-        Action<FileCopyDetails> collectorAction = new PluginDefinitionCollectorAction(definitions)
+    void 'validation task finds plugin definitions in resources'() {
+        project.pluginManager.apply(JavaPlugin)
+        project.pluginManager.apply(TeamCityServerPlugin)
+        project.evaluate()
+        File definition = project.file('build/resources/main/META-INF/build-server-plugin-example.xml')
+        definition.parentFile.mkdirs()
+        definition << BEAN_DEFINITION_FILE
+        File other = project.file('build/resources/main/META-INF/other.xml')
+        other << BEAN_DEFINITION_FILE
+
+        ValidatePlugin validate = project.tasks.getByName('validateServerPlugin') as ValidatePlugin
+        assertThat(validate.definitions.files, hasItem(definition))
+        assertThat(validate.definitions.files, not(hasItem(other)))
+    }
+
+    @Test
+    void 'definition beans are read from the cache for files with the same content'() {
+        File cacheDir = project.file('cache')
         File definitionFile = project.file('build-server-plugin.xml')
-        FileCopyDetails stubDetails = mock(FileCopyDetails)
-        when(stubDetails.getFile()).thenReturn(definitionFile)
+        definitionFile << BEAN_DEFINITION_FILE
+        new PluginDefinition(definitionFile, new PluginDefinitionCache(cacheDir)).getBeans()
+
+        File copy = project.file('copy/build-server-plugin.xml')
+        copy.parentFile.mkdirs()
+        copy.text = definitionFile.text
+        int parsed = 0
+        List<PluginBean> beans = new PluginDefinitionCache(cacheDir).getBeans(copy, { file -> parsed++; [] })
+
+        assertThat(parsed, equalTo(0))
+        assertThat(beans.size(), equalTo(1))
+        assertThat(beans.get(0).id, equalTo('examplePlugin'))
+        assertThat(beans.get(0).className, equalTo('example.Plugin'))
+    }
 
-        collectorAction.execute(stubDetails)
+    @Test
+    void 'changed definition file is parsed again'() {
+        File cacheDir = project.file('cache')
+        File definitionFile = project.file('build-server-plugin.xml')
+        definitionFile << BEAN_DEFINITION_FILE
+        new PluginDefinition(definitionFile, new PluginDefinitionCache(cacheDir)).getBeans()
+
+        definitionFile.text = EMPTY_BEAN_DEFINITION_FILE
+        List<PluginBean> beans = new PluginDefinition(definitionFile, new PluginDefinitionCache(cacheDir)).getBeans()
 
-        assertThat(definitions.size(), equalTo(1))
-        assertThat(definitions.get(0).name, equalTo('build-server-plugin.xml'))
+        assertThat(beans.size(), equalTo(0))
+        assertThat(cacheDir.listFiles().findAll { it.name.endsWith('.beans') }.size(), equalTo(2))
     }
 
     @Test
-    void "ClassCollector collects classes"() {
-        Set<String> classList = new HashSet<String>()
-        Action<FileCopyDetails> classManifestCollector = new ClassCollectorAction(classList)
-        FileCopyDetails stubDetails = mock(FileCopyDetails)
-        when(stubDetails.getRelativePath()).thenReturn(new RelativePath(true, 'com', 'example', 'Plugin.class'))
+    void 'validation result is read back with the source and warnings'() {
+        File resultFile = project.file('results/definition.txt')
 
-        classManifestCollector.execute(stubDetails)
+        PluginValidationResult.write(resultFile, 'build-server-plugin.xml', ['first warning', 'second\nwarning'])
+        PluginValidationResult result = PluginValidationResult.read(resultFile)
 
-        assertThat(classList.size(), equalTo(1))
-        assertThat(classList, hasItem('com/example/Plugin.class'))
+        assertThat(result.source, equalTo('build-server-plugin.xml'))
+        assertThat(result.messages, equalTo(['first warning', 'second warning']))
     }
 
-    private static SpyJar replaceJar(Project project) {
-        SpyJar task = project.tasks.replace(JavaPlugin.JAR_TASK_NAME, SpyJar.class)
-        return task
+    @Test
+    void 'validation report lists the warnings of each result'() {
+        List<PluginValidationResult> results = [
+            new PluginValidationResult('build-server-plugin.xml', ['class "example.Plugin" was not found']),
+            new PluginValidationResult('teamcity-plugin.xml', [])
+        ]
+        StringWriter writer = new StringWriter()
+
+        PluginValidationResult.writeReport(writer, ':validateServerPlugin', results, true)
+
+        String report = writer.toString()
+        assertThat(report, containsString('"task": ":validateServerPlugin"'))
+        assertThat(report, containsString('"failed": true'))
+        assertThat(report, containsString('{ "source": "build-server-plugin.xml", "message": "class \\"example.Plugin\\" was not found" }'))
+        assertThat(report, not(containsString('teamcity-plugin.xml')))
     }
 
-    static class SpyJar extends Jar {
-
-        Map<String, Action> filesMatching = new HashMap()
-
-        @Override
-        AbstractCopyTask filesMatching(String pattern, Action<? super FileCopyDetails> action) {
-            filesMatching.put(pattern, action)
-            return super.filesMatching(pattern, action)
+    private File createJar(String name, String... entries) {
+        File jar = project.file(name)
+        new ZipOutputStream(new FileOutputStream(jar)).withCloseable { out ->
+            entries.each { entry ->
+                out.putNextEntry(new ZipEntry(entry))
+                out.closeEntry()
+            }
         }
+        return jar
     }
 }
@@ -18,7 +18,8 @@ package com.github.rodm.teamcity
 
 import com.github.rodm.teamcity.internal.AbstractPluginTask
 import com.github.rodm.teamcity.internal.PluginDescriptorContentsValidationAction
-import org.gradle.api.Action
+import com.github.rodm.teamcity.internal.PluginDescriptorValidation
+import com.github.rodm.teamcity.internal.PluginValidationLog
 import org.gradle.api.Project
 import org.gradle.api.Task
 import org.gradle.testfixtures.ProjectBuilder
@@ -29,6 +30,8 @@ import org.junit.jupiter.api.io.TempDir
 
 import static com.github.rodm.teamcity.internal.PluginDescriptorContentsValidationAction.EMPTY_VALUE_WARNING_MESSAGE
 import static org.hamcrest.CoreMatchers.containsString
+import static org.hamcrest.CoreMatchers.equalTo
+import static org.hamcrest.CoreMatchers.sameInstance
 import static org.hamcrest.CoreMatchers.not
 import static org.hamcrest.MatcherAssert.assertThat
 
@@ -59,6 +62,11 @@ class ValidateDescriptorActionTest {
         new PluginDescriptorContentsValidationAction()
     }
 
+    private void validate(PluginDescriptorContentsValidationAction validationAction) {
+        PluginValidationLog log = new PluginValidationLog(stubTask.path, stubTask.logger)
+        validationAction.validate(new PluginDescriptorValidation().validate(descriptorFile, log), log)
+    }
+
     @Test
     void 'warn about required descriptor values being empty'() {
         descriptorFile << '''<?xml version="1.0" encoding="UTF-8"?>
@@ -73,9 +81,9 @@ class ValidateDescriptorActionTest {
             </info>
         </teamcity-plugin>
         '''
-        Action<Task> validationAction = validationAction()
+        PluginDescriptorContentsValidationAction validationAction = validationAction()
 
-        validationAction.execute(stubTask)
+        validate(validationAction)
 
         assertThat(outputEventListener.toString(), containsString(warningFor('name')))
         assertThat(outputEventListener.toString(), containsString(warningFor('display name')))
@@ -100,8 +108,8 @@ class ValidateDescriptorActionTest {
         </teamcity-plugin>
         '''
 
-        Action<Task> validationAction = validationAction()
-        validationAction.execute(stubTask)
+        PluginDescriptorContentsValidationAction validationAction = validationAction()
+        validate(validationAction)
 
         assertThat(outputEventListener.toString(), containsString(warningFor('description')))
         assertThat(outputEventListener.toString(), containsString(warningFor('vendor url')))
@@ -123,10 +131,10 @@ class ValidateDescriptorActionTest {
             </info>
         </teamcity-plugin>
         '''
-        Action<Task> validationAction = validationAction()
+        PluginDescriptorContentsValidationAction validationAction = validationAction()
         outputEventListener.reset()
 
-        validationAction.execute(stubTask)
+        validate(validationAction)
 
         assertThat(outputEventListener.toString(), not(containsString(warningFor('name'))))
         assertThat(outputEventListener.toString(), not(containsString(warningFor('display name'))))
@@ -136,6 +144,38 @@ class ValidateDescriptorActionTest {
         assertThat(outputEventListener.toString(), not(containsString(warningFor('vendor url'))))
     }
 
+    @Test
+    void 'descriptor is read once for all validation actions of a task'() {
+        descriptorFile << '''<?xml version="1.0" encoding="UTF-8"?>
+        <teamcity-agent-plugin>
+            <tool-deployment>
+                <layout>
+                    <executable-files>
+                        <include name="bin/tool.sh"/>
+                        <include name="bin/helper.sh"/>
+                    </executable-files>
+                </layout>
+            </tool-deployment>
+            <info>
+                <name>name</name>
+                <vendor>
+                    <name>vendor name</name>
+                </vendor>
+            </info>
+        </teamcity-agent-plugin>
+        '''
+        PluginDescriptorValidation validation = new PluginDescriptorValidation()
+
+        PluginValidationLog log = new PluginValidationLog(stubTask.path, stubTask.logger)
+        PluginDescriptorValidation.Result result = validation.validate(descriptorFile, log)
+
+        assertThat(validation.validate(descriptorFile, log), sameInstance(result))
+        assertThat(result.getValue('info/name'), equalTo('name'))
+        assertThat(result.getValue('info/vendor/name'), equalTo('vendor name'))
+        assertThat(result.getValue('info/version'), equalTo(''))
+        assertThat(result.executableFiles, equalTo(['bin/tool.sh', 'bin/helper.sh']))
+    }
+
     private static String warningFor(String name) {
         return EMPTY_VALUE_WARNING.replace("{}", name)
     }
@@ -17,10 +17,12 @@
 package com.github.rodm.teamcity
 
 import com.github.rodm.teamcity.internal.AbstractPluginTask
-import com.github.rodm.teamcity.internal.PluginDescriptorValidationAction
-import org.gradle.api.Action
+import com.github.rodm.teamcity.internal.PluginDescriptorValidation
+import com.github.rodm.teamcity.internal.PluginValidationLog
+import com.github.rodm.teamcity.internal.PluginSchemaService
 import org.gradle.api.Project
 import org.gradle.api.Task
+import org.gradle.api.provider.Provider
 import org.gradle.testfixtures.ProjectBuilder
 import org.junit.jupiter.api.BeforeEach
 import org.junit.jupiter.api.Test
@@ -29,6 +31,7 @@ import org.junit.jupiter.api.io.TempDir
 
 import static org.hamcrest.CoreMatchers.containsString
 import static org.hamcrest.CoreMatchers.not
+import static org.hamcrest.CoreMatchers.sameInstance
 import static org.hamcrest.MatcherAssert.assertThat
 
 class ValidateDescriptorSchemaActionTest {
@@ -68,16 +71,20 @@ class ValidateDescriptorSchemaActionTest {
         stubTask.descriptor.set(descriptorFile)
     }
 
+    private void validate(PluginDescriptorValidation validation) {
+        validation.validate(descriptorFile, new PluginValidationLog(stubTask.path, stubTask.logger))
+    }
+
     private static validationAction(String schema) {
-        new PluginDescriptorValidationAction(schema)
+        new PluginDescriptorValidation(schema, null)
     }
 
     @Test
     void 'warn about allow-reload-plugin attribute when using schema for TeamCity 2018_1 and earlier'() {
         def schema = 'teamcity-server-plugin-descriptor.xsd'
-        Action<Task> validationAction = validationAction(schema)
+        PluginDescriptorValidation validationAction = validationAction(schema)
 
-        validationAction.execute(stubTask)
+        validate(validationAction)
 
         assertThat(outputEventListener.toString(), containsString(warningFor('allow-runtime-reload', 'deployment')))
     }
@@ -85,9 +92,9 @@ class ValidateDescriptorSchemaActionTest {
     @Test
     void 'no warnings when using schema for TeamCity 2018_2 and later'() {
         def schema = '2018.2/teamcity-server-plugin-descriptor.xsd'
-        Action<Task> validationAction = validationAction(schema)
+        PluginDescriptorValidation validationAction = validationAction(schema)
 
-        validationAction.execute(stubTask)
+        validate(validationAction)
 
         assertThat(outputEventListener.toString(), not(containsString(warningFor('allow-runtime-reload', 'deployment'))))
     }
@@ -95,9 +102,9 @@ class ValidateDescriptorSchemaActionTest {
     @Test
     void 'warn about node-responsibilities-aware attribute when using schema for TeamCity 2019_2 and earlier'() {
         def schema = 'teamcity-server-plugin-descriptor.xsd'
-        Action<Task> validationAction = validationAction(schema)
+        PluginDescriptorValidation validationAction = validationAction(schema)
 
-        validationAction.execute(stubTask)
+        validate(validationAction)
 
         assertThat(outputEventListener.toString(), containsString(warningFor('node-responsibilities-aware', 'deployment')))
     }
@@ -105,13 +112,32 @@ class ValidateDescriptorSchemaActionTest {
     @Test
     void 'no warning about node-responsibilities-aware when using schema for TeamCity 2020_1 and later'() {
         def schema = '2020.1/teamcity-server-plugin-descriptor.xsd'
-        Action<Task> validationAction = validationAction(schema)
+        PluginDescriptorValidation validationAction = validationAction(schema)
 
-        validationAction.execute(stubTask)
+        validate(validationAction)
 
         assertThat(outputEventListener.toString(), not(containsString(warningFor('node-responsibilities-aware', 'deployment'))))
     }
 
+    @Test
+    void 'schema service compiles each schema once'() {
+        Provider<PluginSchemaService> service = PluginSchemaService.register(project)
+        def schema = '2020.1/teamcity-server-plugin-descriptor.xsd'
+
+        assertThat(service.get().getSchema(schema), sameInstance(service.get().getSchema(schema)))
+        assertThat(service.get().getSchema(schema), not(sameInstance(service.get().getSchema('teamcity-agent-plugin-descriptor.xsd'))))
+    }
+
+    @Test
+    void 'validation action uses schema from the schema service'() {
+        Provider<PluginSchemaService> service = PluginSchemaService.register(project)
+        PluginDescriptorValidation validationAction = new PluginDescriptorValidation('teamcity-server-plugin-descriptor.xsd', service)
+
+        validate(validationAction)
+
+        assertThat(outputEventListener.toString(), containsString(warningFor('allow-runtime-reload', 'deployment')))
+    }
+
     private static String warningFor(String attribute, String element) {
         return String.format("Attribute '%s' is not allowed to appear in element '%s'", attribute, element)
     }
@@ -16,8 +16,10 @@
 package com.github.rodm.teamcity
 
 import com.github.rodm.teamcity.internal.AbstractPluginTask
+import com.github.rodm.teamcity.internal.FileCollectorAction
+import com.github.rodm.teamcity.internal.PluginDescriptorValidation
 import com.github.rodm.teamcity.internal.PluginExecutableFilesValidationAction
-import org.gradle.api.Action
+import com.github.rodm.teamcity.internal.PluginValidationLog
 import org.gradle.api.Project
 import org.gradle.api.Task
 import org.gradle.api.file.FileCopyDetails
@@ -29,6 +31,8 @@ import org.junit.jupiter.api.io.TempDir
 
 import static org.hamcrest.MatcherAssert.assertThat
 import static org.hamcrest.Matchers.containsString
+import static org.hamcrest.Matchers.equalTo
+import static org.hamcrest.Matchers.is
 import static org.hamcrest.Matchers.not
 import static org.mockito.Mockito.mock
 import static org.mockito.Mockito.when
@@ -75,18 +79,29 @@ class ValidateExecutableFileActionTest {
         return fileCopyDetails
     }
 
-    private validationAction(Set<FileCopyDetails> files) {
+    private static FileCollectorAction collectFiles(String... paths) {
+        FileCollectorAction collector = new FileCollectorAction()
+        paths.each { collector.execute(fileCopyDetails(it)) }
+        return collector
+    }
+
+    private validationAction(FileCollectorAction files) {
         new PluginExecutableFilesValidationAction(files)
     }
 
+    private void validate(PluginExecutableFilesValidationAction validationAction) {
+        PluginValidationLog log = new PluginValidationLog(stubTask.path, stubTask.logger)
+        validationAction.validate(new PluginDescriptorValidation().validate(descriptorFile, log), log)
+    }
+
     @Test
     void 'output warning when executable file is missing'() {
         descriptorFile << AGENT_PLUGIN_DESCRIPTOR
-        Set<FileCopyDetails> files = [fileCopyDetails('test1')]
-        Action<Task> validationAction = validationAction(files)
+        FileCollectorAction files = collectFiles('test1')
+        PluginExecutableFilesValidationAction validationAction = validationAction(files)
         outputEventListener.reset()
 
-        validationAction.execute(stubTask)
+        validate(validationAction)
 
         String message = MISSING_EXECUTABLE_FILE_WARNING.replace('{}', 'bin/test2')
         assertThat(outputEventListener.toString(), containsString(message))
@@ -95,13 +110,22 @@ class ValidateExecutableFileActionTest {
     @Test
     void 'does not output warning when executable file is present'() {
         descriptorFile << AGENT_PLUGIN_DESCRIPTOR
-        Set<FileCopyDetails> files = [fileCopyDetails('test1'), fileCopyDetails('bin/test2')]
-        Action<Task> validationAction =  validationAction(files)
+        FileCollectorAction files = collectFiles('test1', 'bin/test2')
+        PluginExecutableFilesValidationAction validationAction = validationAction(files)
         outputEventListener.reset()
 
-        validationAction.execute(stubTask)
+        validate(validationAction)
 
         String message = String.format(MISSING_EXECUTABLE_FILE_WARNING, 'bin/test2')
         assertThat(outputEventListener.toString(), not(containsString(message)))
     }
+
+    @Test
+    void 'file collector records each path once'() {
+        FileCollectorAction files = collectFiles('test1', 'bin/test2', 'bin/test2')
+
+        assertThat(files.size(), equalTo(2))
+        assertThat(files.contains('bin/test2'), is(true))
+        assertThat(files.contains('bin/test3'), is(false))
+    }
 }